@@ -0,0 +1,157 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana.benchmarks;
+
+import org.apache.commons.lang.StringUtils;
+import org.codehaus.savana.BranchType;
+import org.codehaus.savana.SVNEditorHelper;
+import org.codehaus.savana.scripts.TestDirUtil;
+import org.codehaus.savana.scripts.TestRepoGenerator;
+import org.codehaus.savana.scripts.TestRepoUtil;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+/**
+ * Builds the repositories the benchmarks run against.  Repositories and working copies are created the same
+ * way the test cases create them, then bulk content is written directly through the commit editor so that
+ * thousands of files take a single commit instead of thousands.  Benchmarks that only read from the repository
+ * use the cached repositories from TestRepoGenerator instead.
+ */
+public abstract class BenchmarkFixtures {
+
+    static {
+        //The test utilities locate the policies file through this property, which surefire sets for the tests
+        if (System.getProperty("savana.svn-hooks") == null) {
+            System.setProperty("savana.svn-hooks", new File("../src/main/svn-hooks").getAbsolutePath());
+        }
+    }
+
+    /** The number of files per directory in a synthetic tree. */
+    private static final int FILES_PER_DIR = 100;
+
+    /** Returns the suggested Savana policies file. */
+    public static File getPoliciesFile() {
+        return TestDirUtil.POLICIES_FILE;
+    }
+
+    /** Creates a new repository for benchmarks.  Commit hooks are not installed. */
+    public static SVNURL newRepository() throws Exception {
+        return TestRepoUtil.newRepository(false);
+    }
+
+    /** Returns a generator for repositories that are cached between runs. */
+    public static TestRepoGenerator newGenerator() {
+        return new TestRepoGenerator();
+    }
+
+    /**
+     * Creates a Savana project of the specified name, adds a synthetic tree of the specified number of files
+     * to the trunk and returns a trunk working copy.
+     */
+    public static File setupProject(SVNURL repoUrl, String projectName, int numFiles) throws Exception {
+        TestRepoUtil.setupProjectWithWC(repoUrl, projectName, true, true, "test-project");
+        if (numFiles > 0) {
+            addFiles(repoUrl, projectName + "/" + BranchType.TRUNK.getDefaultPath(), numFiles);
+        }
+        return TestRepoUtil.createTrunkWC(repoUrl, projectName);
+    }
+
+    /** Returns the path of a file in a synthetic tree. */
+    public static String getFilePath(int index) {
+        return "synthetic/dir" + (index / FILES_PER_DIR) + "/file" + index + ".txt";
+    }
+
+    /** Adds a synthetic tree of files under the specified directory in a single commit. */
+    public static void addFiles(SVNURL repoUrl, String dirPath, int numFiles) throws SVNException {
+        SVNRepository repository = TestRepoUtil.SVN.createRepository(repoUrl, false);
+        try {
+            ISVNEditor editor = repository.getCommitEditor("trunk - add synthetic files", null);
+            SVNEditorHelper editorHelper = new SVNEditorHelper(editor);
+            editor.openRoot(-1);
+            editorHelper.openDir(dirPath);
+            String syntheticPath = SVNPathUtil.append(dirPath, "synthetic");
+            editor.addDir(syntheticPath, null, -1);
+            editorHelper.addOpenedDir(syntheticPath);
+            for (int i = 0; i < numFiles; i++) {
+                String filePath = SVNPathUtil.append(dirPath, getFilePath(i));
+                if (i % FILES_PER_DIR == 0) {
+                    editor.addDir(SVNPathUtil.removeTail(filePath), null, -1);
+                }
+                editor.addFile(filePath, null, -1);
+                sendContents(editor, filePath, "file " + i + "\n");
+                if (i % FILES_PER_DIR == FILES_PER_DIR - 1 || i == numFiles - 1) {
+                    editor.closeDir();
+                }
+            }
+            editorHelper.closeAll();
+        } finally {
+            repository.closeSession();
+        }
+    }
+
+    /** Changes the contents of the first numFiles files of a synthetic tree in a single commit and returns the new revision. */
+    public static long modifyFiles(SVNURL repoUrl, String dirPath, int numFiles, String logMessage, String contents) throws SVNException {
+        SVNRepository repository = TestRepoUtil.SVN.createRepository(repoUrl, false);
+        try {
+            ISVNEditor editor = repository.getCommitEditor(logMessage, null);
+            SVNEditorHelper editorHelper = new SVNEditorHelper(editor);
+            editor.openRoot(-1);
+            editorHelper.openDir(SVNPathUtil.append(dirPath, "synthetic"));
+            for (int i = 0; i < numFiles; i++) {
+                String filePath = SVNPathUtil.append(dirPath, getFilePath(i));
+                if (i % FILES_PER_DIR == 0) {
+                    editor.openDir(SVNPathUtil.removeTail(filePath), -1);
+                }
+                editor.openFile(filePath, -1);
+                sendContents(editor, filePath, contents + " " + i + "\n");
+                if (i % FILES_PER_DIR == FILES_PER_DIR - 1 || i == numFiles - 1) {
+                    editor.closeDir();
+                }
+            }
+            return editorHelper.closeAll().getNewRevision();
+        } finally {
+            repository.closeSession();
+        }
+    }
+
+    public static String getBranchName(int index) {
+        return "bench-" + StringUtils.leftPad(Integer.toString(index), 5, '0');
+    }
+
+    private static void sendContents(ISVNEditor editor, String filePath, String contents) throws SVNException {
+        editor.applyTextDelta(filePath, null);
+        String checksum = new SVNDeltaGenerator().sendDelta(filePath, new ByteArrayInputStream(contents.getBytes()), editor, true);
+        editor.closeFile(filePath, checksum);
+    }
+}
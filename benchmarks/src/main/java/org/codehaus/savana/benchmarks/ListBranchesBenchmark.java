@@ -0,0 +1,85 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana.benchmarks;
+
+import org.codehaus.savana.scripts.ListUserBranches;
+import org.codehaus.savana.scripts.TestDirUtil;
+import org.codehaus.savana.scripts.TestRepoGenerator;
+import org.codehaus.savana.scripts.TestRepoUtil;
+import org.codehaus.savana.scripts.TestSavanaUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tmatesoft.svn.core.SVNURL;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 'sav lb' in a project with many user branches, with and without the local branch index and metadata cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ListBranchesBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int numBranches;
+
+    @Param({"true", "false"})
+    public String branchIndex;
+
+    @Param({"true", "false"})
+    public String metadataCache;
+
+    private File _wc;
+
+    @Setup
+    public void setup() throws Exception {
+        System.setProperty("savana.branch-index", branchIndex);
+        System.setProperty("savana.metadata-cache", metadataCache);
+        SVNURL repoUrl = BenchmarkFixtures.newGenerator().setFilesPerTree(10).setUserBranches(numBranches).generate();
+        _wc = TestRepoUtil.createTrunkWC(repoUrl, TestRepoGenerator.getProjectName(0));
+    }
+
+    @Benchmark
+    public String listUserBranches() throws Exception {
+        TestDirUtil.cd(_wc);
+        return TestSavanaUtil.savana(ListUserBranches.class);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+import org.codehaus.savana.BranchType;
+import org.codehaus.savana.MetadataFile;
+import org.codehaus.savana.MetadataProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNProperties;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing the metadata file properties, which 'sav lb' does once per branch.  The trunk carries the
+ * policies, which are loaded and initialized once and then shared through the policy cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MetadataPropertiesBenchmark {
+
+    private SVNProperties _trunkProperties;
+    private SVNProperties _userBranchProperties;
+
+    @Setup
+    public void setup() throws Exception {
+        _trunkProperties = new SVNProperties();
+        _trunkProperties.put(MetadataFile.PROP_PROJECT_NAME, "project");
+        _trunkProperties.put(MetadataFile.PROP_BRANCH_PATH, "project/trunk");
+        _trunkProperties.put(MetadataFile.PROP_BRANCH_TYPE, BranchType.TRUNK.getKeyword());
+        _trunkProperties.put(MetadataFile.PROP_SAVANA_POLICIES, FileUtils.readFileToString(BenchmarkFixtures.getPoliciesFile(), "ISO-8859-1"));
+
+        _userBranchProperties = new SVNProperties();
+        _userBranchProperties.put(MetadataFile.PROP_PROJECT_NAME, "project");
+        _userBranchProperties.put(MetadataFile.PROP_BRANCH_PATH, "project/branches/user/user1");
+        _userBranchProperties.put(MetadataFile.PROP_BRANCH_TYPE, BranchType.USER_BRANCH.getKeyword());
+        _userBranchProperties.put(MetadataFile.PROP_SOURCE_ROOT, "project/trunk");
+        _userBranchProperties.put(MetadataFile.PROP_SOURCE_SUBPATH, "src");
+        _userBranchProperties.put(MetadataFile.PROP_BRANCH_POINT_REVISION, "12345");
+        _userBranchProperties.put(MetadataFile.PROP_LAST_MERGE_REVISION, "12367");
+    }
+
+    @Benchmark
+    public MetadataProperties parseTrunk() throws SVNException {
+        return new MetadataProperties(MetadataFile.METADATA_FILE_NAME, _trunkProperties);
+    }
+
+    @Benchmark
+    public MetadataProperties parseUserBranch() throws SVNException {
+        return new MetadataProperties(MetadataFile.METADATA_FILE_NAME, _userBranchProperties);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana.benchmarks;
+
+import org.codehaus.savana.PathTrie;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collecting the paths touched by a large merge, the way 'sav sync' and 'sav diff --changelist' do, in a TreeSet
+ * and in a {@link PathTrie}.  Besides the time to collect the paths, reports the heap retained by the collection
+ * as the "retainedBytes" secondary result.  Each path is built from scratch the way a notification event builds
+ * it, so the TreeSet is charged for the strings it keeps alive.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class PathCollectionBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int numPaths;
+
+    @Param({"treeset", "trie"})
+    public String collection;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class HeapCounters {
+        public long retainedBytes;
+    }
+
+    @Benchmark
+    public Set<String> collectPaths(HeapCounters counters) {
+        long before = getUsedHeap();
+        Set<String> paths = "trie".equals(collection) ? new PathTrie() : new TreeSet<String>();
+        for (int i = 0; i < numPaths; i++) {
+            paths.add(getPath(i));
+        }
+        counters.retainedBytes = getUsedHeap() - before;
+        return paths;
+    }
+
+    private static String getPath(int i) {
+        //Spread the files over a realistic tree: 10 files per package, 10 packages per module
+        return new StringBuilder("/home/builder/workspace/project/modules/module").append(i / 100)
+                .append("/src/main/java/org/codehaus/project/package").append(i / 10 % 10)
+                .append("/GeneratedSourceFile").append(i).append(".java").toString();
+    }
+
+    private static long getUsedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana.benchmarks;
+
+import org.codehaus.savana.BranchType;
+import org.codehaus.savana.MetadataFile;
+import org.codehaus.savana.MetadataProperties;
+import org.codehaus.savana.PolicyLogMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNProperties;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validating a log message against the suggested policies.  The pattern for each branch is compiled on the
+ * first call and reused after that.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PolicyLogMessageBenchmark {
+
+    private PolicyLogMessage _policy;
+    private MetadataProperties _trunk;
+    private MetadataProperties _userBranch;
+
+    @Setup
+    public void setup() throws Exception {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(BenchmarkFixtures.getPoliciesFile());
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        _policy = new PolicyLogMessage(properties);
+        _trunk = createMetadataProperties(BranchType.TRUNK, "project/trunk");
+        _userBranch = createMetadataProperties(BranchType.USER_BRANCH, "project/branches/user/user1");
+    }
+
+    private MetadataProperties createMetadataProperties(BranchType branchType, String branchPath) throws SVNException {
+        SVNProperties properties = new SVNProperties();
+        properties.put(MetadataFile.PROP_PROJECT_NAME, "project");
+        properties.put(MetadataFile.PROP_BRANCH_PATH, branchPath);
+        properties.put(MetadataFile.PROP_BRANCH_TYPE, branchType.getKeyword());
+        return new MetadataProperties(MetadataFile.METADATA_FILE_NAME, properties);
+    }
+
+    @Benchmark
+    public void validateTrunk() throws SVNException {
+        _policy.validateLogMessage("trunk - fix the frobnicator so that it no longer frobs twice", _trunk, false);
+    }
+
+    @Benchmark
+    public void validateUserBranch() throws SVNException {
+        _policy.validateLogMessage("user1 - work in progress on the frobnicator", _userBranch, false);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana.benchmarks;
+
+import org.codehaus.savana.scripts.CreateUserBranch;
+import org.codehaus.savana.scripts.Promote;
+import org.codehaus.savana.scripts.TestDirUtil;
+import org.codehaus.savana.scripts.TestRepoUtil;
+import org.codehaus.savana.scripts.TestSavanaUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 'sav promote' of a user branch with committed changes, merging in the working copy or on the server.
+ * A new branch is created and changed before every invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PromoteBenchmark {
+
+    @Param({"1000", "10000"})
+    public int numFiles;
+
+    @Param({"10", "1000"})
+    public int changedFiles;
+
+    @Param({"false", "true"})
+    public boolean remote;
+
+    private SVNURL _repoUrl;
+    private File _wc;
+    private int _branchCount;
+
+    @Setup
+    public void setup() throws Exception {
+        _repoUrl = BenchmarkFixtures.newRepository();
+        _wc = BenchmarkFixtures.setupProject(_repoUrl, "promote", numFiles);
+    }
+
+    @Setup(Level.Invocation)
+    public void createBranch() throws Exception {
+        String branchName = BenchmarkFixtures.getBranchName(_branchCount++);
+        TestDirUtil.cd(_wc);
+        TestSavanaUtil.savana(CreateUserBranch.class, branchName);
+        BenchmarkFixtures.modifyFiles(_repoUrl, "promote/branches/user/" + branchName, Math.min(changedFiles, numFiles),
+                "user branch commit - benchmark changes", "changed in " + branchName);
+        TestRepoUtil.SVN.getUpdateClient().doUpdate(_wc, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+    }
+
+    @Benchmark
+    public String promote() throws Exception {
+        return remote ?
+                TestSavanaUtil.savana(Promote.class, "--remote", "-m", "trunk - benchmark promote") :
+                TestSavanaUtil.savana(Promote.class, "-m", "trunk - benchmark promote");
+    }
+}
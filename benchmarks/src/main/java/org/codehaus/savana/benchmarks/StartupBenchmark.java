@@ -0,0 +1,128 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana.benchmarks;
+
+import org.apache.commons.io.IOUtils;
+import org.codehaus.savana.scripts.SAV;
+import org.codehaus.savana.scripts.TestDirUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from starting a new JVM for a short command to its first byte of output, with and without the
+ * class-data-sharing archive that bin/sav builds from the class list of a 'mvn -Pcds package' build.  The archive
+ * is built for the JVM running the benchmark and the jar that contains Savana on the benchmark's classpath; set
+ * 'savana.jar' and 'savana.classlist' to use others.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 20)
+@Fork(1)
+public class StartupBenchmark {
+
+    @Param({"on", "off"})
+    public String cds;
+
+    @Param({"info", "lub -q"})
+    public String command;
+
+    private File _wc;
+    private List<String> _commandLine;
+    private Process _process;
+
+    @Setup
+    public void setup() throws Exception {
+        _wc = BenchmarkFixtures.setupProject(BenchmarkFixtures.newRepository(), "startup", 0);
+
+        String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+        String jar = System.getProperty("savana.jar",
+                new File(SAV.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath());
+
+        //Same JVM options as bin/sav
+        _commandLine = new ArrayList<String>(Arrays.asList(java,
+                "-Xms128M", "-Xmx1024M", "-Dsun.io.useCanonCaches=false", "-Djava.awt.headless=true"));
+        if ("on".equals(cds)) {
+            File classList = new File(System.getProperty("savana.classlist", "../target/savana.classlist"));
+            if (!classList.isFile()) {
+                throw new IllegalStateException("Missing class list, build Savana with 'mvn -Pcds package': " + classList);
+            }
+            File archiveDir = TestDirUtil.createTempDir("startup-cds");
+            archiveDir.mkdirs();
+            File archive = new File(archiveDir, "savana.jsa");
+            run(java, "-Xshare:dump", "-XX:SharedClassListFile=" + classList.getAbsolutePath(),
+                    "-XX:SharedArchiveFile=" + archive.getAbsolutePath(), "-cp", jar);
+            _commandLine.addAll(Arrays.asList("-Xshare:auto", "-XX:SharedArchiveFile=" + archive.getAbsolutePath()));
+        }
+        _commandLine.addAll(Arrays.asList("-cp", jar, SAV.class.getName()));
+        _commandLine.addAll(Arrays.asList(command.split(" ")));
+    }
+
+    @Benchmark
+    public int timeToFirstOutput() throws Exception {
+        ProcessBuilder builder = new ProcessBuilder(_commandLine);
+        builder.directory(_wc);
+        builder.redirectErrorStream(true);
+        _process = builder.start();
+        return _process.getInputStream().read();
+    }
+
+    @TearDown(Level.Invocation)
+    public void waitForExit() throws Exception {
+        //Drain the rest of the output outside of the measurement
+        IOUtils.toString(_process.getInputStream());
+        if (_process.waitFor() != 0) {
+            throw new IllegalStateException("Command failed: " + _commandLine);
+        }
+    }
+
+    private static void run(String... commandLine) throws Exception {
+        Process process = new ProcessBuilder(commandLine).redirectErrorStream(true).start();
+        String output = IOUtils.toString(process.getInputStream());
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("Command failed: " + Arrays.asList(commandLine) + "\n" + output);
+        }
+    }
+}
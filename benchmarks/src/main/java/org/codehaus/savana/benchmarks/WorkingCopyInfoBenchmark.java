@@ -0,0 +1,84 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana.benchmarks;
+
+import org.codehaus.savana.WorkingCopyInfo;
+import org.codehaus.savana.scripts.TestRepoUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding the working copy root and reading its metadata, which every command does first.  With the working
+ * copy cache on, the lookups after the first come from the cache once the working copy files are a few
+ * seconds old; with it off, every lookup searches the directories and reads the working copy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WorkingCopyInfoBenchmark {
+
+    @Param({"0", "1000"})
+    public int numFiles;
+
+    @Param({"true", "false"})
+    public String wcCache;
+
+    private File _wc;
+    private File _subdir;
+
+    @Setup
+    public void setup() throws Exception {
+        System.setProperty("savana.wc-cache", wcCache);
+        _wc = BenchmarkFixtures.setupProject(BenchmarkFixtures.newRepository(), "workingcopyinfo", numFiles);
+        _subdir = new File(_wc, "src/text");
+    }
+
+    @Benchmark
+    public WorkingCopyInfo fromRoot() throws Exception {
+        return new WorkingCopyInfo(TestRepoUtil.SVN, _wc);
+    }
+
+    @Benchmark
+    public WorkingCopyInfo fromSubdirectory() throws Exception {
+        return new WorkingCopyInfo(TestRepoUtil.SVN, _subdir);
+    }
+}
@@ -39,6 +39,7 @@ endlocal & set SAVANA_CLASSPATH=%SAVANA_CLASSPATH:~1%
 
 set SAVANA_MAINCLASS=org.codehaus.savana.scripts.SAV
 set SAVANA_OPTIONS=-Xms128M -Xmx1024M -Djava.awt.headless=true -Djava.util.logging.config.file="%SAVANA_HOME%/logging.properties"
+if not "%SAVANA_METRICS%"=="" set SAVANA_OPTIONS=%SAVANA_OPTIONS% -Dsavana.metrics="%SAVANA_METRICS%"
 
 java %SAVANA_OPTIONS% -cp "%SAVANA_CLASSPATH%" %SAVANA_MAINCLASS% %*
 
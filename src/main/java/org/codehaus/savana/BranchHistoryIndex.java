@@ -0,0 +1,307 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana;
+
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.util.SVNLogType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Indexes the history of a set of paths (eg. branches and their sources) from a single log of a common
+ * ancestor directory, so that questions like "how many revisions changed this path in this range" can be
+ * answered for every path without a log request per path.
+ * <p/>
+ * For each watched path the index keeps the sorted revisions that changed the path or anything under it, and
+ * the last revision in which the path itself was added.  Log entries are indexed in batches while the log is
+ * still streaming, spread across the available processors.
+ */
+public class BranchHistoryIndex {
+
+    private static final int BATCH_SIZE = 2000;
+
+    private final Set<String> _paths = new HashSet<String>();
+    private final Map<String, long[]> _revisions = new HashMap<String, long[]>();
+    private final Map<String, Long> _addRevisions = new HashMap<String, Long>();
+    private final Map<Long, Commit> _commits = new HashMap<Long, Commit>();
+
+    public BranchHistoryIndex(Collection<String> paths) {
+        for (String path : paths) {
+            _paths.add(normalize(path));
+        }
+    }
+
+    /**
+     * Reads the log of the root path in the range [startRevision, endRevision] with changed paths and indexes
+     * the revisions that changed each of the watched paths.
+     */
+    public void scan(SVNRepository repository, String rootPath, long startRevision, long endRevision)
+            throws SVNException {
+        if (startRevision > endRevision) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(), new IndexerThreadFactory());
+        try {
+            BatchingLogEntryHandler handler = new BatchingLogEntryHandler(executor);
+            repository.log(new String[] {rootPath}, startRevision, endRevision, true, false, 0, false,
+                    new String[] {SVNRevisionProperty.AUTHOR, SVNRevisionProperty.DATE}, handler);
+            List<Future<BatchResult>> futures = handler.finish();
+
+            //Merge the batches in order so each path's revisions stay sorted
+            Map<String, RevisionList> revisions = new HashMap<String, RevisionList>();
+            for (Future<BatchResult> future : futures) {
+                BatchResult result = getResult(future);
+                for (Map.Entry<String, RevisionList> entry : result._revisions.entrySet()) {
+                    RevisionList pathRevisions = revisions.get(entry.getKey());
+                    if (pathRevisions == null) {
+                        revisions.put(entry.getKey(), entry.getValue());
+                    } else {
+                        pathRevisions.addAll(entry.getValue());
+                    }
+                }
+                _addRevisions.putAll(result._addRevisions);
+                _commits.putAll(result._commits);
+            }
+            for (Map.Entry<String, RevisionList> entry : revisions.entrySet()) {
+                _revisions.put(entry.getKey(), entry.getValue().toArray());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private BatchResult getResult(Future<BatchResult> future) throws SVNException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.CANCELLED,
+                    "Interrupted while indexing branch history"), SVNLogType.CLIENT);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.UNKNOWN,
+                    "Error indexing branch history: " + cause, null, SVNErrorMessage.TYPE_ERROR, cause), SVNLogType.CLIENT);
+        }
+        return null; // unreachable
+    }
+
+    /** Returns the number of revisions in the range (afterRevision, throughRevision] that changed the path. */
+    public int countRevisions(String path, long afterRevision, long throughRevision) {
+        long[] revisions = _revisions.get(normalize(path));
+        if (revisions == null || afterRevision >= throughRevision) {
+            return 0;
+        }
+        return indexAfter(revisions, throughRevision) - indexAfter(revisions, afterRevision);
+    }
+
+    /** Returns the last revision that changed the path, or -1 if no scanned revision changed it. */
+    public long getLastRevision(String path) {
+        long[] revisions = _revisions.get(normalize(path));
+        return (revisions != null && revisions.length > 0) ? revisions[revisions.length - 1] : -1;
+    }
+
+    /** Returns the last revision in which the path itself was added or replaced, or -1 if it wasn't scanned. */
+    public long getAddRevision(String path) {
+        Long revision = _addRevisions.get(normalize(path));
+        return (revision != null) ? revision : -1;
+    }
+
+    /** Returns the author of a revision that changed one of the watched paths. */
+    public String getAuthor(long revision) {
+        Commit commit = _commits.get(revision);
+        return (commit != null) ? commit._author : null;
+    }
+
+    /** Returns the date of a revision that changed one of the watched paths. */
+    public Date getDate(long revision) {
+        Commit commit = _commits.get(revision);
+        return (commit != null) ? commit._date : null;
+    }
+
+    /** Returns the number of elements of the sorted array that are less than or equal to the revision. */
+    private static int indexAfter(long[] revisions, long revision) {
+        int index = Arrays.binarySearch(revisions, revision);
+        return (index >= 0) ? index + 1 : -(index + 1);
+    }
+
+    private static String normalize(String path) {
+        return path.startsWith("/") ? path.substring(1) : path;
+    }
+
+    /** Collects log entries into batches and submits each batch to be indexed while the log continues. */
+    private class BatchingLogEntryHandler implements ISVNLogEntryHandler {
+        private final ExecutorService _executor;
+        private final List<Future<BatchResult>> _futures = new ArrayList<Future<BatchResult>>();
+        private List<SVNLogEntry> _batch = new ArrayList<SVNLogEntry>();
+
+        public BatchingLogEntryHandler(ExecutorService executor) {
+            _executor = executor;
+        }
+
+        public void handleLogEntry(SVNLogEntry logEntry) {
+            _batch.add(logEntry);
+            if (_batch.size() >= BATCH_SIZE) {
+                _futures.add(_executor.submit(new BatchTask(_batch)));
+                _batch = new ArrayList<SVNLogEntry>();
+            }
+        }
+
+        public List<Future<BatchResult>> finish() {
+            if (!_batch.isEmpty()) {
+                _futures.add(_executor.submit(new BatchTask(_batch)));
+                _batch = new ArrayList<SVNLogEntry>();
+            }
+            return _futures;
+        }
+    }
+
+    /** Indexes a batch of log entries by the watched paths that each entry changed. */
+    private class BatchTask implements Callable<BatchResult> {
+        private final List<SVNLogEntry> _logEntries;
+
+        public BatchTask(List<SVNLogEntry> logEntries) {
+            _logEntries = logEntries;
+        }
+
+        public BatchResult call() {
+            BatchResult result = new BatchResult();
+            Set<String> changedPaths = new HashSet<String>();
+            for (SVNLogEntry logEntry : _logEntries) {
+                long revision = logEntry.getRevision();
+                changedPaths.clear();
+                for (Object value : logEntry.getChangedPaths().values()) {
+                    SVNLogEntryPath entryPath = (SVNLogEntryPath) value;
+                    String path = normalize(entryPath.getPath());
+                    if ((entryPath.getType() == SVNLogEntryPath.TYPE_ADDED ||
+                         entryPath.getType() == SVNLogEntryPath.TYPE_REPLACED) && _paths.contains(path)) {
+                        result._addRevisions.put(path, revision);
+                    }
+                    //Walk up the changed path to find the watched paths that contain it
+                    for (; path.length() > 0; path = SVNPathUtil.removeTail(path)) {
+                        if (_paths.contains(path)) {
+                            changedPaths.add(path);
+                        }
+                    }
+                }
+                for (String path : changedPaths) {
+                    RevisionList revisions = result._revisions.get(path);
+                    if (revisions == null) {
+                        revisions = new RevisionList();
+                        result._revisions.put(path, revisions);
+                    }
+                    revisions.add(revision);
+                }
+                if (!changedPaths.isEmpty()) {
+                    result._commits.put(revision, new Commit(logEntry.getAuthor(), logEntry.getDate()));
+                }
+            }
+            return result;
+        }
+    }
+
+    private static class BatchResult {
+        private final Map<String, RevisionList> _revisions = new HashMap<String, RevisionList>();
+        private final Map<String, Long> _addRevisions = new HashMap<String, Long>();
+        private final Map<Long, Commit> _commits = new HashMap<Long, Commit>();
+    }
+
+    private static class Commit {
+        private final String _author;
+        private final Date _date;
+
+        public Commit(String author, Date date) {
+            _author = author;
+            _date = date;
+        }
+    }
+
+    private static class IndexerThreadFactory implements ThreadFactory {
+        private final AtomicInteger _count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "savana-history-" + _count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /** A growable list of revisions, sorted since log entries are read in increasing revision order. */
+    private static class RevisionList {
+        private long[] _revisions = new long[16];
+        private int _size;
+
+        public void add(long revision) {
+            if (_size == _revisions.length) {
+                long[] revisions = new long[_size * 2];
+                System.arraycopy(_revisions, 0, revisions, 0, _size);
+                _revisions = revisions;
+            }
+            _revisions[_size++] = revision;
+        }
+
+        public void addAll(RevisionList list) {
+            for (int i = 0; i < list._size; i++) {
+                add(list._revisions[i]);
+            }
+        }
+
+        public long[] toArray() {
+            long[] revisions = new long[_size];
+            System.arraycopy(_revisions, 0, revisions, 0, _size);
+            return revisions;
+        }
+    }
+}
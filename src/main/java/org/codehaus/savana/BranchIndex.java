@@ -0,0 +1,482 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana;
+
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNDirEntry;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Index of the branches in branches root directories (eg. 'myproject/branches/user') with each branch's
+ * last changed revision and metadata properties, stored on disk in one binary file per repository UUID.
+ * The index records the revision it's current as of and catches up using only the log entries after that
+ * revision, so once it's built, listing thousands of branches costs a round trip to check the latest
+ * revision plus a log of whatever changed since the last use.
+ * <p/>
+ * Anything the log can't be applied to incrementally (eg. the branches root itself was replaced, or the
+ * repository's latest revision went backwards) causes the index of that root to be rebuilt from scratch.
+ */
+public class BranchIndex {
+    private static final Logger _sLog = Logger.getLogger("savana-info");
+
+    private static final String INDEX_DIR = "savana/branch-index";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int MAGIC = 0x53564249;
+    private static final int VERSION = 1;
+
+    private final File _indexDir;
+
+    /**
+     * Creates an index stored in the specified directory, or an index that isn't saved if the directory is null.
+     */
+    public BranchIndex(File indexDir) {
+        _indexDir = indexDir;
+    }
+
+    /**
+     * Returns the index stored under the specified Subversion configuration directory (eg. '~/.subversion').
+     */
+    public static BranchIndex forConfigDir(File configDir) {
+        return new BranchIndex(new File(configDir, INDEX_DIR));
+    }
+
+    public File getIndexDir() {
+        return _indexDir;
+    }
+
+    /**
+     * Returns the branches in a branches root directory at HEAD, sorted by name, or null if the branches root
+     * doesn't exist.  Every child of the branches root directory is returned, including files and directories
+     * without metadata files.
+     */
+    public SortedMap<String, Branch> getBranches(SVNClientManager clientManager, SVNURL repositoryURL,
+                                                 String branchesRootPath, String metadataFileName,
+                                                 MetadataCache metadataCache) throws SVNException {
+        String rootPath = normalize(branchesRootPath);
+        SVNRepository repository = clientManager.createRepository(repositoryURL, false);
+        try {
+            String repositoryUUID = repository.getRepositoryUUID(true);
+            long latestRevision = repository.getLatestRevision();
+
+            File indexFile = getIndexFile(repositoryUUID);
+            Map<String, RootIndex> roots = load(indexFile, repositoryUUID);
+            RootIndex root = roots.get(rootPath);
+            boolean changed = false;
+            if (root == null || !root._metadataFileName.equals(metadataFileName) || root._revision > latestRevision ||
+                    (root._revision < latestRevision && !catchUp(repository, root, latestRevision))) {
+                root = build(repository, rootPath, metadataFileName, latestRevision);
+                changed = true;
+            } else if (root._revision < latestRevision) {
+                changed = true;
+            }
+            if (root == null) {
+                return null;
+            }
+
+            //Fetch the metadata of the branches that are new or whose metadata changed
+            if (!root._stale.isEmpty()) {
+                fetchMetadata(clientManager, repositoryURL, root, metadataCache);
+            }
+
+            if (changed) {
+                roots.put(rootPath, root);
+                save(indexFile, repositoryUUID, roots);
+            }
+            return Collections.unmodifiableSortedMap(root._branches);
+        } finally {
+            RepositorySessions.release(clientManager, repository);
+        }
+    }
+
+    /** Builds the index of a branches root from a directory listing, or returns null if it doesn't exist. */
+    private RootIndex build(SVNRepository repository, String rootPath, String metadataFileName, long revision)
+            throws SVNException {
+        if (repository.checkPath(rootPath, revision) != SVNNodeKind.DIR) {
+            return null;
+        }
+        RootIndex root = new RootIndex(rootPath, metadataFileName, revision);
+        List<SVNDirEntry> entries = new ArrayList<SVNDirEntry>();
+        repository.getDir(rootPath, revision, null, SVNDirEntry.DIRENT_KIND | SVNDirEntry.DIRENT_CREATED_REVISION, entries);
+        for (SVNDirEntry entry : entries) {
+            root._branches.put(entry.getName(), new Branch(entry.getName(), metadataFileName, entry.getRevision()));
+            //The listing doesn't say when the metadata files last changed, so the fetcher has to look it up
+            root._stale.put(entry.getName(), -1L);
+        }
+        return root;
+    }
+
+    /**
+     * Applies the changes to the branches root made after the indexed revision.  Returns false if the
+     * changes can't be applied and the index needs to be rebuilt.
+     */
+    private boolean catchUp(SVNRepository repository, final RootIndex root, long latestRevision) {
+        final String rootPath = root._path;
+        final boolean[] rebuild = {false};
+        try {
+            repository.log(new String[] {rootPath}, root._revision + 1, latestRevision, true, false, 0, false,
+                    new String[0], new ISVNLogEntryHandler() {
+                        public void handleLogEntry(SVNLogEntry logEntry) {
+                            //Sort the changes so a branch is added before changes to its contents are applied
+                            for (Object value : new TreeMap<Object, Object>(logEntry.getChangedPaths()).values()) {
+                                SVNLogEntryPath entryPath = (SVNLogEntryPath) value;
+                                if (!root.apply(normalize(entryPath.getPath()), entryPath.getType(), logEntry.getRevision())) {
+                                    rebuild[0] = true;
+                                }
+                            }
+                        }
+                    });
+        } catch (SVNException e) {
+            _sLog.log(Level.FINE, "Unable to update the branch index of " + rootPath + ", rebuilding it: " + e);
+            return false;
+        }
+        root._revision = latestRevision;
+        return !rebuild[0];
+    }
+
+    private void fetchMetadata(SVNClientManager clientManager, SVNURL repositoryURL, final RootIndex root,
+                               MetadataCache metadataCache) throws SVNException {
+        List<String> metadataFilePaths = new ArrayList<String>();
+        List<Long> revisions = new ArrayList<Long>();
+        for (Map.Entry<String, Long> entry : root._stale.entrySet()) {
+            metadataFilePaths.add(SVNPathUtil.append(SVNPathUtil.append(root._path, entry.getKey()), root._metadataFileName));
+            revisions.add(entry.getValue());
+        }
+        MetadataPropertiesFetcher fetcher = new MetadataPropertiesFetcher(clientManager, repositoryURL, metadataCache);
+        fetcher.fetch(metadataFilePaths, revisions, new MetadataPropertiesFetcher.Handler() {
+            public void handleMetadataProperties(String metadataFilePath, MetadataProperties properties, SVNException exception)
+                    throws SVNException {
+                //Remember that a branch doesn't have a metadata file, but don't remember other failures
+                if (exception != null && !isNotFound(exception)) {
+                    throw exception;
+                }
+                String name = SVNPathUtil.tail(SVNPathUtil.removeTail(metadataFilePath));
+                root._branches.get(name).setMetadataProperties(properties);
+            }
+        });
+        root._stale.clear();
+    }
+
+    private static boolean isNotFound(SVNException e) {
+        SVNErrorCode errorCode = e.getErrorMessage().getErrorCode();
+        return errorCode == SVNErrorCode.FS_NOT_FOUND || errorCode == SVNErrorCode.FS_NOT_DIRECTORY ||
+                errorCode == SVNErrorCode.FS_NOT_FILE || errorCode == SVNErrorCode.RA_DAV_PATH_NOT_FOUND;
+    }
+
+    private File getIndexFile(String repositoryUUID) {
+        return (_indexDir != null) ? new File(_indexDir, repositoryUUID + INDEX_SUFFIX) : null;
+    }
+
+    private Map<String, RootIndex> load(File indexFile, String repositoryUUID) {
+        Map<String, RootIndex> roots = new HashMap<String, RootIndex>();
+        if (indexFile == null || !indexFile.isFile()) {
+            return roots;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION || !repositoryUUID.equals(in.readUTF())) {
+                    return roots;
+                }
+                //Strings repeat a lot (eg. the same policies in every branch), so they're stored once in a table
+                String[] strings = new String[in.readInt()];
+                for (int i = 0; i < strings.length; i++) {
+                    strings[i] = readString(in);
+                }
+                int numRoots = in.readInt();
+                for (int i = 0; i < numRoots; i++) {
+                    RootIndex root = new RootIndex(strings[in.readInt()], strings[in.readInt()], in.readLong());
+                    int numBranches = in.readInt();
+                    for (int j = 0; j < numBranches; j++) {
+                        Branch branch = new Branch(strings[in.readInt()], root._metadataFileName, in.readLong());
+                        int numProperties = in.readInt();
+                        if (numProperties >= 0) {
+                            SVNProperties properties = new SVNProperties();
+                            for (int k = 0; k < numProperties; k++) {
+                                properties.put(strings[in.readInt()], strings[in.readInt()]);
+                            }
+                            branch._properties = properties;
+                        }
+                        root._branches.put(branch._name, branch);
+                    }
+                    roots.put(root._path, root);
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            _sLog.log(Level.FINE, "Unable to read branch index: " + indexFile, e);
+            roots.clear();
+        } catch (RuntimeException e) {
+            _sLog.log(Level.FINE, "Corrupt branch index: " + indexFile, e);
+            roots.clear();
+        }
+        return roots;
+    }
+
+    private void save(File indexFile, String repositoryUUID, Map<String, RootIndex> roots) {
+        if (indexFile == null) {
+            return;
+        }
+        StringTable strings = new StringTable();
+        for (RootIndex root : roots.values()) {
+            strings.add(root._path);
+            strings.add(root._metadataFileName);
+            for (Branch branch : root._branches.values()) {
+                strings.add(branch._name);
+                if (branch._properties != null) {
+                    for (String name : getStringPropertyNames(branch._properties)) {
+                        strings.add(name);
+                        strings.add(branch._properties.getStringValue(name));
+                    }
+                }
+            }
+        }
+
+        File tempFile = null;
+        try {
+            _indexDir.mkdirs();
+            //A unique name so that concurrent writers in this and other processes don't share a temporary file
+            tempFile = File.createTempFile(indexFile.getName() + ".", ".tmp", _indexDir);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(repositoryUUID);
+                out.writeInt(strings.size());
+                for (String string : strings.getStrings()) {
+                    writeString(out, string);
+                }
+                out.writeInt(roots.size());
+                for (RootIndex root : roots.values()) {
+                    out.writeInt(strings.indexOf(root._path));
+                    out.writeInt(strings.indexOf(root._metadataFileName));
+                    out.writeLong(root._revision);
+                    out.writeInt(root._branches.size());
+                    for (Branch branch : root._branches.values()) {
+                        out.writeInt(strings.indexOf(branch._name));
+                        out.writeLong(branch._lastChangedRevision);
+                        if (branch._properties == null) {
+                            out.writeInt(-1);
+                        } else {
+                            List<String> names = getStringPropertyNames(branch._properties);
+                            out.writeInt(names.size());
+                            for (String name : names) {
+                                out.writeInt(strings.indexOf(name));
+                                out.writeInt(strings.indexOf(branch._properties.getStringValue(name)));
+                            }
+                        }
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            //Rename into place so other processes never see a partially written index
+            if (!tempFile.renameTo(indexFile)) {
+                indexFile.delete();
+                if (!tempFile.renameTo(indexFile)) {
+                    tempFile.delete();
+                }
+            }
+        } catch (IOException e) {
+            _sLog.log(Level.FINE, "Unable to write branch index: " + indexFile, e);
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private static List<String> getStringPropertyNames(SVNProperties properties) {
+        List<String> names = new ArrayList<String>();
+        for (String name : properties.nameSet()) {
+            SVNPropertyValue value = properties.getSVNPropertyValue(name);
+            if (value != null && value.isString()) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        //writeUTF() is limited to 64k, which a policies file could exceed
+        byte[] bytes = string.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String normalize(String path) {
+        return path.startsWith("/") ? path.substring(1) : path;
+    }
+
+    /** A branch (or any other child) of a branches root directory. */
+    public static class Branch {
+        private final String _name;
+        private final String _metadataFileName;
+        private long _lastChangedRevision;
+        private SVNProperties _properties;
+        private MetadataProperties _metadataProperties;
+
+        public Branch(String name, String metadataFileName, long lastChangedRevision) {
+            _name = name;
+            _metadataFileName = metadataFileName;
+            _lastChangedRevision = lastChangedRevision;
+        }
+
+        public String getName() {
+            return _name;
+        }
+
+        /** Returns the last revision that changed the branch or anything in it. */
+        public long getLastChangedRevision() {
+            return _lastChangedRevision;
+        }
+
+        /** Returns the branch's metadata properties, or null if it doesn't have a metadata file. */
+        public synchronized MetadataProperties getMetadataProperties() throws SVNException {
+            if (_metadataProperties == null && _properties != null) {
+                _metadataProperties = new MetadataProperties(_metadataFileName, _properties);
+            }
+            return _metadataProperties;
+        }
+
+        private synchronized void setMetadataProperties(MetadataProperties metadataProperties) {
+            _metadataProperties = metadataProperties;
+            _properties = (metadataProperties != null) ? metadataProperties.getProperties() : null;
+        }
+    }
+
+    /** The index of one branches root directory. */
+    private static class RootIndex {
+        private final String _path;
+        private final String _metadataFileName;
+        private long _revision;
+        private final SortedMap<String, Branch> _branches = new TreeMap<String, Branch>();
+        //Branches whose metadata needs to be fetched, with the last changed revision of the metadata file or -1 if unknown
+        private final Map<String, Long> _stale = new LinkedHashMap<String, Long>();
+
+        public RootIndex(String path, String metadataFileName, long revision) {
+            _path = path;
+            _metadataFileName = metadataFileName;
+            _revision = revision;
+        }
+
+        /**
+         * Applies one changed path from the log.  Returns false if the change replaces the branches root or one
+         * of its parents, which can't be applied incrementally.
+         */
+        public boolean apply(String path, char type, long revision) {
+            if (path.equals(_path) || _path.startsWith(path + "/")) {
+                //Property changes to the branches root don't affect the branches
+                return path.equals(_path) && type == SVNLogEntryPath.TYPE_MODIFIED;
+            }
+            if (!path.startsWith(_path + "/")) {
+                return true;
+            }
+            String relativePath = path.substring(_path.length() + 1);
+            int slash = relativePath.indexOf('/');
+            String name = (slash < 0) ? relativePath : relativePath.substring(0, slash);
+            if (slash < 0 && type == SVNLogEntryPath.TYPE_DELETED) {
+                _branches.remove(name);
+                _stale.remove(name);
+            } else if (slash < 0 && (type == SVNLogEntryPath.TYPE_ADDED || type == SVNLogEntryPath.TYPE_REPLACED)) {
+                _branches.put(name, new Branch(name, _metadataFileName, revision));
+                //A copied branch keeps the metadata file's revision from the copy source unless it's modified too
+                _stale.put(name, -1L);
+            } else {
+                Branch branch = _branches.get(name);
+                if (branch == null) {
+                    //A change to a branch the index doesn't know about, so the index must be out of sync
+                    return false;
+                }
+                branch._lastChangedRevision = revision;
+                if (slash >= 0 && relativePath.substring(slash + 1).equals(_metadataFileName)) {
+                    _stale.put(name, revision);
+                }
+            }
+            return true;
+        }
+    }
+
+    /** Assigns each distinct string an index. */
+    private static class StringTable {
+        private final Map<String, Integer> _indexes = new HashMap<String, Integer>();
+        private final List<String> _strings = new ArrayList<String>();
+
+        public void add(String string) {
+            if (!_indexes.containsKey(string)) {
+                _indexes.put(string, _strings.size());
+                _strings.add(string);
+            }
+        }
+
+        public int indexOf(String string) {
+            return _indexes.get(string);
+        }
+
+        public int size() {
+            return _strings.size();
+        }
+
+        public List<String> getStrings() {
+            return _strings;
+        }
+    }
+}
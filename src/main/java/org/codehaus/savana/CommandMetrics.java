@@ -0,0 +1,326 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Totals of command runs in a file that node-exporter's textfile collector can read, in the Prometheus text
+ * format or in the OpenMetrics format.  Each run adds its duration and the duration of its phases to histograms,
+ * and its repository round trips and bytes, working copy files scanned and merged paths to counters, all labeled
+ * with the command name.  The phases, round trips and bytes come from the command's {@link Tracer}.
+ * <p/>
+ * Runs read the file, add to the totals and replace the file with a rename, holding a lock on a separate
+ * '.lock' file so concurrent runs don't lose each other's updates and the collector never sees a partial file.
+ * Lines that aren't metrics written by this class are dropped.
+ * <p/>
+ * The working copy files scanned and the merged paths are counted for the whole process, as they're reported by
+ * code that doesn't know which command it runs for, so commands should use the difference between two values.
+ */
+public class CommandMetrics {
+
+    /** Upper bounds of the duration histogram buckets, in seconds.  There's an implicit '+Inf' bucket. */
+    private static final double[] BUCKETS = {0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300};
+
+    private static final String COUNTER = "counter";
+    private static final String GAUGE = "gauge";
+    private static final String HISTOGRAM = "histogram";
+
+    private static final String RUNS = "savana_command_runs";
+    private static final String DURATION = "savana_command_duration_seconds";
+    private static final String PHASE_DURATION = "savana_command_phase_duration_seconds";
+    private static final String REQUESTS = "savana_repository_requests";
+    private static final String BYTES = "savana_repository_bytes";
+    private static final String FILES_SCANNED = "savana_working_copy_files_scanned";
+    private static final String MERGE_PATHS = "savana_merge_paths";
+    private static final String LAST_RUN = "savana_command_last_run_timestamp_seconds";
+
+    /** Metric families in the order they're written: name, type and help text. */
+    private static final String[][] FAMILIES = {
+            {RUNS, COUNTER, "Savana command runs by result."},
+            {DURATION, HISTOGRAM, "Wall time of Savana commands."},
+            {PHASE_DURATION, HISTOGRAM, "Wall time of the phases of Savana commands."},
+            {REQUESTS, COUNTER, "Round trips to svn:// and http:// repositories."},
+            {BYTES, COUNTER, "Bytes sent to and received from svn:// and http:// repositories."},
+            {FILES_SCANNED, COUNTER, "Working copy files and directories scanned for local changes."},
+            {MERGE_PATHS, COUNTER, "Paths added, deleted or changed by merges and repository-side promotes and syncs."},
+            {LAST_RUN, GAUGE, "Time the command last finished, in seconds since the epoch."},
+    };
+
+    private static final AtomicLong _sFilesScanned = new AtomicLong();
+    private static final AtomicLong _sMergePaths = new AtomicLong();
+
+    /** Series values by family and label string.  Histograms hold the bucket counts followed by the sum and count. */
+    private final Map<String, Map<String, double[]>> _families = new HashMap<String, Map<String, double[]>>();
+
+    public static void countFileScanned() {
+        _sFilesScanned.incrementAndGet();
+    }
+
+    public static void countMergePath() {
+        _sMergePaths.incrementAndGet();
+    }
+
+    public static long getFilesScanned() {
+        return _sFilesScanned.get();
+    }
+
+    public static long getMergePaths() {
+        return _sMergePaths.get();
+    }
+
+    /**
+     * Adds a run of a command to the totals in the specified file.  The format is "prometheus" or "openmetrics".
+     */
+    public static synchronized void record(File file, String format, String command, boolean succeeded,
+                                           Tracer.Span root, long filesScanned, long mergePaths) throws IOException {
+        //Hold a lock on another file since the metrics file itself is replaced
+        RandomAccessFile lockFile = new RandomAccessFile(file.getPath() + ".lock", "rw");
+        try {
+            FileLock lock = lockFile.getChannel().lock();
+            try {
+                CommandMetrics metrics = new CommandMetrics();
+                if (file.exists()) {
+                    Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+                    try {
+                        metrics.read(in);
+                    } finally {
+                        in.close();
+                    }
+                }
+                metrics.add(command, succeeded, root, filesScanned, mergePaths, System.currentTimeMillis());
+
+                //The collector only reads files ending in '.prom', so it ignores the temporary file
+                File dir = file.getAbsoluteFile().getParentFile();
+                File tempFile = File.createTempFile("." + file.getName() + ".", ".tmp", dir);
+                try {
+                    Writer out = new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8");
+                    try {
+                        metrics.write(out, "openmetrics".equals(format));
+                    } finally {
+                        out.close();
+                    }
+                    //Renaming over an existing file fails on Windows, where the replace can't be atomic
+                    if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+                        throw new IOException("Unable to rename " + tempFile + " to " + file);
+                    }
+                } finally {
+                    tempFile.delete();
+                }
+            } finally {
+                lock.release();
+            }
+        } finally {
+            lockFile.close();
+        }
+    }
+
+    /** Adds a run of a command to the totals. */
+    public void add(String command, boolean succeeded, Tracer.Span root, long filesScanned, long mergePaths,
+                    long timestampMillis) {
+        String labels = label("command", command);
+        increment(RUNS, labels + "," + label("result", succeeded ? "success" : "failure"), 1);
+        observe(DURATION, labels, root.getWallMicros() / 1e6);
+        addPhases(labels, root);
+        increment(REQUESTS, labels, root.getRoundTrips());
+        increment(BYTES, labels + "," + label("direction", "sent"), root.getBytesSent());
+        increment(BYTES, labels + "," + label("direction", "received"), root.getBytesReceived());
+        increment(FILES_SCANNED, labels, filesScanned);
+        increment(MERGE_PATHS, labels, mergePaths);
+        getSeries(LAST_RUN, labels)[0] = timestampMillis / 1000;
+    }
+
+    private void addPhases(String labels, Tracer.Span span) {
+        for (Tracer.Span child : span.getChildren()) {
+            observe(PHASE_DURATION, labels + "," + label("phase", child.getName()), child.getWallMicros() / 1e6);
+            addPhases(labels, child);
+        }
+    }
+
+    private void increment(String family, String labels, double amount) {
+        getSeries(family, labels)[0] += amount;
+    }
+
+    private void observe(String family, String labels, double seconds) {
+        double[] series = getSeries(family, labels);
+        for (int i = 0; i < BUCKETS.length; i++) {
+            if (seconds <= BUCKETS[i]) {
+                series[i]++;
+            }
+        }
+        series[BUCKETS.length]++;
+        series[BUCKETS.length + 1] += seconds;
+        series[BUCKETS.length + 2]++;
+    }
+
+    private double[] getSeries(String family, String labels) {
+        Map<String, double[]> familySeries = _families.get(family);
+        if (familySeries == null) {
+            familySeries = new TreeMap<String, double[]>();
+            _families.put(family, familySeries);
+        }
+        double[] series = familySeries.get(labels);
+        if (series == null) {
+            series = new double[HISTOGRAM.equals(getType(family)) ? BUCKETS.length + 3 : 1];
+            familySeries.put(labels, series);
+        }
+        return series;
+    }
+
+    /** Reads the totals from a file in either format. */
+    public void read(Reader reader) throws IOException {
+        BufferedReader in = new BufferedReader(reader);
+        String line;
+        while ((line = in.readLine()) != null) {
+            int labelsStart = line.indexOf('{');
+            int labelsEnd = line.lastIndexOf('}');
+            int valueStart = line.lastIndexOf(' ');
+            if (line.startsWith("#") || labelsStart < 0 || labelsEnd < labelsStart || valueStart < labelsEnd) {
+                continue;
+            }
+            String name = line.substring(0, labelsStart);
+            String labels = line.substring(labelsStart + 1, labelsEnd);
+            double value;
+            try {
+                value = Double.parseDouble(line.substring(valueStart + 1));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            for (String[] family : FAMILIES) {
+                if (family[1].equals(HISTOGRAM)) {
+                    readHistogramSample(family[0], name, labels, value);
+                } else if (name.equals(getSampleName(family[0], family[1]))) {
+                    getSeries(family[0], labels)[0] = value;
+                }
+            }
+        }
+    }
+
+    private void readHistogramSample(String family, String name, String labels, double value) {
+        if (name.equals(family + "_bucket")) {
+            //The 'le' label is always written last
+            int le = labels.lastIndexOf(",le=\"");
+            if (le >= 0) {
+                String bound = labels.substring(le + ",le=\"".length(), labels.length() - 1);
+                for (int i = 0; i <= BUCKETS.length; i++) {
+                    if (bound.equals(formatBound(i))) {
+                        getSeries(family, labels.substring(0, le))[i] = value;
+                    }
+                }
+            }
+        } else if (name.equals(family + "_sum")) {
+            getSeries(family, labels)[BUCKETS.length + 1] = value;
+        } else if (name.equals(family + "_count")) {
+            getSeries(family, labels)[BUCKETS.length + 2] = value;
+        }
+    }
+
+    /** Writes the totals in the Prometheus text format, or in the OpenMetrics format. */
+    public void write(Writer out, boolean openMetrics) throws IOException {
+        for (String[] family : FAMILIES) {
+            Map<String, double[]> familySeries = _families.get(family[0]);
+            if (familySeries == null) {
+                continue;
+            }
+            //OpenMetrics names counter families without the '_total' suffix of their samples
+            String familyName = openMetrics ? family[0] : getSampleName(family[0], family[1]);
+            out.write("# HELP " + familyName + " " + family[2] + "\n");
+            out.write("# TYPE " + familyName + " " + family[1] + "\n");
+            for (Map.Entry<String, double[]> entry : familySeries.entrySet()) {
+                String labels = entry.getKey();
+                double[] series = entry.getValue();
+                if (family[1].equals(HISTOGRAM)) {
+                    for (int i = 0; i <= BUCKETS.length; i++) {
+                        writeSample(out, family[0] + "_bucket", labels + ",le=\"" + formatBound(i) + "\"", series[i]);
+                    }
+                    writeSample(out, family[0] + "_sum", labels, series[BUCKETS.length + 1]);
+                    writeSample(out, family[0] + "_count", labels, series[BUCKETS.length + 2]);
+                } else {
+                    writeSample(out, getSampleName(family[0], family[1]), labels, series[0]);
+                }
+            }
+        }
+        if (openMetrics) {
+            out.write("# EOF\n");
+        }
+        out.flush();
+    }
+
+    private void writeSample(Writer out, String name, String labels, double value) throws IOException {
+        out.write(name + "{" + labels + "} " + formatValue(value) + "\n");
+    }
+
+    private static String getType(String family) {
+        for (String[] entry : FAMILIES) {
+            if (entry[0].equals(family)) {
+                return entry[1];
+            }
+        }
+        throw new IllegalArgumentException(family);
+    }
+
+    private static String getSampleName(String family, String type) {
+        return COUNTER.equals(type) ? family + "_total" : family;
+    }
+
+    private static String formatBound(int bucket) {
+        return (bucket < BUCKETS.length) ? Double.toString(BUCKETS[bucket]) : "+Inf";
+    }
+
+    private static String formatValue(double value) {
+        return (value == Math.rint(value) && Math.abs(value) < 1e15) ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    private static String label(String name, String value) {
+        StringBuilder buf = new StringBuilder(name).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                buf.append('\\').append(ch);
+            } else if (ch == '\n') {
+                buf.append("\\n");
+            } else {
+                buf.append(ch);
+            }
+        }
+        return buf.append('"').toString();
+    }
+}
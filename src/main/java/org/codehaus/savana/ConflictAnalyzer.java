@@ -0,0 +1,591 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana;
+
+import de.regnis.q.sequence.line.QSequenceLineRAByteData;
+import org.apache.commons.io.FileUtils;
+import org.tmatesoft.svn.core.ISVNDirEntryHandler;
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNDirEntry;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.FSMergerBySequence;
+import org.tmatesoft.svn.core.internal.wc.SVNDiffConflictChoiceStyle;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.ISVNDiffStatusHandler;
+import org.tmatesoft.svn.core.wc.ISVNStatusHandler;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNDiffClient;
+import org.tmatesoft.svn.core.wc.SVNDiffOptions;
+import org.tmatesoft.svn.core.wc.SVNDiffStatus;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.SVNStatus;
+import org.tmatesoft.svn.core.wc.SVNStatusType;
+import org.tmatesoft.svn.util.SVNLogType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Predicts the conflicts a merge from a source into a branch would have without touching a working copy.  The
+ * paths the source changed since the last merge, from its log, are intersected with the paths the branch changed
+ * relative to the source at the last merge, from a summary diff and optionally a status walk of a working copy.
+ * Only files changed on both sides are fetched, and they're merged in memory in parallel to find text conflicts.
+ */
+public class ConflictAnalyzer {
+
+    /** The number of overlapping files that are fetched and merged at the same time. */
+    private static final int MAX_THREADS = 4;
+
+    private static final byte[] CONFLICT_START = "<<<<<<< .working".getBytes();
+    private static final byte[] CONFLICT_SEPARATOR = "=======".getBytes();
+    private static final byte[] CONFLICT_END = ">>>>>>> .merge-right".getBytes();
+
+    private final SVNClientManager _clientManager;
+    private final SVNURL _repositoryURL;
+    private final String _metadataFileName;
+
+    public ConflictAnalyzer(SVNClientManager clientManager, SVNURL repositoryURL, String metadataFileName) {
+        _clientManager = clientManager;
+        _repositoryURL = repositoryURL;
+        _metadataFileName = metadataFileName;
+    }
+
+    /**
+     * Forecasts the conflicts from merging [source:lastMergeRevision, source:sourceRevision] into the branch at
+     * the specified revision, plus the local modifications in the working copy if there is one.
+     */
+    public Forecast forecast(String sourcePath, long lastMergeRevision, long sourceRevision,
+                             String branchPath, long branchRevision, File workingCopyRoot) throws SVNException {
+        long start = System.currentTimeMillis();
+        SVNRepository repository = _clientManager.createRepository(_repositoryURL, false);
+        List<SVNLogEntry> history;
+        try {
+            history = getHistory(repository, sourcePath, lastMergeRevision + 1, sourceRevision);
+        } finally {
+            RepositorySessions.release(_clientManager, repository);
+        }
+        Map<String, Change> sourceChanges = getSourceChanges(history, sourcePath, lastMergeRevision);
+        Map<String, Change> branchChanges = getBranchChanges(sourcePath, lastMergeRevision, branchPath, branchRevision);
+        if (workingCopyRoot != null) {
+            addLocalChanges(branchChanges, workingCopyRoot);
+        }
+
+        Forecast forecast = new Forecast(history.size(), sourceChanges.size());
+        List<String> candidates = new ArrayList<String>();
+        for (String path : findOverlaps(sourceChanges, branchChanges)) {
+            Change sourceChange = sourceChanges.get(path);
+            Change branchChange = branchChanges.get(path);
+            if (sourceChange != null && branchChange != null && !sourceChange.isStructural() &&
+                    !branchChange.isStructural() && sourceChange.getKind() != SVNNodeKind.DIR) {
+                candidates.add(path);
+            } else {
+                forecast._treeConflicts.add(path);
+            }
+        }
+
+        //Merge the files that both sides modified to find out which of them conflict
+        if (!candidates.isEmpty()) {
+            ExecutorService executor = Executors.newFixedThreadPool(
+                    Math.min(candidates.size(), MAX_THREADS), new AnalyzerThreadFactory());
+            try {
+                List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+                for (String path : candidates) {
+                    futures.add(executor.submit(new TextCheck(SVNPathUtil.append(sourcePath, path), lastMergeRevision,
+                            sourceRevision, SVNPathUtil.append(branchPath, path), branchRevision,
+                            branchChanges.get(path).getWorkingFile())));
+                }
+                for (int i = 0; i < candidates.size(); i++) {
+                    if (getResult(futures.get(i))) {
+                        forecast._textConflicts.add(candidates.get(i));
+                    } else {
+                        forecast._mergedPaths.add(candidates.get(i));
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        forecast._elapsedMillis = System.currentTimeMillis() - start;
+        return forecast;
+    }
+
+    /**
+     * Returns the paths that are replaced in the branch since it was created: deleted and added again, or replaced
+     * in a single commit, by something other than a copy from the source.  A promote doesn't allow them.  Only paths
+     * that existed in the source at the branch point or the last merge count, a file that's new in the branch is
+     * added to the source even if it was deleted and added again along the way.
+     */
+    public SortedSet<String> findReplacedPaths(String sourcePath, String branchPath, long branchRevision,
+                                               long branchPointRevision, long lastMergeRevision) throws SVNException {
+        SVNRepository repository = _clientManager.createRepository(_repositoryURL, false);
+        final List<SVNLogEntry> history = new ArrayList<SVNLogEntry>();
+        SortedSet<String> replacedPaths = new TreeSet<String>();
+        try {
+            repository.log(new String[]{branchPath}, branchRevision, 0, true, true, new ISVNLogEntryHandler() {
+                public void handleLogEntry(SVNLogEntry logEntry) {
+                    history.add(logEntry);
+                }
+            });
+
+            //Replay the history from the oldest entry, which creates the branch, to find out how each path ends up
+            Map<String, Boolean> replaced = new HashMap<String, Boolean>();
+            for (int i = history.size() - 1; i >= 0; i--) {
+                for (SVNLogEntryPath changedPath : history.get(i).getChangedPaths().values()) {
+                    String path = changedPath.getPath().substring(1);
+                    if (!PathUtil.isSubpath(path, branchPath) || path.equals(branchPath)) {
+                        continue;
+                    }
+                    String relativePath = PathUtil.getPathTail(path, branchPath);
+                    char type = changedPath.getType();
+                    if (type == SVNLogEntryPath.TYPE_DELETED) {
+                        replaced.put(relativePath, Boolean.FALSE);
+                    } else if (type == SVNLogEntryPath.TYPE_REPLACED ||
+                            (type == SVNLogEntryPath.TYPE_ADDED && replaced.containsKey(relativePath))) {
+                        //A sync adds the source's replacement as a copy from the source, which isn't a replacement
+                        String copyPath = changedPath.getCopyPath();
+                        boolean fromSource = copyPath != null && PathUtil.isSubpath(copyPath.substring(1), sourcePath);
+                        replaced.put(relativePath, !fromSource);
+                    }
+                }
+            }
+            for (Map.Entry<String, Boolean> entry : replaced.entrySet()) {
+                String relativePath = entry.getKey();
+                if (entry.getValue() && !relativePath.equals(_metadataFileName) &&
+                        (existsInSource(repository, sourcePath, relativePath, lastMergeRevision) ||
+                         existsInSource(repository, sourcePath, relativePath, branchPointRevision))) {
+                    replacedPaths.add(relativePath);
+                }
+            }
+        } catch (SVNException e) {
+            RepositorySessions.discard(_clientManager, repository);
+            throw e;
+        }
+        RepositorySessions.release(_clientManager, repository);
+        return replacedPaths;
+    }
+
+    private static boolean existsInSource(SVNRepository repository, String sourcePath, String relativePath,
+                                          long revision) throws SVNException {
+        return repository.checkPath(SVNPathUtil.append(sourcePath, relativePath), revision) != SVNNodeKind.NONE;
+    }
+
+    /** Reads the log of the source in the range [startRevision, endRevision] with changed paths. */
+    public static List<SVNLogEntry> getHistory(SVNRepository repository, String sourcePath, long startRevision,
+                                               long endRevision) throws SVNException {
+        final List<SVNLogEntry> history = new ArrayList<SVNLogEntry>();
+        if (startRevision <= endRevision) {
+            repository.log(new String[]{sourcePath}, startRevision, endRevision, true, false, new ISVNLogEntryHandler() {
+                public void handleLogEntry(SVNLogEntry logEntry) {
+                    history.add(logEntry);
+                }
+            });
+        }
+        return history;
+    }
+
+    /**
+     * Returns the paths, relative to the source, that the source history changed after the last merge.  A path
+     * that was added, deleted or replaced in any of the revisions is reported as structural.
+     */
+    public Map<String, Change> getSourceChanges(List<SVNLogEntry> history, String sourcePath, long lastMergeRevision)
+            throws SVNException {
+        Map<String, Change> changes = new HashMap<String, Change>();
+        for (SVNLogEntry logEntry : history) {
+            if (logEntry.getRevision() <= lastMergeRevision) {
+                continue;
+            }
+            for (SVNLogEntryPath changedPath : logEntry.getChangedPaths().values()) {
+                String path = changedPath.getPath().substring(1);
+                if (!PathUtil.isSubpath(path, sourcePath)) {
+                    continue;
+                }
+                String relativePath = PathUtil.getPathTail(path, sourcePath);
+                Change previous = changes.get(relativePath);
+                if (previous == null || !previous.isStructural()) {
+                    changes.put(relativePath, new Change(changedPath.getType() != SVNLogEntryPath.TYPE_MODIFIED,
+                            changedPath.getKind(), null));
+                }
+            }
+        }
+        changes.remove(_metadataFileName);
+        return changes;
+    }
+
+    /** Returns the paths, relative to the source, where the branch differs from the source at the last merge. */
+    public Map<String, Change> getBranchChanges(String sourcePath, long lastMergeRevision, String branchPath,
+                                                long branchRevision) throws SVNException {
+        final Map<String, Change> changes = new HashMap<String, Change>();
+        SVNDiffClient diffClient = new SVNDiffClient(_clientManager.getRepositoryPool(), _clientManager.getOptions());
+        diffClient.doDiffStatus(_repositoryURL.appendPath(sourcePath, false), SVNRevision.create(lastMergeRevision),
+                _repositoryURL.appendPath(branchPath, false), SVNRevision.create(branchRevision),
+                SVNDepth.INFINITY, false, new ISVNDiffStatusHandler() {
+                    public void handleDiffStatus(SVNDiffStatus diffStatus) {
+                        SVNStatusType type = diffStatus.getModificationType();
+                        boolean structural = type == SVNStatusType.STATUS_ADDED ||
+                                type == SVNStatusType.STATUS_DELETED || type == SVNStatusType.STATUS_REPLACED;
+                        if (structural || type == SVNStatusType.STATUS_MODIFIED || diffStatus.isPropertiesModified()) {
+                            changes.put(diffStatus.getPath(), new Change(structural, diffStatus.getKind(), null));
+                        }
+                    }
+                });
+        changes.remove(_metadataFileName);
+        return changes;
+    }
+
+    /** Adds the local modifications in a working copy to the changes committed to its branch. */
+    private void addLocalChanges(final Map<String, Change> changes, final File workingCopyRoot) throws SVNException {
+        final String rootPath = workingCopyRoot.getAbsoluteFile().getPath();
+        _clientManager.getStatusClient().doStatus(workingCopyRoot, SVNRevision.HEAD, SVNDepth.INFINITY,
+                false, false, false, false, new ISVNStatusHandler() {
+                    public void handleStatus(SVNStatus status) {
+                        String path = status.getFile().getAbsolutePath();
+                        String relativePath = (path.length() <= rootPath.length()) ? "" :
+                                path.substring(rootPath.length() + 1).replace(File.separatorChar, '/');
+                        if (relativePath.equals(_metadataFileName)) {
+                            return;
+                        }
+                        SVNStatusType nodeStatus = status.getNodeStatus();
+                        if (SVNStatusType.STATUS_ADDED.equals(nodeStatus) || SVNStatusType.STATUS_DELETED.equals(nodeStatus) ||
+                                SVNStatusType.STATUS_REPLACED.equals(nodeStatus)) {
+                            changes.put(relativePath, new Change(true, status.getKind(), null));
+                        } else if (SVNStatusType.STATUS_MODIFIED.equals(status.getContentsStatus())) {
+                            Change committed = changes.get(relativePath);
+                            if (committed == null || !committed.isStructural()) {
+                                changes.put(relativePath, new Change(false, status.getKind(), status.getFile()));
+                            }
+                        } else if (SVNStatusType.STATUS_MODIFIED.equals(status.getPropertiesStatus()) &&
+                                !changes.containsKey(relativePath)) {
+                            changes.put(relativePath, new Change(false, status.getKind(), null));
+                        }
+                    }
+                }, null);
+    }
+
+    /**
+     * Returns the paths that both the source and the branch changed.  A path added, deleted or replaced on one
+     * side also overlaps with changes to anything under it on the other side.  Directories whose properties
+     * were changed on both sides aren't included, see {@link #findPropertyOverlaps} and
+     * {@link #findPropertyConflicts} to compare their properties one at a time.
+     */
+    public static SortedSet<String> findOverlaps(Map<String, Change> sourceChanges, Map<String, Change> branchChanges) {
+        SortedSet<String> overlaps = new TreeSet<String>();
+        for (Map.Entry<String, Change> entry : sourceChanges.entrySet()) {
+            String path = entry.getKey();
+            Change sourceChange = entry.getValue();
+            Change branchChange = branchChanges.get(path);
+            if (branchChange != null && (sourceChange.isStructural() || branchChange.isStructural() ||
+                    (sourceChange.getKind() != SVNNodeKind.DIR && branchChange.getKind() != SVNNodeKind.DIR))) {
+                overlaps.add(path);
+            }
+            if (hasStructuralAncestor(path, branchChanges)) {
+                overlaps.add(path);
+            }
+        }
+        for (String path : branchChanges.keySet()) {
+            if (hasStructuralAncestor(path, sourceChanges)) {
+                overlaps.add(path);
+            }
+        }
+        return overlaps;
+    }
+
+    /** Returns the directories whose properties were changed on both sides, without adding or deleting them. */
+    public static SortedSet<String> findPropertyOverlaps(Map<String, Change> sourceChanges,
+                                                         Map<String, Change> branchChanges) {
+        SortedSet<String> overlaps = new TreeSet<String>();
+        for (Map.Entry<String, Change> entry : sourceChanges.entrySet()) {
+            Change sourceChange = entry.getValue();
+            Change branchChange = branchChanges.get(entry.getKey());
+            if (branchChange != null && !sourceChange.isStructural() && !branchChange.isStructural() &&
+                    (sourceChange.getKind() == SVNNodeKind.DIR || branchChange.getKind() == SVNNodeKind.DIR)) {
+                overlaps.add(entry.getKey());
+            }
+        }
+        return overlaps;
+    }
+
+    /**
+     * Returns the directories where the source and the branch changed the same property to different values,
+     * comparing the source at the last merge with the source and the branch at the specified revisions.
+     * svn:mergeinfo is ignored since Savana does its own merge tracking.
+     */
+    public SortedSet<String> findPropertyConflicts(String sourcePath, long lastMergeRevision, long sourceRevision,
+                                                   String branchPath, long branchRevision, Collection<String> dirs)
+            throws SVNException {
+        SortedSet<String> conflicts = new TreeSet<String>();
+        if (dirs.isEmpty()) {
+            return conflicts;
+        }
+        SVNRepository repository = _clientManager.createRepository(_repositoryURL, false);
+        try {
+            for (String dir : dirs) {
+                SVNProperties base = getDirProperties(repository, SVNPathUtil.append(sourcePath, dir), lastMergeRevision);
+                SVNProperties latest = getDirProperties(repository, SVNPathUtil.append(sourcePath, dir), sourceRevision);
+                SVNProperties mine = getDirProperties(repository, SVNPathUtil.append(branchPath, dir), branchRevision);
+                Set<String> names = new HashSet<String>(base.nameSet());
+                names.addAll(latest.nameSet());
+                for (String name : names) {
+                    if (!SVNProperty.isRegularProperty(name) || SVNProperty.MERGE_INFO.equals(name)) {
+                        continue;
+                    }
+                    SVNPropertyValue baseValue = base.getSVNPropertyValue(name);
+                    SVNPropertyValue latestValue = latest.getSVNPropertyValue(name);
+                    SVNPropertyValue mineValue = mine.getSVNPropertyValue(name);
+                    if (!equals(baseValue, latestValue) && !equals(baseValue, mineValue) && !equals(latestValue, mineValue)) {
+                        conflicts.add(dir);
+                        break;
+                    }
+                }
+            }
+        } catch (SVNException e) {
+            RepositorySessions.discard(_clientManager, repository);
+            throw e;
+        }
+        RepositorySessions.release(_clientManager, repository);
+        return conflicts;
+    }
+
+    private static SVNProperties getDirProperties(SVNRepository repository, String path, long revision)
+            throws SVNException {
+        SVNProperties properties = new SVNProperties();
+        repository.getDir(path, revision, properties, SVNDirEntry.DIRENT_KIND, (ISVNDirEntryHandler) null);
+        return properties;
+    }
+
+    private static boolean equals(SVNPropertyValue value1, SVNPropertyValue value2) {
+        return value1 == null ? value2 == null : value1.equals(value2);
+    }
+
+    private static boolean hasStructuralAncestor(String path, Map<String, Change> changes) {
+        while (path.length() > 0) {
+            path = SVNPathUtil.removeTail(path);
+            Change change = changes.get(path);
+            if (change != null && change.isStructural()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Boolean getResult(Future<Boolean> future) throws SVNException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.CANCELLED,
+                    "Interrupted while checking for conflicts"), SVNLogType.CLIENT);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SVNException) {
+                throw (SVNException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.UNKNOWN, cause.toString()), cause, SVNLogType.CLIENT);
+        }
+        return null;
+    }
+
+    /** Merges the three versions of a file in memory and returns true if the merge conflicts. */
+    private class TextCheck implements Callable<Boolean> {
+        private final String _sourcePath;
+        private final long _baseRevision;
+        private final long _sourceRevision;
+        private final String _branchPath;
+        private final long _branchRevision;
+        private final File _workingFile;
+
+        public TextCheck(String sourcePath, long baseRevision, long sourceRevision,
+                         String branchPath, long branchRevision, File workingFile) {
+            _sourcePath = sourcePath;
+            _baseRevision = baseRevision;
+            _sourceRevision = sourceRevision;
+            _branchPath = branchPath;
+            _branchRevision = branchRevision;
+            _workingFile = workingFile;
+        }
+
+        public Boolean call() throws SVNException, IOException {
+            SVNRepository repository = _clientManager.createRepository(_repositoryURL, false);
+            byte[] base, latest, mine;
+            SVNProperties latestProperties = new SVNProperties();
+            SVNProperties mineProperties = new SVNProperties();
+            try {
+                base = getFile(repository, _sourcePath, _baseRevision, null);
+                latest = getFile(repository, _sourcePath, _sourceRevision, latestProperties);
+                mine = getFile(repository, _branchPath, _branchRevision, mineProperties);
+            } catch (SVNException e) {
+                RepositorySessions.discard(_clientManager, repository);
+                throw e;
+            }
+            RepositorySessions.release(_clientManager, repository);
+            if (_workingFile != null) {
+                mine = FileUtils.readFileToByteArray(_workingFile);
+            }
+
+            if (Arrays.equals(mine, latest) || Arrays.equals(base, latest) || Arrays.equals(base, mine)) {
+                return Boolean.FALSE;
+            }
+            //Binary files can't be merged
+            if (SVNProperty.isBinaryMimeType(latestProperties.getStringValue(SVNProperty.MIME_TYPE)) ||
+                    SVNProperty.isBinaryMimeType(mineProperties.getStringValue(SVNProperty.MIME_TYPE))) {
+                return Boolean.TRUE;
+            }
+            FSMergerBySequence merger = new FSMergerBySequence(CONFLICT_START, CONFLICT_SEPARATOR, CONFLICT_END);
+            int result = merger.merge(new QSequenceLineRAByteData(base), new QSequenceLineRAByteData(mine),
+                    new QSequenceLineRAByteData(latest), new SVNDiffOptions(), SVNFileUtil.DUMMY_OUT,
+                    SVNDiffConflictChoiceStyle.CHOOSE_MODIFIED_LATEST);
+            return result == FSMergerBySequence.CONFLICTED;
+        }
+
+        private byte[] getFile(SVNRepository repository, String path, long revision, SVNProperties properties)
+                throws SVNException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            repository.getFile(path, revision, properties, out);
+            return out.toByteArray();
+        }
+    }
+
+    /** A path changed on one side of a merge. */
+    public static class Change {
+        private final boolean _structural;
+        private final SVNNodeKind _kind;
+        private final File _workingFile;
+
+        public Change(boolean structural, SVNNodeKind kind, File workingFile) {
+            _structural = structural;
+            _kind = kind;
+            _workingFile = workingFile;
+        }
+
+        /** Returns true if the path was added, deleted or replaced rather than modified. */
+        public boolean isStructural() {
+            return _structural;
+        }
+
+        public SVNNodeKind getKind() {
+            return _kind;
+        }
+
+        /** Returns the locally modified file in the working copy, or null if the committed file is used. */
+        public File getWorkingFile() {
+            return _workingFile;
+        }
+    }
+
+    /** The predicted result of a merge. */
+    public static class Forecast {
+        private final int _revisions;
+        private final int _sourceChangeCount;
+        private final SortedSet<String> _textConflicts = new TreeSet<String>();
+        private final SortedSet<String> _treeConflicts = new TreeSet<String>();
+        private final SortedSet<String> _mergedPaths = new TreeSet<String>();
+        private long _elapsedMillis;
+
+        public Forecast(int revisions, int sourceChangeCount) {
+            _revisions = revisions;
+            _sourceChangeCount = sourceChangeCount;
+        }
+
+        /** The number of source revisions that would be merged. */
+        public int getRevisions() {
+            return _revisions;
+        }
+
+        /** The number of paths the source changed since the last merge. */
+        public int getSourceChangeCount() {
+            return _sourceChangeCount;
+        }
+
+        /** Files that both sides modified in ways that can't be merged. */
+        public SortedSet<String> getTextConflicts() {
+            return _textConflicts;
+        }
+
+        /** Paths that one side added, deleted or replaced while the other changed them or something under them. */
+        public SortedSet<String> getTreeConflicts() {
+            return _treeConflicts;
+        }
+
+        /** Files that both sides modified that merge without conflicts. */
+        public SortedSet<String> getMergedPaths() {
+            return _mergedPaths;
+        }
+
+        public boolean hasConflicts() {
+            return !_textConflicts.isEmpty() || !_treeConflicts.isEmpty();
+        }
+
+        public long getElapsedMillis() {
+            return _elapsedMillis;
+        }
+    }
+
+    private static class AnalyzerThreadFactory implements ThreadFactory {
+        private final AtomicInteger _count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "savana-conflicts-" + _count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -35,9 +35,12 @@ import java.util.Properties;
 public class DefaultSavanaPolicies implements ISavanaPolicies {
 
     private Properties _properties;
+    private PolicyLogMessage _logMessagePolicy;
 
     public void initialize(Properties properties) throws SVNException {
         _properties = properties;
+        //Keep the log message policy around so it can reuse its compiled patterns
+        _logMessagePolicy = new PolicyLogMessage(properties);
     }
 
     public void validateSavanaVersion() throws SVNException {
@@ -45,7 +48,7 @@ public class DefaultSavanaPolicies implements ISavanaPolicies {
     }
 
     public void validateLogMessage(String logMessage, MetadataProperties metadataProperties, boolean codeFrozen) throws SVNException {
-        new PolicyLogMessage(_properties).validateLogMessage(logMessage, metadataProperties, codeFrozen);
+        _logMessagePolicy.validateLogMessage(logMessage, metadataProperties, codeFrozen);
     }
 
     public void validateCreateBranch(boolean createSubBranch, boolean explicitTopLevel) throws SVNException {
@@ -37,7 +37,6 @@ import org.tmatesoft.svn.core.wc.DefaultSVNDiffGenerator;
 import java.io.File;
 import java.io.OutputStream;
 import java.util.Set;
-import java.util.TreeSet;
 
 public class FileListDiffGenerator extends DefaultSVNDiffGenerator {
     private final String _metadataFile;
@@ -47,9 +46,9 @@ public class FileListDiffGenerator extends DefaultSVNDiffGenerator {
 
     public FileListDiffGenerator(File metadataFile) {
         _metadataFile = metadataFile.getAbsolutePath();
-        _changedFilePaths = new TreeSet<String>();
-        _addedFilePaths = new TreeSet<String>();
-        _deletedFilePaths = new TreeSet<String>();
+        _changedFilePaths = new PathTrie();
+        _addedFilePaths = new PathTrie();
+        _deletedFilePaths = new PathTrie();
     }
 
     public Set<String> getChangedFilePaths() {
@@ -0,0 +1,399 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana;
+
+import org.tmatesoft.svn.core.ISVNDirEntryHandler;
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNDirEntry;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.ISVNDiffStatusHandler;
+import org.tmatesoft.svn.core.wc.ISVNStatusHandler;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNDiffStatus;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.SVNStatus;
+import org.tmatesoft.svn.core.wc.SVNStatusType;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Lists the files that differ between a source branch and a working copy without transferring any
+ * file contents.  Produces the same lists as running a diff through {@link FileListDiffGenerator}.
+ * <p/>
+ * The working copy is compared in two steps: a summary diff between the source and the branch at the
+ * working copy's base revision (tree and property deltas only), then the local modifications reported
+ * by a status walk of the working copy.  Properties are only fetched for the few paths whose properties
+ * differ so that changes to svn:mergeinfo alone can be ignored.
+ */
+public class FileListDiffSummarizer {
+    private final SVNClientManager _clientManager;
+    private final WorkingCopyInfo _wcInfo;
+    private final File _rootDir;
+    private final String _metadataFile;
+    private final Set<String> _changedFilePaths;
+    private final Set<String> _addedFilePaths;
+    private final Set<String> _deletedFilePaths;
+
+    public FileListDiffSummarizer(SVNClientManager clientManager, WorkingCopyInfo wcInfo) {
+        _clientManager = clientManager;
+        _wcInfo = wcInfo;
+        _rootDir = wcInfo.getRootDir().getAbsoluteFile();
+        _metadataFile = wcInfo.getMetadataFile().getAbsolutePath();
+        _changedFilePaths = new PathTrie();
+        _addedFilePaths = new PathTrie();
+        _deletedFilePaths = new PathTrie();
+    }
+
+    public Set<String> getChangedFilePaths() {
+        return _changedFilePaths;
+    }
+
+    public Set<String> getAddedFilePaths() {
+        return _addedFilePaths;
+    }
+
+    public Set<String> getDeletedFilePaths() {
+        return _deletedFilePaths;
+    }
+
+    /**
+     * Compares the source at the specified revision with the working copy.  Returns false if the
+     * working copy can't be summarized because it is sparse, has switched subtrees or its base doesn't
+     * match any single revision of the branch.  Callers should fall back to a full diff in that case.
+     */
+    public boolean summarize(SVNURL sourceURL, SVNRevision sourceRevision) throws SVNException {
+        //Walk the working copy to find its base revision and local modifications
+        WorkingCopyStatusHandler wcStatus = new WorkingCopyStatusHandler();
+        _clientManager.getStatusClient().doStatus(_rootDir, SVNRevision.HEAD, SVNDepth.INFINITY,
+                false, true, false, false, wcStatus, null);
+        if (!wcStatus._supported || wcStatus._minRevision == Long.MAX_VALUE) {
+            return false;
+        }
+
+        //Use a private session since the other clients used below move shared sessions around
+        SVNRepository repository = _clientManager.createRepository(_wcInfo.getRepositoryURL(), false);
+        try {
+            String branchPath = _wcInfo.getMetadataProperties().getBranchPath();
+
+            //Find the revision of the branch that matches the base of the working copy, if there is one
+            long branchRevisionNumber = repository.info(branchPath, -1).getRevision();
+            if (!isUpToDate(repository, branchPath, branchRevisionNumber, wcStatus)) {
+                return false;
+            }
+
+            //Summarize the committed differences between the source and the branch
+            Map<String, Change> changes = new TreeMap<String, Change>();
+            SVNURL branchURL = _wcInfo.getRepositoryURL(branchPath);
+            SVNRevision branchRevision = SVNRevision.create(branchRevisionNumber);
+            SummaryHandler summary = new SummaryHandler(changes);
+            _clientManager.getDiffClient().doDiffStatus(sourceURL, sourceRevision, branchURL, branchRevision,
+                    SVNDepth.INFINITY, false, summary);
+
+            //A deleted directory is reported once, but every file in it is listed as deleted
+            for (String deletedDir : summary._deletedDirs) {
+                addDeletedFiles(changes, sourceURL.appendPath(deletedDir, false), sourceRevision, deletedDir);
+            }
+
+            //Overlay the local modifications
+            for (SVNStatus status : wcStatus._localChanges.values()) {
+                overlay(changes, status);
+            }
+
+            //Classify each changed path
+            long sourceRevisionNumber = getRevisionNumber(repository, sourceURL, sourceRevision);
+            String sourcePath = PathUtil.getPathTail(sourceURL, _wcInfo.getRepositoryURL());
+            for (Map.Entry<String, Change> entry : changes.entrySet()) {
+                String relativePath = entry.getKey();
+                Change change = entry.getValue();
+                String path = new File(_rootDir, relativePath).getAbsolutePath();
+                if (path.equals(_metadataFile)) {
+                    continue; // skip .savana
+                }
+                boolean isFile = (change._kind != SVNNodeKind.DIR);
+                if (isFile && !change._inSource && change._inWorking) {
+                    _addedFilePaths.add(path);
+                } else if (isFile && change._inSource && !change._inWorking) {
+                    _deletedFilePaths.add(path);
+                } else if (change._inWorking && (
+                        (isFile && change._inSource && change._textModified) ||
+                        (change._propertiesModified &&
+                         isPropertiesChanged(repository, sourcePath, sourceRevisionNumber, relativePath, change)))) {
+                    _changedFilePaths.add(path);
+                }
+            }
+            return true;
+        } finally {
+            RepositorySessions.release(_clientManager, repository);
+        }
+    }
+
+    /**
+     * Returns true if the base of every path in the working copy matches the branch at the specified
+     * revision.  A working copy is usually mixed-revision after a commit, and committed deletions leave
+     * no trace in a status walk, but every change since the oldest path in the working copy should have
+     * been made by this working copy unless it needs an update.
+     */
+    private boolean isUpToDate(SVNRepository repository, final String branchPath, long branchRevision,
+                               final WorkingCopyStatusHandler wcStatus) throws SVNException {
+        if (wcStatus._minRevision >= branchRevision) {
+            return true;
+        }
+        final boolean[] upToDate = {true};
+        repository.log(new String[]{branchPath}, wcStatus._minRevision + 1, branchRevision, true, false,
+                new ISVNLogEntryHandler() {
+                    public void handleLogEntry(SVNLogEntry logEntry) {
+                        for (SVNLogEntryPath changedPath : logEntry.getChangedPaths().values()) {
+                            String relativePath = getRelativePath(changedPath.getPath(), branchPath);
+                            if (relativePath == null) {
+                                continue;
+                            }
+                            Long revision = wcStatus._baseRevisions.get(relativePath);
+                            boolean current = (revision != null) ?
+                                    revision >= logEntry.getRevision() :
+                                    changedPath.getType() == SVNLogEntryPath.TYPE_DELETED;
+                            if (!current) {
+                                upToDate[0] = false;
+                            }
+                        }
+                    }
+                });
+        return upToDate[0];
+    }
+
+    private void addDeletedFiles(final Map<String, Change> changes, SVNURL dirURL, SVNRevision revision,
+                                 final String dirPath) throws SVNException {
+        _clientManager.getLogClient().doList(dirURL, revision, revision, false, SVNDepth.INFINITY,
+                SVNDirEntry.DIRENT_KIND, new ISVNDirEntryHandler() {
+                    public void handleDirEntry(SVNDirEntry dirEntry) {
+                        if (dirEntry.getKind() == SVNNodeKind.FILE) {
+                            Change change = getChange(changes, appendPath(dirPath, dirEntry.getRelativePath()));
+                            change._kind = SVNNodeKind.FILE;
+                            change._inSource = true;
+                            change._inWorking = false;
+                        }
+                    }
+                });
+    }
+
+    private void overlay(Map<String, Change> changes, SVNStatus status) {
+        String relativePath = getRelativePath(status.getFile());
+        Change change = changes.get(relativePath);
+        if (change == null) {
+            //The path is the same in the source and the branch, so the source matches the base
+            change = getChange(changes, relativePath);
+            change._kind = status.getKind();
+            change._inSource = !SVNStatusType.STATUS_ADDED.equals(status.getNodeStatus());
+        }
+
+        SVNStatusType nodeStatus = status.getNodeStatus();
+        if (SVNStatusType.STATUS_DELETED.equals(nodeStatus)) {
+            change._inWorking = false;
+        } else if (SVNStatusType.STATUS_ADDED.equals(nodeStatus) || SVNStatusType.STATUS_REPLACED.equals(nodeStatus)) {
+            change._kind = status.getKind();
+            change._inWorking = true;
+            change._textModified = true;
+            change._propertiesModified = true;
+        } else {
+            if (isModified(status.getContentsStatus())) {
+                change._textModified = true;
+            }
+            if (isModified(status.getPropertiesStatus())) {
+                change._propertiesModified = true;
+            }
+        }
+    }
+
+    private boolean isPropertiesChanged(SVNRepository repository, String sourcePath, long sourceRevision,
+                                        String relativePath, Change change) throws SVNException {
+        //Compare the source properties with the working properties, ignoring changes to svn:mergeinfo
+        SVNProperties sourceProperties = new SVNProperties();
+        if (change._inSource) {
+            String path = appendPath(sourcePath, relativePath);
+            SVNNodeKind sourceKind = repository.checkPath(path, sourceRevision);
+            if (sourceKind == SVNNodeKind.DIR) {
+                repository.getDir(path, sourceRevision, sourceProperties, (ISVNDirEntryHandler) null);
+            } else if (sourceKind == SVNNodeKind.FILE) {
+                repository.getFile(path, sourceRevision, sourceProperties, null);
+            }
+        }
+        final SVNProperties workingProperties = new SVNProperties();
+        _clientManager.getWCClient().doGetProperty(new File(_rootDir, relativePath), null, SVNRevision.UNDEFINED,
+                SVNRevision.WORKING, SVNDepth.EMPTY, new MetadataProperties.PropertyHandler(workingProperties), null);
+        return !toStringMap(sourceProperties).equals(toStringMap(workingProperties));
+    }
+
+    private Map<String, String> toStringMap(SVNProperties properties) {
+        Map<String, String> map = new HashMap<String, String>();
+        SVNProperties interesting = FileListDiffGenerator.getInterestingProperties(properties.getRegularProperties());
+        for (String name : interesting.nameSet()) {
+            map.put(name, SVNPropertyValue.getPropertyAsString(interesting.getSVNPropertyValue(name)));
+        }
+        return map;
+    }
+
+    private long getRevisionNumber(SVNRepository repository, SVNURL url, SVNRevision revision) throws SVNException {
+        if (revision.getNumber() >= 0) {
+            return revision.getNumber();
+        }
+        return repository.info(PathUtil.getPathTail(url, _wcInfo.getRepositoryURL()), -1).getRevision();
+    }
+
+    private String getRelativePath(File file) {
+        String rootPath = _rootDir.getPath();
+        String path = file.getAbsolutePath();
+        if (path.length() <= rootPath.length()) {
+            return "";
+        }
+        return path.substring(rootPath.length() + 1).replace(File.separatorChar, '/');
+    }
+
+    private static String getRelativePath(String repositoryPath, String branchPath) {
+        if (repositoryPath.startsWith("/")) {
+            repositoryPath = repositoryPath.substring(1);
+        }
+        if (repositoryPath.equals(branchPath)) {
+            return "";
+        } else if (repositoryPath.startsWith(branchPath + "/")) {
+            return repositoryPath.substring(branchPath.length() + 1);
+        }
+        return null;
+    }
+
+    private static String appendPath(String parent, String child) {
+        if (parent.length() == 0) {
+            return child;
+        } else if (child.length() == 0) {
+            return parent;
+        }
+        return parent + "/" + child;
+    }
+
+    private static boolean isModified(SVNStatusType status) {
+        return SVNStatusType.STATUS_MODIFIED.equals(status) ||
+            SVNStatusType.STATUS_CONFLICTED.equals(status) ||
+            SVNStatusType.MERGED.equals(status);
+    }
+
+    private static Change getChange(Map<String, Change> changes, String relativePath) {
+        Change change = changes.get(relativePath);
+        if (change == null) {
+            change = new Change();
+            changes.put(relativePath, change);
+        }
+        return change;
+    }
+
+    /** What is known about a path that differs between the source and the working copy. */
+    private static class Change {
+        private SVNNodeKind _kind;
+        private boolean _inSource = true;
+        private boolean _inWorking = true;
+        private boolean _textModified;
+        private boolean _propertiesModified;
+    }
+
+    private class SummaryHandler implements ISVNDiffStatusHandler {
+        private final Map<String, Change> _changes;
+        private final Set<String> _deletedDirs = new TreeSet<String>();
+
+        public SummaryHandler(Map<String, Change> changes) {
+            _changes = changes;
+        }
+
+        public void handleDiffStatus(SVNDiffStatus diffStatus) {
+            String relativePath = diffStatus.getPath();
+            Change change = getChange(_changes, relativePath);
+            change._kind = diffStatus.getKind();
+            SVNStatusType type = diffStatus.getModificationType();
+            if (SVNStatusType.STATUS_ADDED.equals(type)) {
+                change._inSource = false;
+            } else if (SVNStatusType.STATUS_DELETED.equals(type)) {
+                change._inWorking = false;
+                if (diffStatus.getKind() == SVNNodeKind.DIR) {
+                    _deletedDirs.add(relativePath);
+                }
+            } else if (SVNStatusType.STATUS_MODIFIED.equals(type)) {
+                change._textModified = true;
+            }
+            if (diffStatus.isPropertiesModified()) {
+                change._propertiesModified = true;
+            }
+        }
+    }
+
+    private class WorkingCopyStatusHandler implements ISVNStatusHandler {
+        private final Map<String, Long> _baseRevisions = new HashMap<String, Long>();
+        private final Map<String, SVNStatus> _localChanges = new TreeMap<String, SVNStatus>();
+        private long _minRevision = Long.MAX_VALUE;
+        private boolean _supported = true;
+
+        public void handleStatus(SVNStatus status) {
+            SVNStatusType nodeStatus = status.getNodeStatus();
+            if (SVNStatusType.STATUS_UNVERSIONED.equals(nodeStatus) || SVNStatusType.STATUS_IGNORED.equals(nodeStatus) ||
+                    SVNStatusType.STATUS_EXTERNAL.equals(nodeStatus) || SVNStatusType.STATUS_NONE.equals(nodeStatus)) {
+                return;
+            }
+
+            //Switched subtrees and sparse directories don't match the branch in the repository
+            File file = status.getFile().getAbsoluteFile();
+            if (status.isSwitched() && !file.equals(_rootDir)) {
+                _supported = false;
+            }
+            SVNDepth depth = status.getDepth();
+            if (status.getKind() == SVNNodeKind.DIR && depth != null &&
+                    depth != SVNDepth.INFINITY && depth != SVNDepth.UNKNOWN) {
+                _supported = false;
+            }
+
+            String relativePath = getRelativePath(file);
+            long revision = (status.getRevision() != null) ? status.getRevision().getNumber() : -1;
+            if (revision >= 0 && !SVNStatusType.STATUS_ADDED.equals(nodeStatus)) {
+                _baseRevisions.put(relativePath, revision);
+                _minRevision = Math.min(_minRevision, revision);
+            }
+
+            //Missing files are treated as unchanged, like a diff against the working copy does
+            if (!SVNStatusType.STATUS_NORMAL.equals(nodeStatus) && !SVNStatusType.STATUS_MISSING.equals(nodeStatus) &&
+                    !SVNStatusType.STATUS_INCOMPLETE.equals(nodeStatus) && !SVNStatusType.STATUS_OBSTRUCTED.equals(nodeStatus)) {
+                _localChanges.put(relativePath, status);
+            }
+        }
+    }
+}
@@ -34,26 +34,39 @@ import org.tmatesoft.svn.core.ISVNDirEntryHandler;
 import org.tmatesoft.svn.core.SVNDirEntry;
 import org.tmatesoft.svn.core.SVNURL;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
 public class ListDirEntryHandler implements ISVNDirEntryHandler {
     private SortedSet<String> _nameList;
+    private Map<String, Long> _revisions;
     private SVNURL _self;
 
     public ListDirEntryHandler(SVNURL self) {
         _self = self;
         _nameList = new TreeSet<String>();
+        _revisions = new HashMap<String, Long>();
     }
 
     public SortedSet<String> getNames() {
         return _nameList;
     }
 
+    /**
+     * Returns the revision in which the named entry was last changed, or -1 if it's unknown.
+     */
+    public long getRevision(String name) {
+        Long revision = _revisions.get(name);
+        return (revision != null) ? revision : -1;
+    }
+
     public void handleDirEntry(SVNDirEntry dirEntry) {
         // ignore the top-level directory entry (path=""), just add its children
         if (!_self.equals(dirEntry.getURL())) {
             _nameList.add(dirEntry.getName());
+            _revisions.put(dirEntry.getName(), dirEntry.getRevision());
         }
     }
 }
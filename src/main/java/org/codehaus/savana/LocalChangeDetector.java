@@ -0,0 +1,196 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana;
+
+import org.tmatesoft.svn.core.SVNCancelException;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.wc.ISVNStatusHandler;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.SVNStatus;
+import org.tmatesoft.svn.core.wc.SVNStatusClient;
+import org.tmatesoft.svn.core.wc.SVNStatusType;
+import org.tmatesoft.svn.util.SVNLogType;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks whether a working copy has local changes, switched subtrees or (optionally) is out-of-date,
+ * stopping as soon as any of these is found.
+ * <p/>
+ * Local-only checks split the working copy into subtrees that are scanned in parallel, each with its
+ * own status client.  The top levels of the tree are scanned one directory at a time so that idle
+ * threads can pick up the subtrees underneath them.  Subversion already skips reading files whose size
+ * and modification time match what it recorded, so the cost of a clean file is a single stat.
+ */
+public class LocalChangeDetector {
+
+    /** The number of directory levels that are split into separately scanned subtrees. */
+    private static final int SPLIT_LEVELS = 2;
+
+    private final SVNClientManager _clientManager;
+    private final int _numThreads;
+
+    public LocalChangeDetector(SVNClientManager clientManager) {
+        this(clientManager, Runtime.getRuntime().availableProcessors());
+    }
+
+    public LocalChangeDetector(SVNClientManager clientManager, int numThreads) {
+        _clientManager = clientManager;
+        _numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Walks the specified directory looking for local changes and switched paths.  The working copy root
+     * is excluded from the switched check, if specified.  If remote is true, the working copy is compared
+     * with HEAD to check whether it's out-of-date.
+     */
+    public LocalChangeStatusHandler detectChanges(File rootDir, File wcRoot, boolean remote) throws SVNException {
+        LocalChangeStatusHandler handler = new LocalChangeStatusHandler(wcRoot);
+        try {
+            if (remote || _numThreads == 1) {
+                //An out-of-date check needs a single report of the whole working copy to the server
+                _clientManager.getStatusClient().doStatus(rootDir, remote ? SVNRevision.HEAD : SVNRevision.UNDEFINED,
+                        SVNDepth.INFINITY, remote, true, false, false, handler, null);
+            } else {
+                detectChangesInParallel(rootDir, handler);
+            }
+        } catch (SVNCancelException e) {
+            if (!handler.isBlocked()) {
+                throw e;
+            }
+        }
+        return handler;
+    }
+
+    private void detectChangesInParallel(File rootDir, LocalChangeStatusHandler handler) throws SVNException {
+        ExecutorService executor = Executors.newFixedThreadPool(_numThreads, new DetectorThreadFactory());
+        try {
+            CompletionService<List<SubtreeTask>> completionService = new ExecutorCompletionService<List<SubtreeTask>>(executor);
+            completionService.submit(new SubtreeTask(rootDir, 0, handler));
+            int pending = 1;
+            while (pending > 0 && !handler.isBlocked()) {
+                List<SubtreeTask> subtrees = getResult(completionService, handler);
+                pending--;
+                for (SubtreeTask subtree : subtrees) {
+                    completionService.submit(subtree);
+                    pending++;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<SubtreeTask> getResult(CompletionService<List<SubtreeTask>> completionService,
+                                        LocalChangeStatusHandler handler) throws SVNException {
+        try {
+            Future<List<SubtreeTask>> future = completionService.take();
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new SVNCancelException(SVNErrorMessage.create(SVNErrorCode.CANCELLED,
+                    "Interrupted while checking for local changes"));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SVNCancelException && handler.isBlocked()) {
+                return new ArrayList<SubtreeTask>();
+            } else if (cause instanceof SVNException) {
+                throw (SVNException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.UNKNOWN,
+                    "Error checking for local changes: " + cause, null, SVNErrorMessage.TYPE_ERROR, cause), SVNLogType.CLIENT);
+            return null; // unreachable
+        }
+    }
+
+    /**
+     * Scans a directory.  Near the top of the tree, only the directory's immediate children are scanned
+     * and the subdirectories are returned to be scanned separately.  Further down, the whole subtree is scanned.
+     */
+    private class SubtreeTask implements Callable<List<SubtreeTask>> {
+        private final File _dir;
+        private final int _level;
+        private final LocalChangeStatusHandler _handler;
+
+        public SubtreeTask(File dir, int level, LocalChangeStatusHandler handler) {
+            _dir = dir;
+            _level = level;
+            _handler = handler;
+        }
+
+        public List<SubtreeTask> call() throws SVNException {
+            final List<SubtreeTask> subtrees = new ArrayList<SubtreeTask>();
+            final boolean split = _level < SPLIT_LEVELS;
+            SVNStatusClient statusClient = new SVNStatusClient((ISVNAuthenticationManager) null, _clientManager.getOptions());
+            statusClient.setIgnoreExternals(_clientManager.getStatusClient().isIgnoreExternals());
+            statusClient.setEventHandler(_handler);
+            statusClient.doStatus(_dir, SVNRevision.UNDEFINED, split ? SVNDepth.IMMEDIATES : SVNDepth.INFINITY,
+                    false, true, false, false, new ISVNStatusHandler() {
+                        public void handleStatus(SVNStatus status) throws SVNException {
+                            _handler.handleStatus(status);
+                            //Unchanged subdirectories are scanned separately.  Changed ones stop the scan.
+                            if (split && status.getKind() == SVNNodeKind.DIR && !status.getFile().equals(_dir) &&
+                                    SVNStatusType.STATUS_NORMAL.equals(status.getNodeStatus())) {
+                                subtrees.add(new SubtreeTask(status.getFile(), _level + 1, _handler));
+                            }
+                        }
+                    }, null);
+            return subtrees;
+        }
+    }
+
+    private static class DetectorThreadFactory implements ThreadFactory {
+        private final AtomicInteger _count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "savana-status-" + _count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -49,11 +49,16 @@ import static org.tmatesoft.svn.core.wc.SVNStatusType.STATUS_MODIFIED;
 import static org.tmatesoft.svn.core.wc.SVNStatusType.STATUS_OBSTRUCTED;
 import static org.tmatesoft.svn.core.wc.SVNStatusType.STATUS_REPLACED;
 
+/**
+ * Looks for conditions that block commands such as promote and setbranch.  Since callers only need
+ * a yes or no answer, the status walk is cancelled as soon as one is found.  Use {@link LocalChangeDetector}
+ * to run the walk.  Status may be reported from several threads at once.
+ */
 public class LocalChangeStatusHandler implements ISVNStatusHandler, ISVNEventHandler {
     private final File _wcRoot;
-    private boolean _changed;
-    private boolean _switched;
-    private boolean _outOfDate;
+    private volatile boolean _changed;
+    private volatile boolean _switched;
+    private volatile boolean _outOfDate;
 
     public LocalChangeStatusHandler() {
         this(null);
@@ -75,7 +80,13 @@ public class LocalChangeStatusHandler implements ISVNStatusHandler, ISVNEventHan
         return _outOfDate;
     }
 
-    public void handleStatus(SVNStatus status) {
+    public boolean isBlocked() {
+        return _changed || _switched || _outOfDate;
+    }
+
+    public void handleStatus(SVNStatus status) throws SVNCancelException {
+        CommandMetrics.countFileScanned();
+
         //Check the status of the file and its properties
         if (isChanged(status.getCombinedNodeAndContentsStatus()) || isChanged(status.getPropertiesStatus())) {
             _changed = true;
@@ -90,6 +101,8 @@ public class LocalChangeStatusHandler implements ISVNStatusHandler, ISVNEventHan
         if (isChanged(status.getCombinedRemoteNodeAndContentsStatus()) || isChanged(status.getRemotePropertiesStatus())) {
             _outOfDate = true;
         }
+
+        checkCancelled();
     }
 
     private boolean isChanged(SVNStatusType contentsStatus) {
@@ -113,9 +126,11 @@ public class LocalChangeStatusHandler implements ISVNStatusHandler, ISVNEventHan
     }
 
     /*
-     * Should be implemented to check if the current operation is cancelled. If
-     * it is, this method should throw an SVNCancelException.
+     * Stops the status walk once there's a reason to fail.  The rest of the working copy doesn't matter.
      */
     public void checkCancelled() throws SVNCancelException {
+        if (isBlocked()) {
+            throw new SVNCancelException();
+        }
     }
 }
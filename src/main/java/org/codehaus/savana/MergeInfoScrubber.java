@@ -0,0 +1,120 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana;
+
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.wc.ISVNInfoHandler;
+import org.tmatesoft.svn.core.wc.ISVNPropertyValueProvider;
+import org.tmatesoft.svn.core.wc.SVNInfo;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.SVNWCClient;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Removes the subversion 1.5 svn:mergeinfo property from a working copy, for branches whose policies
+ * say that Savana's own merge tracking should be used instead.
+ * <p/>
+ * The whole tree is handled by a single working copy operation that visits the properties of every node
+ * once and rewrites only the nodes that carry svn:mergeinfo, instead of reading and then writing the
+ * property on each file one at a time.  Switched subtrees, such as nested workspaces, belong to other
+ * branches and are left alone.  They're found beforehand from the working copy's entries, which doesn't
+ * read any files.
+ */
+public class MergeInfoScrubber {
+
+    private final SVNWCClient _wcClient;
+
+    public MergeInfoScrubber(SVNWCClient wcClient) {
+        _wcClient = wcClient;
+    }
+
+    /**
+     * Removes svn:mergeinfo from the specified directory and everything under it except switched subtrees,
+     * and returns the files and directories that it was removed from.
+     */
+    public List<File> scrub(File rootDir) throws SVNException {
+        final List<String> switchedPaths = findSwitchedPaths(rootDir.getAbsoluteFile());
+        final List<File> scrubbed = new ArrayList<File>();
+        _wcClient.doSetProperty(rootDir.getAbsoluteFile(), new ISVNPropertyValueProvider() {
+            public SVNProperties providePropertyValues(File path, SVNProperties properties) {
+                if (!properties.containsName(SVNProperty.MERGE_INFO) || isInside(path, switchedPaths)) {
+                    //A null result would remove all of the node's properties, so leave them as they are
+                    return properties;
+                }
+                //The returned properties replace all of the node's properties
+                SVNProperties newProperties = new SVNProperties(properties);
+                newProperties.remove(SVNProperty.MERGE_INFO);
+                scrubbed.add(path);
+                return newProperties;
+            }
+        }, false, SVNDepth.INFINITY, null, null);
+        return scrubbed;
+    }
+
+    /**
+     * Returns the paths under the specified directory whose repository location doesn't follow from their
+     * parent's.  The working copy reports each directory before its children.
+     */
+    private List<String> findSwitchedPaths(File rootDir) throws SVNException {
+        final Map<File, SVNURL> dirURLs = new HashMap<File, SVNURL>();
+        final List<String> switchedPaths = new ArrayList<String>();
+        _wcClient.doInfo(rootDir, SVNRevision.UNDEFINED, SVNRevision.WORKING, SVNDepth.INFINITY, null, new ISVNInfoHandler() {
+            public void handleInfo(SVNInfo info) throws SVNException {
+                File file = info.getFile().getAbsoluteFile();
+                SVNURL parentURL = dirURLs.get(file.getParentFile());
+                if (parentURL != null && info.getURL() != null &&
+                        !parentURL.appendPath(file.getName(), false).equals(info.getURL())) {
+                    switchedPaths.add(file.getPath());
+                }
+                if (info.getKind() == SVNNodeKind.DIR && info.getURL() != null) {
+                    dirURLs.put(file, info.getURL());
+                }
+            }
+        });
+        return switchedPaths;
+    }
+
+    private static boolean isInside(File file, List<String> dirPaths) {
+        String path = file.getAbsolutePath();
+        for (String dirPath : dirPaths) {
+            if (path.equals(dirPath) || path.startsWith(dirPath + File.separator)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
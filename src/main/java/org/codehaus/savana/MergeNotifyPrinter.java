@@ -8,44 +8,61 @@ import org.tmatesoft.svn.core.wc.SVNStatusType;
 import org.tmatesoft.svn.core.SVNException;
 
 import java.io.File;
-import java.util.List;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Extends the standard SVNNotifyPrinter and keeps a list of skipped files and files that
- * likely have changes to subversion properties.
+ * likely have changes to subversion properties.  The skipped paths are kept in a {@link PathTrie}
+ * so that a merge touching a very large number of paths doesn't hold on to a File for each.
  */
 public class MergeNotifyPrinter extends SVNNotifyPrinter {
-    private final List<File> _skippedFiles = new ArrayList<File>();
-    private final Collection<File> _propertiesChangedFiles = new LinkedHashSet<File>();
+    private final Set<String> _skippedPaths = new PathTrie();
+    private boolean _conflicted;
 
     public MergeNotifyPrinter(SVNCommandEnvironment env) {
         super(env);
     }
 
+    /** Returns the skipped files sorted by path. */
     public List<File> getSkippedFiles() {
-        return _skippedFiles;
+        List<File> skippedFiles = new ArrayList<File>(_skippedPaths.size());
+        for (String path : _skippedPaths) {
+            skippedFiles.add(new File(path));
+        }
+        return skippedFiles;
+    }
+
+    public boolean hasSkippedFiles() {
+        return !_skippedPaths.isEmpty();
     }
 
-    public Collection<File> getPropertiesChangedFiles() {
-        return _propertiesChangedFiles;
+    public boolean isConflicted() {
+        return _conflicted;
     }
 
     @Override
     public void handleEvent(SVNEvent event, double progress) throws SVNException {
         super.handleEvent(event, progress);
 
-        if (event.getAction() == SVNEventAction.SKIP) {
-            _skippedFiles.add(event.getFile());
+        if (isMergedPath(event)) {
+            CommandMetrics.countMergePath();
+        }
+        if (event.getAction() == SVNEventAction.SKIP && event.getFile() != null) {
+            _skippedPaths.add(event.getFile().getPath());
         }
-        if (event.getAction() == SVNEventAction.PROPERTY_ADD ||
-            event.getAction() == SVNEventAction.PROPERTY_MODIFY ||
-            (event.getPropertiesStatus() != SVNStatusType.UNKNOWN &&
-             event.getPropertiesStatus() != SVNStatusType.UNCHANGED &&
-             event.getPropertiesStatus() != SVNStatusType.INAPPLICABLE)) {
-            _propertiesChangedFiles.add(event.getFile());
+        if (event.getAction() == SVNEventAction.TREE_CONFLICT ||
+            event.getContentsStatus() == SVNStatusType.CONFLICTED ||
+            event.getPropertiesStatus() == SVNStatusType.CONFLICTED) {
+            _conflicted = true;
         }
     }
+
+    private boolean isMergedPath(SVNEvent event) {
+        SVNEventAction action = event.getAction();
+        return event.getFile() != null && (action == SVNEventAction.UPDATE_ADD || action == SVNEventAction.UPDATE_DELETE ||
+                action == SVNEventAction.UPDATE_UPDATE || action == SVNEventAction.UPDATE_REPLACE ||
+                action == SVNEventAction.UPDATE_EXISTS || action == SVNEventAction.TREE_CONFLICT);
+    }
 }
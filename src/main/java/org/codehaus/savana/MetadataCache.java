@@ -0,0 +1,257 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana;
+
+import org.tmatesoft.svn.core.SVNDirEntry;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.util.SVNLogType;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * On-disk cache of the properties of remote metadata files.  The properties of a path at a specific
+ * revision never change, so entries are keyed by repository UUID, path and a revision at or after the
+ * last change to the metadata file and never need to be invalidated.  The least recently used entries
+ * are evicted once the cache grows beyond its maximum size.
+ */
+public class MetadataCache {
+    private static final Logger _sLog = Logger.getLogger("savana-info");
+
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private static final String CACHE_DIR = "savana/metadata-cache";
+    private static final String ENTRY_SUFFIX = ".properties";
+    private static final String KEY_PROPERTY = "savana.cache.key";
+    private static final String VALUE_PREFIX = "prop.";
+
+    private final File _cacheDir;
+    private final int _maxEntries;
+    private boolean _evictionChecked;
+
+    public MetadataCache(File cacheDir, int maxEntries) {
+        _cacheDir = cacheDir;
+        _maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the cache stored under the specified Subversion configuration directory (eg. '~/.subversion').
+     */
+    public static MetadataCache forConfigDir(File configDir) {
+        return new MetadataCache(new File(configDir, CACHE_DIR), DEFAULT_MAX_ENTRIES);
+    }
+
+    public File getCacheDir() {
+        return _cacheDir;
+    }
+
+    /**
+     * Returns the metadata properties for the specified path at the specified revision (-1 for HEAD).  The last
+     * changed revision of the path is looked up first so the properties themselves only need to be fetched from
+     * the repository if they've changed since the last time they were cached.
+     */
+    public MetadataProperties getMetadataProperties(SVNRepository repository, String metadataFilePath, long revision)
+            throws SVNException {
+        SVNDirEntry entry = repository.info(metadataFilePath, revision);
+        if (entry == null || entry.getKind() != SVNNodeKind.FILE) {
+            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.FS_NOT_FOUND,
+                    "File not found: revision {0}, path ''{1}''",
+                    new Object[] {(revision < 0) ? "HEAD" : Long.toString(revision), metadataFilePath}), SVNLogType.CLIENT);
+        }
+        return getUnchangedMetadataProperties(repository, metadataFilePath, entry.getRevision());
+    }
+
+    /**
+     * Returns the metadata properties for the specified path.  The revision should be the last changed revision
+     * of the metadata file, so that every later revision of the branch shares the same cache entry.  Any revision
+     * after that works as long as the metadata file hasn't changed since, but it's cached separately.
+     */
+    public MetadataProperties getUnchangedMetadataProperties(SVNRepository repository, String metadataFilePath, long revision)
+            throws SVNException {
+        String repositoryUUID = repository.getRepositoryUUID(true);
+        SVNProperties properties = get(repositoryUUID, metadataFilePath, revision);
+        if (properties == null) {
+            properties = new SVNProperties();
+            repository.getFile(metadataFilePath, revision, properties, null);
+            put(repositoryUUID, metadataFilePath, revision, properties);
+        }
+        return new MetadataProperties(SVNPathUtil.tail(metadataFilePath), properties);
+    }
+
+    /**
+     * Returns the cached properties of a path at a specific revision, or null if they're not in the cache.
+     */
+    public SVNProperties get(String repositoryUUID, String path, long revision) {
+        String key = getKey(repositoryUUID, path, revision);
+        File entryFile = getEntryFile(key);
+        if (!entryFile.isFile()) {
+            return null;
+        }
+        try {
+            Properties entry = new Properties();
+            InputStream in = new FileInputStream(entryFile);
+            try {
+                entry.load(in);
+            } finally {
+                in.close();
+            }
+            //Guard against hash collisions and partially written files
+            if (!key.equals(entry.getProperty(KEY_PROPERTY))) {
+                return null;
+            }
+            SVNProperties properties = new SVNProperties();
+            for (Enumeration<?> names = entry.propertyNames(); names.hasMoreElements();) {
+                String name = (String) names.nextElement();
+                if (name.startsWith(VALUE_PREFIX)) {
+                    properties.put(name.substring(VALUE_PREFIX.length()), entry.getProperty(name));
+                }
+            }
+            //Keep track of when the entry was last used for LRU eviction
+            entryFile.setLastModified(System.currentTimeMillis());
+            return properties;
+        } catch (IOException e) {
+            _sLog.log(Level.FINE, "Unable to read metadata cache entry: " + entryFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * Saves the properties of a path at a specific revision.  Properties with binary values are left out.
+     */
+    public void put(String repositoryUUID, String path, long revision, SVNProperties properties) {
+        String key = getKey(repositoryUUID, path, revision);
+        Properties entry = new Properties();
+        entry.setProperty(KEY_PROPERTY, key);
+        for (String name : properties.nameSet()) {
+            SVNPropertyValue value = properties.getSVNPropertyValue(name);
+            if (value == null || !value.isString()) {
+                _sLog.fine("Not caching binary property '" + name + "' of " + path + "@" + revision);
+                continue;
+            }
+            entry.setProperty(VALUE_PREFIX + name, value.getString());
+        }
+
+        File entryFile = getEntryFile(key);
+        File tempFile = null;
+        try {
+            evictIfNecessary();
+            _cacheDir.mkdirs();
+            //A unique name so that concurrent writers in this and other processes don't share a temporary file
+            tempFile = File.createTempFile(entryFile.getName() + ".", ".tmp", _cacheDir);
+            OutputStream out = new FileOutputStream(tempFile);
+            try {
+                entry.store(out, null);
+            } finally {
+                out.close();
+            }
+            //Rename into place so other processes never see a partially written entry
+            if (!tempFile.renameTo(entryFile)) {
+                entryFile.delete();
+                if (!tempFile.renameTo(entryFile)) {
+                    tempFile.delete();
+                }
+            }
+        } catch (IOException e) {
+            _sLog.log(Level.FINE, "Unable to write metadata cache entry: " + entryFile, e);
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Removes the least recently used entries once the cache has grown too large.  Checking requires
+     * listing the cache directory, so this only happens once per cache instance.
+     */
+    private synchronized void evictIfNecessary() {
+        if (_evictionChecked) {
+            return;
+        }
+        _evictionChecked = true;
+
+        File[] entryFiles = _cacheDir.listFiles();
+        if (entryFiles == null || entryFiles.length < _maxEntries) {
+            return;
+        }
+        Arrays.sort(entryFiles, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long t1 = f1.lastModified(), t2 = f2.lastModified();
+                return (t1 < t2) ? -1 : (t1 > t2) ? 1 : 0;
+            }
+        });
+        //Evict down to 90% of the maximum so we don't evict again on the very next command
+        int numToDelete = entryFiles.length - (_maxEntries * 9 / 10);
+        for (int i = 0; i < numToDelete; i++) {
+            entryFiles[i].delete();
+        }
+        _sLog.fine("Evicted " + numToDelete + " entries from the metadata cache: " + _cacheDir);
+    }
+
+    private File getEntryFile(String key) {
+        return new File(_cacheDir, toHex(sha1(key)) + ENTRY_SUFFIX);
+    }
+
+    private static String getKey(String repositoryUUID, String path, long revision) {
+        return repositoryUUID + ":" + revision + ":" + path;
+    }
+
+    static byte[] sha1(String string) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(string.getBytes("UTF-8"));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder buf = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            buf.append(Character.forDigit((b >> 4) & 0xf, 16));
+            buf.append(Character.forDigit(b & 0xf, 16));
+        }
+        return buf.toString();
+    }
+}
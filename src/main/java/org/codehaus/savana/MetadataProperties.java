@@ -47,11 +47,9 @@ import org.tmatesoft.svn.core.wc.SVNRevision;
 import org.tmatesoft.svn.core.wc.SVNWCClient;
 import org.tmatesoft.svn.util.SVNLogType;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.util.Properties;
 
 public class MetadataProperties {
 
@@ -139,6 +137,11 @@ public class MetadataProperties {
 
     private ISavanaPolicies _savanaPolicies;
 
+    /**
+     * The raw properties of the metadata file.
+     */
+    private SVNProperties _properties;
+
     /**
      * Creates a MetadataProperties from a file in a remote repository.
      */
@@ -150,6 +153,14 @@ public class MetadataProperties {
         init(properties);
     }
 
+    /**
+     * Creates a MetadataProperties from metadata file properties that have already been fetched.
+     */
+    public MetadataProperties(String metadataFileName, SVNProperties properties) throws SVNException {
+        _metadataFileName = metadataFileName;
+        init(properties);
+    }
+
     /**
      * Creates a MetadataProperties from a metadata file on the local file system.
      */
@@ -162,9 +173,11 @@ public class MetadataProperties {
     }
 
     private void init(SVNProperties properties) throws SVNException {
+        _properties = properties;
+
         SVNPropertyValue savanaPoliciesProps = properties.getSVNPropertyValue(MetadataFile.PROP_SAVANA_POLICIES);
         if (savanaPoliciesProps != null) {
-            _savanaPolicies = parsePolicies(SVNPropertyValue.getPropertyAsString(savanaPoliciesProps));
+            _savanaPolicies = PolicyCache.getInstance().getPolicies(SVNPropertyValue.getPropertyAsString(savanaPoliciesProps));
         }
 
         SVNPropertyValue projectNameProps = properties.getSVNPropertyValue(MetadataFile.PROP_PROJECT_NAME);
@@ -234,35 +247,6 @@ public class MetadataProperties {
         }
     }
 
-    private ISavanaPolicies parsePolicies(String policiesString) throws SVNException {
-        //The policies string contains a Java Properties object, saved using Properties.store()
-        Properties properties = new Properties();
-        try {
-            // use Properties.load(InputStream) instead of Properties.load(Reader) for JDK 1.5 compatibility
-            properties.load(new ByteArrayInputStream(policiesString.getBytes("ISO-8859-1")));
-        } catch (Exception e) {
-            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.BAD_PROPERTY_VALUE,
-                    "Error parsing Savana policy properties: " + e), SVNLogType.CLIENT);
-        }
-
-        //Instantiate the policies implementation
-        String className = properties.getProperty(ISavanaPolicies.CLASS_KEY, DefaultSavanaPolicies.class.getName());
-        ISavanaPolicies savanaPolicies;
-        try {
-            savanaPolicies = (ISavanaPolicies) Class.forName(className).newInstance();
-        } catch(Exception e) {
-            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.BAD_PROPERTY_VALUE,
-                    "Error creating Savana policy class instance: " + className, null, SVNErrorMessage.TYPE_ERROR, e), SVNLogType.CLIENT);
-            return null; // unreachable
-        }
-        savanaPolicies.initialize(properties);
-        
-        //Verify that Savana is new enough
-        savanaPolicies.validateSavanaVersion();
-
-        return savanaPolicies;
-    }
-
     public String getMetadataFileName() {
         return _metadataFileName;
     }
@@ -345,6 +329,11 @@ public class MetadataProperties {
         return _codeFrozen;
     }
 
+    /** Returns the raw properties of the metadata file these values were read from. */
+    public SVNProperties getProperties() {
+        return _properties;
+    }
+
     public ISavanaPolicies getSavanaPolicies() {
         return _savanaPolicies;
     }
@@ -366,7 +355,7 @@ public class MetadataProperties {
         return buf.toString().trim();
     }
 
-    private static class PropertyHandler implements ISVNPropertyHandler {
+    static class PropertyHandler implements ISVNPropertyHandler {
         private final SVNProperties _properties;
 
         public PropertyHandler(SVNProperties properties) {
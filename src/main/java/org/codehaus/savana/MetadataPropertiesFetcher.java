@@ -0,0 +1,227 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.util.SVNLogType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches the metadata properties of many branches at once.  Requests are split into batches
+ * and spread across a bounded pool of repository sessions so that listing thousands of branches
+ * isn't limited by one round trip at a time.  Results are delivered to the handler on the calling
+ * thread, in the same order as the requested paths, as soon as each batch completes.
+ */
+public class MetadataPropertiesFetcher {
+
+    public static final int DEFAULT_MAX_SESSIONS = 8;
+
+    private static final int BATCHES_PER_SESSION = 4;
+    private static final int MAX_BATCH_SIZE = 64;
+
+    private final SVNClientManager _clientManager;
+    private final SVNURL _repositoryURL;
+    private final int _maxSessions;
+    private final MetadataCache _metadataCache;
+
+    public MetadataPropertiesFetcher(SVNClientManager clientManager, SVNURL repositoryURL, MetadataCache metadataCache) {
+        this(clientManager, repositoryURL, metadataCache, DEFAULT_MAX_SESSIONS);
+    }
+
+    public MetadataPropertiesFetcher(SVNClientManager clientManager, SVNURL repositoryURL, MetadataCache metadataCache,
+                                     int maxSessions) {
+        _clientManager = clientManager;
+        _repositoryURL = repositoryURL;
+        _metadataCache = metadataCache;
+        _maxSessions = Math.max(1, maxSessions);
+    }
+
+    /**
+     * Fetches the HEAD metadata properties for each of the specified metadata file paths (relative to
+     * the repository URL).  Paths that can't be read (eg. a branch without a metadata file) are reported
+     * to the handler with a null properties object and the exception that occurred.
+     * <p/>
+     * If known, the revisions list should contain, for each path, the last changed revision of the metadata
+     * file at HEAD.  This allows metadata to be read from the cache without asking the repository which
+     * revision is current.  Use -1 if unknown.
+     */
+    public void fetch(List<String> metadataFilePaths, List<Long> revisions, Handler handler) throws SVNException {
+        if (metadataFilePaths.isEmpty()) {
+            return;
+        }
+
+        int numSessions = Math.min(_maxSessions, metadataFilePaths.size());
+
+        //Create the sessions up front, on this thread.  They don't connect until first used.
+        BlockingQueue<SVNRepository> sessions = new LinkedBlockingQueue<SVNRepository>();
+        List<SVNRepository> allSessions = new ArrayList<SVNRepository>();
+        for (int i = 0; i < numSessions; i++) {
+            SVNRepository repository = _clientManager.createRepository(_repositoryURL, false);
+            sessions.add(repository);
+            allSessions.add(repository);
+        }
+
+        //Split the paths into batches.  Use several batches per session so a slow batch doesn't hold up the rest.
+        int batchSize = Math.max(1, Math.min(MAX_BATCH_SIZE,
+                metadataFilePaths.size() / (numSessions * BATCHES_PER_SESSION)));
+        List<BatchTask> batches = new ArrayList<BatchTask>();
+        for (int i = 0; i < metadataFilePaths.size(); i += batchSize) {
+            int end = Math.min(i + batchSize, metadataFilePaths.size());
+            batches.add(new BatchTask(metadataFilePaths.subList(i, end), revisions.subList(i, end), sessions));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(numSessions, new FetcherThreadFactory());
+        boolean completed = false;
+        try {
+            List<Future<List<Result>>> futures = new ArrayList<Future<List<Result>>>();
+            for (BatchTask batch : batches) {
+                futures.add(executor.submit(batch));
+            }
+
+            //Deliver results in order.  Later batches keep running while earlier ones are handled.
+            for (Future<List<Result>> future : futures) {
+                for (Result result : getResult(future)) {
+                    handler.handleMetadataProperties(result._path, result._properties, result._exception);
+                }
+            }
+            completed = true;
+        } finally {
+            executor.shutdownNow();
+            for (SVNRepository repository : allSessions) {
+                //Only reuse the sessions when no batch can still be using them
+                if (completed) {
+                    RepositorySessions.release(_clientManager, repository);
+                } else {
+                    RepositorySessions.discard(_clientManager, repository);
+                }
+            }
+        }
+    }
+
+    private List<Result> getResult(Future<List<Result>> future) throws SVNException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.CANCELLED,
+                    "Interrupted while fetching branch metadata"), SVNLogType.CLIENT);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.UNKNOWN,
+                    "Error fetching branch metadata: " + cause, null, SVNErrorMessage.TYPE_ERROR, cause), SVNLogType.CLIENT);
+        }
+        return null; // unreachable
+    }
+
+    public interface Handler {
+        void handleMetadataProperties(String metadataFilePath, MetadataProperties properties, SVNException exception)
+                throws SVNException;
+    }
+
+    private static class Result {
+        private final String _path;
+        private final MetadataProperties _properties;
+        private final SVNException _exception;
+
+        public Result(String path, MetadataProperties properties, SVNException exception) {
+            _path = path;
+            _properties = properties;
+            _exception = exception;
+        }
+    }
+
+    private class BatchTask implements Callable<List<Result>> {
+        private final List<String> _paths;
+        private final List<Long> _revisions;
+        private final BlockingQueue<SVNRepository> _sessions;
+
+        public BatchTask(List<String> paths, List<Long> revisions, BlockingQueue<SVNRepository> sessions) {
+            _paths = paths;
+            _revisions = revisions;
+            _sessions = sessions;
+        }
+
+        public List<Result> call() throws Exception {
+            //Borrow one session for the entire batch
+            SVNRepository repository = _sessions.take();
+            try {
+                List<Result> results = new ArrayList<Result>(_paths.size());
+                for (int i = 0; i < _paths.size(); i++) {
+                    String path = _paths.get(i);
+                    try {
+                        long revision = _revisions.get(i);
+                        MetadataProperties properties;
+                        if (_metadataCache == null) {
+                            properties = new MetadataProperties(repository, path, -1);
+                        } else if (revision >= 0) {
+                            properties = _metadataCache.getUnchangedMetadataProperties(repository, path, revision);
+                        } else {
+                            properties = _metadataCache.getMetadataProperties(repository, path, -1);
+                        }
+                        results.add(new Result(path, properties, null));
+                    } catch (SVNException e) {
+                        results.add(new Result(path, null, e));
+                    }
+                }
+                return results;
+            } finally {
+                _sessions.add(repository);
+            }
+        }
+    }
+
+    private static class FetcherThreadFactory implements ThreadFactory {
+        private final AtomicInteger _count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "savana-metadata-" + _count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana;
+
+import org.tmatesoft.svn.core.SVNCancelException;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.wc.SVNInfo;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.SVNWCClient;
+import org.tmatesoft.svn.util.SVNLogType;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds the workspaces nested underneath a working copy, ie. the switched directories that contain
+ * a Savana metadata file, without contacting the repository or checking every file for modifications.
+ * <p/>
+ * The directory tree is scanned in parallel for metadata files.  Since only a few directories contain
+ * a metadata file, the working copy is consulted for just those directories to check which are switched.
+ */
+public class NestedWorkspaceFinder {
+
+    private final SVNWCClient _wcClient;
+    private final String _metadataFileName;
+    private final int _numThreads;
+
+    public NestedWorkspaceFinder(SVNWCClient wcClient, String metadataFileName) {
+        this(wcClient, metadataFileName, Runtime.getRuntime().availableProcessors());
+    }
+
+    public NestedWorkspaceFinder(SVNWCClient wcClient, String metadataFileName, int numThreads) {
+        _wcClient = wcClient;
+        _metadataFileName = metadataFileName;
+        _numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Returns the directories underneath the specified working copy root, down to the specified depth,
+     * that are switched and contain a metadata file, in sorted order.
+     */
+    public List<File> findNestedWorkspaces(File rootDir, SVNDepth depth) throws SVNException {
+        int maxLevels = (depth == SVNDepth.INFINITY) ? Integer.MAX_VALUE : (depth == SVNDepth.IMMEDIATES) ? 1 : 0;
+
+        List<File> candidates = findMetadataDirectories(rootDir.getAbsoluteFile(), maxLevels);
+
+        //Working copy access isn't thread-safe, so check the candidates on this thread
+        List<File> workspaces = new ArrayList<File>();
+        for (File candidate : candidates) {
+            if (isSwitched(candidate)) {
+                workspaces.add(candidate);
+            }
+        }
+        return workspaces;
+    }
+
+    private boolean isSwitched(File dir) throws SVNException {
+        SVNInfo info, parentInfo;
+        try {
+            info = _wcClient.doInfo(dir, SVNRevision.WORKING);
+            parentInfo = _wcClient.doInfo(dir.getParentFile(), SVNRevision.WORKING);
+        } catch (SVNException e) {
+            return false; // unversioned
+        }
+        //A directory checked out separately isn't switched, even if it's inside this working copy
+        if (info.getWorkingCopyRoot() == null || !info.getWorkingCopyRoot().equals(parentInfo.getWorkingCopyRoot())) {
+            return false;
+        }
+        SVNURL expectedURL = parentInfo.getURL().appendPath(dir.getName(), false);
+        return !expectedURL.equals(info.getURL());
+    }
+
+    private List<File> findMetadataDirectories(File rootDir, int maxLevels) throws SVNException {
+        List<File> results = Collections.synchronizedList(new ArrayList<File>());
+        if (maxLevels == 0) {
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(_numThreads, new FinderThreadFactory());
+        Scan scan = new Scan(executor, results);
+        try {
+            File[] children = rootDir.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    scan.submit(child, 1, maxLevels);
+                }
+            }
+            scan.await();
+        } finally {
+            executor.shutdownNow();
+        }
+        List<File> sorted = new ArrayList<File>(results);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    /** Tracks the directories waiting to be scanned so the caller knows when the scan is complete. */
+    private class Scan {
+        private final ExecutorService _executor;
+        private final List<File> _results;
+        private int _pending;
+        private Throwable _failure;
+
+        public Scan(ExecutorService executor, List<File> results) {
+            _executor = executor;
+            _results = results;
+        }
+
+        public void submit(final File dir, final int level, final int maxLevels) {
+            if (!isScannableDirectory(dir)) {
+                return;
+            }
+            synchronized (this) {
+                _pending++;
+            }
+            _executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        scan(dir, level, maxLevels);
+                    } catch (Throwable t) {
+                        fail(t);
+                    } finally {
+                        synchronized (Scan.this) {
+                            if (--_pending == 0) {
+                                Scan.this.notifyAll();
+                            }
+                        }
+                    }
+                }
+            });
+        }
+
+        private void scan(File dir, int level, int maxLevels) {
+            String[] names = dir.list();
+            if (names == null) {
+                return;
+            }
+            for (String name : names) {
+                if (name.equals(_metadataFileName)) {
+                    _results.add(dir);
+                } else if (level < maxLevels) {
+                    submit(new File(dir, name), level + 1, maxLevels);
+                }
+            }
+        }
+
+        private synchronized void fail(Throwable t) {
+            if (_failure == null) {
+                _failure = t;
+            }
+        }
+
+        public synchronized void await() throws SVNException {
+            try {
+                while (_pending > 0) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                throw new SVNCancelException(SVNErrorMessage.create(SVNErrorCode.CANCELLED,
+                        "Interrupted while looking for nested workspaces"));
+            }
+            if (_failure != null) {
+                SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.UNKNOWN,
+                        "Error looking for nested workspaces: " + _failure, null, SVNErrorMessage.TYPE_ERROR, _failure),
+                        SVNLogType.CLIENT);
+            }
+        }
+    }
+
+    private static boolean isScannableDirectory(File file) {
+        if (file.getName().equals(SVNFileUtil.getAdminDirectoryName()) || !file.isDirectory()) {
+            return false;
+        }
+        //Subversion versions symbolic links as files, so don't follow them
+        try {
+            File parent = file.getParentFile().getCanonicalFile();
+            return new File(parent, file.getName()).getCanonicalFile().equals(new File(parent, file.getName()));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static class FinderThreadFactory implements ThreadFactory {
+        private final AtomicInteger _count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "savana-finder-" + _count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A sorted set of paths stored in a prefix-compressed trie.  The paths collected while listing or merging changes
+ * share long prefixes (the working copy root and the directories above each file), so storing each prefix once
+ * takes a fraction of the heap of a {@link java.util.TreeSet} of strings when there are millions of them.
+ * <p/>
+ * Iterates in the same order as a TreeSet of the same strings.  The iterator doesn't support removal, and the set
+ * must not be modified while it's being iterated.  Not thread-safe.
+ */
+public class PathTrie extends AbstractSet<String> {
+
+    private static final char[] EMPTY = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final Node _root = new Node(EMPTY);
+    private int _size;
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+        Node node = find((String) o);
+        return node != null && node._terminal;
+    }
+
+    @Override
+    public boolean add(String path) {
+        Node node = _root;
+        int pos = 0;
+        while (true) {
+            if (pos == path.length()) {
+                return mark(node);
+            }
+            int index = node.indexOf(path.charAt(pos));
+            if (index < 0) {
+                node.insertChild(-index - 1, new Node(path.substring(pos).toCharArray(), true));
+                _size++;
+                return true;
+            }
+            Node child = node._children[index];
+            int common = commonPrefix(child._label, path, pos);
+            if (common < child._label.length) {
+                //Split the child so that the common part of its label becomes a node of its own
+                Node prefix = new Node(copy(child._label, 0, common));
+                child._label = copy(child._label, common, child._label.length);
+                prefix._children = new Node[] {child};
+                node._children[index] = prefix;
+                child = prefix;
+            }
+            node = child;
+            pos += common;
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+        String path = (String) o;
+        List<Node> ancestors = new ArrayList<Node>();
+        Node node = _root;
+        int pos = 0;
+        while (pos < path.length()) {
+            int index = node.indexOf(path.charAt(pos));
+            if (index < 0) {
+                return false;
+            }
+            Node child = node._children[index];
+            if (commonPrefix(child._label, path, pos) < child._label.length) {
+                return false;
+            }
+            ancestors.add(node);
+            node = child;
+            pos += child._label.length;
+        }
+        if (!node._terminal) {
+            return false;
+        }
+        node._terminal = false;
+        _size--;
+
+        //Drop the node if it's a leaf, then merge what's left with its only child if that's all it's there for
+        if (!ancestors.isEmpty()) {
+            Node parent = ancestors.get(ancestors.size() - 1);
+            if (node._children.length == 0) {
+                parent.removeChild(node);
+                node = parent;
+                parent = (ancestors.size() > 1) ? ancestors.get(ancestors.size() - 2) : null;
+            }
+            if (parent != null && !node._terminal && node._children.length == 1) {
+                Node child = node._children[0];
+                child._label = concat(node._label, child._label);
+                parent._children[parent.indexOf(node._label[0])] = child;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        _root._children = NO_CHILDREN;
+        _root._terminal = false;
+        _size = 0;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new PathIterator();
+    }
+
+    private boolean mark(Node node) {
+        if (node._terminal) {
+            return false;
+        }
+        node._terminal = true;
+        _size++;
+        return true;
+    }
+
+    private Node find(String path) {
+        Node node = _root;
+        int pos = 0;
+        while (pos < path.length()) {
+            int index = node.indexOf(path.charAt(pos));
+            if (index < 0) {
+                return null;
+            }
+            node = node._children[index];
+            if (commonPrefix(node._label, path, pos) < node._label.length) {
+                return null;
+            }
+            pos += node._label.length;
+        }
+        return node;
+    }
+
+    private static int commonPrefix(char[] label, String path, int pos) {
+        int max = Math.min(label.length, path.length() - pos);
+        int i = 0;
+        while (i < max && label[i] == path.charAt(pos + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static char[] copy(char[] chars, int start, int end) {
+        char[] result = new char[end - start];
+        System.arraycopy(chars, start, result, 0, end - start);
+        return result;
+    }
+
+    private static char[] concat(char[] first, char[] second) {
+        char[] result = new char[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    /** A node whose children are sorted by the first character of their labels, which are all different. */
+    private static class Node {
+        private char[] _label;
+        private Node[] _children = NO_CHILDREN;
+        private boolean _terminal;
+
+        public Node(char[] label) {
+            _label = label;
+        }
+
+        public Node(char[] label, boolean terminal) {
+            _label = label;
+            _terminal = terminal;
+        }
+
+        /** Returns the index of the child starting with the character, or (-(insertion point) - 1). */
+        public int indexOf(char c) {
+            int low = 0;
+            int high = _children.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char midChar = _children[mid]._label[0];
+                if (midChar < c) {
+                    low = mid + 1;
+                } else if (midChar > c) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        public void insertChild(int index, Node child) {
+            Node[] children = new Node[_children.length + 1];
+            System.arraycopy(_children, 0, children, 0, index);
+            children[index] = child;
+            System.arraycopy(_children, index, children, index + 1, _children.length - index);
+            _children = children;
+        }
+
+        public void removeChild(Node child) {
+            int index = indexOf(child._label[0]);
+            Node[] children = (_children.length == 1) ? NO_CHILDREN : new Node[_children.length - 1];
+            System.arraycopy(_children, 0, children, 0, index);
+            System.arraycopy(_children, index + 1, children, index, _children.length - index - 1);
+            _children = children;
+        }
+    }
+
+    /** Walks the trie depth first, building each path from the labels on the way down. */
+    private class PathIterator implements Iterator<String> {
+        private final List<Node> _nodes = new ArrayList<Node>();
+        private final List<Integer> _nextChild = new ArrayList<Integer>();
+        private final StringBuilder _path = new StringBuilder();
+        private String _next;
+
+        public PathIterator() {
+            _nodes.add(_root);
+            _nextChild.add(0);
+            _next = _root._terminal ? "" : advance();
+        }
+
+        public boolean hasNext() {
+            return _next != null;
+        }
+
+        public String next() {
+            if (_next == null) {
+                throw new NoSuchElementException();
+            }
+            String next = _next;
+            _next = advance();
+            return next;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private String advance() {
+            while (!_nodes.isEmpty()) {
+                int last = _nodes.size() - 1;
+                Node node = _nodes.get(last);
+                int childIndex = _nextChild.get(last);
+                if (childIndex < node._children.length) {
+                    //Descend into the next child.  A path sorts before the paths it's a prefix of.
+                    _nextChild.set(last, childIndex + 1);
+                    Node child = node._children[childIndex];
+                    _path.append(child._label);
+                    _nodes.add(child);
+                    _nextChild.add(0);
+                    if (child._terminal) {
+                        return _path.toString();
+                    }
+                } else {
+                    //Done with this node, go back up
+                    _path.setLength(_path.length() - node._label.length);
+                    _nodes.remove(last);
+                    _nextChild.remove(last);
+                }
+            }
+            return null;
+        }
+    }
+}
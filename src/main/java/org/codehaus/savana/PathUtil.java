@@ -42,9 +42,13 @@ import java.util.LinkedList;
 import java.util.List;
 
 public class PathUtil {
-    public static File getValidatedAbsoluteFile(String path) {
+    public static File getValidatedAbsoluteFile(File currentDirectory, String path) {
+        File file = new File(path);
+        if (!file.isAbsolute()) {
+            file = new File(currentDirectory, path);
+        }
         // this is a little weird, but it matches the way SVNKit uses SVNPathUtil.validateFilePath() internally... 
-        return new File(SVNPathUtil.validateFilePath(new File(path).getAbsolutePath())).getAbsoluteFile();
+        return new File(SVNPathUtil.validateFilePath(file.getAbsolutePath())).getAbsoluteFile();
     }
 
     public static List<String> getAllSubpaths(String path) {
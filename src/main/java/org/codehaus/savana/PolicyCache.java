@@ -0,0 +1,135 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.util.SVNLogType;
+
+import java.io.ByteArrayInputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Process-wide cache of the policy objects created from the 'savana:policies' property of the trunk metadata file.
+ * Every branch of a project carries the same policies, so commands that load the metadata of many branches and
+ * long-running processes like hooks parse the policies and instantiate the policy class once per distinct value
+ * instead of once per metadata file.  Entries are keyed by a hash of the property value, so a change to the
+ * policies simply results in a new entry.  The least recently used entries are evicted once the cache is full.
+ * <p/>
+ * Policy instances are shared by every metadata file with the same policies, so they must not keep state
+ * beyond what's passed to {@link ISavanaPolicies#initialize}.  Set the "savana.policy-cache" system property
+ * to "false" to create new policy objects every time.
+ */
+public class PolicyCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 16;
+
+    private static final PolicyCache _sInstance = new PolicyCache(DEFAULT_MAX_ENTRIES);
+
+    private final Map<String, ISavanaPolicies> _entries;
+
+    public PolicyCache(final int maxEntries) {
+        _entries = new LinkedHashMap<String, ISavanaPolicies>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ISavanaPolicies> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static PolicyCache getInstance() {
+        return _sInstance;
+    }
+
+    /**
+     * Returns the initialized policies for the specified 'savana:policies' property value, creating them if
+     * they aren't cached.  Policies that fail to parse or that require a newer version of Savana aren't cached.
+     */
+    public ISavanaPolicies getPolicies(String policiesString) throws SVNException {
+        if ("false".equals(System.getProperty("savana.policy-cache"))) {
+            return createPolicies(policiesString);
+        }
+        String key = MetadataCache.toHex(MetadataCache.sha1(policiesString));
+        synchronized (_entries) {
+            ISavanaPolicies savanaPolicies = _entries.get(key);
+            if (savanaPolicies != null) {
+                return savanaPolicies;
+            }
+        }
+        //Create the policies outside the lock, if two threads race the last one wins which is harmless
+        ISavanaPolicies savanaPolicies = createPolicies(policiesString);
+        synchronized (_entries) {
+            _entries.put(key, savanaPolicies);
+        }
+        return savanaPolicies;
+    }
+
+    public int size() {
+        synchronized (_entries) {
+            return _entries.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (_entries) {
+            _entries.clear();
+        }
+    }
+
+    private static ISavanaPolicies createPolicies(String policiesString) throws SVNException {
+        //The policies string contains a Java Properties object, saved using Properties.store()
+        Properties properties = new Properties();
+        try {
+            // use Properties.load(InputStream) instead of Properties.load(Reader) for JDK 1.5 compatibility
+            properties.load(new ByteArrayInputStream(policiesString.getBytes("ISO-8859-1")));
+        } catch (Exception e) {
+            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.BAD_PROPERTY_VALUE,
+                    "Error parsing Savana policy properties: " + e), SVNLogType.CLIENT);
+        }
+
+        //Instantiate the policies implementation
+        String className = properties.getProperty(ISavanaPolicies.CLASS_KEY, DefaultSavanaPolicies.class.getName());
+        ISavanaPolicies savanaPolicies;
+        try {
+            savanaPolicies = (ISavanaPolicies) Class.forName(className).newInstance();
+        } catch(Exception e) {
+            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.BAD_PROPERTY_VALUE,
+                    "Error creating Savana policy class instance: " + className, null, SVNErrorMessage.TYPE_ERROR, e), SVNLogType.CLIENT);
+            return null; // unreachable
+        }
+        savanaPolicies.initialize(properties);
+
+        //Verify that Savana is new enough
+        savanaPolicies.validateSavanaVersion();
+
+        return savanaPolicies;
+    }
+}
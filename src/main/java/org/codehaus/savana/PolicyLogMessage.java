@@ -8,6 +8,8 @@ import org.tmatesoft.svn.core.internal.wc.SVNCommitUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.util.SVNLogType;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.regex.Pattern;
 
@@ -15,6 +17,9 @@ import java.util.regex.Pattern;
  * Validates promote log messages against a regular expression.  This is designed to fail
  * promotes early in the same way an installed commit hook will, but before Promote has
  * started making changes to the local working copy.
+ * <p/>
+ * Compiled patterns are cached by branch since the branch keywords are expanded before the pattern
+ * is compiled, so an instance should be reused when validating many messages (see {@link PolicyCache}).
  */
 public class PolicyLogMessage {
     private static final String DEFAULT_LOG_MESSAGE_ERROR =
@@ -28,22 +33,32 @@ public class PolicyLogMessage {
     private static final String DEFAULT_CODE_FREEZE_BREAK_PATTERN =
             ".*?code freeze break$";
 
+    private static final int MAX_CACHED_PATTERNS = 256;
+
     private final Properties _properties;
+    private final Map<String, Pattern> _patterns;
 
     public PolicyLogMessage(Properties properties) throws SVNException {
         _properties = properties;
+        _patterns = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+                return size() > MAX_CACHED_PATTERNS;
+            }
+        };
     }
 
     public void validateLogMessage(String logMessage, MetadataProperties metadataProperties, boolean codeFrozen) throws SVNException {
         // each branch type has its own regular expression that messages must match
         String prefix = "logmessage." + metadataProperties.getBranchType().name().toLowerCase() + ".";
 
-        // get the regular expression to match against the log message (if any) and expand variables
-        String pattern = _properties.getProperty(prefix + "pattern");
-        if (pattern == null) {
+        // get the regular expression to match against the log message (if any) with variables expanded
+        String template = _properties.getProperty(prefix + "pattern");
+        if (template == null) {
             return;  // nothing to validate, anything goes
         }
-        pattern = replaceBranchKeywords(metadataProperties, pattern);
+        Pattern compiled = getPattern(prefix + "pattern:" + getBranchKeywordsKey(metadataProperties), template, metadataProperties);
+        String pattern = compiled.pattern();
 
         SAVCommand._sLog.fine("Validating log message against pattern: " + pattern);
 
@@ -51,7 +66,7 @@ public class PolicyLogMessage {
         logMessage = SVNCommitUtil.validateCommitMessage(logMessage);
 
         // check the log message against the required pattern
-        if (!Pattern.compile(pattern, Pattern.DOTALL).matcher(logMessage).matches()) {
+        if (!compiled.matcher(logMessage).matches()) {
             // get the error message template and expand variables
             String error = _properties.getProperty(prefix + "error", DEFAULT_LOG_MESSAGE_ERROR);
             error = replaceBranchKeywords(metadataProperties, error);
@@ -66,7 +81,7 @@ public class PolicyLogMessage {
 
         // check the log message against the code freeze break pattern
         pattern = _properties.getProperty(prefix + "codefreezebreakpattern", DEFAULT_CODE_FREEZE_BREAK_PATTERN);
-        if (!Pattern.compile(pattern, Pattern.DOTALL).matcher(logMessage).matches()) {
+        if (!getPattern(prefix + "codefreezebreakpattern", pattern, null).matcher(logMessage).matches()) {
             // get the error message template and expand variables
             String error = _properties.getProperty(prefix + "codefreezeerror", DEFAULT_CODE_FREEZE_ERROR);
             error = replaceBranchKeywords(metadataProperties, error);
@@ -76,6 +91,30 @@ public class PolicyLogMessage {
         }
     }
 
+    /**
+     * Returns the compiled pattern for a template, expanding the branch keywords first if metadata properties are specified.
+     */
+    private Pattern getPattern(String key, String template, MetadataProperties metadataProperties) throws SVNException {
+        synchronized (_patterns) {
+            Pattern pattern = _patterns.get(key);
+            if (pattern != null) {
+                return pattern;
+            }
+        }
+        String expanded = (metadataProperties != null) ? replaceBranchKeywords(metadataProperties, template) : template;
+        Pattern pattern = Pattern.compile(expanded, Pattern.DOTALL);
+        synchronized (_patterns) {
+            _patterns.put(key, pattern);
+        }
+        return pattern;
+    }
+
+    private String getBranchKeywordsKey(MetadataProperties metadataProperties) throws SVNException {
+        return metadataProperties.getProjectName() + "\n" + metadataProperties.getBranchName() + "\n" +
+                metadataProperties.getBranchType() + "\n" + metadataProperties.getSourceName() + "\n" +
+                metadataProperties.getSourceBranchType();
+    }
+
     private String replaceBranchKeywords(MetadataProperties metadataProperties, String template) throws SVNException {
         template = replace(template, "@projectName", metadataProperties.getProjectName());
         template = replace(template, "@branchName", metadataProperties.getBranchName());
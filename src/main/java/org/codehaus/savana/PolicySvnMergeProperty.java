@@ -11,8 +11,8 @@ import java.util.Properties;
  * lots of user branch and promote activity the changes to "svn:mergeinfo"
  * can get distracting when viewing changesets or synchronizing changes.
  * <p>
- * Turning on this policy tells Savana to delete "svn:mergeinfo" at the
- * top level after every Synchronize and Promote operation, simulating
+ * Turning on this policy tells Savana to delete "svn:mergeinfo" throughout
+ * the working copy after every Synchronize and Promote operation, simulating
  * the behavior of Subversion 1.4.
  */
 public class PolicySvnMergeProperty {
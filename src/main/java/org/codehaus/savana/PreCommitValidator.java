@@ -0,0 +1,366 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.admin.ISVNChangeEntryHandler;
+import org.tmatesoft.svn.core.wc.admin.SVNChangeEntry;
+import org.tmatesoft.svn.core.wc.admin.SVNLookClient;
+import org.tmatesoft.svn.util.SVNLogType;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Enforces the Savana policies on the server, for use by a Subversion pre-commit hook.  The transaction is
+ * read directly from the repository on disk, and each changed path is attributed to the workspace whose
+ * metadata file is closest above it, so it works with any repository layout.  The checks are:
+ * <ol>
+ * <li>A changeset may only modify a single workspace, except that a remote promote may delete a user branch
+ * along with modifying the path that branch was copied from.</li>
+ * <li>The metadata file of a trunk or release branch may not be modified after it's created.</li>
+ * <li>The log message must satisfy the log message and code freeze policies of the project's trunk.</li>
+ * </ol>
+ * Changesets with a log message that starts with 'branch admin' are not restricted.  The policies are shared
+ * through the {@link PolicyCache}, so a long-running hook server parses them once per distinct value.
+ * <p/>
+ * The Savana version policy isn't applied to the changeset.  It requires a minimum version of the Savana
+ * client, but Subversion passes a pre-commit hook only the repository and the transaction name, so the
+ * committer's client version isn't known here.  Loading the policies still checks the version of the Savana
+ * that runs the hook, and the clients check their own version whenever they load the policies.
+ * <p/>
+ * An instance validates a single transaction (or revision, to test the hook) and isn't thread-safe.
+ */
+public class PreCommitValidator {
+
+    public static final String BRANCH_ADMIN_PREFIX = "branch admin";
+
+    private static final String[] METADATA_FILE_NAMES = {
+            MetadataFile.METADATA_FILE_NAME,
+            MetadataFile.METADATA_FILE_NAME_BACKWARD_COMPATIBLE,
+    };
+
+    private final SVNLookClient _lookClient;
+    private final File _repositoryRoot;
+    private final String _transactionName;
+    private final SVNRevision _revision;
+    private SVNRevision _baseRevision;
+
+    //Metadata of the workspace each directory belongs to, in the transaction and before it
+    private final Map<String, MetadataProperties> _workspaces = new HashMap<String, MetadataProperties>();
+    private final Map<String, MetadataProperties> _baseWorkspaces = new HashMap<String, MetadataProperties>();
+
+    /**
+     * Validates a transaction that's about to be committed.
+     */
+    public PreCommitValidator(SVNLookClient lookClient, File repositoryRoot, String transactionName) {
+        _lookClient = lookClient;
+        _repositoryRoot = repositoryRoot;
+        _transactionName = transactionName;
+        _revision = null;
+    }
+
+    /**
+     * Validates a revision that has already been committed, for testing the policies against existing history.
+     */
+    public PreCommitValidator(SVNLookClient lookClient, File repositoryRoot, SVNRevision revision) {
+        _lookClient = lookClient;
+        _repositoryRoot = repositoryRoot;
+        _transactionName = null;
+        _revision = revision;
+    }
+
+    /**
+     * Throws an SVNException with a message for the committer if the changeset violates the policies.
+     */
+    public void validate() throws SVNException {
+        String logMessage = getLogMessage();
+
+        //Branch administration commits have no restrictions
+        if (logMessage.startsWith(BRANCH_ADMIN_PREFIX)) {
+            return;
+        }
+
+        SortedMap<String, SVNChangeEntry> changes = getChanges();
+
+        //A remote promote deletes the user branch in the same changeset that modifies its source
+        MetadataProperties promotedBranch = getRemotePromotedBranch(changes);
+        if (promotedBranch != null) {
+            changes.remove(normalize(promotedBranch.getBranchPath()));
+        }
+
+        //Find the workspace each path belongs to
+        Map<String, MetadataProperties> workspaces = new TreeMap<String, MetadataProperties>();
+        List<String> otherPaths = new ArrayList<String>();
+        for (Map.Entry<String, SVNChangeEntry> entry : changes.entrySet()) {
+            String path = entry.getKey();
+            MetadataProperties workspace = getWorkspace(entry.getValue());
+            if (workspace != null) {
+                workspaces.put(workspace.getBranchPath(), workspace);
+            } else if (!isAddedParentDir(entry.getValue(), changes)) {
+                otherPaths.add(path);
+            }
+        }
+
+        //Normal commits may modify only one workspace
+        if (workspaces.size() + otherPaths.size() > 1) {
+            StringBuilder buf = new StringBuilder("The changeset modifies multiple workspaces:");
+            for (MetadataProperties workspace : workspaces.values()) {
+                buf.append("\n  ").append(getDescription(workspace));
+            }
+            for (String path : otherPaths) {
+                buf.append("\n  file: ").append(path);
+            }
+            fail(buf.toString());
+        }
+        if (!otherPaths.isEmpty()) {
+            fail("The changeset modifies a file outside the usual trunk, release and user branches:\n" +
+                    "  file: " + otherPaths.get(0));
+        }
+        if (workspaces.isEmpty()) {
+            return;
+        }
+        MetadataProperties workspace = workspaces.values().iterator().next();
+
+        //Verify that the metadata file isn't modified accidentally in a trunk or release branch.  Creating
+        //a branch is reported as a directory add along with a change to the metadata file.
+        if (workspace.getBranchType() != BranchType.USER_BRANCH) {
+            for (Map.Entry<String, SVNChangeEntry> entry : changes.entrySet()) {
+                String path = entry.getKey();
+                SVNChangeEntry parent = changes.get(SVNPathUtil.removeTail(path));
+                if (isMetadataFile(path) && entry.getValue().getType() != SVNChangeEntry.TYPE_ADDED &&
+                        (parent == null || parent.getType() != SVNChangeEntry.TYPE_ADDED)) {
+                    fail("The changeset may not modify Savana metadata files in the trunk or in a release branch:\n" +
+                            "  workspace: " + workspace.getBranchName() + "\n  metadata file: " + path);
+                }
+            }
+        }
+
+        //Verify the log message against the policies in the trunk, including code freeze
+        ISavanaPolicies savanaPolicies = getSavanaPolicies(workspace);
+        if (savanaPolicies != null) {
+            savanaPolicies.validateLogMessage(logMessage, workspace, workspace.isCodeFrozen());
+        }
+    }
+
+    /**
+     * Returns the message of a validation error for the committer, without the error code that
+     * Subversion adds when it reports the hook failure.
+     */
+    public static String getMessage(SVNException e) {
+        return e.getErrorMessage().getMessage().replaceFirst("^svn: E[0-9]+: ", "");
+    }
+
+    private String getLogMessage() throws SVNException {
+        String logMessage = (_transactionName != null) ?
+                _lookClient.doGetLog(_repositoryRoot, _transactionName) :
+                _lookClient.doGetLog(_repositoryRoot, _revision);
+        return (logMessage != null) ? logMessage.trim() : "";
+    }
+
+    private SortedMap<String, SVNChangeEntry> getChanges() throws SVNException {
+        final SortedMap<String, SVNChangeEntry> changes = new TreeMap<String, SVNChangeEntry>();
+        ISVNChangeEntryHandler handler = new ISVNChangeEntryHandler() {
+            public void handleEntry(SVNChangeEntry entry) throws SVNException {
+                changes.put(normalize(entry.getPath()), entry);
+            }
+        };
+        if (_transactionName != null) {
+            _lookClient.doGetChanged(_repositoryRoot, _transactionName, handler, false);
+        } else {
+            _lookClient.doGetChanged(_repositoryRoot, _revision, handler, false);
+        }
+        return changes;
+    }
+
+    private MetadataProperties getWorkspace(SVNChangeEntry change) throws SVNException {
+        String path = normalize(change.getPath());
+        String dir = (change.getKind() == SVNNodeKind.DIR) ? path : SVNPathUtil.removeTail(path);
+        //Deleted paths belong to the workspace they were in before the changeset
+        return findWorkspace(dir, change.getType() == SVNChangeEntry.TYPE_DELETED);
+    }
+
+    private MetadataProperties findWorkspace(String dir, boolean base) throws SVNException {
+        Map<String, MetadataProperties> cache = base ? _baseWorkspaces : _workspaces;
+        if (cache.containsKey(dir)) {
+            return cache.get(dir);
+        }
+        MetadataProperties workspace = readMetadataProperties(dir, base);
+        if (workspace == null && dir.length() > 0) {
+            workspace = findWorkspace(SVNPathUtil.removeTail(dir), base);
+        }
+        cache.put(dir, workspace);
+        return workspace;
+    }
+
+    /**
+     * Returns the properties of the metadata file in the specified directory, or null if there isn't one.
+     */
+    private MetadataProperties readMetadataProperties(String dir, boolean base) throws SVNException {
+        for (String metadataFileName : METADATA_FILE_NAMES) {
+            SVNProperties properties = getProperties(SVNPathUtil.append(dir, metadataFileName), base);
+            if (properties != null && properties.getStringValue(MetadataFile.PROP_BRANCH_PATH) != null) {
+                return new MetadataProperties(metadataFileName, properties);
+            }
+        }
+        return null;
+    }
+
+    private SVNProperties getProperties(String path, boolean base) throws SVNException {
+        try {
+            if (base) {
+                return _lookClient.doGetProperties(_repositoryRoot, "/" + path, getBaseRevision());
+            } else if (_transactionName != null) {
+                return _lookClient.doGetProperties(_repositoryRoot, "/" + path, _transactionName);
+            } else {
+                return _lookClient.doGetProperties(_repositoryRoot, "/" + path, _revision);
+            }
+        } catch (SVNException e) {
+            SVNErrorCode errorCode = e.getErrorMessage().getErrorCode();
+            if (errorCode == SVNErrorCode.FS_NOT_FOUND || errorCode == SVNErrorCode.FS_NOT_DIRECTORY) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private SVNRevision getBaseRevision() throws SVNException {
+        if (_baseRevision == null) {
+            //A transaction is checked for conflicts with newer revisions when it's committed, so the youngest
+            //revision is as good a base as the revision the transaction was created from
+            _baseRevision = (_transactionName != null) ?
+                    SVNRevision.create(_lookClient.doGetYoungestRevision(_repositoryRoot)) :
+                    SVNRevision.create(_revision.getNumber() - 1);
+        }
+        return _baseRevision;
+    }
+
+    /**
+     * Returns the metadata of the user branch deleted by a remote promote, or null if the changeset isn't one.
+     * A remote promote deletes exactly one user branch and modifies only the path that branch was copied from.
+     */
+    private MetadataProperties getRemotePromotedBranch(SortedMap<String, SVNChangeEntry> changes) throws SVNException {
+        String branchPath = null;
+        for (SVNChangeEntry change : changes.values()) {
+            if (change.getType() == SVNChangeEntry.TYPE_DELETED && isUserBranchRoot(normalize(change.getPath()))) {
+                if (branchPath != null) {
+                    return null;
+                }
+                branchPath = normalize(change.getPath());
+            }
+        }
+        if (branchPath == null || changes.size() == 1) {
+            return null;
+        }
+        MetadataProperties branch = findWorkspace(branchPath, true);
+        if (branch.getSourceRoot() == null) {
+            return null;
+        }
+        String sourcePath = normalize(branch.getSourcePath());
+        for (String path : changes.keySet()) {
+            if (!path.equals(branchPath) && !PathUtil.isSubpath(path, sourcePath)) {
+                return null;
+            }
+        }
+        return branch;
+    }
+
+    private boolean isUserBranchRoot(String path) throws SVNException {
+        MetadataProperties workspace = findWorkspace(path, true);
+        return workspace != null && workspace.getBranchType() == BranchType.USER_BRANCH &&
+                path.equals(normalize(workspace.getBranchPath()));
+    }
+
+    /**
+     * Creating a branch also creates any missing parent directories, which don't belong to a workspace.
+     */
+    private boolean isAddedParentDir(SVNChangeEntry change, SortedMap<String, SVNChangeEntry> changes) {
+        if (change.getType() != SVNChangeEntry.TYPE_ADDED || change.getKind() != SVNNodeKind.DIR ||
+                change.hasPropertyModifications()) {
+            return false;
+        }
+        String prefix = normalize(change.getPath()) + "/";
+        Iterator<String> it = changes.tailMap(prefix).keySet().iterator();
+        return it.hasNext() && it.next().startsWith(prefix);
+    }
+
+    private ISavanaPolicies getSavanaPolicies(MetadataProperties workspace) throws SVNException {
+        if (workspace.getBranchType() == BranchType.TRUNK) {
+            return workspace.getSavanaPolicies();
+        }
+        MetadataProperties trunk = findWorkspace(normalize(workspace.getTrunkPath()), false);
+        return (trunk != null) ? trunk.getSavanaPolicies() : null;
+    }
+
+    private static boolean isMetadataFile(String path) {
+        String name = SVNPathUtil.tail(path);
+        for (String metadataFileName : METADATA_FILE_NAMES) {
+            if (metadataFileName.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String getDescription(MetadataProperties workspace) {
+        switch (workspace.getBranchType()) {
+            case TRUNK:
+                return workspace.getBranchName();
+            case RELEASE_BRANCH:
+                return "release branch: " + workspace.getBranchName();
+            default:
+                return "user branch: " + workspace.getBranchName();
+        }
+    }
+
+    private static String normalize(String path) {
+        if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+
+    private static void fail(String message) throws SVNException {
+        SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.REPOS_HOOK_FAILURE, "{0}", message), SVNLogType.CLIENT);
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana;
+
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Replays the differences between the source and a user branch, as reported by a repository diff rooted
+ * at the source, into a commit editor rooted at the top of the repository.  The branch's metadata file
+ * is skipped, changes to svn:mergeinfo are optionally replaced by deletes, and the branch itself is
+ * deleted at the end of the edit so the promote and the delete are a single changeset.
+ * <p/>
+ * Files and directories that are deleted and then added again aren't allowed, to match a promote done in
+ * the working copy.  If there are any the commit is aborted, and they are returned by {@link #getReplacedPaths()}.
+ */
+public class PromoteEditor implements ISVNEditor {
+
+    private final ISVNEditor _commitEditor;
+    private final String _sourcePath;
+    private final String _branchPath;
+    private final long _branchRevision;
+    private final String _metadataFileName;
+    private final boolean _deleteMergeInfo;
+
+    private final List<String> _openAncestors = new ArrayList<String>();
+    private final LinkedList<Boolean> _addedDirs = new LinkedList<Boolean>();
+    private final Set<String> _addedFiles = new HashSet<String>();
+    private final Set<String> _deletedPaths = new HashSet<String>();
+    private final List<String> _replacedPaths = new ArrayList<String>();
+    private SVNCommitInfo _commitInfo;
+
+    public PromoteEditor(ISVNEditor commitEditor, String sourcePath, String branchPath, long branchRevision,
+                         String metadataFileName, boolean deleteMergeInfo) {
+        _commitEditor = commitEditor;
+        _sourcePath = sourcePath;
+        _branchPath = branchPath;
+        _branchRevision = branchRevision;
+        _metadataFileName = metadataFileName;
+        _deleteMergeInfo = deleteMergeInfo;
+    }
+
+    /** Returns the paths, relative to the source, that were replaced in the branch. */
+    public List<String> getReplacedPaths() {
+        return _replacedPaths;
+    }
+
+    /** Returns the result of the commit, or null if the edit hasn't finished or was aborted. */
+    public SVNCommitInfo getCommitInfo() {
+        return _commitInfo;
+    }
+
+    public void targetRevision(long revision) throws SVNException {
+    }
+
+    public void openRoot(long revision) throws SVNException {
+        //Open the directories from the top of the repository down to the source
+        _commitEditor.openRoot(revision);
+        for (String dir : PathUtil.getAllSubpaths(SVNPathUtil.removeTail(_sourcePath))) {
+            _commitEditor.openDir(dir, revision);
+            _openAncestors.add(dir);
+        }
+        _commitEditor.openDir(_sourcePath, revision);
+        _addedDirs.addFirst(Boolean.FALSE);
+    }
+
+    public void deleteEntry(String path, long revision) throws SVNException {
+        if (isMetadataFile(path)) {
+            return;
+        }
+        _deletedPaths.add(path);
+        CommandMetrics.countMergePath();
+        _commitEditor.deleteEntry(getRepositoryPath(path), revision);
+    }
+
+    public void absentDir(String path) throws SVNException {
+    }
+
+    public void absentFile(String path) throws SVNException {
+    }
+
+    public void addDir(String path, String copyFromPath, long copyFromRevision) throws SVNException {
+        checkReplaced(path);
+        CommandMetrics.countMergePath();
+        _commitEditor.addDir(getRepositoryPath(path), copyFromPath, copyFromRevision);
+        _addedDirs.addFirst(Boolean.TRUE);
+    }
+
+    public void openDir(String path, long revision) throws SVNException {
+        _commitEditor.openDir(getRepositoryPath(path), revision);
+        _addedDirs.addFirst(Boolean.FALSE);
+    }
+
+    public void changeDirProperty(String name, SVNPropertyValue value) throws SVNException {
+        if (SVNProperty.isRegularProperty(name)) {
+            if (SVNProperty.MERGE_INFO.equals(name) && _deleteMergeInfo) {
+                if (_addedDirs.getFirst()) {
+                    return;
+                }
+                value = null;
+            }
+            _commitEditor.changeDirProperty(name, value);
+        }
+    }
+
+    public void closeDir() throws SVNException {
+        _addedDirs.removeFirst();
+        _commitEditor.closeDir();
+    }
+
+    public void addFile(String path, String copyFromPath, long copyFromRevision) throws SVNException {
+        if (isMetadataFile(path)) {
+            return;
+        }
+        checkReplaced(path);
+        CommandMetrics.countMergePath();
+        _commitEditor.addFile(getRepositoryPath(path), copyFromPath, copyFromRevision);
+        _addedFiles.add(path);
+    }
+
+    public void openFile(String path, long revision) throws SVNException {
+        if (isMetadataFile(path)) {
+            return;
+        }
+        CommandMetrics.countMergePath();
+        _commitEditor.openFile(getRepositoryPath(path), revision);
+    }
+
+    public void changeFileProperty(String path, String name, SVNPropertyValue value) throws SVNException {
+        if (isMetadataFile(path) || !SVNProperty.isRegularProperty(name)) {
+            return;
+        }
+        if (SVNProperty.MERGE_INFO.equals(name) && _deleteMergeInfo) {
+            if (_addedFiles.contains(path)) {
+                return;
+            }
+            value = null;
+        }
+        _commitEditor.changeFileProperty(getRepositoryPath(path), name, value);
+    }
+
+    public void applyTextDelta(String path, String baseChecksum) throws SVNException {
+        if (isMetadataFile(path)) {
+            return;
+        }
+        _commitEditor.applyTextDelta(getRepositoryPath(path), baseChecksum);
+    }
+
+    public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+        if (isMetadataFile(path)) {
+            return SVNFileUtil.DUMMY_OUT;
+        }
+        return _commitEditor.textDeltaChunk(getRepositoryPath(path), diffWindow);
+    }
+
+    public void textDeltaEnd(String path) throws SVNException {
+        if (isMetadataFile(path)) {
+            return;
+        }
+        _commitEditor.textDeltaEnd(getRepositoryPath(path));
+    }
+
+    public void closeFile(String path, String textChecksum) throws SVNException {
+        if (isMetadataFile(path)) {
+            return;
+        }
+        _commitEditor.closeFile(getRepositoryPath(path), textChecksum);
+    }
+
+    public SVNCommitInfo closeEdit() throws SVNException {
+        if (!_replacedPaths.isEmpty()) {
+            _commitEditor.abortEdit();
+            return null;
+        }
+
+        //Close the source's ancestors that aren't shared with the branch
+        String commonAncestor = SVNPathUtil.getCommonPathAncestor(_sourcePath, _branchPath);
+        while (!_openAncestors.isEmpty() && !PathUtil.isSubpath(commonAncestor, last(_openAncestors))) {
+            _openAncestors.remove(_openAncestors.size() - 1);
+            _commitEditor.closeDir();
+        }
+
+        //Delete the branch
+        List<String> branchAncestors = PathUtil.getAllSubpaths(SVNPathUtil.removeTail(_branchPath));
+        branchAncestors.removeAll(_openAncestors);
+        for (String dir : branchAncestors) {
+            _commitEditor.openDir(dir, -1);
+        }
+        _commitEditor.deleteEntry(_branchPath, _branchRevision);
+        for (int i = 0; i < branchAncestors.size() + _openAncestors.size(); i++) {
+            _commitEditor.closeDir();
+        }
+
+        //Close the root
+        _commitEditor.closeDir();
+        _commitInfo = _commitEditor.closeEdit();
+        return _commitInfo;
+    }
+
+    public void abortEdit() throws SVNException {
+        _commitEditor.abortEdit();
+    }
+
+    private void checkReplaced(String path) {
+        if (_deletedPaths.contains(path)) {
+            _replacedPaths.add(path);
+        }
+    }
+
+    private boolean isMetadataFile(String path) {
+        return path.equals(_metadataFileName);
+    }
+
+    private String getRepositoryPath(String path) {
+        return SVNPathUtil.append(_sourcePath, path);
+    }
+
+    private static String last(List<String> list) {
+        return list.get(list.size() - 1);
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana;
+
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+import org.tmatesoft.svn.util.SVNLogType;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the edits a repository diff drives so they can be replayed into another editor later, eg. to fetch
+ * the changes a promote commits while the user is still writing the commit message.  The text deltas are copied
+ * into memory, so recording stops with an error once the edits take more than a maximum number of bytes and the
+ * caller should run the diff again against the real editor instead.
+ * <p/>
+ * Recording stops with a cancelled error if the recording thread is interrupted.
+ */
+public class RecordingEditor implements ISVNEditor {
+
+    private final long _maxBytes;
+    private final List<Edit> _edits = new ArrayList<Edit>();
+    private long _bytes;
+    private boolean _complete;
+
+    public RecordingEditor(long maxBytes) {
+        _maxBytes = maxBytes;
+    }
+
+    /** Returns true if the diff finished, so {@link #replay} drives a complete edit. */
+    public boolean isComplete() {
+        return _complete;
+    }
+
+    /** Returns the approximate number of bytes of memory used by the recorded edits. */
+    public long getBytes() {
+        return _bytes;
+    }
+
+    /** Drives the recorded edits into the specified editor and returns the result of its closeEdit(). */
+    public SVNCommitInfo replay(ISVNEditor editor) throws SVNException {
+        if (!_complete) {
+            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.ILLEGAL_TARGET,
+                    "Cannot replay an incomplete edit"), SVNLogType.CLIENT);
+        }
+        SVNCommitInfo commitInfo = null;
+        for (Edit edit : _edits) {
+            commitInfo = edit.replay(editor);
+        }
+        return commitInfo;
+    }
+
+    public void targetRevision(final long revision) throws SVNException {
+        record(new Edit(0) {
+            public SVNCommitInfo replay(ISVNEditor editor) throws SVNException {
+                editor.targetRevision(revision);
+                return null;
+            }
+        });
+    }
+
+    public void openRoot(final long revision) throws SVNException {
+        record(new Edit(0) {
+            public SVNCommitInfo replay(ISVNEditor editor) throws SVNException {
+                editor.openRoot(revision);
+                return null;
+            }
+        });
+    }
+
+    public void deleteEntry(final String path, final long revision) throws SVNException {
+        record(new Edit(path.length()) {
+            public SVNCommitInfo replay(ISVNEditor editor) throws SVNException {
+                editor.deleteEntry(path, revision);
+                return null;
+            }
+        });
+    }
+
+    public void absentDir(final String path) throws SVNException {
+        record(new Edit(path.length()) {
+            public SVNCommitInfo replay(ISVNEditor editor) throws SVNException {
+                editor.absentDir(path);
+                return null;
+            }
+        });
+    }
+
+    public void absentFile(final String path) throws SVNException {
+        record(new Edit(path.length()) {
+            public SVNCommitInfo replay(ISVNEditor editor) throws SVNException {
+                editor.absentFile(path);
+                return null;
+            }
+        });
+    }
+
+    public void addDir(final String path, final String copyFromPath, final long copyFromRevision) throws SVNException {
+        record(new Edit(path.length()) {
+            public SVNCommitInfo replay(ISVNEditor editor) throws SVNException {
+                editor.addDir(path, copyFromPath, copyFromRevision);
+                return null;
+            }
+        });
+    }
+
+    public void openDir(final String path, final long revision) throws SVNException {
+        record(new Edit(path.length()) {
+            public SVNCommitInfo replay(ISVNEditor editor) throws SVNException {
+                editor.openDir(path, revision);
+                return null;
+            }
+        });
+    }
+
+    public void changeDirProperty(final String name, final SVNPropertyValue value) throws SVNException {
+        record(new Edit(name.length() + getLength(value)) {
+            public SVNCommitInfo replay(ISVNEditor editor) throws SVNException {
+                editor.changeDirProperty(name, value);
+                return null;
+            }
+        });
+    }
+
+    public void closeDir() throws SVNException {
+        record(new Edit(0) {
+            public SVNCommitInfo replay(ISVNEditor editor) throws SVNException {
+                editor.closeDir();
+                return null;
+            }
+        });
+    }
+
+    public void addFile(final String path, final String copyFromPath, final long copyFromRevision) throws SVNException {
+        record(new Edit(path.length()) {
+            public SVNCommitInfo replay(ISVNEditor editor) throws SVNException {
+                editor.addFile(path, copyFromPath, copyFromRevision);
+                return null;
+            }
+        });
+    }
+
+    public void openFile(final String path, final long revision) throws SVNException {
+        record(new Edit(path.length()) {
+            public SVNCommitInfo replay(ISVNEditor editor) throws SVNException {
+                editor.openFile(path, revision);
+                return null;
+            }
+        });
+    }
+
+    public void changeFileProperty(final String path, final String name, final SVNPropertyValue value) throws SVNException {
+        record(new Edit(path.length() + name.length() + getLength(value)) {
+            public SVNCommitInfo replay(ISVNEditor editor) throws SVNException {
+                editor.changeFileProperty(path, name, value);
+                return null;
+            }
+        });
+    }
+
+    public void applyTextDelta(final String path, final String baseChecksum) throws SVNException {
+        record(new Edit(path.length()) {
+            public SVNCommitInfo replay(ISVNEditor editor) throws SVNException {
+                editor.applyTextDelta(path, baseChecksum);
+                return null;
+            }
+        });
+    }
+
+    public OutputStream textDeltaChunk(final String path, SVNDiffWindow diffWindow) throws SVNException {
+        //The diff reuses the window's buffer for the next window, so keep a copy
+        final SVNDiffWindow window = diffWindow.clone(ByteBuffer.allocate(diffWindow.getDataLength()));
+        record(new Edit(path.length() + diffWindow.getDataLength()) {
+            public SVNCommitInfo replay(ISVNEditor editor) throws SVNException {
+                SVNFileUtil.closeFile(editor.textDeltaChunk(path, window));
+                return null;
+            }
+        });
+        return SVNFileUtil.DUMMY_OUT;
+    }
+
+    public void textDeltaEnd(final String path) throws SVNException {
+        record(new Edit(path.length()) {
+            public SVNCommitInfo replay(ISVNEditor editor) throws SVNException {
+                editor.textDeltaEnd(path);
+                return null;
+            }
+        });
+    }
+
+    public void closeFile(final String path, final String textChecksum) throws SVNException {
+        record(new Edit(path.length()) {
+            public SVNCommitInfo replay(ISVNEditor editor) throws SVNException {
+                editor.closeFile(path, textChecksum);
+                return null;
+            }
+        });
+    }
+
+    public SVNCommitInfo closeEdit() throws SVNException {
+        record(new Edit(0) {
+            public SVNCommitInfo replay(ISVNEditor editor) throws SVNException {
+                return editor.closeEdit();
+            }
+        });
+        _complete = true;
+        return null;
+    }
+
+    public void abortEdit() throws SVNException {
+        _edits.clear();
+        _bytes = 0;
+    }
+
+    private void record(Edit edit) throws SVNException {
+        if (Thread.currentThread().isInterrupted()) {
+            SVNErrorManager.cancel("Recording the edits was cancelled", SVNLogType.CLIENT);
+        }
+        _bytes += edit._bytes;
+        if (_bytes > _maxBytes) {
+            _edits.clear();
+            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.CANCELLED,
+                    "The edits take more than " + _maxBytes + " bytes"), SVNLogType.CLIENT);
+        }
+        _edits.add(edit);
+    }
+
+    private static int getLength(SVNPropertyValue value) {
+        if (value == null) {
+            return 0;
+        }
+        return value.isString() ? value.getString().length() : value.getBytes().length;
+    }
+
+    private static abstract class Edit {
+        //Roughly what the edit costs in memory: the bytes of its paths, property values and text
+        private final int _bytes;
+
+        protected Edit(int bytes) {
+            _bytes = 32 + bytes;
+        }
+
+        public abstract SVNCommitInfo replay(ISVNEditor editor) throws SVNException;
+    }
+}
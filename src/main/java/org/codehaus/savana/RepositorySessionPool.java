@@ -0,0 +1,171 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps idle repository sessions open so that later phases of a command, and later commands run by the same
+ * process (eg. the daemon), can reuse them instead of paying for a new connection and authentication handshake.
+ * Sessions are matched by repository root and by the credentials they authenticated with, so that a command never
+ * reuses a session opened for a different user.  Sessions idle longer than the keep-alive time are closed, and
+ * sessions idle long enough that the server may have dropped them are tested before they're reused.
+ * <p/>
+ * Commands borrow sessions through a {@link RepositorySessions}, which returns them here when the command ends.
+ */
+public class RepositorySessionPool {
+    private static final Logger _sLog = Logger.getLogger("savana-info");
+
+    /** The default keep-alive time, override with '-Dsavana.session-keepalive=seconds'. */
+    public static final long DEFAULT_KEEP_ALIVE_SECONDS = 300;
+
+    /** Sessions idle for longer than this are tested before they're reused. */
+    private static final long HEALTH_CHECK_MILLIS = 30 * 1000;
+
+    private static final RepositorySessionPool _sInstance = new RepositorySessionPool(
+            Long.getLong("savana.session-keepalive", DEFAULT_KEEP_ALIVE_SECONDS) * 1000);
+
+    private final long _keepAliveMillis;
+    private final LinkedList<IdleSession> _idleSessions = new LinkedList<IdleSession>();
+
+    public RepositorySessionPool(long keepAliveMillis) {
+        _keepAliveMillis = keepAliveMillis;
+    }
+
+    /** Returns the pool shared by all the commands run by this process. */
+    public static RepositorySessionPool getInstance() {
+        return _sInstance;
+    }
+
+    /**
+     * Removes and returns an idle session for the repository that contains the specified URL that was opened with
+     * the same credentials, or null if there isn't one that's still usable.  The caller is responsible for setting
+     * the session's location.
+     */
+    public SVNRepository takeIdleSession(SVNURL url, String credentialsKey) {
+        if (credentialsKey == null) {
+            return null;
+        }
+        IdleSession idleSession;
+        while ((idleSession = removeIdleSession(url, credentialsKey)) != null) {
+            long idleMillis = System.currentTimeMillis() - idleSession._idleSince;
+            if (idleMillis < HEALTH_CHECK_MILLIS) {
+                return idleSession._repository;
+            }
+            //The server may have timed out the connection, make sure it still works
+            try {
+                idleSession._repository.testConnection();
+                return idleSession._repository;
+            } catch (SVNException e) {
+                _sLog.log(Level.FINE, "Discarding repository session that failed its health check: " + e);
+                idleSession._repository.closeSession();
+            }
+        }
+        return null;
+    }
+
+    private synchronized IdleSession removeIdleSession(SVNURL url, String credentialsKey) {
+        closeExpiredSessions();
+        //Prefer the most recently used session, it's the least likely to have been dropped by the server
+        for (ListIterator<IdleSession> it = _idleSessions.listIterator(_idleSessions.size()); it.hasPrevious();) {
+            IdleSession idleSession = it.previous();
+            if (idleSession._credentialsKey.equals(credentialsKey) && isAncestor(idleSession._root, url)) {
+                it.remove();
+                return idleSession;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a session to the pool, to be reused with the same credentials.  Sessions that never connected to the
+     * repository, or whose credentials aren't known, are closed instead.
+     */
+    public void putIdleSession(SVNRepository repository, String credentialsKey) {
+        SVNURL root;
+        try {
+            root = repository.getRepositoryRoot(false);
+        } catch (SVNException e) {
+            root = null;
+        }
+        if (root == null || credentialsKey == null || _keepAliveMillis <= 0) {
+            repository.closeSession();
+            return;
+        }
+        synchronized (this) {
+            closeExpiredSessions();
+            _idleSessions.add(new IdleSession(repository, root, credentialsKey));
+        }
+    }
+
+    public synchronized int getIdleSessionCount() {
+        return _idleSessions.size();
+    }
+
+    /** Closes all the idle sessions. */
+    public synchronized void closeAll() {
+        for (IdleSession idleSession : _idleSessions) {
+            idleSession._repository.closeSession();
+        }
+        _idleSessions.clear();
+    }
+
+    private void closeExpiredSessions() {
+        long expired = System.currentTimeMillis() - _keepAliveMillis;
+        //Sessions are added in the order they became idle, so the oldest are first
+        while (!_idleSessions.isEmpty() && _idleSessions.getFirst()._idleSince <= expired) {
+            _idleSessions.removeFirst()._repository.closeSession();
+        }
+    }
+
+    private static boolean isAncestor(SVNURL root, SVNURL url) {
+        String rootString = root.toString();
+        String urlString = url.toString();
+        return urlString.equals(rootString) ||
+                (urlString.startsWith(rootString) && (rootString.endsWith("/") || urlString.charAt(rootString.length()) == '/'));
+    }
+
+    private static class IdleSession {
+        private final SVNRepository _repository;
+        private final SVNURL _root;
+        private final String _credentialsKey;
+        private final long _idleSince = System.currentTimeMillis();
+
+        public IdleSession(SVNRepository repository, SVNURL root, String credentialsKey) {
+            _repository = repository;
+            _root = root;
+            _credentialsKey = credentialsKey;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana;
+
+import org.tmatesoft.svn.core.ISVNCanceller;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.io.ISVNTunnelProvider;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.wc.ISVNRepositoryPool;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.util.ISVNDebugLog;
+import org.tmatesoft.svn.util.SVNDebugLog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The repository sessions used by one command, borrowed from a {@link RepositorySessionPool} and returned to it
+ * when the command's client manager is disposed.  Sessions that may be reused are shared by all the SVNKit clients
+ * running on the same thread, the same way SVNKit's default pool shares them.  Sessions that may not be reused
+ * belong to the caller until they're released or the command ends.
+ * <p/>
+ * Sessions are pooled under a key that identifies the command's credentials, such as its username, password and
+ * configuration directory.  If the authentication manager is replaced, the key no longer describes the sessions,
+ * so they're closed instead of pooled.
+ * <p/>
+ * Counts how many sessions the command opened and how many it reused from earlier phases or commands.
+ */
+public class RepositorySessions implements ISVNRepositoryPool {
+
+    private final RepositorySessionPool _pool;
+    private final ISVNTunnelProvider _tunnelProvider;
+    private ISVNAuthenticationManager _authManager;
+    private String _credentialsKey;
+    private ISVNCanceller _canceller;
+    private ISVNDebugLog _debugLog;
+    private final Map<Thread, SVNRepository> _sharedSessions = new HashMap<Thread, SVNRepository>();
+    private final List<SVNRepository> _borrowedSessions = new ArrayList<SVNRepository>();
+    private int _sessionsOpened;
+    private int _sessionsReused;
+
+    public RepositorySessions(RepositorySessionPool pool, ISVNAuthenticationManager authManager, String credentialsKey,
+                              ISVNTunnelProvider tunnelProvider) {
+        _pool = pool;
+        _authManager = authManager;
+        _credentialsKey = credentialsKey;
+        _tunnelProvider = tunnelProvider;
+    }
+
+    /**
+     * Returns a session to the pool when the client manager uses one, otherwise closes it.  Use this instead of
+     * {@link SVNRepository#closeSession()} when done with a session from {@link SVNClientManager#createRepository}.
+     */
+    public static void release(SVNClientManager clientManager, SVNRepository repository) {
+        ISVNRepositoryPool repositoryPool = clientManager.getRepositoryPool();
+        if (repositoryPool instanceof RepositorySessions) {
+            ((RepositorySessions) repositoryPool).release(repository);
+        } else {
+            repository.closeSession();
+        }
+    }
+
+    /**
+     * Closes a session that may be in an unknown state (eg. after a failure in the middle of a request) so that
+     * nothing else reuses it.
+     */
+    public static void discard(SVNClientManager clientManager, SVNRepository repository) {
+        ISVNRepositoryPool repositoryPool = clientManager.getRepositoryPool();
+        if (repositoryPool instanceof RepositorySessions) {
+            ((RepositorySessions) repositoryPool).discard(repository);
+        } else {
+            repository.closeSession();
+        }
+    }
+
+    public SVNRepository createRepository(SVNURL url, boolean mayReuse) throws SVNException {
+        if (mayReuse) {
+            SVNRepository repository = getSharedSession();
+            if (repository != null) {
+                repository.setLocation(url, false);
+                return repository;
+            }
+        }
+
+        //Borrow an idle session if there's one for the same repository and credentials, otherwise open a new one
+        SVNRepository repository = _pool.takeIdleSession(url, getCredentialsKey());
+        if (repository != null) {
+            repository.setLocation(url, false);
+        } else {
+            repository = SVNRepositoryFactory.create(url);
+        }
+
+        synchronized (this) {
+            if (repository.getRepositoryRoot(false) != null) {
+                _sessionsReused++;
+            } else {
+                _sessionsOpened++;
+            }
+            configure(repository);
+            _borrowedSessions.add(repository);
+            if (mayReuse) {
+                _sharedSessions.put(Thread.currentThread(), repository);
+            }
+        }
+        return repository;
+    }
+
+    private synchronized SVNRepository getSharedSession() {
+        return _sharedSessions.get(Thread.currentThread());
+    }
+
+    private void configure(SVNRepository repository) {
+        repository.setAuthenticationManager(_authManager);
+        repository.setTunnelProvider(_tunnelProvider);
+        repository.setCanceller(_canceller != null ? _canceller : ISVNCanceller.NULL);
+        repository.setDebugLog(_debugLog != null ? _debugLog : SVNDebugLog.getDefaultLog());
+    }
+
+    /** Returns a session to the pool so that later callers can reuse it. */
+    public void release(SVNRepository repository) {
+        String credentialsKey;
+        synchronized (this) {
+            if (!_borrowedSessions.remove(repository)) {
+                return;
+            }
+            _sharedSessions.values().remove(repository);
+            credentialsKey = _credentialsKey;
+        }
+        _pool.putIdleSession(repository, credentialsKey);
+    }
+
+    /** Closes a session instead of returning it to the pool. */
+    public void discard(SVNRepository repository) {
+        synchronized (this) {
+            _borrowedSessions.remove(repository);
+            _sharedSessions.values().remove(repository);
+        }
+        repository.closeSession();
+    }
+
+    /** The number of sessions this command had to open. */
+    public synchronized int getSessionsOpened() {
+        return _sessionsOpened;
+    }
+
+    /** The number of sessions this command reused from earlier commands or phases. */
+    public synchronized int getSessionsReused() {
+        return _sessionsReused;
+    }
+
+    private synchronized String getCredentialsKey() {
+        return _credentialsKey;
+    }
+
+    public synchronized void setAuthenticationManager(ISVNAuthenticationManager authManager) {
+        if (authManager != _authManager) {
+            _credentialsKey = null;
+        }
+        _authManager = authManager;
+        for (SVNRepository repository : _borrowedSessions) {
+            repository.setAuthenticationManager(authManager);
+        }
+    }
+
+    public synchronized void setCanceller(ISVNCanceller canceller) {
+        _canceller = canceller;
+        for (SVNRepository repository : _borrowedSessions) {
+            repository.setCanceller(canceller != null ? canceller : ISVNCanceller.NULL);
+        }
+    }
+
+    public synchronized void setDebugLog(ISVNDebugLog debugLog) {
+        _debugLog = debugLog;
+        for (SVNRepository repository : _borrowedSessions) {
+            repository.setDebugLog(debugLog != null ? debugLog : SVNDebugLog.getDefaultLog());
+        }
+    }
+
+    @Deprecated
+    public void shutdownConnections(boolean shutdownAll) {
+        releaseAll();
+    }
+
+    public void dispose() {
+        releaseAll();
+    }
+
+    /**
+     * Closes all the sessions borrowed by the command instead of returning them to the pool, for when a command
+     * fails and may have left a session in the middle of a request.
+     */
+    public void discardAll() {
+        List<SVNRepository> repositories;
+        synchronized (this) {
+            repositories = new ArrayList<SVNRepository>(_borrowedSessions);
+            _borrowedSessions.clear();
+            _sharedSessions.clear();
+        }
+        for (SVNRepository repository : repositories) {
+            repository.closeSession();
+        }
+    }
+
+    private void releaseAll() {
+        List<SVNRepository> repositories;
+        String credentialsKey;
+        synchronized (this) {
+            repositories = new ArrayList<SVNRepository>(_borrowedSessions);
+            _borrowedSessions.clear();
+            _sharedSessions.clear();
+            credentialsKey = _credentialsKey;
+        }
+        for (SVNRepository repository : repositories) {
+            _pool.putIdleSession(repository, credentialsKey);
+        }
+    }
+}
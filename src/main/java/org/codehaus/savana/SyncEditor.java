@@ -0,0 +1,207 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana;
+
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Replays the changes to a source, as reported by a repository diff rooted at the source, into a commit
+ * editor rooted at the top of the repository so that they're committed to a user branch.  The branch's
+ * metadata file is skipped except to update its last merge revision in the same changeset.  Changes to
+ * svn:mergeinfo aren't replayed since Savana does its own merge tracking.  Directory properties are replayed
+ * with the source's values, so the caller checks that the branch didn't change the same properties first (see
+ * {@link ConflictAnalyzer#findPropertyConflicts}).
+ * <p/>
+ * Every path is opened at the branch revision the changes were checked against, so the commit fails with an
+ * out-of-date error instead of overwriting a change committed to the branch in the meantime.
+ */
+public class SyncEditor implements ISVNEditor {
+
+    private final ISVNEditor _commitEditor;
+    private final String _branchPath;
+    private final long _branchRevision;
+    private final String _metadataFileName;
+    private final long _mergeRevision;
+
+    private int _ancestorCount;
+    private int _depth;
+    private SVNCommitInfo _commitInfo;
+
+    public SyncEditor(ISVNEditor commitEditor, String branchPath, long branchRevision, String metadataFileName,
+                      long mergeRevision) {
+        _commitEditor = commitEditor;
+        _branchPath = branchPath;
+        _branchRevision = branchRevision;
+        _metadataFileName = metadataFileName;
+        _mergeRevision = mergeRevision;
+    }
+
+    /** Returns the result of the commit, or null if the edit hasn't finished or was aborted. */
+    public SVNCommitInfo getCommitInfo() {
+        return _commitInfo;
+    }
+
+    public void targetRevision(long revision) throws SVNException {
+    }
+
+    public void openRoot(long revision) throws SVNException {
+        //Open the directories from the top of the repository down to the branch
+        _commitEditor.openRoot(_branchRevision);
+        List<String> ancestors = PathUtil.getAllSubpaths(SVNPathUtil.removeTail(_branchPath));
+        for (String dir : ancestors) {
+            _commitEditor.openDir(dir, _branchRevision);
+        }
+        _ancestorCount = ancestors.size();
+        _commitEditor.openDir(_branchPath, _branchRevision);
+        _depth = 1;
+    }
+
+    public void deleteEntry(String path, long revision) throws SVNException {
+        if (isMetadataFile(path)) {
+            return;
+        }
+        CommandMetrics.countMergePath();
+        _commitEditor.deleteEntry(getRepositoryPath(path), _branchRevision);
+    }
+
+    public void absentDir(String path) throws SVNException {
+    }
+
+    public void absentFile(String path) throws SVNException {
+    }
+
+    public void addDir(String path, String copyFromPath, long copyFromRevision) throws SVNException {
+        CommandMetrics.countMergePath();
+        _commitEditor.addDir(getRepositoryPath(path), copyFromPath, copyFromRevision);
+        _depth++;
+    }
+
+    public void openDir(String path, long revision) throws SVNException {
+        _commitEditor.openDir(getRepositoryPath(path), _branchRevision);
+        _depth++;
+    }
+
+    public void changeDirProperty(String name, SVNPropertyValue value) throws SVNException {
+        if (SVNProperty.isRegularProperty(name) && !SVNProperty.MERGE_INFO.equals(name)) {
+            _commitEditor.changeDirProperty(name, value);
+        }
+    }
+
+    public void closeDir() throws SVNException {
+        if (--_depth == 0) {
+            //Record the merge in the branch's metadata file before closing the branch
+            String metadataFilePath = getRepositoryPath(_metadataFileName);
+            _commitEditor.openFile(metadataFilePath, _branchRevision);
+            _commitEditor.changeFileProperty(metadataFilePath, MetadataFile.PROP_LAST_MERGE_REVISION,
+                    SVNPropertyValue.create(Long.toString(_mergeRevision)));
+            _commitEditor.closeFile(metadataFilePath, null);
+        }
+        _commitEditor.closeDir();
+    }
+
+    public void addFile(String path, String copyFromPath, long copyFromRevision) throws SVNException {
+        if (isMetadataFile(path)) {
+            return;
+        }
+        CommandMetrics.countMergePath();
+        _commitEditor.addFile(getRepositoryPath(path), copyFromPath, copyFromRevision);
+    }
+
+    public void openFile(String path, long revision) throws SVNException {
+        if (isMetadataFile(path)) {
+            return;
+        }
+        CommandMetrics.countMergePath();
+        _commitEditor.openFile(getRepositoryPath(path), _branchRevision);
+    }
+
+    public void changeFileProperty(String path, String name, SVNPropertyValue value) throws SVNException {
+        if (isMetadataFile(path) || !SVNProperty.isRegularProperty(name) || SVNProperty.MERGE_INFO.equals(name)) {
+            return;
+        }
+        _commitEditor.changeFileProperty(getRepositoryPath(path), name, value);
+    }
+
+    public void applyTextDelta(String path, String baseChecksum) throws SVNException {
+        if (isMetadataFile(path)) {
+            return;
+        }
+        _commitEditor.applyTextDelta(getRepositoryPath(path), baseChecksum);
+    }
+
+    public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+        if (isMetadataFile(path)) {
+            return SVNFileUtil.DUMMY_OUT;
+        }
+        return _commitEditor.textDeltaChunk(getRepositoryPath(path), diffWindow);
+    }
+
+    public void textDeltaEnd(String path) throws SVNException {
+        if (isMetadataFile(path)) {
+            return;
+        }
+        _commitEditor.textDeltaEnd(getRepositoryPath(path));
+    }
+
+    public void closeFile(String path, String textChecksum) throws SVNException {
+        if (isMetadataFile(path)) {
+            return;
+        }
+        _commitEditor.closeFile(getRepositoryPath(path), textChecksum);
+    }
+
+    public SVNCommitInfo closeEdit() throws SVNException {
+        //Close the branch's ancestors and the root
+        for (int i = 0; i < _ancestorCount + 1; i++) {
+            _commitEditor.closeDir();
+        }
+        _commitInfo = _commitEditor.closeEdit();
+        return _commitInfo;
+    }
+
+    public void abortEdit() throws SVNException {
+        _commitEditor.abortEdit();
+    }
+
+    private boolean isMetadataFile(String path) {
+        return path.equals(_metadataFileName);
+    }
+
+    private String getRepositoryPath(String path) {
+        return SVNPathUtil.append(_branchPath, path);
+    }
+}
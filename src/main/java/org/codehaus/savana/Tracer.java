@@ -0,0 +1,270 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Records nested, timed spans for the phases of a command: wall time, CPU time of the command thread,
+ * and the repository round trips and bytes sent and received while the span was open.  The spans can be
+ * written as JSON or in the Chrome trace-event format, which chrome://tracing and Perfetto can display.
+ * <p/>
+ * Spans are opened and closed by the thread running the command.  Work that command hands off to other
+ * threads is counted in the wall time and network totals but not the CPU time.  Phases that run on other
+ * threads can be added once they're finished with {@link #add}, which records their wall time only.
+ */
+public class Tracer {
+
+    private final TracingDebugLog _network;
+    private final ThreadMXBean _threadBean;
+    private final long _originNanos;
+    private final long _originMillis;
+    private final Span _root;
+    private final LinkedList<Span> _open = new LinkedList<Span>();
+
+    public Tracer(String name) {
+        _network = TracingDebugLog.install();
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        _threadBean = threadBean.isCurrentThreadCpuTimeSupported() ? threadBean : null;
+        _originMillis = System.currentTimeMillis();
+        _originNanos = System.nanoTime();
+        _root = new Span(name);
+        _open.add(_root);
+    }
+
+    public Span getRoot() {
+        return _root;
+    }
+
+    /** Opens a new span nested inside the innermost open span. */
+    public synchronized void start(String name) {
+        Span span = new Span(name);
+        _open.getLast()._children.add(span);
+        _open.add(span);
+    }
+
+    /**
+     * Closes the innermost open span with the specified name, along with any spans opened inside it that
+     * weren't closed.  Does nothing if no open span has the name.
+     */
+    public synchronized void end(String name) {
+        int index = _open.size() - 1;
+        while (index > 0 && !_open.get(index)._name.equals(name)) {
+            index--;
+        }
+        while (index > 0 && _open.size() > index) {
+            _open.removeLast().close();
+        }
+    }
+
+    /**
+     * Adds a finished span that ran on another thread, between two {@link System#nanoTime()} values, inside the
+     * innermost open span.  Its CPU time and network totals aren't known and are left at zero.
+     */
+    public synchronized void add(String name, String thread, long startNanos, long endNanos) {
+        _open.getLast()._children.add(new Span(name, thread, startNanos, endNanos - startNanos));
+    }
+
+    /** Closes all the spans that are still open, including the root span. */
+    public synchronized void finish() {
+        while (!_open.isEmpty()) {
+            _open.removeLast().close();
+        }
+    }
+
+    /** Writes the spans as a tree of JSON objects, starting with the root span. */
+    public synchronized void writeJson(Writer out) throws IOException {
+        writeJson(out, _root, "");
+        out.write("\n");
+        out.flush();
+    }
+
+    private void writeJson(Writer out, Span span, String indent) throws IOException {
+        out.write(indent + "{\"name\": " + quote(span._name) +
+                ", \"startMicros\": " + span.getStartMicros() +
+                ", \"wallMicros\": " + span.getWallMicros() +
+                ", \"cpuMicros\": " + span.getCpuMicros() +
+                ", \"roundTrips\": " + span.getRoundTrips() +
+                ", \"bytesSent\": " + span.getBytesSent() +
+                ", \"bytesReceived\": " + span.getBytesReceived() +
+                (span._thread != null ? ", \"thread\": " + quote(span._thread) : ""));
+        if (!span._children.isEmpty()) {
+            out.write(", \"children\": [\n");
+            for (int i = 0; i < span._children.size(); i++) {
+                writeJson(out, span._children.get(i), indent + "  ");
+                out.write(i < span._children.size() - 1 ? ",\n" : "\n");
+            }
+            out.write(indent + "]");
+        }
+        out.write("}");
+    }
+
+    /** Writes the spans as "complete" events in the Chrome trace-event format. */
+    public synchronized void writeChromeTrace(Writer out) throws IOException {
+        List<Span> spans = new ArrayList<Span>();
+        collect(_root, spans);
+        //Spans from other threads get their own rows so they can overlap the command thread's spans
+        List<String> threads = new ArrayList<String>();
+        out.write("{\"traceEvents\": [\n");
+        for (int i = 0; i < spans.size(); i++) {
+            Span span = spans.get(i);
+            if (span._thread != null && !threads.contains(span._thread)) {
+                threads.add(span._thread);
+            }
+            int tid = (span._thread != null) ? threads.indexOf(span._thread) + 2 : 1;
+            out.write("  {\"name\": " + quote(span._name) +
+                    ", \"cat\": \"savana\", \"ph\": \"X\", \"pid\": 1, \"tid\": " + tid +
+                    ", \"ts\": " + (_originMillis * 1000 + span.getStartMicros()) +
+                    ", \"dur\": " + span.getWallMicros() +
+                    ", \"args\": {\"cpuMicros\": " + span.getCpuMicros() +
+                    ", \"roundTrips\": " + span.getRoundTrips() +
+                    ", \"bytesSent\": " + span.getBytesSent() +
+                    ", \"bytesReceived\": " + span.getBytesReceived() + "}}");
+            out.write(i < spans.size() - 1 ? ",\n" : "\n");
+        }
+        out.write("], \"displayTimeUnit\": \"ms\"}\n");
+        out.flush();
+    }
+
+    private void collect(Span span, List<Span> spans) {
+        spans.add(span);
+        for (Span child : span._children) {
+            collect(child, spans);
+        }
+    }
+
+    private static String quote(String string) {
+        StringBuilder buf = new StringBuilder("\"");
+        for (int i = 0; i < string.length(); i++) {
+            char ch = string.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                buf.append('\\').append(ch);
+            } else if (ch < 0x20) {
+                buf.append(String.format("\\u%04x", (int) ch));
+            } else {
+                buf.append(ch);
+            }
+        }
+        return buf.append('"').toString();
+    }
+
+    private long getCpuNanos() {
+        return (_threadBean != null) ? _threadBean.getCurrentThreadCpuTime() : 0;
+    }
+
+    public class Span {
+        private final String _name;
+        private final String _thread;
+        private final List<Span> _children = new ArrayList<Span>();
+        private final long _startNanos;
+        private final long _startCpuNanos;
+        private final long _startRoundTrips;
+        private final long _startBytesSent;
+        private final long _startBytesReceived;
+        private long _wallNanos = -1;
+        private long _cpuNanos;
+        private long _roundTrips;
+        private long _bytesSent;
+        private long _bytesReceived;
+
+        private Span(String name) {
+            _name = name;
+            _thread = null;
+            _startNanos = System.nanoTime();
+            _startCpuNanos = getCpuNanos();
+            _startRoundTrips = _network.getRoundTrips();
+            _startBytesSent = _network.getBytesSent();
+            _startBytesReceived = _network.getBytesReceived();
+        }
+
+        private Span(String name, String thread, long startNanos, long wallNanos) {
+            _name = name;
+            _thread = thread;
+            _startNanos = startNanos;
+            _startCpuNanos = 0;
+            _startRoundTrips = 0;
+            _startBytesSent = 0;
+            _startBytesReceived = 0;
+            _wallNanos = Math.max(0, wallNanos);
+        }
+
+        private void close() {
+            _wallNanos = System.nanoTime() - _startNanos;
+            _cpuNanos = getCpuNanos() - _startCpuNanos;
+            _roundTrips = _network.getRoundTrips() - _startRoundTrips;
+            _bytesSent = _network.getBytesSent() - _startBytesSent;
+            _bytesReceived = _network.getBytesReceived() - _startBytesReceived;
+        }
+
+        public String getName() {
+            return _name;
+        }
+
+        /** Returns the name of the thread the span ran on, or null if it ran on the command thread. */
+        public String getThread() {
+            return _thread;
+        }
+
+        public List<Span> getChildren() {
+            return _children;
+        }
+
+        public boolean isClosed() {
+            return _wallNanos >= 0;
+        }
+
+        public long getStartMicros() {
+            return (_startNanos - _originNanos) / 1000;
+        }
+
+        public long getWallMicros() {
+            return Math.max(0, _wallNanos) / 1000;
+        }
+
+        public long getCpuMicros() {
+            return _cpuNanos / 1000;
+        }
+
+        public long getRoundTrips() {
+            return _roundTrips;
+        }
+
+        public long getBytesSent() {
+            return _bytesSent;
+        }
+
+        public long getBytesReceived() {
+            return _bytesReceived;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana;
+
+import org.tmatesoft.svn.util.ISVNDebugLog;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Counts the bytes sent to and received from svn:// and http:// repositories, and the number of round trips,
+ * by wrapping the network streams that SVNKit passes through its debug log.  Everything else is passed
+ * through to the debug log that was installed before.
+ * <p/>
+ * A round trip is counted each time the client starts sending after it has received something, so a
+ * request followed by its response counts once however many writes and reads it took.
+ */
+public class TracingDebugLog implements ISVNDebugLog {
+
+    private static TracingDebugLog _sInstance;
+
+    private final ISVNDebugLog _delegate;
+    private final AtomicLong _bytesSent = new AtomicLong();
+    private final AtomicLong _bytesReceived = new AtomicLong();
+    private final AtomicLong _roundTrips = new AtomicLong();
+    private final AtomicBoolean _receiving = new AtomicBoolean(true);
+
+    private TracingDebugLog(ISVNDebugLog delegate) {
+        _delegate = delegate;
+    }
+
+    /** Installs the tracing debug log as SVNKit's default debug log, if it isn't already, and returns it. */
+    public static synchronized TracingDebugLog install() {
+        if (_sInstance == null) {
+            _sInstance = new TracingDebugLog(SVNDebugLog.getDefaultLog());
+            SVNDebugLog.setDefaultLog(_sInstance);
+        }
+        return _sInstance;
+    }
+
+    public long getBytesSent() {
+        return _bytesSent.get();
+    }
+
+    public long getBytesReceived() {
+        return _bytesReceived.get();
+    }
+
+    public long getRoundTrips() {
+        return _roundTrips.get();
+    }
+
+    public InputStream createLogStream(SVNLogType logType, InputStream in) {
+        in = _delegate.createLogStream(logType, in);
+        return (logType == SVNLogType.NETWORK) ? new CountingInputStream(in) : in;
+    }
+
+    public OutputStream createLogStream(SVNLogType logType, OutputStream out) {
+        out = _delegate.createLogStream(logType, out);
+        return (logType == SVNLogType.NETWORK) ? new CountingOutputStream(out) : out;
+    }
+
+    public OutputStream createOutputLogStream() {
+        return _delegate.createOutputLogStream();
+    }
+
+    public OutputStream createInputLogStream() {
+        return _delegate.createInputLogStream();
+    }
+
+    public void flushStream(Object stream) {
+        _delegate.flushStream(stream instanceof CountingInputStream ? ((CountingInputStream) stream).getIn() :
+                stream instanceof CountingOutputStream ? ((CountingOutputStream) stream).getOut() : stream);
+    }
+
+    public void logError(SVNLogType logType, String message) {
+        _delegate.logError(logType, message);
+    }
+
+    public void logError(SVNLogType logType, Throwable th) {
+        _delegate.logError(logType, th);
+    }
+
+    public void logSevere(SVNLogType logType, String message) {
+        _delegate.logSevere(logType, message);
+    }
+
+    public void logSevere(SVNLogType logType, Throwable th) {
+        _delegate.logSevere(logType, th);
+    }
+
+    public void logFine(SVNLogType logType, Throwable th) {
+        _delegate.logFine(logType, th);
+    }
+
+    public void logFine(SVNLogType logType, String message) {
+        _delegate.logFine(logType, message);
+    }
+
+    public void logFiner(SVNLogType logType, Throwable th) {
+        _delegate.logFiner(logType, th);
+    }
+
+    public void logFiner(SVNLogType logType, String message) {
+        _delegate.logFiner(logType, message);
+    }
+
+    public void logFinest(SVNLogType logType, Throwable th) {
+        _delegate.logFinest(logType, th);
+    }
+
+    public void logFinest(SVNLogType logType, String message) {
+        _delegate.logFinest(logType, message);
+    }
+
+    public void log(SVNLogType logType, Throwable th, Level logLevel) {
+        _delegate.log(logType, th, logLevel);
+    }
+
+    public void log(SVNLogType logType, String message, Level logLevel) {
+        _delegate.log(logType, message, logLevel);
+    }
+
+    public void log(SVNLogType logType, String message, byte[] data) {
+        _delegate.log(logType, message, data);
+    }
+
+    private void sent(long count) {
+        if (count > 0) {
+            _bytesSent.addAndGet(count);
+            if (_receiving.compareAndSet(true, false)) {
+                _roundTrips.incrementAndGet();
+            }
+        }
+    }
+
+    private void received(long count) {
+        if (count > 0) {
+            _bytesReceived.addAndGet(count);
+            _receiving.set(true);
+        }
+    }
+
+    private class CountingInputStream extends FilterInputStream {
+        public CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        public InputStream getIn() {
+            return in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            received(b >= 0 ? 1 : 0);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            received(count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long count = super.skip(n);
+            received(count);
+            return count;
+        }
+    }
+
+    private class CountingOutputStream extends FilterOutputStream {
+        public CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        public OutputStream getOut() {
+            return out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            sent(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            sent(len);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana;
+
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc2.SvnGetInfo;
+import org.tmatesoft.svn.core.wc2.SvnGetProperties;
+import org.tmatesoft.svn.core.wc2.SvnInfo;
+import org.tmatesoft.svn.core.wc2.SvnOperationFactory;
+import org.tmatesoft.svn.core.wc2.SvnTarget;
+import org.tmatesoft.svn.util.SVNLogType;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide cache of the workspaces found in local working copies, used by {@link WorkingCopyInfo}.  It remembers
+ * which workspace root each directory belongs to, so the search up the parent directories for a metadata file
+ * is done once, and the metadata properties and repository location of each workspace root, which are read from
+ * the working copy with a single working copy database connection.  Targets and commands that share a workspace
+ * root share its entry.
+ * <p/>
+ * Entries are checked against the modification times and sizes of the files they were read from: the
+ * directories searched, the metadata file and the working copy administrative files that hold its properties.
+ * File times may only be accurate to the second, so entries read within {@link #RACY_MILLIS} of one of their
+ * files changing aren't cached since a second change may not be noticed.  Set the "savana.wc-cache" system
+ * property to "false" to read the working copy every time.
+ */
+public class WorkingCopyCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    //How long after a file changes before a change to it is certain to give it a different modification time
+    public static final long RACY_MILLIS = 2000;
+
+    private static final WorkingCopyCache _sInstance = new WorkingCopyCache(DEFAULT_MAX_ENTRIES);
+
+    private final Map<File, Lookup> _lookups;
+    private final Map<File, Workspace> _workspaces;
+    private int _hits;
+    private int _misses;
+
+    public WorkingCopyCache(int maxEntries) {
+        _lookups = newLruMap(maxEntries);
+        _workspaces = newLruMap(maxEntries);
+    }
+
+    public static WorkingCopyCache getInstance() {
+        return _sInstance;
+    }
+
+    /**
+     * Returns the workspace that contains the specified directory: the nearest directory at or above it with a
+     * metadata file, its metadata properties and its location in the repository.
+     */
+    public Workspace getWorkspace(SVNClientManager clientManager, File directory) throws SVNException {
+        directory = directory.getAbsoluteFile();
+        boolean enabled = !"false".equals(System.getProperty("savana.wc-cache"));
+
+        //Find the workspace root
+        File rootDir = enabled ? getCachedRootDir(directory) : null;
+        if (rootDir == null) {
+            rootDir = findRootDir(directory, enabled);
+        }
+
+        //Read the metadata file and the repository location of the root
+        if (enabled) {
+            synchronized (this) {
+                Workspace workspace = _workspaces.get(rootDir);
+                if (workspace != null && workspace._stamp.isCurrent()) {
+                    _hits++;
+                    return workspace;
+                }
+                _misses++;
+            }
+        }
+        Workspace workspace = readWorkspace(clientManager, rootDir);
+        if (enabled && !workspace._stamp.isRacy()) {
+            synchronized (this) {
+                _workspaces.put(rootDir, workspace);
+            }
+        }
+        return workspace;
+    }
+
+    /** Returns the number of workspaces returned from the cache. */
+    public synchronized int getHits() {
+        return _hits;
+    }
+
+    /** Returns the number of workspaces read from the working copy because they weren't cached or had changed. */
+    public synchronized int getMisses() {
+        return _misses;
+    }
+
+    public synchronized void clear() {
+        _lookups.clear();
+        _workspaces.clear();
+        _hits = 0;
+        _misses = 0;
+    }
+
+    private synchronized File getCachedRootDir(File directory) {
+        Lookup lookup = _lookups.get(directory);
+        return (lookup != null && lookup._stamp.isCurrent()) ? lookup._rootDir : null;
+    }
+
+    private File findRootDir(File directory, boolean enabled) throws SVNException {
+        List<File> searched = new ArrayList<File>();
+        long readMillis = System.currentTimeMillis();
+        for (File dir = directory; dir != null; dir = dir.getParentFile()) {
+            //Adding or removing a metadata file changes the time of the directory that contains it
+            searched.add(dir);
+            if (findMetadataFile(dir) != null) {
+                Stamp stamp = new Stamp(readMillis, searched);
+                if (enabled && !stamp.isRacy()) {
+                    synchronized (this) {
+                        _lookups.put(directory, new Lookup(dir, stamp));
+                    }
+                }
+                return dir;
+            }
+        }
+        String errorMessage = "ERROR: Current directory is not part of a working copy.";
+        SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.CLIENT_VERSIONED_PATH_REQUIRED, errorMessage), SVNLogType.CLIENT);
+        return null;
+    }
+
+    private static MetadataFile findMetadataFile(File dir) {
+        MetadataFile metadataFile = new MetadataFile(dir, MetadataFile.METADATA_FILE_NAME);
+        if (!metadataFile.exists()) {
+            metadataFile = new MetadataFile(dir, MetadataFile.METADATA_FILE_NAME_BACKWARD_COMPATIBLE);
+        }
+        return metadataFile.exists() ? metadataFile : null;
+    }
+
+    private static Workspace readWorkspace(SVNClientManager clientManager, File rootDir) throws SVNException {
+        long readMillis = System.currentTimeMillis();
+        MetadataFile metadataFile = findMetadataFile(rootDir);
+        if (metadataFile == null) {
+            String errorMessage = "ERROR: Current directory is not part of a working copy.";
+            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.CLIENT_VERSIONED_PATH_REQUIRED, errorMessage), SVNLogType.CLIENT);
+        }
+        Stamp stamp = new Stamp(readMillis, getAdminFiles(metadataFile));
+
+        //Read the properties and the location with one working copy context instead of opening the working copy
+        //database once for each
+        SvnOperationFactory operationFactory = new SvnOperationFactory();
+        operationFactory.setOptions(clientManager.getOptions());
+        operationFactory.setAutoCloseContext(false);
+        SVNProperties properties;
+        SvnInfo info;
+        try {
+            SvnGetProperties getProperties = operationFactory.createGetProperties();
+            getProperties.setSingleTarget(SvnTarget.fromFile(metadataFile, SVNRevision.WORKING));
+            getProperties.setRevision(SVNRevision.WORKING);
+            getProperties.setDepth(SVNDepth.EMPTY);
+            properties = getProperties.run();
+
+            SvnGetInfo getInfo = operationFactory.createGetInfo();
+            getInfo.setSingleTarget(SvnTarget.fromFile(rootDir, SVNRevision.WORKING));
+            getInfo.setRevision(SVNRevision.WORKING);
+            getInfo.setDepth(SVNDepth.EMPTY);
+            info = getInfo.run();
+        } finally {
+            operationFactory.dispose();
+        }
+        MetadataProperties metadataProperties = new MetadataProperties(metadataFile.getName(),
+                (properties != null) ? properties : new SVNProperties());
+        return new Workspace(rootDir, metadataFile, metadataProperties, info.getUrl(), info.getRepositoryRootUrl(), stamp);
+    }
+
+    /** Returns the files that hold the metadata file and its properties in the supported working copy formats. */
+    private static List<File> getAdminFiles(MetadataFile metadataFile) {
+        List<File> files = new ArrayList<File>();
+        files.add(metadataFile);
+        File adminDir = new File(metadataFile.getParentFile(), ".svn");
+        files.add(new File(adminDir, "entries"));
+        files.add(new File(adminDir, "props/" + metadataFile.getName() + ".svn-work"));
+        //Since Subversion 1.7 the properties are in one database at the root of the working copy
+        for (File dir = metadataFile.getParentFile(); dir != null; dir = dir.getParentFile()) {
+            File wcDb = new File(dir, ".svn/wc.db");
+            if (wcDb.exists()) {
+                files.add(wcDb);
+                break;
+            }
+        }
+        return files;
+    }
+
+    private static <K, V> Map<K, V> newLruMap(final int maxEntries) {
+        return new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static class Workspace {
+        private final File _rootDir;
+        private final MetadataFile _metadataFile;
+        private final MetadataProperties _metadataProperties;
+        private final SVNURL _url;
+        private final SVNURL _repositoryRootURL;
+        private final Stamp _stamp;
+
+        private Workspace(File rootDir, MetadataFile metadataFile, MetadataProperties metadataProperties,
+                          SVNURL url, SVNURL repositoryRootURL, Stamp stamp) {
+            _rootDir = rootDir;
+            _metadataFile = metadataFile;
+            _metadataProperties = metadataProperties;
+            _url = url;
+            _repositoryRootURL = repositoryRootURL;
+            _stamp = stamp;
+        }
+
+        public File getRootDir() {
+            return _rootDir;
+        }
+
+        public MetadataFile getMetadataFile() {
+            return _metadataFile;
+        }
+
+        public MetadataProperties getMetadataProperties() {
+            return _metadataProperties;
+        }
+
+        /** Returns the repository location of the root directory according to the working copy. */
+        public SVNURL getURL() {
+            return _url;
+        }
+
+        public SVNURL getRepositoryRootURL() {
+            return _repositoryRootURL;
+        }
+    }
+
+    private static class Lookup {
+        private final File _rootDir;
+        private final Stamp _stamp;
+
+        public Lookup(File rootDir, Stamp stamp) {
+            _rootDir = rootDir;
+            _stamp = stamp;
+        }
+    }
+
+    /** The modification times and sizes of a set of files when something was read from them. */
+    private static class Stamp {
+        private final File[] _files;
+        private final long[] _times;
+        private final long[] _lengths;
+        private final long _readMillis;
+
+        public Stamp(long readMillis, List<File> files) {
+            _readMillis = readMillis;
+            _files = files.toArray(new File[files.size()]);
+            _times = new long[_files.length];
+            _lengths = new long[_files.length];
+            for (int i = 0; i < _files.length; i++) {
+                _times[i] = _files[i].lastModified();
+                _lengths[i] = _files[i].length();
+            }
+        }
+
+        public boolean isCurrent() {
+            for (int i = 0; i < _files.length; i++) {
+                if (_files[i].lastModified() != _times[i] || _files[i].length() != _lengths[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Returns true if a file changed so shortly before it was read that another change may keep its time. */
+        public boolean isRacy() {
+            for (long time : _times) {
+                if (time > _readMillis - RACY_MILLIS) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
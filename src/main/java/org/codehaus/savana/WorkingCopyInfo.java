@@ -36,9 +36,6 @@ import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.wc.SVNClientManager;
-import org.tmatesoft.svn.core.wc.SVNInfo;
-import org.tmatesoft.svn.core.wc.SVNRevision;
-import org.tmatesoft.svn.core.wc.SVNWCClient;
 import org.tmatesoft.svn.util.SVNLogType;
 
 import java.io.File;
@@ -50,35 +47,13 @@ public class WorkingCopyInfo {
     private SVNURL _repositoryUrl;
     private MetadataProperties _metadataProperties;
 
-    public WorkingCopyInfo(SVNClientManager clientManager)
-            throws SVNException {
-        this(clientManager, new File(System.getProperty("user.dir")));
-    }
-
     public WorkingCopyInfo(SVNClientManager clientManager, File currentDirectory)
             throws SVNException {
-        currentDirectory = currentDirectory.getAbsoluteFile();
-        while (currentDirectory != null) {
-            MetadataFile metadataFile = new MetadataFile(currentDirectory, MetadataFile.METADATA_FILE_NAME);
-            if (!metadataFile.exists()) {
-                metadataFile = new MetadataFile(currentDirectory, MetadataFile.METADATA_FILE_NAME_BACKWARD_COMPATIBLE);
-            }
-            if (metadataFile.exists()) {
-                _metadataFile = metadataFile;
-                _rootDir = currentDirectory;
-                break;
-            }
-
-            currentDirectory = currentDirectory.getParentFile();
-        }
-
-        if (_metadataFile == null) {
-            String errorMessage = "ERROR: Current directory is not part of a working copy.";
-            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.CLIENT_VERSIONED_PATH_REQUIRED, errorMessage), SVNLogType.CLIENT);
-        }
-
-        //Load all the metadata properties from the metadata file
-        _metadataProperties = new MetadataProperties(clientManager, _metadataFile);
+        //Find the workspace and load all the metadata properties from the metadata file
+        WorkingCopyCache.Workspace workspace = WorkingCopyCache.getInstance().getWorkspace(clientManager, currentDirectory);
+        _rootDir = workspace.getRootDir();
+        _metadataFile = workspace.getMetadataFile();
+        _metadataProperties = workspace.getMetadataProperties();
 
         //Make sure that the actual repository location of the working copy and the location of the .savana file match
         //One way for these to not match is if a promotion script failed after the merge to the source but before the commit
@@ -89,16 +64,14 @@ public class WorkingCopyInfo {
         //Make sure that the path in the repository matches the path from the metadata file.
         //Get the working copy location according to subversion
         String branchPath = _metadataProperties.getBranchPath();
-        SVNWCClient wcClient = clientManager.getWCClient();
-        SVNInfo info = wcClient.doInfo(_metadataFile.getParentFile(), SVNRevision.WORKING);
-        String actualPath = PathUtil.getPathTail(info.getURL(), info.getRepositoryRootURL());
+        String actualPath = PathUtil.getPathTail(workspace.getURL(), workspace.getRepositoryRootURL());
         if (!actualPath.equals(branchPath)) {
             String errorMessage = "ERROR: The working copy does not match the repository location. [actualPath: " + actualPath + "] [branchPath: " + branchPath + "]";
             SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.WC_INVALID_OP_ON_CWD, errorMessage), SVNLogType.CLIENT);
         }
 
         //Remember the repository URL
-        _repositoryUrl = info.getRepositoryRootURL();
+        _repositoryUrl = workspace.getRepositoryRootURL();
     }
 
     public File getRootDir() {
@@ -0,0 +1,178 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana.scripts;
+
+import org.codehaus.savana.BranchHistoryIndex;
+import org.codehaus.savana.BranchIndex;
+import org.codehaus.savana.MetadataProperties;
+import org.codehaus.savana.WorkingCopyInfo;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.util.SVNLogType;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.regex.Pattern;
+
+/**
+ * Reports how far each branch of the project is behind its source and how many commits it has of its own,
+ * along with its last activity.  All branches are computed from a single log of the project root.
+ */
+public class BranchStatus extends SAVCommand {
+
+    public BranchStatus() {
+        super("branchstatus", new String[]{"bs"});
+    }
+
+    @Override
+    protected Collection createSupportedOptions() {
+        return new ArrayList();
+    }
+
+    public void doRun() throws SVNException {
+        SAVCommandEnvironment env = getSVNEnvironment();
+
+        //Parse command-line arguments
+        List<String> targets = env.combineTargets(null, false);
+        if (targets.size() > 1) {
+            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.CL_ARG_PARSING_ERROR), SVNLogType.CLIENT);
+        }
+        Pattern branchNamePattern = ListBranches.getBranchNamePattern(targets.isEmpty() ? "*" : targets.get(0));
+
+        //Get information about the current workspace from the metadata file
+        WorkingCopyInfo wcInfo = new WorkingCopyInfo(env.getClientManager(), env.getCurrentDirectory());
+        MetadataProperties wcProps = wcInfo.getMetadataProperties();
+        SVNRepository repository = env.getClientManager().createRepository(wcInfo.getRepositoryURL(), false);
+
+        //Find the release and user branches and their metadata, using the branch index
+        logStart("List branches");
+        Map<String, MetadataProperties> branchProps = new LinkedHashMap<String, MetadataProperties>();
+        String releaseBranchesPath = wcProps.getReleaseBranchPath(null);
+        String userBranchesPath = wcProps.getUserBranchPath(null);
+        for (String branchesRootPath : new String[] {releaseBranchesPath, userBranchesPath}) {
+            SortedMap<String, BranchIndex.Branch> branches = env.getBranchIndex().getBranches(env.getClientManager(),
+                    wcInfo.getRepositoryURL(), branchesRootPath, wcProps.getMetadataFileName(), env.getMetadataCache());
+            if (branches == null) {
+                continue;
+            }
+            for (BranchIndex.Branch branch : branches.values()) {
+                String branchPath = SVNPathUtil.append(branchesRootPath, branch.getName());
+                if (branchNamePattern.matcher(branch.getName()).matches() &&
+                        !branchPath.equals(releaseBranchesPath) && !branchPath.equals(userBranchesPath)) {
+                    branchProps.put(branchPath, branch.getMetadataProperties());
+                }
+            }
+        }
+        long latestRevision = repository.getLatestRevision();
+        logEnd("List branches");
+
+        if (branchProps.isEmpty()) {
+            env.getOut().println("No branches were found.");
+            return;
+        }
+
+        //Scan the history of the project once, from the oldest branch point, for the branches and their sources
+        logStart("Scan history");
+        Set<String> paths = new HashSet<String>();
+        long startRevision = latestRevision;
+        for (Map.Entry<String, MetadataProperties> entry : branchProps.entrySet()) {
+            MetadataProperties props = entry.getValue();
+            if (hasSource(props)) {
+                paths.add(entry.getKey());
+                paths.add(props.getSourcePath());
+                startRevision = Math.min(startRevision, props.getBranchPointRevision().getNumber() + 1);
+            }
+        }
+        BranchHistoryIndex index = new BranchHistoryIndex(paths);
+        index.scan(repository, wcProps.getProjectRoot(), startRevision, latestRevision);
+        logEnd("Scan history");
+
+        logStart("Print branch status");
+        env.getOut().println("------------------------------------------------------------------------------");
+        env.getOut().println(
+                ListBranches.pad("Branch Name", 22) + " " +
+                ListBranches.pad("Source", 10) + " " +
+                ListBranches.pad("Behind", 7) + " " +
+                ListBranches.pad("Ahead", 6) + " " +
+                ListBranches.pad("Last", 8) + " " +
+                ListBranches.pad("Author", 12) + " " +
+                ListBranches.pad("Date", 0));
+        env.getOut().println("------------------------------------------------------------------------------");
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        for (Map.Entry<String, MetadataProperties> entry : branchProps.entrySet()) {
+            String branchPath = entry.getKey();
+            MetadataProperties props = entry.getValue();
+            if (!hasSource(props)) {
+                // branch doesn't have a .savana file, or it's not a branch of anything
+                env.getOut().println(SVNPathUtil.tail(branchPath));
+                continue;
+            }
+
+            //Behind: revisions that changed the source since the last merge, the same revisions sync would merge
+            long lastMergeRevision = (props.getLastMergeRevision() != null) ?
+                    props.getLastMergeRevision().getNumber() : props.getBranchPointRevision().getNumber();
+            int behind = index.countRevisions(props.getSourcePath(), lastMergeRevision, latestRevision);
+
+            //Ahead: commits to the branch after the commit that created it
+            long createRevision = index.getAddRevision(branchPath);
+            if (createRevision < 0) {
+                createRevision = props.getBranchPointRevision().getNumber();
+            }
+            int ahead = index.countRevisions(branchPath, createRevision, latestRevision);
+
+            long lastRevision = index.getLastRevision(branchPath);
+            String author = (lastRevision >= 0) ? index.getAuthor(lastRevision) : null;
+            Date date = (lastRevision >= 0) ? index.getDate(lastRevision) : null;
+
+            env.getOut().println(
+                    ListBranches.pad(SVNPathUtil.tail(branchPath), 22) + " " +
+                    ListBranches.pad(props.getSourceName(), 10) + " " +
+                    ListBranches.pad(Integer.toString(behind), 7) + " " +
+                    ListBranches.pad(Integer.toString(ahead), 6) + " " +
+                    ListBranches.pad(lastRevision >= 0 ? Long.toString(lastRevision) : "", 8) + " " +
+                    ListBranches.pad(author, 12) + " " +
+                    ListBranches.pad(date != null ? dateFormat.format(date) : "", 0));
+        }
+        logEnd("Print branch status");
+    }
+
+    private boolean hasSource(MetadataProperties props) {
+        return props != null && props.getSourceRoot() != null && props.getBranchPointRevision() != null;
+    }
+}
@@ -32,6 +32,7 @@ package org.codehaus.savana.scripts;
 
 import org.apache.commons.lang.StringUtils;
 import org.codehaus.savana.BranchType;
+import org.codehaus.savana.LocalChangeDetector;
 import org.codehaus.savana.LocalChangeStatusHandler;
 import org.codehaus.savana.MetadataFile;
 import org.codehaus.savana.MetadataProperties;
@@ -107,7 +108,7 @@ public class CreateBranch extends SAVCommand {
         }
         String branchName = targets.get(0);
         boolean subpathSpecified = targets.size() > 1;
-        File startingDirectory = PathUtil.getValidatedAbsoluteFile(subpathSpecified ? targets.get(1) : "");
+        File startingDirectory = PathUtil.getValidatedAbsoluteFile(env.getCurrentDirectory(), subpathSpecified ? targets.get(1) : "");
 
         //Validate the branch name doesn't have illegal characters and is not 'trunk'
         if (StringUtils.containsAny(branchName, "/\\")) {
@@ -172,9 +173,8 @@ public class CreateBranch extends SAVCommand {
         //2. OR the branch is being created remotely
         if (!env.isRemote() && (!env.isForce() || !_userBranch)) {
             logStart("Looking for local changes");
-            LocalChangeStatusHandler statusHandler = new LocalChangeStatusHandler();
-            statusClient.doStatus(branchRootDir, SVNRevision.UNDEFINED,
-                    SVNDepth.INFINITY, false, true, false, false, statusHandler, null);
+            LocalChangeStatusHandler statusHandler = new LocalChangeDetector(env.getClientManager())
+                    .detectChanges(branchRootDir, null, false);
             logEnd("Looking for local changes");
             if (statusHandler.isChanged()) {
                 String errorMessage =
@@ -89,7 +89,7 @@ public class DeleteBranch extends SAVCommand {
         String branchName = targets.get(0);
 
         //Get information about the current workspace from the metadata file
-        WorkingCopyInfo wcInfo = new WorkingCopyInfo(env.getClientManager());
+        WorkingCopyInfo wcInfo = new WorkingCopyInfo(env.getClientManager(), env.getCurrentDirectory());
         MetadataProperties wcProps = wcInfo.getMetadataProperties();
 
         //Find the source of the branch
@@ -111,7 +111,7 @@ public class DeleteBranch extends SAVCommand {
         //Get the metadata properties for the branch
         logStart("Get metadata properties");
         String branchMetadataFilePath = SVNPathUtil.append(branchPath, wcProps.getMetadataFileName());
-        MetadataProperties branchProps = new MetadataProperties(repository, branchMetadataFilePath, -1);
+        MetadataProperties branchProps = env.getMetadataProperties(repository, branchMetadataFilePath, -1);
         logEnd("Get metadata properties");
 
         //Check if the user is switched to the branch we're about to delete.  If they are, don't
@@ -77,7 +77,7 @@ public class DiffChangesFromSource extends SAVCommand {
             SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.CL_ARG_PARSING_ERROR), SVNLogType.CLIENT);
         }
 
-        WorkingCopyInfo wcInfo = new WorkingCopyInfo(env.getClientManager());
+        WorkingCopyInfo wcInfo = new WorkingCopyInfo(env.getClientManager(), env.getCurrentDirectory());
         MetadataProperties wcProps = wcInfo.getMetadataProperties();
 
         //If there is no source (we are in the trunk)
@@ -117,7 +117,7 @@ public class DiffChangesFromSource extends SAVCommand {
         }
         diffGenerator.setDiffDeleted(!env.isNoDiffDeleted());
         diffGenerator.setForcedBinaryDiff(env.isForce());
-        diffGenerator.setBasePath(new File("").getAbsoluteFile());
+        diffGenerator.setBasePath(env.getCurrentDirectory());
         diffGenerator.setFallbackToAbsolutePath(true);
         diffGenerator.setOptions(diffClient.getOptions());
         diffClient.setDiffGenerator(diffGenerator);
@@ -31,27 +31,27 @@
 package org.codehaus.savana.scripts;
 
 import org.apache.commons.lang.StringUtils;
-import org.codehaus.savana.ListDirEntryHandler;
+import org.codehaus.savana.BranchIndex;
 import org.codehaus.savana.MetadataProperties;
 import org.codehaus.savana.WorkingCopyInfo;
 import org.tmatesoft.svn.cli.svn.SVNOption;
-import org.tmatesoft.svn.core.SVNDepth;
-import org.tmatesoft.svn.core.SVNDirEntry;
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
-import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.wc.SVNRevision;
 import org.tmatesoft.svn.util.SVNLogType;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.regex.Pattern;
 
 public class ListBranches extends SAVCommand {
@@ -81,7 +81,7 @@ public class ListBranches extends SAVCommand {
         String branchNameFilter = targets.isEmpty() ? "*" : targets.get(0);
 
         //Get information about the current workspace from the metadata file
-        WorkingCopyInfo wcInfo = new WorkingCopyInfo(env.getClientManager());
+        WorkingCopyInfo wcInfo = new WorkingCopyInfo(env.getClientManager(), env.getCurrentDirectory());
         MetadataProperties wcProps = wcInfo.getMetadataProperties();
 
         //Find the source of the branch
@@ -90,25 +90,20 @@ public class ListBranches extends SAVCommand {
                 wcProps.getReleaseBranchPath(null);
         SVNURL branchesRootURL = wcInfo.getRepositoryURL(branchesRootPath);
 
-        //Find all of the directories at that path
+        //Find all of the directories at that path, using the branch index to avoid listing them from scratch
         logStart("List branches");
-        ListDirEntryHandler listDirEntryHandler = new ListDirEntryHandler(branchesRootURL);
-        try {
-            env.getClientManager().getLogClient().doList(branchesRootURL, SVNRevision.HEAD, SVNRevision.HEAD, false,
-                    SVNDepth.IMMEDIATES, SVNDirEntry.DIRENT_ALL, listDirEntryHandler);
-        } catch (SVNException e) {
-            //Rethrow with a different error message if the branch root doesn't exist
-            if (e.getErrorMessage() != null && e.getErrorMessage().getErrorCode() == SVNErrorCode.FS_NOT_FOUND) {
-                String errorMessage =
-                        "ERROR: Could not find project." +
-                        "\nURL: " + branchesRootURL;
-                SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.ILLEGAL_TARGET, errorMessage), SVNLogType.CLIENT);
-            }
+        SortedMap<String, BranchIndex.Branch> branches = env.getBranchIndex().getBranches(env.getClientManager(),
+                wcInfo.getRepositoryURL(), branchesRootPath, wcProps.getMetadataFileName(), env.getMetadataCache());
+        if (branches == null) {
+            String errorMessage =
+                    "ERROR: Could not find project." +
+                    "\nURL: " + branchesRootURL;
+            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.ILLEGAL_TARGET, errorMessage), SVNLogType.CLIENT);
         }
         logEnd("List branches");
 
         logStart("Get branch names");
-        SortedSet<String> branchNames = listDirEntryHandler.getNames();
+        SortedSet<String> branchNames = new TreeSet<String>(branches.keySet());
         logEnd("Get branch names");
 
         logStart("Filter branch names");
@@ -142,8 +137,6 @@ public class ListBranches extends SAVCommand {
         } else if (branchNames.isEmpty()) {
             env.getOut().println("No branches were found.");
         } else {
-            SVNRepository repository = env.getClientManager().createRepository(wcInfo.getRepositoryURL(), false);
-
             env.getOut().println("------------------------------------------------------------------------------");
             env.getOut().println(
                     pad("Branch Name", 22) + " " +
@@ -155,35 +148,32 @@ public class ListBranches extends SAVCommand {
             env.getOut().println("------------------------------------------------------------------------------");
 
             for (String branchName : branchNames) {
-                String branchPath = SVNPathUtil.append(branchesRootPath, branchName);
-
-                //Get the metadata file
-                String metadataFilePath = SVNPathUtil.append(branchPath, wcProps.getMetadataFileName());
-                MetadataProperties metadataFileProperties;
-                try {
-                    metadataFileProperties = new MetadataProperties(repository, metadataFilePath, -1);
-                } catch (SVNException e) {
-                    // branch doesn't have a .savana file
-                    env.getOut().println(branchName);
-                    continue;
-                }
-
-                //Print the branch information
-                SVNRevision branchPointRevision = metadataFileProperties.getBranchPointRevision();
-                SVNRevision lastMergeRevision = metadataFileProperties.getLastMergeRevision();
-
-                env.getOut().println(
-                        pad(branchName, 22) + " " +
-                        pad(metadataFileProperties.getSourceName(), 13) + " " +
-                        pad(branchPointRevision != null ? branchPointRevision.toString() : "", 13) + " " +
-                        pad(lastMergeRevision != null ? lastMergeRevision.toString() : "", 13) + " " +
-                        pad(metadataFileProperties.getSourceSubpath(), 0));
+                printBranchInfo(env.getOut(), branchName, branches.get(branchName).getMetadataProperties());
             }
         }
         logEnd("Print branch info");
     }
 
-    private Pattern getBranchNamePattern(String branchNameFilter) {
+    private void printBranchInfo(PrintStream out, String branchName, MetadataProperties metadataFileProperties) {
+        if (metadataFileProperties == null) {
+            // branch doesn't have a .savana file
+            out.println(branchName);
+            return;
+        }
+
+        //Print the branch information
+        SVNRevision branchPointRevision = metadataFileProperties.getBranchPointRevision();
+        SVNRevision lastMergeRevision = metadataFileProperties.getLastMergeRevision();
+
+        out.println(
+                pad(branchName, 22) + " " +
+                pad(metadataFileProperties.getSourceName(), 13) + " " +
+                pad(branchPointRevision != null ? branchPointRevision.toString() : "", 13) + " " +
+                pad(lastMergeRevision != null ? lastMergeRevision.toString() : "", 13) + " " +
+                pad(metadataFileProperties.getSourceSubpath(), 0));
+    }
+
+    static Pattern getBranchNamePattern(String branchNameFilter) {
         //Convert '*' characters to the '.*' regular expression pattern
 
         //Split the URI out by the '*' character
@@ -208,7 +198,7 @@ public class ListBranches extends SAVCommand {
         return Pattern.compile(pattern);
     }
 
-    private String pad(String s, int length) {
+    static String pad(String s, int length) {
         if (s == null) {
             s = "";
         }
@@ -31,6 +31,7 @@
 package org.codehaus.savana.scripts;
 
 import org.codehaus.savana.FileListDiffGenerator;
+import org.codehaus.savana.FileListDiffSummarizer;
 import org.codehaus.savana.MetadataProperties;
 import org.codehaus.savana.WorkingCopyInfo;
 import org.tmatesoft.svn.core.SVNDepth;
@@ -69,7 +70,7 @@ public class ListChangesFromSource extends SAVCommand {
             SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.CL_ARG_PARSING_ERROR), SVNLogType.CLIENT);
         }
 
-        WorkingCopyInfo wcInfo = new WorkingCopyInfo(env.getClientManager());
+        WorkingCopyInfo wcInfo = new WorkingCopyInfo(env.getClientManager(), env.getCurrentDirectory());
         MetadataProperties wcProps = wcInfo.getMetadataProperties();
 
         //If there is no source (we are in the trunk)
@@ -81,7 +82,23 @@ public class ListChangesFromSource extends SAVCommand {
         //Create the source URL
         SVNURL sourceURL = wcInfo.getRepositoryURL(wcProps.getSourcePath());
 
-        //Diff [source:HEAD, branch:HEAD] to see what has changes
+        //Summarize the differences between [source:LAST_MERGE, working copy] without transferring file contents
+        String workingCopyPath = wcInfo.getRootDir().getAbsolutePath();
+        if (Boolean.valueOf(System.getProperty("savana.summarize-changes", "true"))) {
+            logStart("Summarize Diff");
+            FileListDiffSummarizer summarizer = new FileListDiffSummarizer(env.getClientManager(), wcInfo);
+            boolean summarized = summarizer.summarize(sourceURL, wcProps.getLastMergeRevision());
+            logEnd("Summarize Diff");
+            if (summarized) {
+                printFileList("Added Files:", summarizer.getAddedFilePaths(), workingCopyPath);
+                printFileList("Modified Files:", summarizer.getChangedFilePaths(), workingCopyPath);
+                printFileList("Deleted Files:", summarizer.getDeletedFilePaths(), workingCopyPath);
+                return;
+            }
+        }
+
+        //Diff [source:LAST_MERGE, working copy] to see what has changed.  This is needed for working copies with
+        //switched or sparse subtrees, or that were updated to more than one revision of the branch.
         logStart("Get Diff Client");
         SVNDiffClient diffClient = env.getClientManager().getDiffClient();
         FileListDiffGenerator diffGenerator = new FileListDiffGenerator(wcInfo.getMetadataFile());
@@ -92,7 +109,6 @@ public class ListChangesFromSource extends SAVCommand {
                           SVNDepth.INFINITY, false, env.getOut(), null);
         logEnd("Do Diff");
 
-        String workingCopyPath = wcInfo.getRootDir().getAbsolutePath();
         printFileList("Added Files:", diffGenerator.getAddedFilePaths(), workingCopyPath);
         printFileList("Modified Files:", diffGenerator.getChangedFilePaths(), workingCopyPath);
         printFileList("Deleted Files:", diffGenerator.getDeletedFilePaths(), workingCopyPath);
@@ -31,22 +31,17 @@
 package org.codehaus.savana.scripts;
 
 import org.codehaus.savana.MetadataProperties;
+import org.codehaus.savana.NestedWorkspaceFinder;
 import org.codehaus.savana.PathUtil;
 import org.codehaus.savana.WorkingCopyInfo;
 import org.tmatesoft.svn.cli.svn.SVNOption;
 import org.tmatesoft.svn.core.SVNDepth;
 import org.tmatesoft.svn.core.SVNException;
-import org.tmatesoft.svn.core.SVNNodeKind;
-import org.tmatesoft.svn.core.wc.ISVNStatusHandler;
-import org.tmatesoft.svn.core.wc.SVNRevision;
-import org.tmatesoft.svn.core.wc.SVNStatus;
-import org.tmatesoft.svn.core.wc.SVNStatusClient;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 
 public class ListWorkingCopyInfo extends SAVCommand {
@@ -80,7 +75,7 @@ public class ListWorkingCopyInfo extends SAVCommand {
 
         boolean first = true;
         for (String target : targets) {
-            File targetDir = PathUtil.getValidatedAbsoluteFile(target);
+            File targetDir = PathUtil.getValidatedAbsoluteFile(env.getCurrentDirectory(), target);
 
             //Print a blank line between workspaces
             if (first) {
@@ -104,38 +99,20 @@ public class ListWorkingCopyInfo extends SAVCommand {
     private void printNestedWorkspaces(WorkingCopyInfo wcInfo) throws SVNException {
         SAVCommandEnvironment env = getSVNEnvironment();
 
-        // look for all subdirectories that are switched relative to the working copy root
-        SwitchedDirectoriesHandler statusHandler = new SwitchedDirectoriesHandler();
-        SVNStatusClient statusClient = env.getClientManager().getStatusClient();
-        statusClient.doStatus(wcInfo.getRootDir(), SVNRevision.HEAD, env.getDepth(),
-                false, true, false, false, statusHandler, null);
-        List<File> switchedDirectories = statusHandler.getSwitchedDirectories();
+        // look for all subdirectories that are switched relative to the working copy root and contain a metadata
+        // file.  this only reads the local file system and working copy, it never contacts the repository.
+        NestedWorkspaceFinder finder = new NestedWorkspaceFinder(env.getClientManager().getWCClient(),
+                wcInfo.getMetadataProperties().getMetadataFileName());
+        List<File> switchedDirectories = finder.findNestedWorkspaces(wcInfo.getRootDir(), env.getDepth());
 
-        Collections.sort(switchedDirectories);
         for (File switchedDirectory : switchedDirectories) {
-            // if a switched directory contains a Savana metadata file, then it's a workspace.  print out its info.
+            // a switched directory that contains a Savana metadata file is a workspace.  print out its info.
             File switchedMetadataFile = new File(switchedDirectory, wcInfo.getMetadataProperties().getMetadataFileName());
-            if (switchedMetadataFile.exists()) {
-                MetadataProperties switchedProperties =
-                        new MetadataProperties(env.getClientManager(), switchedMetadataFile);
-                env.getOut().println();
-                env.getOut().println(switchedDirectory + ":");
-                env.getOut().println(switchedProperties);
-            }
-        }
-    }
-
-    private static class SwitchedDirectoriesHandler implements ISVNStatusHandler {
-        private final List<File> _switchedDirectories = new ArrayList<File>();
-
-        public List<File> getSwitchedDirectories() {
-            return _switchedDirectories;
-        }
-
-        public void handleStatus(SVNStatus status) throws SVNException {
-            if (status.isSwitched() && status.getKind() == SVNNodeKind.DIR) {
-                _switchedDirectories.add(status.getFile());
-            }
+            MetadataProperties switchedProperties =
+                    new MetadataProperties(env.getClientManager(), switchedMetadataFile);
+            env.getOut().println();
+            env.getOut().println(switchedDirectory + ":");
+            env.getOut().println(switchedProperties);
         }
     }
 }
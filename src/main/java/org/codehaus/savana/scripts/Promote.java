@@ -31,12 +31,19 @@
 package org.codehaus.savana.scripts;
 
 import org.codehaus.savana.BranchType;
+import org.codehaus.savana.ConflictAnalyzer;
 import org.codehaus.savana.FilteredStatusHandler;
+import org.codehaus.savana.LocalChangeDetector;
 import org.codehaus.savana.LocalChangeStatusHandler;
+import org.codehaus.savana.MergeInfoScrubber;
 import org.codehaus.savana.MergeNotifyPrinter;
 import org.codehaus.savana.MetadataProperties;
+import org.codehaus.savana.PromoteEditor;
+import org.codehaus.savana.RecordingEditor;
+import org.codehaus.savana.RepositorySessions;
 import org.codehaus.savana.WorkingCopyInfo;
 import org.tmatesoft.svn.cli.SVNCommandUtil;
+import org.tmatesoft.svn.cli.svn.SVNNotifyPrinter;
 import org.tmatesoft.svn.cli.svn.SVNOption;
 import org.tmatesoft.svn.core.SVNCommitInfo;
 import org.tmatesoft.svn.core.SVNDepth;
@@ -45,8 +52,12 @@ import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.ISVNReporter;
+import org.tmatesoft.svn.core.io.ISVNReporterBaton;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.wc.DefaultSVNDiffGenerator;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
 import org.tmatesoft.svn.core.wc.SVNCommitClient;
 import org.tmatesoft.svn.core.wc.SVNCommitItem;
 import org.tmatesoft.svn.core.wc.SVNDiffClient;
@@ -64,9 +75,20 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Promote extends SAVCommand {
 
+    //How much memory the changes fetched for a remote promote while the commit message is entered may use
+    private static final long DEFAULT_PREFETCH_BYTES = 64L * 1024 * 1024;
+
     public Promote() {
         super("promote", new String[]{});
     }
@@ -80,11 +102,13 @@ public class Promote extends SAVCommand {
     protected Collection createSupportedOptions() {
         Collection options = new ArrayList();
         options = SVNOption.addLogMessageOptions(options);
+        options.add(SAVOption.REMOTE); // promote on the server, then switch the working copy to the source
+        options.add(SVNOption.DRY_RUN); // check that the promote can succeed without changing anything
         return options;
     }
 
     public void doRun() throws SVNException {
-        SAVCommandEnvironment env = getSVNEnvironment();
+        final SAVCommandEnvironment env = getSVNEnvironment();
 
         //Parse command-line arguments
         List<String> targets = env.combineTargets(null, false);
@@ -93,12 +117,12 @@ public class Promote extends SAVCommand {
         }
 
         //Get information about the current workspace from the metadata file
-        WorkingCopyInfo wcInfo = new WorkingCopyInfo(env.getClientManager());
-        MetadataProperties wcProps = wcInfo.getMetadataProperties();
+        final WorkingCopyInfo wcInfo = new WorkingCopyInfo(env.getClientManager(), env.getCurrentDirectory());
+        final MetadataProperties wcProps = wcInfo.getMetadataProperties();
 
         //Find the source and branch URLs
-        SVNURL sourceURL = wcInfo.getRepositoryURL(wcProps.getSourcePath());
-        SVNURL branchURL = wcInfo.getRepositoryURL(wcProps.getBranchPath());
+        final SVNURL sourceURL = wcInfo.getRepositoryURL(wcProps.getSourcePath());
+        final SVNURL branchURL = wcInfo.getRepositoryURL(wcProps.getBranchPath());
 
         //Make sure that we are in a user branch
         logStart("Check for user branch");
@@ -111,78 +135,269 @@ public class Promote extends SAVCommand {
         }
         logEnd("Check for user branch");
 
-        //Make sure all changes are committed first
-        logStart("Check for local changes");
-        LocalChangeStatusHandler statusHandler = new LocalChangeStatusHandler(wcInfo.getRootDir());
-        SVNStatusClient statusClient = env.getClientManager().getStatusClient();
-        statusClient.doStatus(wcInfo.getRootDir(), SVNRevision.HEAD, SVNDepth.INFINITY,
-                true, true, false, false, statusHandler, null);
-        if (statusHandler.isChanged()) {
-            String errorMessage =
-                    "ERROR: Cannot promote while the working copy has local changes." +
-                            "\nRun 'svn status' to find changes";
-            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.ILLEGAL_TARGET, errorMessage), SVNLogType.CLIENT);
+        //Start the checks that only read the working copy and the repository.  Each phase runs on its own thread as
+        //soon as the phases it depends on have finished, and the results are checked below in the usual order.
+        final SVNClientManager clientManager = env.getClientManager();
+        ExecutorService executor = Executors.newCachedThreadPool(new PromoteThreadFactory());
+        try {
+            final Phase<LocalChangeStatusHandler> statusPhase = new Phase<LocalChangeStatusHandler>("Scan working copy status") {
+                protected LocalChangeStatusHandler run() throws SVNException {
+                    return new LocalChangeDetector(clientManager).detectChanges(wcInfo.getRootDir(), wcInfo.getRootDir(), true);
+                }
+            }.submit(executor);
+            final Phase<Long> latestRevisionPhase = new Phase<Long>("Find the latest revision") {
+                protected Long run() throws SVNException {
+                    SVNRepository repository = clientManager.createRepository(wcInfo.getRepositoryURL(), false);
+                    long latestRevision = repository.getLatestRevision();
+                    RepositorySessions.release(clientManager, repository);
+                    return latestRevision;
+                }
+            }.submit(executor);
+            final Phase<SVNInfo> sourceInfoPhase = new Phase<SVNInfo>("Do info on source") {
+                protected SVNInfo run() throws SVNException {
+                    SVNWCClient wcClient = new SVNWCClient(clientManager.getRepositoryPool(), clientManager.getOptions());
+                    return wcClient.doInfo(sourceURL, SVNRevision.HEAD, SVNRevision.HEAD);
+                }
+            }.submit(executor);
+            final Phase<MetadataProperties> sourcePropsPhase = new Phase<MetadataProperties>("Get metadata and policies for the source branch", sourceInfoPhase) {
+                protected MetadataProperties run() throws SVNException {
+                    //Reading the metadata parses the source's savana policies too
+                    SVNRepository repository = clientManager.createRepository(wcInfo.getRepositoryURL(), false);
+                    MetadataProperties sourceProps = env.getMetadataProperties(repository,
+                            wcProps.getSourceMetadataFilePath(), sourceInfoPhase.get().getRevision().getNumber());
+                    RepositorySessions.release(clientManager, repository);
+                    return sourceProps;
+                }
+            }.submit(executor);
+            final ConflictAnalyzer analyzer = new ConflictAnalyzer(clientManager, wcInfo.getRepositoryURL(),
+                    wcProps.getMetadataFileName());
+            final Phase<SortedSet<String>> replacedPathsPhase = new Phase<SortedSet<String>>("Find replaced files in branch history", latestRevisionPhase) {
+                protected SortedSet<String> run() throws SVNException {
+                    return analyzer.findReplacedPaths(wcProps.getSourcePath(), wcProps.getBranchPath(), latestRevisionPhase.get(),
+                            wcProps.getBranchPointRevision().getNumber(), wcProps.getLastMergeRevision().getNumber());
+                }
+            }.submit(executor);
+
+            //Make sure all changes are committed first
+            logStart("Check for local changes");
+            LocalChangeStatusHandler statusHandler = statusPhase.get();
+            if (statusHandler.isChanged()) {
+                String errorMessage =
+                        "ERROR: Cannot promote while the working copy has local changes." +
+                                "\nRun 'svn status' to find changes";
+                SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.ILLEGAL_TARGET, errorMessage), SVNLogType.CLIENT);
+            }
+            if (statusHandler.isSwitched()) {
+                String errorMessage =
+                        "ERROR: Cannot promote while a subdirectory or file is switched relative to the root." +
+                                "\nRun 'sav info -R' to find nested workspaces";
+                SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.ILLEGAL_TARGET, errorMessage), SVNLogType.CLIENT);
+            }
+            if (statusHandler.isOutOfDate()) {
+                String errorMessage =
+                        "ERROR: Cannot promote while the working copy is out-of-date." +
+                                "\nRun 'svn update' to update the working copy";
+                SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.ILLEGAL_TARGET, errorMessage), SVNLogType.CLIENT);
+            }
+            logEnd("Check for local changes");
+
+            //Find the last version that was changed in the branch
+            SVNRevision lastBranchCommitRevision = SVNRevision.create(latestRevisionPhase.get());
+
+            //Find the last version that was sync'd in
+            final SVNRevision lastMergeRevision = wcProps.getLastMergeRevision();
+
+            //Don't allow the merge if there are source changes that need to be merged in
+            //In addition to looking for log entries, also check the oldest log entry with the latest revision.  If they are
+            //the same there is nothing to sync.
+            logStart("Check for changes");
+            SVNRevision sourceLastChange = sourceInfoPhase.get().getCommittedRevision();
+            if (sourceLastChange.getNumber() > wcProps.getLastMergeRevision().getNumber()) {
+                String errorMessage =
+                        "ERROR: There are unmerged changes in the source." +
+                                "\nRun 'sav sync' to pull in unmerged changes";
+                SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.CLIENT_NOT_READY_TO_MERGE, errorMessage), SVNLogType.CLIENT);
+            }
+            logEnd("Check for changes");
+
+            //Don't allow the promote if there are replaced files.  Check the branch history before anything is changed
+            //instead of waiting for the merge or the commit to find them.
+            logStart("Check history for replaced files");
+            SortedSet<String> replacedPaths = replacedPathsPhase.get();
+            if (!replacedPaths.isEmpty()) {
+                List<File> entries = new ArrayList<File>();
+                for (String path : replacedPaths) {
+                    entries.add(new File(wcInfo.getRootDir(), path));
+                }
+                reportReplacedFiles(env, wcProps, entries);
+            }
+            logEnd("Check history for replaced files");
+
+            if (env.isDryRun()) {
+                logStart("Find branch changes");
+                int changeCount = analyzer.getBranchChanges(wcProps.getSourcePath(), lastMergeRevision.getNumber(),
+                        wcProps.getBranchPath(), lastBranchCommitRevision.getNumber()).size();
+                logEnd("Find branch changes");
+                env.getOut().println("Promoting " + wcProps.getBranchName() + " to " + wcProps.getSourceName() +
+                        " would change " + changeCount + " paths.");
+                env.getOut().println("No conflicts expected.");
+                return;
+            }
+
+            //Fetch the changes a remote promote commits while the user writes the commit message.  The diff is
+            //between fixed revisions, so it's the same diff the commit would run once the message is entered.
+            Phase<RecordingEditor> prefetchPhase = null;
+            final long maxPrefetchBytes = Long.getLong("savana.promote-prefetch-bytes", DEFAULT_PREFETCH_BYTES);
+            if (env.isRemote() && maxPrefetchBytes > 0) {
+                final long branchRevision = lastBranchCommitRevision.getNumber();
+                prefetchPhase = new Phase<RecordingEditor>("Prefetch branch changes") {
+                    protected RecordingEditor run() throws SVNException {
+                        return prefetchBranchChanges(clientManager, sourceURL, branchURL, lastMergeRevision.getNumber(),
+                                branchRevision, maxPrefetchBytes);
+                    }
+                }.submit(executor);
+            }
+
+            //Get the commit message (may launch an external editor).  We don't want to diff branches yet, so pass a dummy string as the commit item.
+            //Do this as late as we can so it's likely the promote will succeed after we launch the editor and the user enters the commit comment.
+            logStart("Get commit comment");
+            String message = "promote branch " + wcProps.getBranchName() + " to " + wcProps.getSourceName() + " in project " + wcProps.getProjectName();
+            String commitMessage = env.getCommitMessage(null, new SVNCommitItem[]{createDummyCommitItem(message)});
+            logEnd("Get commit comment");
+
+            //Get metadata properties on the source so we can get its savana policies object
+            logStart("Get metadata for the source branch");
+            MetadataProperties sourceProps = sourcePropsPhase.get();
+            logEnd("Get metadata for the source branch");
+
+            //Validate the commit comment against the branch name before we make any changes
+            if (sourceProps.getSavanaPolicies() != null) {
+                logStart("Validate commit comment");
+                sourceProps.getSavanaPolicies().validateLogMessage(commitMessage, sourceProps, sourceProps.isCodeFrozen());
+                logEnd("Validate commit comment");
+            }
+
+            ///////// All changes to the working copy and to the repository happen below /////////
+
+            SVNCommitInfo commitInfo;
+            if (env.isRemote()) {
+                logStart("Wait for prefetched branch changes");
+                RecordingEditor prefetched = (prefetchPhase != null) ? prefetchPhase.get() : null;
+                logEnd("Wait for prefetched branch changes");
+                SVNRepository repository = clientManager.createRepository(wcInfo.getRepositoryURL(), false);
+                commitInfo = promoteInRepository(env, wcInfo, wcProps, sourceProps, repository, sourceURL, branchURL,
+                        lastMergeRevision, lastBranchCommitRevision, commitMessage, prefetched);
+            } else {
+                commitInfo = promoteInWorkingCopy(env, wcInfo, wcProps, sourceProps, sourceURL, branchURL,
+                        lastMergeRevision, lastBranchCommitRevision, commitMessage);
+            }
+
+            //Print the new working copy info
+            WorkingCopyInfo sourceWcInfo = new WorkingCopyInfo(clientManager, env.getCurrentDirectory());
+            env.getOut().println("");
+            sourceWcInfo.println(env.getOut());
+            env.getOut().println("");
+            env.getOut().println("Promotion Changeset:   [" + commitInfo.getNewRevision() + "]");
+        } finally {
+            executor.shutdownNow();
         }
-        if (statusHandler.isSwitched()) {
-            String errorMessage =
-                    "ERROR: Cannot promote while a subdirectory or file is switched relative to the root." +
-                            "\nRun 'sav info -R' to find nested workspaces";
-            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.ILLEGAL_TARGET, errorMessage), SVNLogType.CLIENT);
+    }
+
+    private RecordingEditor prefetchBranchChanges(SVNClientManager clientManager, SVNURL sourceURL, SVNURL branchURL,
+                                                  final long sourceRevision, long branchRevision, long maxBytes) {
+        RecordingEditor recorder = new RecordingEditor(maxBytes);
+        SVNRepository diffRepository = null;
+        try {
+            diffRepository = clientManager.createRepository(sourceURL, false);
+            diffRepository.diff(branchURL, branchRevision, sourceRevision, null, false, SVNDepth.INFINITY, true,
+                    new ISVNReporterBaton() {
+                        public void report(ISVNReporter reporter) throws SVNException {
+                            reporter.setPath("", null, sourceRevision, SVNDepth.INFINITY, false);
+                            reporter.finishReport();
+                        }
+                    }, recorder);
+        } catch (SVNException e) {
+            //The commit runs the diff itself
+            log("Not using prefetched branch changes: " + e.getErrorMessage().getFullMessage());
+            if (diffRepository != null) {
+                RepositorySessions.discard(clientManager, diffRepository);
+            }
+            return null;
         }
-        if (statusHandler.isOutOfDate()) {
-            String errorMessage =
-                    "ERROR: Cannot promote while the working copy is out-of-date." +
-                            "\nRun 'svn update' to update the working copy";
-            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.ILLEGAL_TARGET, errorMessage), SVNLogType.CLIENT);
+        RepositorySessions.release(clientManager, diffRepository);
+        log("Prefetched " + recorder.getBytes() + " bytes of branch changes");
+        return recorder;
+    }
+
+    private SVNCommitInfo promoteInRepository(SAVCommandEnvironment env, WorkingCopyInfo wcInfo, MetadataProperties wcProps,
+                                              MetadataProperties sourceProps, SVNRepository repository, SVNURL sourceURL,
+                                              SVNURL branchURL, SVNRevision lastMergeRevision,
+                                              SVNRevision lastBranchCommitRevision, String commitMessage,
+                                              RecordingEditor prefetched) throws SVNException {
+        //Replay the differences from [source:LAST_MERGE, branch:LAST_BRANCH_COMMIT] onto the source and delete the
+        //branch, all in one commit.  Use the differences fetched while the commit message was entered if there are any.
+        logStart("Commit changes");
+        boolean deleteMergeInfo = sourceProps.getSavanaPolicies() != null && sourceProps.getSavanaPolicies().shouldDeleteSvnMergeProperty();
+        ISVNEditor commitEditor = repository.getCommitEditor(commitMessage, null, false, env.getRevisionProperties(), null);
+        PromoteEditor promoteEditor = new PromoteEditor(commitEditor, wcProps.getSourcePath(), wcProps.getBranchPath(),
+                lastBranchCommitRevision.getNumber(), wcProps.getMetadataFileName(), deleteMergeInfo);
+        final long sourceRevision = lastMergeRevision.getNumber();
+        SVNRepository diffRepository = null;
+        try {
+            if (prefetched != null && prefetched.isComplete()) {
+                prefetched.replay(promoteEditor);
+            } else {
+                diffRepository = env.getClientManager().createRepository(sourceURL, false);
+                diffRepository.diff(branchURL, lastBranchCommitRevision.getNumber(), sourceRevision, null, false,
+                        SVNDepth.INFINITY, true, new ISVNReporterBaton() {
+                            public void report(ISVNReporter reporter) throws SVNException {
+                                reporter.setPath("", null, sourceRevision, SVNDepth.INFINITY, false);
+                                reporter.finishReport();
+                            }
+                        }, promoteEditor);
+            }
+        } catch (SVNException e) {
+            try {
+                commitEditor.abortEdit();
+            } catch (SVNException abortException) {
+                log("Failed to abort the commit: " + abortException);
+            }
+            //Don't let another phase reuse a connection that may be left in the middle of a response
+            if (diffRepository != null) {
+                RepositorySessions.discard(env.getClientManager(), diffRepository);
+            }
+            throw e;
+        }
+        if (diffRepository != null) {
+            RepositorySessions.release(env.getClientManager(), diffRepository);
         }
-        logEnd("Check for local changes");
+        logEnd("Commit changes");
 
-        //Find the last version that was changed in the branch
-        SVNRepository repository = env.getClientManager().createRepository(wcInfo.getRepositoryURL(), false);
-        SVNRevision lastBranchCommitRevision = SVNRevision.create(repository.getLatestRevision());
+        //Don't allow the promote if there are replaced files
+        if (!promoteEditor.getReplacedPaths().isEmpty()) {
+            List<File> entries = new ArrayList<File>();
+            for (String path : promoteEditor.getReplacedPaths()) {
+                entries.add(new File(wcInfo.getRootDir(), path));
+            }
+            reportReplacedFiles(env, wcProps, entries);
+        }
 
-        //Find the last version that was sync'd in
-        SVNRevision lastMergeRevision = wcProps.getLastMergeRevision();
+        //Switch the working copy to the source
+        logStart("Do switch to source");
+        SVNUpdateClient updateClient = env.getClientManager().getUpdateClient();
+        updateClient.setEventHandler(new SVNNotifyPrinter(env));
+        updateClient.doSwitch(wcInfo.getRootDir(), sourceURL, SVNRevision.UNDEFINED, SVNRevision.HEAD,
+                SVNDepth.INFINITY, false, false);
+        logEnd("Do switch to source");
 
-        //Find out if there are any changes in the source that need to be merged in
-        logStart("Do info on source");
-        SVNWCClient wcClient = env.getClientManager().getWCClient();
-        SVNInfo sourceInfo = wcClient.doInfo(sourceURL, SVNRevision.HEAD, SVNRevision.HEAD);
-        SVNRevision sourceLastChange = sourceInfo.getCommittedRevision();
-        logEnd("Do info on source");
-
-        //Don't allow the merge if there are source changes that need to be merged in
-        //In addition to looking for log entries, also check the oldest log entry with the latest revision.  If they are
-        //the same there is nothing to sync.
-        logStart("Check for changes");
-        if (sourceLastChange.getNumber() > wcProps.getLastMergeRevision().getNumber()) {
-            String errorMessage =
-                    "ERROR: There are unmerged changes in the source." +
-                            "\nRun 'sav sync' to pull in unmerged changes";
-            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.CLIENT_NOT_READY_TO_MERGE, errorMessage), SVNLogType.CLIENT);
-        }
-        logEnd("Check for changes");
-
-        //Get metadata properties on the source so we can get its savana policies object
-        logStart("Get metadata for the source branch");
-        MetadataProperties sourceProps = new MetadataProperties(repository, wcProps.getSourceMetadataFilePath(), sourceInfo.getRevision().getNumber());
-        logEnd("Get metadata for the source branch");
-
-        //Get the commit message (may launch an external editor).  We don't want to diff branches yet, so pass a dummy string as the commit item.
-        //Do this as late as we can so it's likely the promote will succeed after we launch the editor and the user enters the commit comment.
-        logStart("Get commit comment");
-        String message = "promote branch " + wcProps.getBranchName() + " to " + wcProps.getSourceName() + " in project " + wcProps.getProjectName();
-        String commitMessage = env.getCommitMessage(null, new SVNCommitItem[]{createDummyCommitItem(message)});
-        logEnd("Get commit comment");
-
-        //Validate the commit comment against the branch name before we make any changes
-        if (sourceProps.getSavanaPolicies() != null) {
-            logStart("Validate commit comment");
-            sourceProps.getSavanaPolicies().validateLogMessage(commitMessage, sourceProps, sourceProps.isCodeFrozen());
-            logEnd("Validate commit comment");
-        }
+        return promoteEditor.getCommitInfo();
+    }
 
-        ///////// All changes to the working copy and to the repository happen below ///////// 
+    private SVNCommitInfo promoteInWorkingCopy(SAVCommandEnvironment env, WorkingCopyInfo wcInfo, MetadataProperties wcProps,
+                                               MetadataProperties sourceProps, SVNURL sourceURL, SVNURL branchURL,
+                                               SVNRevision lastMergeRevision, SVNRevision lastBranchCommitRevision,
+                                               String commitMessage) throws SVNException {
+        SVNWCClient wcClient = env.getClientManager().getWCClient();
 
         //Switch the working copy to the source
         logStart("Do switch to source");
@@ -204,11 +419,9 @@ public class Promote extends SAVCommand {
         //Remove subversion 1.5 svn:mergeinfo since Savana does its own merge tracking
         if (sourceProps.getSavanaPolicies() != null && sourceProps.getSavanaPolicies().shouldDeleteSvnMergeProperty()) {
             logStart("Remove svn:mergeinfo property");
-            deleteSvnMergeInfo(wcClient, wcInfo.getRootDir());
-            // for files that had changed properties, some might have been svn:mergeinfo properties, so delete them just in case.
-            for (File file : notifyPrinter.getPropertiesChangedFiles()) {
-                deleteSvnMergeInfo(wcClient, file);
-            }
+            long start = System.currentTimeMillis();
+            List<File> scrubbed = new MergeInfoScrubber(wcClient).scrub(wcInfo.getRootDir());
+            log("Removed svn:mergeinfo from " + scrubbed.size() + " paths in " + (System.currentTimeMillis() - start) + " ms");
             logEnd("Remove svn:mergeinfo property");
         }
 
@@ -224,17 +437,11 @@ public class Promote extends SAVCommand {
         //Don't allow the promote if there are replaced files
         logStart("Check for replaced files");
         FilteredStatusHandler filteredStatusHandler = new FilteredStatusHandler(SVNStatusType.STATUS_REPLACED);
+        SVNStatusClient statusClient = env.getClientManager().getStatusClient();
         statusClient.doStatus(wcInfo.getRootDir(), SVNRevision.HEAD, SVNDepth.INFINITY,
                 false, true, false, false, filteredStatusHandler, null);
         if (!filteredStatusHandler.getEntries().isEmpty()) {
-            StringBuilder errorMessageBuilder = new StringBuilder();
-            errorMessageBuilder.append(MessageFormat.format("ERROR: Cannot promote branch {0} while there are replaced files:", wcProps.getBranchName()));
-            List<File> entries = filteredStatusHandler.getEntries();
-            Collections.sort(entries);
-            for (File file : entries) {
-                errorMessageBuilder.append("\n- ").append(SVNCommandUtil.getLocalPath(env.getRelativePath(file)));
-            }
-            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.CLIENT_NOT_READY_TO_MERGE, errorMessageBuilder.toString()), SVNLogType.CLIENT);
+            reportReplacedFiles(env, wcProps, filteredStatusHandler.getEntries());
         }
         logEnd("Check for replaced files");
 
@@ -250,12 +457,17 @@ public class Promote extends SAVCommand {
         commitClient.doDelete(new SVNURL[] {branchURL}, wcProps.getBranchName() + " - deleting promoted branch");
         logEnd("Perform Delete");
 
-        //Print the new working copy info
-        wcInfo = new WorkingCopyInfo(env.getClientManager());
-        env.getOut().println("");
-        wcInfo.println(env.getOut());
-        env.getOut().println("");
-        env.getOut().println("Promotion Changeset:   [" + commitInfo.getNewRevision() + "]");
+        return commitInfo;
+    }
+
+    private void reportReplacedFiles(SAVCommandEnvironment env, MetadataProperties wcProps, List<File> entries) throws SVNException {
+        StringBuilder errorMessageBuilder = new StringBuilder();
+        errorMessageBuilder.append(MessageFormat.format("ERROR: Cannot promote branch {0} while there are replaced files:", wcProps.getBranchName()));
+        Collections.sort(entries);
+        for (File file : entries) {
+            errorMessageBuilder.append("\n- ").append(SVNCommandUtil.getLocalPath(env.getRelativePath(file)));
+        }
+        SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.CLIENT_NOT_READY_TO_MERGE, errorMessageBuilder.toString()), SVNLogType.CLIENT);
     }
 
     private SVNCommitItem createDummyCommitItem(String message) {
@@ -264,10 +476,69 @@ public class Promote extends SAVCommand {
         return commitItem;
     }
 
-    private void deleteSvnMergeInfo(SVNWCClient wcClient, File file) throws SVNException {
-        if (file.exists() && wcClient.doGetProperty(file, "svn:mergeinfo", SVNRevision.WORKING, SVNRevision.WORKING) != null) {
-            log("Deleting svn:mergeinfo property on file: " + file);
-            wcClient.doSetProperty(file, "svn:mergeinfo", null, false, SVNDepth.EMPTY, null, null);
+    /**
+     * A phase of the promote that runs on one of the promote threads once the phases it depends on have finished.
+     * Its wall time, not counting the wait for other phases, is logged and added to the trace.
+     */
+    private abstract class Phase<T> implements Callable<T> {
+        private final String _name;
+        private final Phase<?>[] _dependencies;
+        private Future<T> _future;
+
+        public Phase(String name, Phase<?>... dependencies) {
+            _name = name;
+            _dependencies = dependencies;
+        }
+
+        protected abstract T run() throws SVNException;
+
+        public Phase<T> submit(ExecutorService executor) {
+            _future = executor.submit(this);
+            return this;
+        }
+
+        public T call() throws SVNException {
+            for (Phase<?> dependency : _dependencies) {
+                dependency.get();
+            }
+            long start = System.nanoTime();
+            try {
+                return run();
+            } finally {
+                logPhase(_name, start, System.nanoTime());
+            }
+        }
+
+        /** Waits for the phase to finish and returns its result, or throws the error that it failed with. */
+        public T get() throws SVNException {
+            try {
+                return _future.get();
+            } catch (InterruptedException e) {
+                SVNErrorManager.cancel("Interrupted while waiting for: " + _name, SVNLogType.CLIENT);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SVNException) {
+                    throw (SVNException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.UNKNOWN, cause.toString()), cause, SVNLogType.CLIENT);
+            }
+            return null;
+        }
+    }
+
+    private static class PromoteThreadFactory implements ThreadFactory {
+        private final AtomicInteger _count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "savana-promote-" + _count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         }
     }
 }
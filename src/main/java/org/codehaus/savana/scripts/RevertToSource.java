@@ -36,6 +36,7 @@ import org.codehaus.savana.WorkingCopyInfo;
 import org.tmatesoft.svn.cli.svn.SVNNotifyPrinter;
 import org.tmatesoft.svn.cli.svn.SVNOption;
 import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNDirEntry;
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
@@ -55,7 +56,13 @@ import org.tmatesoft.svn.util.SVNLogType;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class RevertToSource extends SAVCommand {
 
@@ -80,7 +87,7 @@ public class RevertToSource extends SAVCommand {
         }
 
         //Get information about the current workspace from the metadata file
-        WorkingCopyInfo wcInfo = new WorkingCopyInfo(env.getClientManager());
+        WorkingCopyInfo wcInfo = new WorkingCopyInfo(env.getClientManager(), env.getCurrentDirectory());
         MetadataProperties wcProps = wcInfo.getMetadataProperties();
         SVNRepository repository = env.getClientManager().createRepository(wcInfo.getRepositoryURL(), false);
 
@@ -90,95 +97,125 @@ public class RevertToSource extends SAVCommand {
             SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.ILLEGAL_TARGET, errorMessage), SVNLogType.CLIENT);
         }
 
-        //For each target path...
-        for (String target : targets) {
-            File path = PathUtil.getValidatedAbsoluteFile(target);
-
-            logStart("Build paths for " + path);
-
-            //Find the relative file path from the working copy root
-            String relativePath = PathUtil.getPathTail(path, wcInfo.getRootDir());
-
-            //Find the relative path of the file in both the source and branch
-            String relativeSourcePath = SVNPathUtil.append(wcProps.getSourcePath(), relativePath);
-            String relativeBranchPath = SVNPathUtil.append(wcProps.getBranchPath(), relativePath);
+        //Build the paths for each target, without duplicates
+        logStart("Build paths");
+        Set<File> targetPaths = new LinkedHashSet<File>();
+        for (String targetName : targets) {
+            targetPaths.add(PathUtil.getValidatedAbsoluteFile(env.getCurrentDirectory(), targetName));
+        }
+        List<Target> targetsToRevert = new ArrayList<Target>();
+        for (File path : targetPaths) {
+            targetsToRevert.add(new Target(path, wcInfo));
+        }
+        targetsToRevert = removeTargetsInCopiedDirs(repository, targetsToRevert, wcProps.getLastMergeRevision().getNumber());
 
-            //Create the source URL
-            SVNURL sourceURL = wcInfo.getRepositoryURL(relativeSourcePath);
+        //Group the targets by directory
+        Map<File, List<Target>> targetsByDir = new LinkedHashMap<File, List<Target>>();
+        List<Target> allTargets = new ArrayList<Target>();
+        for (Target target : targetsToRevert) {
+            List<Target> dirTargets = targetsByDir.get(target._path.getParentFile());
+            if (dirTargets == null) {
+                dirTargets = new ArrayList<Target>();
+                targetsByDir.put(target._path.getParentFile(), dirTargets);
+            }
+            dirTargets.add(target);
+            allTargets.add(target);
+        }
+        logEnd("Build paths");
 
-            logEnd("Build paths for " + path);
+        //Determine if the files exist in the source and in the branch, listing each directory once
+        //NOTE: A file might exist in the branch even if it doesn't exist in the working copy
+        SVNWCClient wcClient = env.getClientManager().getWCClient();
+        for (Map.Entry<File, List<Target>> entry : targetsByDir.entrySet()) {
+            List<Target> dirTargets = entry.getValue();
+            Target first = dirTargets.get(0);
 
-            //Determine if the file exists in the source and in the branch
-            //NOTE: It might exist in the branch even if it doesn't exist in the working copy
             logStart("Check branch exists");
-            boolean branchExists = (repository.checkPath(relativeBranchPath, -1) != SVNNodeKind.NONE);
+            Set<String> branchNames = getChildNames(repository, SVNPathUtil.removeTail(first._relativeBranchPath), -1);
             logEnd("Check branch exists");
             logStart("Check source exists");
-            boolean sourceExists = (repository.checkPath(relativeSourcePath, wcProps.getLastMergeRevision().getNumber()) != SVNNodeKind.NONE);
+            Set<String> sourceNames = getChildNames(repository, SVNPathUtil.removeTail(first._relativeSourcePath),
+                    wcProps.getLastMergeRevision().getNumber());
             logEnd("Check source exists");
 
             logStart("Check not a member of a subbranch");
-            SVNWCClient wcClient = env.getClientManager().getWCClient();
-            SVNInfo parentInfo = wcClient.doInfo(path.getParentFile(), SVNRevision.WORKING);
-            SVNURL branchActualURL = parentInfo.getURL().appendPath(path.getName(), false);
-            SVNURL branchExpectedURL = wcInfo.getRepositoryURL(relativeBranchPath);
-            if (!branchExpectedURL.equals(branchActualURL)) {
-                String errorMessage =
-                        "ERROR: Can't revert a file that is switched relative to the working copy." +
-                        "\nExpected Path URL: " + branchExpectedURL +
-                        "\nSwitched URL:      " + branchActualURL;
-                SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.ILLEGAL_TARGET, errorMessage), SVNLogType.CLIENT);
+            SVNInfo parentInfo = wcClient.doInfo(entry.getKey(), SVNRevision.WORKING);
+            for (Target target : dirTargets) {
+                target._branchExists = branchNames.contains(SVNPathUtil.tail(target._relativeBranchPath));
+                target._sourceExists = sourceNames.contains(SVNPathUtil.tail(target._relativeSourcePath));
+                target._branchActualURL = parentInfo.getURL().appendPath(target._path.getName(), false);
+                SVNURL branchExpectedURL = wcInfo.getRepositoryURL(target._relativeBranchPath);
+                if (!branchExpectedURL.equals(target._branchActualURL)) {
+                    String errorMessage =
+                            "ERROR: Can't revert a file that is switched relative to the working copy." +
+                            "\nExpected Path URL: " + branchExpectedURL +
+                            "\nSwitched URL:      " + target._branchActualURL;
+                    SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.ILLEGAL_TARGET, errorMessage), SVNLogType.CLIENT);
+                }
             }
             logEnd("Check not a member of a subbranch");
+        }
 
-            //Try to revert the working file.
-            //We need to run revert for all of these states
-            //1. In HEAD, in WORKING
-            //2. In HEAD, not in WORKING (svn delete)
-            //3. In HEAD, not in WORKING (manual delete)
-            //4. Not in HEAD, in WORKING (svn add)
-
-            //We don't need to run revert for the following cases
-            //5. Not in HEAD, in working (manual create, but not svn add'ed)
-            //6. Not in HEAD, not in WORKING
-
-            //Unfortunately, there is no easy way to distinguish between cases #4 and #5.  Since the revert command will throw
-            //an exception for case #5, we will just always run the revert and catch and ignore any exceptions
-            try {
-                //Revert any changes to the working copy
-                logStart("Do revert");
-                wcClient.doRevert(new File[] {path}, SVNDepth.EMPTY, null);
-                logEnd("Do Revert");
-            }
-            catch (SVNException e) {
-                //Ignore: see comment above
+        //Try to revert the working files.
+        //We need to run revert for all of these states
+        //1. In HEAD, in WORKING
+        //2. In HEAD, not in WORKING (svn delete)
+        //3. In HEAD, not in WORKING (manual delete)
+        //4. Not in HEAD, in WORKING (svn add)
+
+        //We don't need to run revert for the following cases
+        //5. Not in HEAD, in working (manual create, but not svn add'ed)
+        //6. Not in HEAD, not in WORKING
+
+        //Unfortunately, there is no easy way to distinguish between cases #4 and #5.  Since the revert command will throw
+        //an exception for case #5, revert all the files at once and, if that fails, revert them one at a time
+        //ignoring any exceptions.
+        logStart("Do revert");
+        File[] paths = new File[allTargets.size()];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = allTargets.get(i)._path;
+        }
+        try {
+            wcClient.doRevert(paths, SVNDepth.EMPTY, null);
+        } catch (SVNException e) {
+            for (File path : paths) {
+                try {
+                    wcClient.doRevert(new File[] {path}, SVNDepth.EMPTY, null);
+                } catch (SVNException e2) {
+                    //Ignore: see comment above
+                }
             }
+        }
+        logEnd("Do revert");
 
-            if (sourceExists && branchExists) {
+        //Handle each target in order so the output is the same as reverting them one at a time
+        Set<File> copiedDirs = new HashSet<File>();
+        for (Target target : allTargets) {
+            File path = target._path;
+            if (target._sourceExists && target._branchExists) {
                 //Merge in differences from [last merge revision, head] into the working copy
                 logStart("Do merge");
                 SVNDiffClient diffClient = env.getClientManager().getDiffClient();
                 diffClient.setEventHandler(new SVNNotifyPrinter(env));
-                diffClient.doMerge(branchActualURL, SVNRevision.HEAD, sourceURL, wcProps.getLastMergeRevision(), path,
+                diffClient.doMerge(target._branchActualURL, SVNRevision.HEAD, target._sourceURL, wcProps.getLastMergeRevision(), path,
                         SVNDepth.FILES, false, false, false, false);
                 logEnd("Do merge");
-            } else if (sourceExists && !branchExists) {
-                //Copy the file from the source to the branch
+            } else if (target._sourceExists && !target._branchExists) {
+                //Copy the files in this directory from the source to the branch, all in one pass
                 logStart("Do Copy");
-                SVNCopyClient copyClient = env.getClientManager().getCopyClient();
-                copyClient.doCopy(
-                        new SVNCopySource[] {
-                                new SVNCopySource(wcProps.getLastMergeRevision(), wcProps.getLastMergeRevision(), sourceURL)
-                        }, path.getAbsoluteFile(), false, false, false);
+                File dir = path.getParentFile();
+                if (copiedDirs.add(dir)) {
+                    copyFromSource(targetsByDir.get(dir), wcProps.getLastMergeRevision());
+                }
                 env.getOut().println("A    " + path);
                 logEnd("Do Copy");
-            } else if (!sourceExists && branchExists) {
+            } else if (!target._sourceExists && target._branchExists) {
                 //Delete the file from the branch
                 logStart("Do Delete");
                 wcClient.doDelete(path, false, false, false);
                 env.getOut().println("D    " + path);
                 logEnd("Do Delete");
-            } else if (!sourceExists && !branchExists) {
+            } else if (!target._sourceExists && !target._branchExists) {
                 //No need to do anything since the file isn't in the source or the branch
                 logStart("Do Skip");
                 env.getOut().println("Skipped " + path);
@@ -186,4 +223,92 @@ public class RevertToSource extends SAVCommand {
             }
         }
     }
+
+    /**
+     * Removes the targets inside a directory target that will be copied back from the source, since the copy brings
+     * them back too and copying them again would fail.  Targets inside other directory targets are kept, reverting
+     * a directory only reverts the directory itself and merges its files.
+     */
+    private List<Target> removeTargetsInCopiedDirs(SVNRepository repository, List<Target> targets, long lastMergeRevision)
+            throws SVNException {
+        Map<Target, Boolean> copiedDirs = new HashMap<Target, Boolean>();
+        List<Target> remaining = new ArrayList<Target>();
+        for (Target target : targets) {
+            boolean inCopiedDir = false;
+            for (Target ancestor : targets) {
+                if (ancestor != target && PathUtil.isSubpath(target._relativeBranchPath, ancestor._relativeBranchPath)) {
+                    Boolean copied = copiedDirs.get(ancestor);
+                    if (copied == null) {
+                        copied = repository.checkPath(ancestor._relativeBranchPath, -1) == SVNNodeKind.NONE &&
+                                repository.checkPath(ancestor._relativeSourcePath, lastMergeRevision) == SVNNodeKind.DIR;
+                        copiedDirs.put(ancestor, copied);
+                    }
+                    if (copied) {
+                        inCopiedDir = true;
+                        break;
+                    }
+                }
+            }
+            if (!inCopiedDir) {
+                remaining.add(target);
+            }
+        }
+        return remaining;
+    }
+
+    /** Returns the names of the children of a directory in the repository, or nothing if it's not a directory. */
+    private Set<String> getChildNames(SVNRepository repository, String dirPath, long revision) throws SVNException {
+        Set<String> names = new HashSet<String>();
+        if (repository.checkPath(dirPath, revision) == SVNNodeKind.DIR) {
+            Collection<SVNDirEntry> entries = new ArrayList<SVNDirEntry>();
+            repository.getDir(dirPath, revision, null, SVNDirEntry.DIRENT_KIND, entries);
+            for (SVNDirEntry entry : entries) {
+                names.add(entry.getName());
+            }
+        }
+        return names;
+    }
+
+    /** Copies the targets of one directory that exist in the source but not in the branch with a single copy. */
+    private void copyFromSource(List<Target> dirTargets, SVNRevision lastMergeRevision) throws SVNException {
+        List<SVNCopySource> sources = new ArrayList<SVNCopySource>();
+        File dst = null;
+        for (Target target : dirTargets) {
+            if (target._sourceExists && !target._branchExists) {
+                sources.add(new SVNCopySource(lastMergeRevision, lastMergeRevision, target._sourceURL));
+                dst = target._path.getAbsoluteFile();
+            }
+        }
+        //With several sources the destination is the directory they're copied into
+        if (sources.size() > 1) {
+            dst = dst.getParentFile();
+        }
+        SVNCopyClient copyClient = getSVNEnvironment().getClientManager().getCopyClient();
+        copyClient.doCopy(sources.toArray(new SVNCopySource[sources.size()]), dst, false, false, false);
+    }
+
+    private static class Target {
+        private final File _path;
+        private final String _relativeSourcePath;
+        private final String _relativeBranchPath;
+        private final SVNURL _sourceURL;
+        private boolean _sourceExists;
+        private boolean _branchExists;
+        private SVNURL _branchActualURL;
+
+        public Target(File path, WorkingCopyInfo wcInfo) throws SVNException {
+            MetadataProperties wcProps = wcInfo.getMetadataProperties();
+            _path = path;
+
+            //Find the relative file path from the working copy root
+            String relativePath = PathUtil.getPathTail(path, wcInfo.getRootDir());
+
+            //Find the relative path of the file in both the source and branch
+            _relativeSourcePath = SVNPathUtil.append(wcProps.getSourcePath(), relativePath);
+            _relativeBranchPath = SVNPathUtil.append(wcProps.getBranchPath(), relativePath);
+
+            //Create the source URL
+            _sourceURL = wcInfo.getRepositoryURL(_relativeSourcePath);
+        }
+    }
 }
@@ -31,12 +31,15 @@
 package org.codehaus.savana.scripts;
 
 import org.codehaus.savana.scripts.admin.CreateMetadataFile;
+import org.codehaus.savana.scripts.admin.PreCommit;
 import org.tmatesoft.svn.cli.AbstractSVNCommand;
 import org.tmatesoft.svn.cli.AbstractSVNCommandEnvironment;
 import org.tmatesoft.svn.cli.AbstractSVNLauncher;
 import org.tmatesoft.svn.cli.SVNCommandLine;
 import org.tmatesoft.svn.cli.svn.SVNOption;
 
+import java.io.File;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
@@ -44,6 +47,8 @@ import java.util.List;
 public class SAV extends AbstractSVNLauncher {
     private PrintStream _out = System.out;
     private PrintStream _err = System.err;
+    private InputStream _in = System.in;
+    private File _currentDirectory;
 
     public static void main(String[] args) {
         new SAV().run(args);
@@ -62,11 +67,14 @@ public class SAV extends AbstractSVNLauncher {
 
     @Override
     protected AbstractSVNCommandEnvironment createCommandEnvironment() {
-        return new SAVCommandEnvironment(getProgramName(), _out, _err, System.in);
+        SAVCommandEnvironment env = new SAVCommandEnvironment(getProgramName(), _out, _err, _in);
+        env.setCurrentDirectory(_currentDirectory);
+        return env;
     }
 
     @Override
     protected void registerCommands() {
+        AbstractSVNCommand.registerCommand(new BranchStatus());
         AbstractSVNCommand.registerCommand(new CreateReleaseBranch());
         AbstractSVNCommand.registerCommand(new CreateUserBranch());
         // there's no DeleteReleaseBranch command--it's dangerous, almost never useful,
@@ -81,10 +89,12 @@ public class SAV extends AbstractSVNLauncher {
         AbstractSVNCommand.registerCommand(new Promote());
         AbstractSVNCommand.registerCommand(new RevertToSource());
         AbstractSVNCommand.registerCommand(new SetBranch());
+        AbstractSVNCommand.registerCommand(new SyncAll());
         AbstractSVNCommand.registerCommand(new Synchronize());
 
         //Admin commands
         AbstractSVNCommand.registerCommand(new CreateMetadataFile());
+        AbstractSVNCommand.registerCommand(new PreCommit());
     }
 
     @Override
@@ -95,6 +105,7 @@ public class SAV extends AbstractSVNLauncher {
         SVNCommandLine.registerOption(SVNOption.DIFF_CMD);
         SVNCommandLine.registerOption(SVNOption.EXTENSIONS);
         SVNCommandLine.registerOption(SVNOption.FORCE);
+        SVNCommandLine.registerOption(SVNOption.DRY_RUN);
         SVNCommandLine.registerOption(SVNOption.NO_DIFF_DELETED);
         SVNCommandLine.registerOption(SVNOption.RECURSIVE);
         SVNCommandLine.registerOption(SVNOption.DEPTH);
@@ -135,11 +146,17 @@ public class SAV extends AbstractSVNLauncher {
         return true;
     }
 
-    /** For testing. */
+    /** For testing and the daemon. */
     public void setOut(PrintStream out) {
         _out = out;
     }
     public void setErr(PrintStream err) {
         _err = err;
     }
+    public void setIn(InputStream in) {
+        _in = in;
+    }
+    public void setCurrentDirectory(File currentDirectory) {
+        _currentDirectory = currentDirectory;
+    }
 }
@@ -0,0 +1,186 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana.scripts;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Properties;
+
+/**
+ * Thin launcher that forwards a Savana command to a running {@link SAVDaemon}.  If no daemon is
+ * running the command is run in this process instead.  This class must only depend on the JDK and
+ * {@link SAVDaemonProtocol} so forwarding a command doesn't load SVNKit.
+ */
+public class SAVClient {
+
+    /** Returned by {@link #execute} when the command couldn't be sent to a daemon. */
+    public static final int NO_DAEMON = -1;
+
+    /** How long to wait for a daemon that's busy with another command before running the command locally. */
+    private static final int START_TIMEOUT_MILLIS = 2000;
+
+    /** Options whose values are files.  The daemon reads them, so relative paths must be made absolute. */
+    private static final String[] FILE_OPTIONS = {"-F", "--file", "--targets", "--savanaPoliciesFile", "--config-dir"};
+
+    public static void main(String[] args) {
+        int exitCode = new SAVClient().execute(args, System.out, System.err);
+        if (exitCode == NO_DAEMON) {
+            SAV.main(args);
+        } else {
+            System.exit(exitCode);
+        }
+    }
+
+    /**
+     * Sends the command to the daemon and copies its output to the specified streams.  Returns the
+     * exit code of the command, or {@link #NO_DAEMON} if the daemon isn't running.
+     */
+    public int execute(String[] args, PrintStream out, PrintStream err) {
+        File daemonFile = SAVDaemonProtocol.getDaemonFile(SAVDaemonProtocol.getConfigDir(args));
+        if (!daemonFile.isFile()) {
+            return NO_DAEMON;
+        }
+
+        Socket socket;
+        String secret;
+        try {
+            Properties properties = SAVDaemonProtocol.readDaemonFile(daemonFile);
+            int port = Integer.parseInt(properties.getProperty(SAVDaemonProtocol.PROP_PORT));
+            secret = properties.getProperty(SAVDaemonProtocol.PROP_SECRET);
+            socket = new Socket();
+            socket.connect(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), START_TIMEOUT_MILLIS);
+        } catch (Exception e) {
+            //The daemon exited without cleaning up, or is still starting
+            return NO_DAEMON;
+        }
+
+        try {
+            File currentDirectory = new File("").getAbsoluteFile();
+            String[] absoluteArgs = getAbsoluteFileArguments(args, currentDirectory);
+            DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            request.writeInt(SAVDaemonProtocol.VERSION);
+            request.writeUTF(secret);
+            request.writeUTF(currentDirectory.getPath());
+            request.writeInt(absoluteArgs.length);
+            for (String arg : absoluteArgs) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+
+            //Wait for the daemon to pick up the request.  It runs one command at a time, so run the command
+            //locally rather than wait for another client's command to finish.
+            DataInputStream response = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            socket.setSoTimeout(START_TIMEOUT_MILLIS);
+            try {
+                if (response.readByte() != SAVDaemonProtocol.READY) {
+                    return NO_DAEMON;
+                }
+            } catch (IOException e) {
+                //The daemon is busy, or it hung up because it's a different version or has a new secret
+                return NO_DAEMON;
+            }
+            socket.setSoTimeout(0);
+            request.writeByte(SAVDaemonProtocol.RUN);
+            request.flush();
+
+            byte[] buf = new byte[8192];
+            while (true) {
+                byte channel = response.readByte();
+                if (channel == SAVDaemonProtocol.CHANNEL_EXIT) {
+                    out.flush();
+                    err.flush();
+                    return response.readInt();
+                }
+                PrintStream target = (channel == SAVDaemonProtocol.CHANNEL_ERR) ? err : out;
+                int length = response.readInt();
+                while (length > 0) {
+                    int count = response.read(buf, 0, Math.min(buf.length, length));
+                    if (count < 0) {
+                        throw new IOException("Unexpected end of output from the Savana daemon");
+                    }
+                    target.write(buf, 0, count);
+                    length -= count;
+                }
+            }
+        } catch (IOException e) {
+            err.println("sav: Lost connection to the Savana daemon: " + e);
+            return 1;
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Returns the arguments with relative paths in the values of options that name files made absolute, since
+     * the daemon runs in a different directory.  Paths in the other arguments are resolved by the command
+     * against the current directory sent with the request, because only the command knows which are paths.
+     */
+    static String[] getAbsoluteFileArguments(String[] args, File currentDirectory) {
+        String[] result = args.clone();
+        for (int i = 0; i < result.length; i++) {
+            String arg = result[i];
+            if ("--".equals(arg)) {
+                break;
+            }
+            if ("-m".equals(arg) || "--message".equals(arg)) {
+                //Skip the log message in case it looks like an option
+                i++;
+                continue;
+            }
+            for (String option : FILE_OPTIONS) {
+                if (arg.equals(option) && i + 1 < result.length) {
+                    i++;
+                    result[i] = getAbsolutePath(result[i], currentDirectory);
+                    break;
+                } else if (arg.startsWith(option + "=")) {
+                    result[i] = option + "=" + getAbsolutePath(arg.substring(option.length() + 1), currentDirectory);
+                    break;
+                } else if (!option.startsWith("--") && arg.startsWith(option) && arg.length() > option.length()) {
+                    result[i] = option + getAbsolutePath(arg.substring(option.length()), currentDirectory);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String getAbsolutePath(String path, File currentDirectory) {
+        return new File(path).isAbsolute() ? path : new File(currentDirectory, path).getPath();
+    }
+}
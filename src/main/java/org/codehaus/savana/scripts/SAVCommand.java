@@ -30,6 +30,9 @@
  */
 package org.codehaus.savana.scripts;
 
+import org.codehaus.savana.CommandMetrics;
+import org.codehaus.savana.RepositorySessions;
+import org.codehaus.savana.Tracer;
 import org.codehaus.savana.Version;
 import org.codehaus.savana.WCUtil;
 import org.tmatesoft.svn.cli.svn.SVNCommand;
@@ -41,6 +44,10 @@ import org.tmatesoft.svn.core.internal.wc.admin.SVNAdminAreaFactory;
 import org.tmatesoft.svn.util.SVNLogType;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
@@ -48,6 +55,8 @@ import java.util.logging.Logger;
 public abstract class SAVCommand extends SVNCommand {
     public static final Logger _sLog = Logger.getLogger("savana-info");
 
+    private Tracer _tracer;
+
     protected SAVCommand(String name, String[] aliases) {
         super(name, aliases);
     }
@@ -56,22 +65,36 @@ public abstract class SAVCommand extends SVNCommand {
 
     @Override
     public final void run() throws SVNException {
+        //Trace the phases of the command with '-Dsavana.trace=<file>'
+        String traceFile = System.getProperty("savana.trace");
+        //Add the command's metrics to a file for node-exporter's textfile collector with '-Dsavana.metrics=<file>'
+        String metricsFile = System.getProperty("savana.metrics");
+        _tracer = (traceFile != null || metricsFile != null) ? new Tracer(getName()) : null;
+        long startFilesScanned = CommandMetrics.getFilesScanned();
+        long startMergePaths = CommandMetrics.getMergePaths();
+        boolean succeeded = false;
         try {
             log("Savana version: " + Version.VERSION_LONG + " (SVNKit version " + Version.SVNKIT_VERSION + ")");
             log("COMMAND BEGIN: " + getSVNEnvironment().getCommandLineString());
-            log("Current directory: " + new File("").getAbsolutePath());
+            log("Current directory: " + getSVNEnvironment().getCurrentDirectory());
 
             if (getWorkingCopyFormatFromCurrentDirectory()) {
                 // assume this Savana command is run from within a Subversion working copy.  configure SVNKit
                 // to use the same Subversion file formats as the version used for the current directory.
-                configureWorkingCopyFormat(new File("").getAbsoluteFile());
+                configureWorkingCopyFormat(getSVNEnvironment().getCurrentDirectory());
             }
             //Never upgrade the working copy format from one version of svn to another.
             //Use other apps to do so (for example: 'svn update').
             SVNAdminAreaFactory.setUpgradeEnabled(false);
 
             doRun();
+            succeeded = true;
 
+            RepositorySessions sessions = getSVNEnvironment().getRepositorySessions();
+            if (sessions != null) {
+                log("Repository sessions: " + sessions.getSessionsOpened() + " opened, " +
+                        sessions.getSessionsReused() + " reused");
+            }
             log("COMMAND FINISHED: " + getSVNEnvironment().getCommandLineString());
 
         // catch runtime exceptions and errors and rethrown them as SVNException
@@ -81,6 +104,50 @@ public abstract class SAVCommand extends SVNCommand {
         } catch (Error e) {
             SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.UNKNOWN,
                     "Internal Savana error: " + e, null, SVNErrorMessage.TYPE_ERROR, e), SVNLogType.CLIENT);
+        } finally {
+            //Don't let later commands reuse sessions that a failure may have left in the middle of a request
+            RepositorySessions sessions = getSVNEnvironment().getRepositorySessions();
+            if (!succeeded && sessions != null) {
+                sessions.discardAll();
+            }
+            if (_tracer != null) {
+                _tracer.finish();
+                if (traceFile != null) {
+                    writeTrace(_tracer, new File(traceFile), System.getProperty("savana.trace.format", "json"));
+                }
+                if (metricsFile != null) {
+                    writeMetrics(_tracer, new File(metricsFile), System.getProperty("savana.metrics.format", "prometheus"),
+                            succeeded, CommandMetrics.getFilesScanned() - startFilesScanned,
+                            CommandMetrics.getMergePaths() - startMergePaths);
+                }
+                _tracer = null;
+            }
+        }
+    }
+
+    private void writeTrace(Tracer tracer, File traceFile, String format) {
+        try {
+            Writer out = new OutputStreamWriter(new FileOutputStream(traceFile), "UTF-8");
+            try {
+                if ("chrome".equals(format)) {
+                    tracer.writeChromeTrace(out);
+                } else {
+                    tracer.writeJson(out);
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            _sLog.log(Level.WARNING, "Unable to write trace file " + traceFile + ": " + e, e);
+        }
+    }
+
+    private void writeMetrics(Tracer tracer, File metricsFile, String format, boolean succeeded,
+                              long filesScanned, long mergePaths) {
+        try {
+            CommandMetrics.record(metricsFile, format, getName(), succeeded, tracer.getRoot(), filesScanned, mergePaths);
+        } catch (IOException e) {
+            _sLog.log(Level.WARNING, "Unable to write metrics file " + metricsFile + ": " + e, e);
         }
     }
 
@@ -108,10 +175,29 @@ public abstract class SAVCommand extends SVNCommand {
     
     public void logStart(String message) {
         log("Start: " + message);
+        if (_tracer != null) {
+            _tracer.start(message);
+        }
     }
 
     public void logEnd(String message) {
         log("End:   " + message);
+        if (_tracer != null) {
+            _tracer.end(message);
+        }
+    }
+
+    /**
+     * Logs the wall time of a phase that ran on another thread, between two {@link System#nanoTime()} values, and
+     * adds it to the trace.  Called by the thread that ran the phase.
+     */
+    public void logPhase(String message, long startNanos, long endNanos) {
+        String thread = Thread.currentThread().getName();
+        log("Phase: " + message + " took " + (endNanos - startNanos) / 1000000 + " ms on " + thread);
+        Tracer tracer = _tracer;
+        if (tracer != null) {
+            tracer.add(message, thread, startNanos, endNanos);
+        }
     }
 
     public void log(String message) {
@@ -30,17 +30,29 @@
  */
 package org.codehaus.savana.scripts;
 
+import org.codehaus.savana.BranchIndex;
 import org.codehaus.savana.BranchType;
+import org.codehaus.savana.MetadataCache;
+import org.codehaus.savana.MetadataProperties;
+import org.codehaus.savana.RepositorySessionPool;
+import org.codehaus.savana.RepositorySessions;
 import org.tmatesoft.svn.cli.AbstractSVNOption;
 import org.tmatesoft.svn.cli.SVNCommandLine;
 import org.tmatesoft.svn.cli.SVNOptionValue;
 import org.tmatesoft.svn.cli.svn.SVNCommandEnvironment;
+import org.tmatesoft.svn.cli.svn.SVNOption;
+import org.tmatesoft.svn.core.SVNCancelException;
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.internal.wc.DefaultSVNOptions;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.wc.ISVNConflictHandler;
+import org.tmatesoft.svn.core.wc.ISVNEventHandler;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNEvent;
+import org.tmatesoft.svn.core.wc.SVNWCUtil;
 import org.tmatesoft.svn.util.SVNLogType;
 
 import java.io.File;
@@ -53,6 +65,7 @@ import java.util.regex.Pattern;
 public class SAVCommandEnvironment extends SVNCommandEnvironment {
 
     private SVNCommandLine _commandLine;
+    private File _currentDirectory;
     private boolean _changeRoot;
     private boolean _remote;
     private boolean _topLevelExplicit;
@@ -61,6 +74,11 @@ public class SAVCommandEnvironment extends SVNCommandEnvironment {
     private String _releaseBranchesPath = BranchType.RELEASE_BRANCH.getDefaultPath();
     private String _userBranchesPath = BranchType.USER_BRANCH.getDefaultPath();
     private byte[] _savanaPoliciesFileData;
+    private File _configDir;
+    private final StringBuilder _credentialsKey = new StringBuilder();
+    private MetadataCache _metadataCache;
+    private BranchIndex _branchIndex;
+    private RepositorySessions _repositorySessions;
 
     public SAVCommandEnvironment(String programName, PrintStream out, PrintStream err, InputStream in) {
         super(programName, out, err, in);
@@ -90,11 +108,46 @@ public class SAVCommandEnvironment extends SVNCommandEnvironment {
             _userBranchesPath = optionValue.getValue();
         } else if (option == SAVOption.SAVANA_POLICIES_FILE) {
             _savanaPoliciesFileData = readFromFile(new File(optionValue.getValue()));
+        } else if (option == SVNOption.CONFIG_DIR) {
+            _configDir = new File(optionValue.getValue());
+            _credentialsKey.append(option.getName()).append('=').append(optionValue.getValue()).append('\n');
+            super.initOption(optionValue);
+        } else if (option == SVNOption.USERNAME || option == SVNOption.PASSWORD || option == SVNOption.NO_AUTH_CACHE ||
+                option == SVNOption.NON_INTERACTIVE || option == SVNOption.TRUST_SERVER_CERT || option == SVNOption.CONFIG_OPTION) {
+            //Options that change how the command authenticates, sessions are only reused by commands that agree on them
+            _credentialsKey.append(option.getName()).append('=').append(optionValue.getValue()).append('\n');
+            super.initOption(optionValue);
         } else {
             super.initOption(optionValue);
         }
     }
 
+    /**
+     * Creates a client manager whose repository sessions are borrowed from the process-wide session pool, so
+     * that the phases of a command and later commands run by the same process with the same credentials
+     * reuse connections.
+     */
+    @Override
+    public SVNClientManager createClientManager() {
+        _repositorySessions = new RepositorySessions(RepositorySessionPool.getInstance(),
+                createClientAuthenticationManager(), _credentialsKey.toString(), getOptions());
+        SVNClientManager clientManager = SVNClientManager.newInstance(getOptions(), _repositorySessions);
+        clientManager.setEventHandler(new ISVNEventHandler() {
+            public void handleEvent(SVNEvent event, double progress) throws SVNException {
+            }
+
+            public void checkCancelled() throws SVNCancelException {
+                SAVCommandEnvironment.this.checkCancelled();
+            }
+        });
+        return clientManager;
+    }
+
+    /** Returns the repository sessions used by the current client manager, for reporting. */
+    public RepositorySessions getRepositorySessions() {
+        return _repositorySessions;
+    }
+
     public ISVNConflictHandler getConflictHandler() throws SVNException {
         DefaultSVNOptions options = getOptions();
         //The SVNKit DefaultSVNOptions class doesn't expose a getter for the
@@ -140,6 +193,18 @@ public class SAVCommandEnvironment extends SVNCommandEnvironment {
         return string;
     }
 
+    /**
+     * Returns the directory the command runs in.  This is the process's current directory unless the command
+     * was sent by a client of the Savana daemon, which runs commands in the client's current directory.
+     */
+    public File getCurrentDirectory() {
+        return (_currentDirectory != null) ? _currentDirectory : new File("").getAbsoluteFile();
+    }
+
+    public void setCurrentDirectory(File currentDirectory) {
+        _currentDirectory = currentDirectory;
+    }
+
     public boolean isChangeRoot() {
         return _changeRoot;
     }
@@ -171,4 +236,41 @@ public class SAVCommandEnvironment extends SVNCommandEnvironment {
     public byte[] getSavanaPoliciesFileData() {
         return _savanaPoliciesFileData;
     }
+
+    /** Returns the subversion configuration directory, either '--config-dir' or the default (eg. '~/.subversion'). */
+    public File getConfigDir() {
+        return (_configDir != null) ? _configDir : SVNWCUtil.getDefaultConfigurationDirectory();
+    }
+
+    /**
+     * Returns the on-disk cache of remote metadata properties, or null if the cache has been disabled
+     * using '-Dsavana.metadata-cache=false'.
+     */
+    public MetadataCache getMetadataCache() {
+        if (_metadataCache == null && !"false".equals(System.getProperty("savana.metadata-cache"))) {
+            _metadataCache = MetadataCache.forConfigDir(getConfigDir());
+        }
+        return _metadataCache;
+    }
+
+    /**
+     * Returns the on-disk index of branches.  If the index has been disabled using '-Dsavana.branch-index=false'
+     * this returns an index that isn't saved, so it lists the branches from scratch every time.
+     */
+    public BranchIndex getBranchIndex() {
+        if (_branchIndex == null) {
+            _branchIndex = "false".equals(System.getProperty("savana.branch-index")) ?
+                    new BranchIndex(null) : BranchIndex.forConfigDir(getConfigDir());
+        }
+        return _branchIndex;
+    }
+
+    /** Returns the properties of a metadata file in the repository, using the metadata cache when it's enabled. */
+    public MetadataProperties getMetadataProperties(SVNRepository repository, String metadataFilePath, long revision)
+            throws SVNException {
+        MetadataCache metadataCache = getMetadataCache();
+        return (metadataCache != null) ?
+                metadataCache.getMetadataProperties(repository, metadataFilePath, revision) :
+                new MetadataProperties(repository, metadataFilePath, revision);
+    }
 }
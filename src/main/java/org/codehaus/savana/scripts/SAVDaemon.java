@@ -0,0 +1,224 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana.scripts;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A long-running Savana process that executes commands on behalf of {@link SAVClient} so that each
+ * command doesn't pay for JVM startup, class loading and JIT warm-up.  The daemon only listens on the
+ * loopback interface and only accepts requests that present the secret it wrote to the daemon file.
+ * <p/>
+ * Commands run in the client's current directory, one at a time since the registered commands are
+ * process-wide state.  Clients that find the daemon busy with another command run their command
+ * themselves.  Commands always run non-interactively: the daemon has no terminal, so commit messages
+ * must be passed with -m or -F.
+ */
+public class SAVDaemon {
+    private static final Logger _sLog = Logger.getLogger("savana-info");
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MINUTES = 30;
+
+    private static final int REQUEST_TIMEOUT_MILLIS = 30 * 1000;
+
+    private final File _daemonFile;
+    private final long _idleTimeoutMillis;
+    private final String _secret;
+    private ServerSocket _serverSocket;
+
+    public SAVDaemon(File configDir, long idleTimeoutMillis) {
+        _daemonFile = SAVDaemonProtocol.getDaemonFile(configDir);
+        _idleTimeoutMillis = idleTimeoutMillis;
+        _secret = SAVDaemonProtocol.newSecret();
+    }
+
+    public static void main(String[] args) throws IOException {
+        File configDir = SAVDaemonProtocol.getConfigDir(args);
+        long idleTimeoutMinutes = DEFAULT_IDLE_TIMEOUT_MINUTES;
+        for (int i = 0; i < args.length - 1; i++) {
+            if ("--idle-timeout".equals(args[i])) {
+                idleTimeoutMinutes = Long.parseLong(args[i + 1]);
+            }
+        }
+        SAVDaemon daemon = new SAVDaemon(configDir, idleTimeoutMinutes * 60 * 1000);
+        daemon.start();
+        daemon.serve();
+    }
+
+    /**
+     * Opens the server socket and advertises it in the daemon file.
+     */
+    public void start() throws IOException {
+        _serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        if (_idleTimeoutMillis > 0) {
+            _serverSocket.setSoTimeout((int) Math.min(_idleTimeoutMillis, Integer.MAX_VALUE));
+        }
+
+        SAVDaemonProtocol.writeDaemonFile(_daemonFile, _serverSocket.getLocalPort(), _secret, "Savana daemon");
+        _sLog.info("Savana daemon listening on port " + _serverSocket.getLocalPort());
+    }
+
+    /**
+     * Handles requests until the daemon has been idle for the idle timeout or is closed.
+     */
+    public void serve() {
+        try {
+            while (!_serverSocket.isClosed()) {
+                Socket socket;
+                try {
+                    socket = _serverSocket.accept();
+                } catch (SocketTimeoutException e) {
+                    _sLog.info("Savana daemon exiting after being idle");
+                    break;
+                }
+                try {
+                    handle(socket);
+                } catch (Exception e) {
+                    _sLog.log(Level.WARNING, "Savana daemon request failed", e);
+                } finally {
+                    closeQuietly(socket);
+                }
+            }
+        } catch (IOException e) {
+            if (!_serverSocket.isClosed()) {
+                _sLog.log(Level.WARNING, "Savana daemon exiting", e);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    public void close() {
+        try {
+            _serverSocket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        //Only remove the daemon file if it still belongs to this daemon
+        SAVDaemonProtocol.deleteDaemonFile(_daemonFile, _secret);
+    }
+
+    private void handle(Socket socket) throws IOException {
+        //Don't let a client that never sends its request block every other client
+        socket.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        //Read the request
+        int version = in.readInt();
+        String secret = in.readUTF();
+        if (version != SAVDaemonProtocol.VERSION || !_secret.equals(secret)) {
+            _sLog.warning("Savana daemon rejected a request with the wrong protocol version or secret");
+            return;
+        }
+        String currentDirectory = in.readUTF();
+        int argc = in.readInt();
+        List<String> args = new ArrayList<String>(argc + 1);
+        for (int i = 0; i < argc; i++) {
+            args.add(in.readUTF());
+        }
+
+        //Only run the command if the client is still waiting for it.  A client that gave up waiting while an
+        //earlier command ran has already run the command itself.
+        try {
+            out.writeByte(SAVDaemonProtocol.READY);
+            out.flush();
+            if (in.readByte() != SAVDaemonProtocol.RUN) {
+                return;
+            }
+        } catch (IOException e) {
+            _sLog.fine("Savana daemon skipped a request the client stopped waiting for");
+            return;
+        }
+        socket.setSoTimeout(0);
+        if (!args.contains("--non-interactive")) {
+            args.add("--non-interactive");
+        }
+
+        //Run the command with output sent back to the client
+        PrintStream commandOut = new PrintStream(new SAVDaemonProtocol.FrameOutputStream(out, SAVDaemonProtocol.CHANNEL_OUT), true);
+        PrintStream commandErr = new PrintStream(new SAVDaemonProtocol.FrameOutputStream(out, SAVDaemonProtocol.CHANNEL_ERR), true);
+        int exitCode = run(currentDirectory, args.toArray(new String[args.size()]), commandOut, commandErr);
+        commandOut.flush();
+        commandErr.flush();
+
+        out.writeByte(SAVDaemonProtocol.CHANNEL_EXIT);
+        out.writeInt(exitCode);
+        out.flush();
+    }
+
+    private int run(String currentDirectory, String[] args, PrintStream out, PrintStream err) {
+        final int[] exitCode = {1};
+        SAV savana = new SAV() {
+            @Override
+            public void success() {
+                exitCode[0] = 0;
+            }
+            @Override
+            public void failure() {
+                exitCode[0] = 1;
+            }
+        };
+        savana.setOut(out);
+        savana.setErr(err);
+        savana.setIn(new ByteArrayInputStream(new byte[0]));
+        savana.setCurrentDirectory(new File(currentDirectory));
+
+        try {
+            _sLog.fine("Savana daemon running: " + Arrays.asList(args) + " in " + currentDirectory);
+            savana.run(args);
+        } catch (RuntimeException e) {
+            e.printStackTrace(err);
+            exitCode[0] = 1;
+        }
+        return exitCode[0];
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
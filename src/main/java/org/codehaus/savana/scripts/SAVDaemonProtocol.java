@@ -0,0 +1,210 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana.scripts;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+import java.util.Properties;
+
+/**
+ * Wire format shared by {@link SAVDaemon} and {@link SAVClient}.  This class must only depend on
+ * the JDK so the client can start without loading SVNKit.
+ * <p/>
+ * The client sends the protocol version, the secret from the daemon file, the current directory and
+ * the command-line arguments.  The daemon answers {@link #READY} when it's ready to run the command and
+ * the client confirms with {@link #RUN}, so a client that gave up waiting for a busy daemon can run the
+ * command itself without the daemon running it too.  The daemon then replies with a sequence of frames,
+ * each a one byte channel followed by a length and that many bytes of stdout or stderr output, ending
+ * with an exit frame.
+ */
+final class SAVDaemonProtocol {
+
+    static final int VERSION = 2;
+
+    static final byte READY = 'R';
+    static final byte RUN = 'G';
+
+    static final byte CHANNEL_OUT = 'O';
+    static final byte CHANNEL_ERR = 'E';
+    static final byte CHANNEL_EXIT = 'X';
+
+    static final String PROP_PORT = "port";
+    static final String PROP_SECRET = "secret";
+
+    private SAVDaemonProtocol() {
+    }
+
+    /**
+     * Returns the file the daemon uses to advertise its port and secret.  It lives in the subversion
+     * configuration directory with the cached credentials, and {@link #writeDaemonFile} makes sure only
+     * the user can read it.
+     */
+    static File getDaemonFile(File configDir) {
+        return new File(new File(configDir, "savana"), "daemon.properties");
+    }
+
+    static File getDefaultConfigDir() {
+        String appData = System.getenv("APPDATA");
+        if (appData != null && System.getProperty("os.name", "").toLowerCase().startsWith("windows")) {
+            return new File(appData, "Subversion");
+        }
+        return new File(System.getProperty("user.home"), ".subversion");
+    }
+
+    /** Finds the '--config-dir' argument, if any, so client and daemon agree on where the daemon file lives. */
+    static File getConfigDir(String[] args) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if ("--config-dir".equals(args[i])) {
+                return new File(args[i + 1]);
+            }
+        }
+        return getDefaultConfigDir();
+    }
+
+    /** Returns a random secret that requests must present to prove they can read the daemon file. */
+    static String newSecret() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder buf = new StringBuilder();
+        for (byte b : bytes) {
+            buf.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Advertises the port and secret of a server, replacing the file atomically so clients never see half of it.
+     * The file is written in a new directory that only the user can access and moved into place once only the
+     * user can read it, so other users never get a chance to open it.  Fails if the permissions can't be set.
+     */
+    static void writeDaemonFile(File daemonFile, int port, String secret, String comment) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(PROP_PORT, Integer.toString(port));
+        properties.setProperty(PROP_SECRET, secret);
+        File dir = daemonFile.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        File privateDir = new File(dir, "." + daemonFile.getName() + "." + newSecret().substring(0, 8));
+        if (!privateDir.mkdir()) {
+            throw new IOException("Unable to create directory: " + privateDir);
+        }
+        File tempFile = new File(privateDir, daemonFile.getName());
+        try {
+            restrictToOwner(privateDir, "700");
+            OutputStream out = new FileOutputStream(tempFile);
+            try {
+                properties.store(out, comment);
+            } finally {
+                out.close();
+            }
+            restrictToOwner(tempFile, "600");
+            daemonFile.delete();
+            if (!tempFile.renameTo(daemonFile)) {
+                throw new IOException("Unable to create daemon file: " + daemonFile);
+            }
+        } finally {
+            tempFile.delete();
+            privateDir.delete();
+        }
+    }
+
+    /** Removes the permissions of everyone but the owner.  On Windows the user's profile is already private. */
+    private static void restrictToOwner(File file, String mode) throws IOException {
+        if (File.separatorChar == '\\') {
+            return;
+        }
+        int exitCode;
+        try {
+            Process process = Runtime.getRuntime().exec(new String[] {"chmod", mode, file.getPath()});
+            process.getOutputStream().close();
+            exitCode = process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exitCode = -1;
+        }
+        if (exitCode != 0) {
+            throw new IOException("Unable to restrict the permissions of " + file + " to the current user");
+        }
+    }
+
+    /** Removes the daemon file if it still advertises the server with the specified secret. */
+    static void deleteDaemonFile(File daemonFile, String secret) {
+        try {
+            if (secret.equals(readDaemonFile(daemonFile).getProperty(PROP_SECRET))) {
+                daemonFile.delete();
+            }
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    static Properties readDaemonFile(File daemonFile) throws IOException {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(daemonFile);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        return properties;
+    }
+
+    /** An output stream that wraps everything written to it in frames for one channel. */
+    static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream _out;
+        private final byte _channel;
+
+        FrameOutputStream(DataOutputStream out, byte channel) {
+            _out = out;
+            _channel = channel;
+        }
+
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        public void write(byte[] buf, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            synchronized (_out) {
+                _out.writeByte(_channel);
+                _out.writeInt(len);
+                _out.write(buf, off, len);
+            }
+        }
+
+        public void flush() throws IOException {
+            _out.flush();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana.scripts;
+
+import org.codehaus.savana.PreCommitValidator;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A long-running process that validates commits for the 'savana-pre-commit' hook script with a
+ * {@link PreCommitValidator}, so that each commit costs a few milliseconds instead of starting a JVM
+ * and loading SVNKit.  Like {@link SAVDaemon}, it only listens on the loopback interface and only
+ * accepts requests that present the secret it wrote to the server file.  Commits to different
+ * repositories and branches are validated concurrently.
+ * <p/>
+ * The protocol is plain text so the hook script can talk to the server without starting a JVM.  The
+ * hook sends three lines: the secret, the repository path and the transaction name.  The server replies
+ * with a line holding the exit code for the hook followed by the message for the committer, if any.
+ */
+public class SAVHookServer {
+    private static final Logger _sLog = Logger.getLogger("savana-info");
+
+    public static final int DEFAULT_THREADS = 4;
+
+    private static final int REQUEST_TIMEOUT_MILLIS = 30 * 1000;
+
+    private final File _serverFile;
+    private final int _numThreads;
+    private final String _secret;
+    private ServerSocket _serverSocket;
+    private ExecutorService _executor;
+
+    public SAVHookServer(File serverFile, int numThreads) {
+        _serverFile = serverFile;
+        _numThreads = numThreads;
+        _secret = SAVDaemonProtocol.newSecret();
+    }
+
+    public static void main(String[] args) throws IOException {
+        File serverFile = getServerFile(SAVDaemonProtocol.getConfigDir(args));
+        int numThreads = DEFAULT_THREADS;
+        for (int i = 0; i < args.length - 1; i++) {
+            if ("--server-file".equals(args[i])) {
+                serverFile = new File(args[i + 1]);
+            } else if ("--threads".equals(args[i])) {
+                numThreads = Integer.parseInt(args[i + 1]);
+            }
+        }
+        SAVHookServer server = new SAVHookServer(serverFile, numThreads);
+        server.start();
+        server.serve();
+    }
+
+    /**
+     * Returns the default file the server uses to advertise its port and secret to the hook script.
+     */
+    public static File getServerFile(File configDir) {
+        return new File(new File(configDir, "savana"), "hook-server.properties");
+    }
+
+    /**
+     * Opens the server socket and advertises it in the server file.
+     */
+    public void start() throws IOException {
+        _serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        _executor = Executors.newFixedThreadPool(Math.max(1, _numThreads), new HookThreadFactory());
+        SAVDaemonProtocol.writeDaemonFile(_serverFile, _serverSocket.getLocalPort(), _secret, "Savana hook server");
+        _sLog.info("Savana hook server listening on port " + _serverSocket.getLocalPort());
+    }
+
+    /**
+     * Handles requests until the server is closed.
+     */
+    public void serve() {
+        try {
+            while (!_serverSocket.isClosed()) {
+                final Socket socket = _serverSocket.accept();
+                _executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            handle(socket);
+                        } catch (Exception e) {
+                            _sLog.log(Level.WARNING, "Savana hook server request failed", e);
+                        } finally {
+                            closeQuietly(socket);
+                        }
+                    }
+                });
+            }
+        } catch (IOException e) {
+            if (!_serverSocket.isClosed()) {
+                _sLog.log(Level.WARNING, "Savana hook server exiting", e);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    public void close() {
+        try {
+            _serverSocket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        //Let commits that are being validated finish
+        _executor.shutdown();
+        try {
+            _executor.awaitTermination(REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        //Only remove the server file if it still belongs to this server
+        SAVDaemonProtocol.deleteDaemonFile(_serverFile, _secret);
+    }
+
+    private void handle(Socket socket) throws IOException {
+        //Don't let a client that never sends its request tie up a thread
+        socket.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+        Writer out = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+
+        //Read the request
+        String secret = in.readLine();
+        String repositoryPath = in.readLine();
+        String transactionName = in.readLine();
+        if (!_secret.equals(secret) || repositoryPath == null || transactionName == null) {
+            _sLog.warning("Savana hook server rejected a request with the wrong secret");
+            return;
+        }
+
+        //Validate the commit and reply with the exit code for the hook and the message for the committer
+        String error = validate(new File(repositoryPath), transactionName);
+        out.write((error == null) ? "0\n" : "1\n" + error + "\n");
+        out.flush();
+    }
+
+    /**
+     * Returns null if the transaction can be committed, otherwise the reason it can't.
+     */
+    private String validate(File repositoryRoot, String transactionName) {
+        long start = System.currentTimeMillis();
+        SVNClientManager clientManager = SVNClientManager.newInstance();
+        try {
+            new PreCommitValidator(clientManager.getLookClient(), repositoryRoot, transactionName).validate();
+            return null;
+        } catch (SVNException e) {
+            return PreCommitValidator.getMessage(e);
+        } catch (RuntimeException e) {
+            _sLog.log(Level.WARNING, "Unable to validate transaction " + transactionName + " in " + repositoryRoot, e);
+            return "Unexpected error: " + e;
+        } finally {
+            clientManager.dispose();
+            _sLog.fine("Validated transaction " + transactionName + " in " + repositoryRoot + " in " +
+                    (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private static class HookThreadFactory implements ThreadFactory {
+        private final AtomicInteger _count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "savana-hook-" + _count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
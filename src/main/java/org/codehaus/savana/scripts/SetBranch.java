@@ -31,6 +31,7 @@
 package org.codehaus.savana.scripts;
 
 import org.codehaus.savana.BranchType;
+import org.codehaus.savana.LocalChangeDetector;
 import org.codehaus.savana.LocalChangeStatusHandler;
 import org.codehaus.savana.MetadataProperties;
 import org.codehaus.savana.PathUtil;
@@ -87,7 +88,7 @@ public class SetBranch extends SAVCommand {
         String branchName = targets.get(0);
 
         //Get information about the current workspace from the metadata file
-        WorkingCopyInfo wcInfo = new WorkingCopyInfo(env.getClientManager());
+        WorkingCopyInfo wcInfo = new WorkingCopyInfo(env.getClientManager(), env.getCurrentDirectory());
         MetadataProperties wcProps = wcInfo.getMetadataProperties();
 
         String branchPath = BranchType.TRUNK.getKeyword().equalsIgnoreCase(branchName) ?
@@ -116,7 +117,7 @@ public class SetBranch extends SAVCommand {
         //Get the metadata properties for the branch
         logStart("Get metadata properties");
         String branchMetadataFilePath = SVNPathUtil.append(branchPath, wcProps.getMetadataFileName());
-        MetadataProperties branchProps = new MetadataProperties(repository, branchMetadataFilePath, -1);
+        MetadataProperties branchProps = env.getMetadataProperties(repository, branchMetadataFilePath, -1);
         logEnd("Get metadata properties");
 
         //Get the root path for the working copy and the branch
@@ -168,7 +169,7 @@ public class SetBranch extends SAVCommand {
                 }
 
                 //Don't allow switching a sibling of the current working directory (must be a parent or child or self)
-                File currentDirectory = new File("").getAbsoluteFile();
+                File currentDirectory = env.getCurrentDirectory();
                 if (!PathUtil.isAncestorOrDescendentOrSelf(branchRootDir, currentDirectory)) {
                     String errorMessage =
                             "ERROR: Can't switch to a branch that's not a child or parent of the current directory." +
@@ -233,9 +234,8 @@ public class SetBranch extends SAVCommand {
         //Make sure all changes are committed before we run the switch
         if (!env.isForce()) {
             logStart("Check for local changes");
-            LocalChangeStatusHandler statusHandler = new LocalChangeStatusHandler();
-            statusClient.doStatus(branchRootDir, SVNRevision.UNDEFINED,
-                    SVNDepth.INFINITY, false, true, false, false, statusHandler, null);
+            LocalChangeStatusHandler statusHandler = new LocalChangeDetector(env.getClientManager())
+                    .detectChanges(branchRootDir, null, false);
             if (statusHandler.isChanged()) {
                 String errorMessage =
                         "ERROR: Cannot switch branches while the working copy has local changes." +
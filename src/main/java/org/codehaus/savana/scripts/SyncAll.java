@@ -0,0 +1,374 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana.scripts;
+
+import org.codehaus.savana.BranchIndex;
+import org.codehaus.savana.BranchType;
+import org.codehaus.savana.ConflictAnalyzer;
+import org.codehaus.savana.MetadataProperties;
+import org.codehaus.savana.RepositorySessions;
+import org.codehaus.savana.SyncEditor;
+import org.codehaus.savana.WorkingCopyInfo;
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.ISVNReporter;
+import org.tmatesoft.svn.core.io.ISVNReporterBaton;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.util.SVNLogType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Synchronizes every user branch whose name matches a filter with its source, without working copies.  The
+ * changes to each source since the branch's last merge are committed straight to the branch along with its new
+ * last merge revision.  Branches that are up to date are skipped, and branches that changed any of the same paths
+ * as the source are reported as conflicted and left alone so they can be synchronized in a working copy.
+ * <p/>
+ * Branches are synchronized in parallel by a bounded number of threads, each with its own repository sessions.
+ */
+public class SyncAll extends SAVCommand {
+
+    /** The number of branches synchronized at the same time. */
+    private static final int DEFAULT_THREADS = 4;
+
+    public SyncAll() {
+        super("syncall", new String[]{});
+    }
+
+    @Override
+    protected Collection createSupportedOptions() {
+        return new ArrayList();
+    }
+
+    public void doRun() throws SVNException {
+        SAVCommandEnvironment env = getSVNEnvironment();
+
+        //Parse command-line arguments
+        List<String> targets = env.combineTargets(null, false);
+        if (targets.size() > 1) {
+            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.CL_ARG_PARSING_ERROR), SVNLogType.CLIENT);
+        }
+        Pattern branchNamePattern = ListBranches.getBranchNamePattern(targets.isEmpty() ? "*" : targets.get(0));
+
+        //Get information about the current workspace from the metadata file
+        WorkingCopyInfo wcInfo = new WorkingCopyInfo(env.getClientManager(), env.getCurrentDirectory());
+        MetadataProperties wcProps = wcInfo.getMetadataProperties();
+        SVNRepository repository = env.getClientManager().createRepository(wcInfo.getRepositoryURL(), false);
+
+        //Find the user branches and their metadata, using the branch index
+        logStart("List branches");
+        String userBranchesPath = wcProps.getUserBranchPath(null);
+        SortedMap<String, BranchIndex.Branch> branches = env.getBranchIndex().getBranches(env.getClientManager(),
+                wcInfo.getRepositoryURL(), userBranchesPath, wcProps.getMetadataFileName(), env.getMetadataCache());
+        if (branches == null) {
+            String errorMessage =
+                    "ERROR: Could not find project." +
+                    "\nURL: " + wcInfo.getRepositoryURL(userBranchesPath);
+            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.ILLEGAL_TARGET, errorMessage), SVNLogType.CLIENT);
+        }
+        List<MetadataProperties> branchProps = new ArrayList<MetadataProperties>();
+        for (BranchIndex.Branch branch : branches.values()) {
+            if (!branchNamePattern.matcher(branch.getName()).matches()) {
+                continue;
+            }
+            MetadataProperties props = branch.getMetadataProperties();
+            if (props != null && props.getBranchType() == BranchType.USER_BRANCH &&
+                    props.getSourcePath() != null && props.getLastMergeRevision() != null) {
+                branchProps.add(props);
+            }
+        }
+        logEnd("List branches");
+
+        if (branchProps.isEmpty()) {
+            env.getOut().println("No branches were found.");
+            return;
+        }
+
+        //Use the same HEAD revision for every branch so that the results are consistent with each other
+        logStart("Get latest revision");
+        long latestRevision = repository.getLatestRevision();
+        logEnd("Get latest revision");
+
+        //Read the changes to each source once, from the oldest last merge of its branches
+        logStart("Read source history");
+        Map<String, List<SVNLogEntry>> sourceHistory = new HashMap<String, List<SVNLogEntry>>();
+        Map<String, Long> startRevisions = new HashMap<String, Long>();
+        for (MetadataProperties props : branchProps) {
+            long lastMergeRevision = props.getLastMergeRevision().getNumber();
+            Long startRevision = startRevisions.get(props.getSourcePath());
+            if (startRevision == null || lastMergeRevision + 1 < startRevision) {
+                startRevisions.put(props.getSourcePath(), lastMergeRevision + 1);
+            }
+        }
+        for (Map.Entry<String, Long> entry : startRevisions.entrySet()) {
+            sourceHistory.put(entry.getKey(),
+                    ConflictAnalyzer.getHistory(repository, entry.getKey(), entry.getValue(), latestRevision));
+        }
+        RepositorySessions.release(env.getClientManager(), repository);
+        logEnd("Read source history");
+
+        //Synchronize the branches in parallel
+        logStart("Synchronize branches");
+        int numThreads = Math.max(1, Math.min(branchProps.size(), Integer.getInteger("savana.syncall-threads", DEFAULT_THREADS)));
+        long start = System.currentTimeMillis();
+        List<Result> results = new ArrayList<Result>();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads, new SyncThreadFactory());
+        try {
+            List<Future<Result>> futures = new ArrayList<Future<Result>>();
+            for (MetadataProperties props : branchProps) {
+                futures.add(executor.submit(new BranchSync(env, wcInfo, props, latestRevision,
+                        sourceHistory.get(props.getSourcePath()))));
+            }
+            for (Future<Result> future : futures) {
+                results.add(getResult(future));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        logEnd("Synchronize branches");
+
+        //Print the result of each branch followed by the totals
+        logStart("Print results");
+        env.getOut().println("------------------------------------------------------------------------------");
+        env.getOut().println(
+                ListBranches.pad("Branch Name", 22) + " " +
+                ListBranches.pad("Result", 14) + " " +
+                ListBranches.pad("Details", 0));
+        env.getOut().println("------------------------------------------------------------------------------");
+        int synced = 0, upToDate = 0, conflicted = 0, failed = 0, revisionsMerged = 0;
+        for (Result result : results) {
+            String details;
+            if (result._error != null) {
+                failed++;
+                details = result._error.getErrorMessage().getFullMessage().replace('\n', ' ');
+            } else if (!result._conflicts.isEmpty()) {
+                conflicted++;
+                details = result._conflicts.size() + " conflicting paths with " + result._props.getSourceName();
+            } else if (result._commitInfo != null) {
+                synced++;
+                revisionsMerged += result._revisions;
+                details = result._revisions + " revisions from " + result._props.getSourceName() +
+                        " in [" + result._commitInfo.getNewRevision() + "]";
+            } else {
+                upToDate++;
+                details = "";
+            }
+            env.getOut().println(
+                    ListBranches.pad(result._props.getBranchName(), 22) + " " +
+                    ListBranches.pad(result.getStatus(), 14) + " " +
+                    ListBranches.pad(details, 0));
+            for (String path : result._conflicts) {
+                env.getOut().println("    C " + path);
+            }
+        }
+        env.getOut().println("------------------------------------------------------------------------------");
+        double seconds = Math.max(elapsed, 1) / 1000.0;
+        env.getOut().println("Synchronized " + synced + " of " + results.size() + " branches (" +
+                upToDate + " up to date, " + conflicted + " conflicted, " + failed + " failed), merging " +
+                revisionsMerged + " revisions in " + String.format("%.2f", seconds) + " seconds (" +
+                String.format("%.1f", results.size() / seconds) + " branches/sec, " + numThreads + " threads)");
+        logEnd("Print results");
+    }
+
+    private Result getResult(Future<Result> future) throws SVNException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.CANCELLED,
+                    "Interrupted while synchronizing branches"), SVNLogType.CLIENT);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.UNKNOWN, cause.toString()), cause, SVNLogType.CLIENT);
+        }
+        return null;
+    }
+
+    /** Synchronizes one branch on one of the sync threads. */
+    private static class BranchSync implements Callable<Result> {
+        private final SAVCommandEnvironment _env;
+        private final WorkingCopyInfo _wcInfo;
+        private final MetadataProperties _props;
+        private final long _latestRevision;
+        private final List<SVNLogEntry> _sourceHistory;
+
+        public BranchSync(SAVCommandEnvironment env, WorkingCopyInfo wcInfo, MetadataProperties props,
+                          long latestRevision, List<SVNLogEntry> sourceHistory) {
+            _env = env;
+            _wcInfo = wcInfo;
+            _props = props;
+            _latestRevision = latestRevision;
+            _sourceHistory = sourceHistory;
+        }
+
+        public Result call() {
+            Result result = new Result(_props);
+            try {
+                sync(result);
+            } catch (SVNException e) {
+                result._error = e;
+            }
+            return result;
+        }
+
+        private void sync(Result result) throws SVNException {
+            final long lastMergeRevision = _props.getLastMergeRevision().getNumber();
+            String sourcePath = _props.getSourcePath();
+            String metadataFileName = _props.getMetadataFileName();
+            SVNClientManager clientManager = _env.getClientManager();
+            SVNURL sourceURL = _wcInfo.getRepositoryURL(sourcePath);
+
+            //Find what changed in the source since the last merge.  Branches without source changes are up to date.
+            for (SVNLogEntry logEntry : _sourceHistory) {
+                if (logEntry.getRevision() > lastMergeRevision) {
+                    result._revisions++;
+                }
+            }
+            if (result._revisions == 0) {
+                return;
+            }
+            ConflictAnalyzer analyzer = new ConflictAnalyzer(clientManager, _wcInfo.getRepositoryURL(), metadataFileName);
+            Map<String, ConflictAnalyzer.Change> sourceChanges =
+                    analyzer.getSourceChanges(_sourceHistory, sourcePath, lastMergeRevision);
+
+            //Find what the branch changed relative to the source at the last merge
+            Map<String, ConflictAnalyzer.Change> branchChanges =
+                    analyzer.getBranchChanges(sourcePath, lastMergeRevision, _props.getBranchPath(), _latestRevision);
+
+            //Leave branches that changed the same paths or directory properties as the source for a sync in a
+            //working copy, where the changes can be merged.  The commit replays the source's property values, so
+            //it would overwrite the branch's.
+            result._conflicts.addAll(ConflictAnalyzer.findOverlaps(sourceChanges, branchChanges));
+            SortedSet<String> propertyOverlaps = ConflictAnalyzer.findPropertyOverlaps(sourceChanges, branchChanges);
+            result._conflicts.addAll(analyzer.findPropertyConflicts(sourcePath, lastMergeRevision, _latestRevision,
+                    _props.getBranchPath(), _latestRevision, propertyOverlaps));
+            if (!result._conflicts.isEmpty()) {
+                return;
+            }
+
+            //Replay the differences [source:LAST_MERGE, source:HEAD] onto the branch, along with the new last merge
+            //revision, in one commit
+            String commitMessage = "user branch sync - " + _props.getBranchName() + " with " + _props.getSourceName() +
+                    " through revision " + _latestRevision;
+            SVNRepository repository = clientManager.createRepository(_wcInfo.getRepositoryURL(), false);
+            SVNRepository diffRepository = clientManager.createRepository(sourceURL, false);
+            ISVNEditor commitEditor = null;
+            try {
+                SVNProperties revisionProperties = _env.getRevisionProperties();
+                commitEditor = repository.getCommitEditor(commitMessage, null, false,
+                        revisionProperties != null ? new SVNProperties(revisionProperties) : null, null);
+                SyncEditor syncEditor = new SyncEditor(commitEditor, _props.getBranchPath(), _latestRevision,
+                        metadataFileName, _latestRevision);
+                diffRepository.diff(sourceURL, _latestRevision, lastMergeRevision, null, false, SVNDepth.INFINITY, true,
+                        new ISVNReporterBaton() {
+                            public void report(ISVNReporter reporter) throws SVNException {
+                                reporter.setPath("", null, lastMergeRevision, SVNDepth.INFINITY, false);
+                                reporter.finishReport();
+                            }
+                        }, syncEditor);
+                result._commitInfo = syncEditor.getCommitInfo();
+            } catch (SVNException e) {
+                if (commitEditor != null) {
+                    try {
+                        commitEditor.abortEdit();
+                    } catch (SVNException abortException) {
+                        //The commit failed already, report the original error
+                    }
+                }
+                RepositorySessions.discard(clientManager, diffRepository);
+                RepositorySessions.discard(clientManager, repository);
+                throw e;
+            }
+            RepositorySessions.release(clientManager, diffRepository);
+            RepositorySessions.release(clientManager, repository);
+        }
+    }
+
+    private static class Result {
+        private final MetadataProperties _props;
+        private final SortedSet<String> _conflicts = new TreeSet<String>();
+        private int _revisions;
+        private SVNCommitInfo _commitInfo;
+        private SVNException _error;
+
+        public Result(MetadataProperties props) {
+            _props = props;
+        }
+
+        public String getStatus() {
+            if (_error != null) {
+                return "failed";
+            } else if (!_conflicts.isEmpty()) {
+                return "conflicted";
+            } else if (_commitInfo != null) {
+                return "synchronized";
+            }
+            return "up to date";
+        }
+    }
+
+    private static class SyncThreadFactory implements ThreadFactory {
+        private final AtomicInteger _count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "savana-sync-" + _count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
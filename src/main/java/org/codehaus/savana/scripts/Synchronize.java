@@ -32,16 +32,20 @@ package org.codehaus.savana.scripts;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.codehaus.savana.BranchType;
+import org.codehaus.savana.ConflictAnalyzer;
+import org.codehaus.savana.MergeInfoScrubber;
 import org.codehaus.savana.MergeNotifyPrinter;
 import org.codehaus.savana.MetadataFile;
 import org.codehaus.savana.MetadataProperties;
 import org.codehaus.savana.WorkingCopyInfo;
 import org.tmatesoft.svn.cli.SVNCommandUtil;
 import org.tmatesoft.svn.cli.svn.SVNOption;
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
 import org.tmatesoft.svn.core.SVNDepth;
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
 import org.tmatesoft.svn.core.SVNNodeKind;
 import org.tmatesoft.svn.core.SVNPropertyValue;
 import org.tmatesoft.svn.core.SVNURL;
@@ -63,9 +67,14 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 public class Synchronize extends SAVCommand {
 
+    /** The number of source revisions merged before the last merge revision is saved. */
+    private static final int DEFAULT_CHUNK_SIZE = 200;
+
     public Synchronize() {
         super("synchronize", new String[]{"sync"});
     }
@@ -74,6 +83,7 @@ public class Synchronize extends SAVCommand {
     protected Collection createSupportedOptions() {
         Collection options = new ArrayList();
         options.add(SVNOption.FORCE);
+        options.add(SVNOption.DRY_RUN); // forecast conflicts without changing the working copy
         return options;
     }
 
@@ -87,7 +97,7 @@ public class Synchronize extends SAVCommand {
         }
 
         //Get information about the current workspace from the metadata file
-        WorkingCopyInfo wcInfo = new WorkingCopyInfo(env.getClientManager());
+        WorkingCopyInfo wcInfo = new WorkingCopyInfo(env.getClientManager(), env.getCurrentDirectory());
         MetadataProperties wcProps = wcInfo.getMetadataProperties();
 
         //Find the source and branch URLs
@@ -108,7 +118,7 @@ public class Synchronize extends SAVCommand {
         //Get metadata properties on the source to check the Savana Policies on the source
         logStart("Get metadata for the source branch");
         SVNRepository repository = env.getClientManager().createRepository(wcInfo.getRepositoryURL(), false);
-        MetadataProperties sourceProps = new MetadataProperties(repository, wcProps.getSourceMetadataFilePath(), -1);
+        MetadataProperties sourceProps = env.getMetadataProperties(repository, wcProps.getSourceMetadataFilePath(), -1);
         logEnd("Get metadata for the source branch");
 
         //Find the revision for the HEAD of the repository
@@ -125,39 +135,83 @@ public class Synchronize extends SAVCommand {
         SVNRevision sourceLastChange = sourceInfo.getCommittedRevision();
         logEnd("Do info on source");
 
-        if (sourceLastChange.getNumber() > wcProps.getLastMergeRevision().getNumber()) {
+        if (sourceLastChange.getNumber() > wcProps.getLastMergeRevision().getNumber() && env.isDryRun()) {
+
+            //Predict the conflicts from the repository and the local modifications, without merging anything
+            logStart("Forecast conflicts");
+            ConflictAnalyzer analyzer = new ConflictAnalyzer(env.getClientManager(), wcInfo.getRepositoryURL(),
+                    wcProps.getMetadataFileName());
+            ConflictAnalyzer.Forecast forecast = analyzer.forecast(wcProps.getSourcePath(),
+                    wcProps.getLastMergeRevision().getNumber(), latestRevision.getNumber(),
+                    wcProps.getBranchPath(), latestRevision.getNumber(), wcInfo.getRootDir());
+            logEnd("Forecast conflicts");
+            printForecast(env, wcProps, forecast);
+
+        } else if (sourceLastChange.getNumber() > wcProps.getLastMergeRevision().getNumber()) {
+
+            //Find the revisions that changed the source.  Revisions that only changed other paths don't need merging.
+            logStart("Find source revisions");
+            long lastMergeRevision = wcProps.getLastMergeRevision().getNumber();
+            List<Long> sourceRevisions = getSourceRevisions(repository, wcProps.getSourcePath(),
+                    lastMergeRevision + 1, latestRevision.getNumber());
+            logEnd("Find source revisions");
+
+            //Merge in chunks that each end with a revision that changed the source.  After each chunk the last merge
+            //revision is saved in the metadata file, so an interrupted sync picks up where it left off.
+            int chunkSize = getChunkSize();
+            int numChunks = Math.max(1, (sourceRevisions.size() + chunkSize - 1) / chunkSize);
+            if (numChunks > 1) {
+                long numSkipped = latestRevision.getNumber() - lastMergeRevision - sourceRevisions.size();
+                env.getOut().println("Merging " + sourceRevisions.size() + " revisions from " + wcProps.getSourceName() +
+                        " in " + numChunks + " chunks, skipping " + numSkipped + " revisions that didn't change it");
+            }
 
-            //Merge in differences from [source:LastMergeRevision, source:LatestRevision] into the working copy
-            logStart("Do merge");
             env.setConflictHandler(new SynchronizeConflictHandler(env.getConflictHandler(), wcInfo.getMetadataFile()));
             SVNDiffClient diffClient = env.getClientManager().getDiffClient();
             diffClient.setDiffGenerator(new DefaultSVNDiffGenerator());
             MergeNotifyPrinter notifyPrinter = new MergeNotifyPrinter(env);
             diffClient.setEventHandler(notifyPrinter);
-            diffClient.doMerge(sourceURL, wcProps.getLastMergeRevision(), sourceURL, latestRevision,
-                    wcInfo.getRootDir(), SVNDepth.INFINITY, true, env.isForce(), false, false);
-            logEnd("Do merge");
 
-            //Remove subversion 1.5 svn:mergeinfo since Savana does its own merge tracking
+            SVNRevision chunkStart = wcProps.getLastMergeRevision();
+            for (int chunk = 0; chunk < numChunks; chunk++) {
+                boolean lastChunk = (chunk == numChunks - 1);
+                SVNRevision chunkEnd = lastChunk ? latestRevision : SVNRevision.create(sourceRevisions.get((chunk + 1) * chunkSize - 1));
+
+                //Merge in differences from [source:ChunkStart, source:ChunkEnd] into the working copy
+                logStart("Do merge");
+                diffClient.doMerge(sourceURL, chunkStart, sourceURL, chunkEnd,
+                        wcInfo.getRootDir(), SVNDepth.INFINITY, true, env.isForce(), false, false);
+                logEnd("Do merge");
+
+                //Update the last merge revision in the metadata file
+                logStart("Update last merge revision");
+                wcClient.doSetProperty(wcInfo.getMetadataFile(), MetadataFile.PROP_LAST_MERGE_REVISION,
+                        SVNPropertyValue.create(Long.toString(chunkEnd.getNumber())),
+                        false, SVNDepth.EMPTY, null, null);
+                logEnd("Update last merge revision");
+
+                //Later chunks can't be merged on top of conflicts, so stop and let the user resolve them first
+                if (!lastChunk && notifyPrinter.isConflicted()) {
+                    env.getOut().println();
+                    env.getOut().println("WARNING: Conflicts were found merging through revision " + chunkEnd.getNumber() + ".");
+                    env.getOut().println("Resolve the conflicts and run 'sav sync' again to merge the remaining revisions.");
+                    break;
+                }
+                chunkStart = chunkEnd;
+            }
+
+            //Remove subversion 1.5 svn:mergeinfo since Savana does its own merge tracking.  One pass after all the
+            //chunks handles the mergeinfo that each of them added.
             if (sourceProps.getSavanaPolicies() != null && sourceProps.getSavanaPolicies().shouldDeleteSvnMergeProperty()) {
                 logStart("Remove svn:mergeinfo property");
-                deleteSvnMergeInfo(wcClient, wcInfo.getRootDir());
-                // for files that had changed properties, some might have been svn:mergeinfo properties, so delete them just in case.
-                for (File file : notifyPrinter.getPropertiesChangedFiles()) {
-                    deleteSvnMergeInfo(wcClient, file);
-                }
+                long start = System.currentTimeMillis();
+                List<File> scrubbed = new MergeInfoScrubber(wcClient).scrub(wcInfo.getRootDir());
+                log("Removed svn:mergeinfo from " + scrubbed.size() + " paths in " + (System.currentTimeMillis() - start) + " ms");
                 logEnd("Remove svn:mergeinfo property");
             }
 
-            //Update the last merge revision in the metadata file
-            logStart("Update last merge revision");
-            wcClient.doSetProperty(wcInfo.getMetadataFile(), MetadataFile.PROP_LAST_MERGE_REVISION,
-                    SVNPropertyValue.create(Long.toString(latestRevision.getNumber())),
-                    false, SVNDepth.EMPTY, null, null);
-            logEnd("Update last merge revision");
-
             //Warn skipped files for extra emphasis
-            if (!notifyPrinter.getSkippedFiles().isEmpty()) {
+            if (notifyPrinter.hasSkippedFiles()) {
                 logStart("Warn skipped files");
                 env.getOut().println();
                 env.getOut().println("WARNING: The following files were not synchronized!  They have changes in " + wcProps.getSourceName());
@@ -174,11 +228,44 @@ public class Synchronize extends SAVCommand {
         }
     }
 
-    private void deleteSvnMergeInfo(SVNWCClient wcClient, File file) throws SVNException {
-        if (file.exists() && wcClient.doGetProperty(file, "svn:mergeinfo", SVNRevision.WORKING, SVNRevision.WORKING) != null) {
-            log("Deleting svn:mergeinfo property on file: " + file);
-            wcClient.doSetProperty(file, "svn:mergeinfo", null, false, SVNDepth.EMPTY, null, null);
+    private void printForecast(SAVCommandEnvironment env, MetadataProperties wcProps, ConflictAnalyzer.Forecast forecast) {
+        env.getOut().println("Merging " + forecast.getRevisions() + " revisions from " + wcProps.getSourceName() +
+                " would change " + forecast.getSourceChangeCount() + " paths.");
+        SortedSet<String> paths = new TreeSet<String>();
+        paths.addAll(forecast.getTextConflicts());
+        paths.addAll(forecast.getTreeConflicts());
+        paths.addAll(forecast.getMergedPaths());
+        for (String path : paths) {
+            if (forecast.getTextConflicts().contains(path)) {
+                env.getOut().println("C    " + path);
+            } else if (forecast.getTreeConflicts().contains(path)) {
+                env.getOut().println("   C " + path);
+            } else {
+                env.getOut().println("G    " + path);
+            }
+        }
+        int conflicts = forecast.getTextConflicts().size() + forecast.getTreeConflicts().size();
+        env.getOut().println((conflicts > 0 ? conflicts + " conflicts expected" : "No conflicts expected") +
+                " (forecast in " + String.format("%.2f", forecast.getElapsedMillis() / 1000.0) + " seconds).");
+    }
+
+    /** Returns the revisions in the range [startRevision, endRevision] that changed the path or anything under it. */
+    private List<Long> getSourceRevisions(SVNRepository repository, String path, long startRevision, long endRevision)
+            throws SVNException {
+        final List<Long> revisions = new ArrayList<Long>();
+        if (startRevision <= endRevision) {
+            repository.log(new String[] {path}, startRevision, endRevision, false, false, 0, false, new String[0],
+                    new ISVNLogEntryHandler() {
+                        public void handleLogEntry(SVNLogEntry logEntry) {
+                            revisions.add(logEntry.getRevision());
+                        }
+                    });
         }
+        return revisions;
+    }
+
+    private int getChunkSize() {
+        return Math.max(1, Integer.getInteger("savana.sync-chunk-size", DEFAULT_CHUNK_SIZE));
     }
 
     /**
@@ -126,7 +126,7 @@ public class CreateMetadataFile extends SAVCommand {
         }
 
         //Create the metadata file in the current directory
-        File workspaceDir = new File(System.getProperty("user.dir"));
+        File workspaceDir = env.getCurrentDirectory();
         File metadataFile = new File(workspaceDir, MetadataFile.METADATA_FILE_NAME);
 
         //Determine the file's path relative to the repository and use it to compute the branch path
@@ -221,7 +221,7 @@ public class CreateMetadataFile extends SAVCommand {
         env.getOut().println("SUCCESS: Created metadata file.");
         env.getOut().println("-------------------------------------------------");
         env.getOut().println();
-        WorkingCopyInfo wcInfo = new WorkingCopyInfo(env.getClientManager());
+        WorkingCopyInfo wcInfo = new WorkingCopyInfo(env.getClientManager(), env.getCurrentDirectory());
         wcInfo.println(env.getOut());
         env.getOut().println();
         env.getOut().println("Please 'svn commit' to save the metadata file to the Subversion repository:\n  " + metadataFile);
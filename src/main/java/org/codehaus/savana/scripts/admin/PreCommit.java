@@ -0,0 +1,79 @@
+/*
+ * Savana - Transactional Workspaces for Subversion
+ * Copyright (C) 2006-2013  Bazaarvoice Inc.
+ * <p/>
+ * This file is part of Savana.
+ * <p/>
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ * Third party components of this software are provided or made available only subject
+ * to their respective licenses. The relevant components and corresponding
+ * licenses are listed in the "licenses" directory in this distribution. In any event,
+ * the disclaimer of warranty and limitation of liability provision in this Agreement
+ * will apply to all Software in this distribution.
+ */
+package org.codehaus.savana.scripts.admin;
+
+import org.codehaus.savana.PathUtil;
+import org.codehaus.savana.PreCommitValidator;
+import org.codehaus.savana.scripts.SAVCommand;
+import org.codehaus.savana.scripts.SAVCommandEnvironment;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.util.SVNLogType;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class PreCommit extends SAVCommand {
+
+    public PreCommit() {
+        super("precommit", new String[0]);
+    }
+
+    @Override
+    protected Collection createSupportedOptions() {
+        return new ArrayList();
+    }
+
+    @Override
+    protected boolean getWorkingCopyFormatFromCurrentDirectory() {
+        //Runs on the server, against a repository instead of a working copy
+        return false;
+    }
+
+    public void doRun() throws SVNException {
+        SAVCommandEnvironment env = getSVNEnvironment();
+
+        //Parse command-line arguments
+        List<String> targets = env.combineTargets(null, false);
+        if (targets.size() < 2) {
+            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.CL_INSUFFICIENT_ARGS), SVNLogType.CLIENT);
+        }
+        if (targets.size() > 2) {
+            SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.CL_ARG_PARSING_ERROR), SVNLogType.CLIENT);
+        }
+        File repositoryRoot = PathUtil.getValidatedAbsoluteFile(env.getCurrentDirectory(), targets.get(0));
+        String transactionName = targets.get(1);
+
+        logStart("Validate transaction");
+        new PreCommitValidator(env.getClientManager().getLookClient(), repositoryRoot, transactionName).validate();
+        logEnd("Validate transaction");
+    }
+}
@@ -1,6 +1,8 @@
 package org.codehaus.savana.scripts;
 
 import junit.framework.TestCase;
+import org.codehaus.savana.WorkingCopyInfo;
+import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.cli.AbstractSVNCommand;
 import org.tmatesoft.svn.core.wc.SVNClientManager;
 
@@ -36,6 +38,16 @@ public abstract class AbstractSavanaScriptsTestCase extends TestCase {
         TestDirUtil.cd(dir);
     }
 
+    /**
+     * read the Savana info of the working copy that contains the current working directory.
+     *
+     * @return the working copy info
+     * @throws SVNException if the current directory isn't in a Savana working copy
+     */
+    protected WorkingCopyInfo getWorkingCopyInfo() throws SVNException {
+        return new WorkingCopyInfo(SVN, new File(System.getProperty("user.dir")));
+    }
+
     /**
      * create a new temporary directory with the given name, deleting any existing directory with that name first.
      *
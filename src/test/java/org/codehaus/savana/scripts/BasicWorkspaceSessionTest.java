@@ -2,7 +2,6 @@ package org.codehaus.savana.scripts;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
-import org.codehaus.savana.WorkingCopyInfo;
 import org.tmatesoft.svn.core.SVNDepth;
 import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.wc.SVNRevision;
@@ -37,7 +36,7 @@ public class BasicWorkspaceSessionTest extends AbstractSavanaScriptsTestCase {
         long branchPointRev = rev;
 
         // check that we are starting in the trunk
-        assertEquals("trunk", new WorkingCopyInfo(SVN).getMetadataProperties().getBranchName());
+        assertEquals("trunk", getWorkingCopyInfo().getMetadataProperties().getBranchName());
 
         // create a workspace
         log.info("creating workspace");
@@ -51,7 +50,7 @@ public class BasicWorkspaceSessionTest extends AbstractSavanaScriptsTestCase {
                      savana(ListUserBranches.class));
 
         // check that we've changed into the "workspace" branch, and that the revision has updated
-        assertEquals("workspace", new WorkingCopyInfo(SVN).getMetadataProperties().getBranchName());
+        assertEquals("workspace", getWorkingCopyInfo().getMetadataProperties().getBranchName());
         assertEquals(++rev, SVN.getUpdateClient().doUpdate(WC1, SVNRevision.HEAD, SVNDepth.FILES, false, false));
 
         // open a file in the wc, edit it, and write it back
@@ -84,7 +83,7 @@ public class BasicWorkspaceSessionTest extends AbstractSavanaScriptsTestCase {
                 savana(DiffChangesFromSource.class));
 
         // check that we're still in the "workspace" branch, and that the revision has updated
-        assertEquals("workspace", new WorkingCopyInfo(SVN).getMetadataProperties().getBranchName());
+        assertEquals("workspace", getWorkingCopyInfo().getMetadataProperties().getBranchName());
         assertEquals(++rev, SVN.getUpdateClient().doUpdate(WC1, SVNRevision.HEAD, SVNDepth.FILES, false, false));
 
         // list the changes from the trunk, and check that the output is what we expect
@@ -105,7 +104,7 @@ public class BasicWorkspaceSessionTest extends AbstractSavanaScriptsTestCase {
                 new File[]{WC1}, false, "user branch commit\r\nrenamed autos.txt to cars.txt", null, null, false, false, SVNDepth.INFINITY);
 
         // check that we're still in the "workspace" branch, and that the revision has updated
-        assertEquals("workspace", new WorkingCopyInfo(SVN).getMetadataProperties().getBranchName());
+        assertEquals("workspace", getWorkingCopyInfo().getMetadataProperties().getBranchName());
         assertEquals(++rev, SVN.getUpdateClient().doUpdate(WC1, SVNRevision.HEAD, SVNDepth.FILES, false, false));
 
         // list the changes from the trunk, and check that the output is what we expect
@@ -128,7 +127,7 @@ public class BasicWorkspaceSessionTest extends AbstractSavanaScriptsTestCase {
         savana(Synchronize.class);
 
         // check that we're still in the "workspace" branch, and that the revision has NOT updated
-        assertEquals("workspace", new WorkingCopyInfo(SVN).getMetadataProperties().getBranchName());
+        assertEquals("workspace", getWorkingCopyInfo().getMetadataProperties().getBranchName());
         assertEquals(rev, SVN.getUpdateClient().doUpdate(WC1, SVNRevision.HEAD, SVNDepth.FILES, false, false));
 
         // list the working copy info and check it
@@ -155,7 +154,7 @@ public class BasicWorkspaceSessionTest extends AbstractSavanaScriptsTestCase {
         // check that we're back in the "trunk" branch, and that the revision has updated three times
         // (once to update the metadata, once to check changes into trunk, and once to delete the
         // workspace)
-        assertEquals("trunk", new WorkingCopyInfo(SVN).getMetadataProperties().getBranchName());
+        assertEquals("trunk", getWorkingCopyInfo().getMetadataProperties().getBranchName());
         assertEquals(rev += 2, SVN.getUpdateClient().doUpdate(WC1, SVNRevision.HEAD, SVNDepth.FILES, false, false));
 
         // read the file, and check that our change has been made
@@ -0,0 +1,79 @@
+package org.codehaus.savana.scripts;
+
+import org.apache.commons.lang.StringUtils;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+
+import java.io.File;
+
+/**
+ * Verifies that the on-disk branch index is kept up to date as branches are created, deleted and synchronized.
+ */
+public class BranchIndexTest extends AbstractSavanaScriptsTestCase {
+
+    private SVNURL REPO_URL = TestRepoUtil.DEFAULT_REPO;
+
+    public void testListBranchesUsesIndex() throws Exception {
+        //Setup a test project with two working directories
+        String projectName = getClass().getSimpleName().toLowerCase();
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+        File WC2 = TestRepoUtil.createTrunkWC(REPO_URL, projectName);
+        File indexDir = new File(TestRepoUtil.SUBVERSION_CONFIG_DIR, "savana/branch-index");
+
+        //Create a user branch, the first listing builds the index
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1");
+        long branchPoint1 = getRevision(WC1) - 1;
+        assertEquals(header() + row("user1", branchPoint1, branchPoint1).trim(), savana(ListUserBranches.class));
+        assertTrue("expected the listing to save the branch index", indexDir.list().length > 0);
+        for (String name : indexDir.list()) {
+            assertFalse("expected no temporary files to be left behind: " + name, name.endsWith(".tmp"));
+        }
+
+        //Create another user branch, the index picks up the new branch
+        savana(SetBranch.class, "trunk");
+        savana(CreateUserBranch.class, "user2");
+        long branchPoint2 = getRevision(WC1) - 1;
+        assertEquals(header() + row("user1", branchPoint1, branchPoint1) + " \n" + row("user2", branchPoint2, branchPoint2).trim(),
+                savana(ListUserBranches.class));
+
+        //Delete the first branch, the index drops it
+        savana(DeleteUserBranch.class, "user1");
+        assertEquals(header() + row("user2", branchPoint2, branchPoint2).trim(), savana(ListUserBranches.class));
+
+        //Sync a trunk change into the second branch, the index picks up its new metadata
+        TestRepoUtil.touchCounterFile(WC2);
+        long trunkRev = SVN.getCommitClient().doCommit(new File[] {WC2}, false,
+                "trunk - edit counter", null, null, false, false, SVNDepth.INFINITY).getNewRevision();
+        SVN.getUpdateClient().doUpdate(WC1, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+        savana(Synchronize.class);
+        SVN.getCommitClient().doCommit(new File[] {WC1}, false,
+                "user branch commit - sync", null, null, false, false, SVNDepth.INFINITY);
+        String expected = header() + row("user2", branchPoint2, trunkRev).trim();
+        assertEquals(expected, savana(ListUserBranches.class));
+
+        //Listing without the index gives the same results
+        System.setProperty("savana.branch-index", "false");
+        try {
+            assertEquals(expected, savana(ListUserBranches.class));
+        } finally {
+            System.clearProperty("savana.branch-index");
+        }
+    }
+
+    private long getRevision(File wc) throws Exception {
+        return SVN.getWCClient().doInfo(wc, SVNRevision.WORKING).getRevision().getNumber();
+    }
+
+    private String header() {
+        return "------------------------------------------------------------------------------\n" +
+               "Branch Name            Source        Branch-Point  Last-Merge    Subpath\n" +
+               "------------------------------------------------------------------------------\n";
+    }
+
+    private String row(String branchName, long branchPoint, long lastMerge) {
+        return StringUtils.rightPad(branchName, 23) + "trunk         " +
+               StringUtils.rightPad(Long.toString(branchPoint), 14) + StringUtils.rightPad(Long.toString(lastMerge), 13);
+    }
+}
@@ -0,0 +1,54 @@
+package org.codehaus.savana.scripts;
+
+import org.apache.commons.io.FileUtils;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+
+import java.io.File;
+
+/**
+ * Tests 'sav branchstatus', which reports how far each branch is behind its source and ahead of it.
+ */
+public class BranchStatusTest extends AbstractSavanaScriptsTestCase {
+
+    private SVNURL REPO_URL = TestRepoUtil.DEFAULT_REPO;
+
+    public void testBranchStatus() throws Exception {
+        // setup a test project with a working directory and import the 'test-project' files
+        String projectName = getClass().getSimpleName().toLowerCase();
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+        File WC2 = TestRepoUtil.createTrunkWC(REPO_URL, projectName);
+
+        // create user1 and commit twice to it
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1");
+        FileUtils.writeStringToFile(new File(WC1, "src/text/animals.txt"), "mongoose");
+        SVN.getCommitClient().doCommit(new File[]{WC1}, false, "user branch commit - animals", null, null, false, false, SVNDepth.INFINITY);
+        FileUtils.writeStringToFile(new File(WC1, "src/text/autos.txt"), "pinto");
+        SVN.getCommitClient().doCommit(new File[]{WC1}, false, "user branch commit - autos", null, null, false, false, SVNDepth.INFINITY);
+
+        // commit to the trunk, then create user2 from the trunk, then commit to the trunk again
+        FileUtils.writeStringToFile(new File(WC2, "src/text/drinks.txt"), "tequila");
+        SVN.getCommitClient().doCommit(new File[]{WC2}, false, "trunk - drinks", null, null, false, false, SVNDepth.INFINITY);
+        savana(SetBranch.class, "trunk");
+        SVN.getUpdateClient().doUpdate(WC1, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+        savana(CreateUserBranch.class, "user2");
+        FileUtils.writeStringToFile(new File(WC2, "src/text/drinks.txt"), "margarita");
+        long lastRevision = SVN.getCommitClient().doCommit(
+                new File[]{WC2}, false, "trunk - more drinks", null, null, false, false, SVNDepth.INFINITY).getNewRevision();
+
+        // user1 is 2 behind and 2 ahead, user2 is 1 behind and 0 ahead
+        String output = savana(BranchStatus.class);
+        String[] lines = output.split("\n");
+        assertEquals(output, 5, lines.length);
+        assertEquals("Branch Name            Source     Behind  Ahead  Last     Author       Date", lines[1]);
+        assertTrue(lines[3], lines[3].startsWith("user1                  trunk      2       2      " + (lastRevision - 3) + " "));
+        assertTrue(lines[4], lines[4].startsWith("user2                  trunk      1       0      " + (lastRevision - 1) + " "));
+
+        // filter by branch name
+        lines = savana(BranchStatus.class, "*2").split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[3], lines[3].startsWith("user2 "));
+    }
+}
@@ -0,0 +1,175 @@
+package org.codehaus.savana.scripts;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.lang.ArrayUtils;
+import org.codehaus.savana.BranchType;
+import org.codehaus.savana.WCUtil;
+import org.tmatesoft.svn.cli.AbstractSVNCommand;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.internal.wc.DefaultSVNOptions;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.SVNWCUtil;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Training run for the class-data-sharing archive built by the 'cds' profile in pom.xml.  Runs every registered
+ * Savana command against a throwaway local repository so the JVM started with '-XX:DumpLoadedClassList' records
+ * the classes the commands load.  Failures are ignored: a command that errors out still loads most of its classes.
+ */
+public class CDSTraining {
+
+    private static final Set<String> _sCommandsRun = new TreeSet<String>();
+    private static int _sFailures;
+    private static File _sConfigDir;
+    private static SVNClientManager _sSVN;
+
+    /**
+     * Usage: CDSTraining REPO_DIR CONFIG_DIR POLICIES_FILE
+     * <p/>
+     * Run from an empty directory, which becomes the working copy.  Newer JVMs ignore changes to 'user.dir', so
+     * unlike the tests the training can't cd into a working copy it creates somewhere else.
+     */
+    public static void main(String[] args) throws Exception {
+        File repoDir = new File(args[0]).getAbsoluteFile();
+        _sConfigDir = new File(args[1]).getAbsoluteFile();
+        File policiesFile = new File(args[2]).getAbsoluteFile();
+        File wc = new File("").getAbsoluteFile();
+
+        // create the repository and the client using file formats that match the installed version of subversion
+        FSRepositoryFactory.setup();
+        WCUtil.setSupportedWorkingCopyFormatVersion(TestSvnUtil.WC_FORMAT);
+        DefaultSVNOptions options = new DefaultSVNOptions(_sConfigDir, true);
+        options.setInteractiveConflictResolution(false);
+        _sSVN = SVNClientManager.newInstance(options,
+                SVNWCUtil.createDefaultAuthenticationManager(_sConfigDir, "savana-user", "", true));
+        SVNURL repoUrl = _sSVN.getAdminClient().doCreateRepository(repoDir, null, false, true,
+                TestSvnUtil.REPO_PRE14, TestSvnUtil.REPO_PRE15, TestSvnUtil.REPO_PRE16);
+
+        // setup the branch directories, import the test project and check out the trunk into the current directory
+        SVNURL projectUrl = repoUrl.appendPath("training", false);
+        SVNURL trunkUrl = projectUrl.appendPath(BranchType.TRUNK.getDefaultPath(), false);
+        _sSVN.getCommitClient().doMkDir(new SVNURL[] {
+                trunkUrl,
+                projectUrl.appendPath(BranchType.RELEASE_BRANCH.getDefaultPath(), false),
+                projectUrl.appendPath(BranchType.USER_BRANCH.getDefaultPath(), false),
+        }, "branch admin - setup initial branch directories", null, true);
+        File importDir = new File(CDSTraining.class.getClassLoader().getResource("test-project").toURI());
+        _sSVN.getCommitClient().doImport(importDir, trunkUrl, "trunk - initial import", null, true, false, SVNDepth.INFINITY);
+        _sSVN.getUpdateClient().doCheckout(trunkUrl, wc, SVNRevision.UNDEFINED, SVNRevision.HEAD, SVNDepth.INFINITY, false);
+
+        sav("createmetadatafile", "training", "TRUNK", "--savanaPoliciesFile", policiesFile.getPath());
+        commit(wc, "trunk - initial setup of savana");
+
+        // read-only commands in the trunk
+        sav("info");
+        sav("lrb");
+        sav("lub");
+        sav("bs");
+
+        // work in a user branch, then promote it back to the trunk
+        sav("cub", "user1");
+        FileUtils.writeStringToFile(new File(wc, "src/text/animals.txt"), "aardvark");
+        commit(wc, "user branch commit - training");
+        sav("bs");
+        sav("lc");
+        sav("diff");
+        sav("sync");
+        sav("rs", "src/text/autos.txt");
+        sav("promote", "-m", "trunk - training promote");
+
+        // a promote that runs entirely in the repository
+        sav("cub", "user2");
+        FileUtils.writeStringToFile(new File(wc, "src/text/drinks.txt"), "lemonade");
+        commit(wc, "user branch commit - training");
+        sav("promote", "--remote", "-m", "trunk - training remote promote");
+
+        // switching, deleting and creating branches
+        sav("cub", "user3");
+        sav("sb", "trunk");
+        sav("deleteuserbranch", "user3");
+        sav("syncall");
+        sav("crb", "1.0");
+        sav("help");
+        sav("help", "promote");
+
+        // validate a commit that's still in progress, the way the pre-commit hook sees it
+        ISVNEditor editor = _sSVN.createRepository(trunkUrl, true).getCommitEditor("trunk - training hook", null);
+        try {
+            editor.openRoot(-1);
+            editor.openFile("counter.txt", -1);
+            editor.changeFileProperty("counter.txt", "training", SVNPropertyValue.create("true"));
+            editor.closeFile("counter.txt", null);
+            editor.closeDir();
+            for (String txnDir : new File(repoDir, "db/transactions").list()) {
+                sav("precommit", repoDir.getPath(), txnDir.substring(0, txnDir.length() - ".txn".length()));
+            }
+        } finally {
+            editor.abortEdit();
+        }
+
+        // make sure every registered command ran at least once, even commands added after this class was written
+        for (Iterator<?> it = AbstractSVNCommand.availableCommands(null); it.hasNext();) {
+            AbstractSVNCommand command = (AbstractSVNCommand) it.next();
+            if (!_sCommandsRun.contains(command.getName())) {
+                sav(command.getName());
+            }
+        }
+
+        System.out.println("CDS training ran " + _sCommandsRun.size() + " commands (" + _sFailures + " failed): " +
+                _sCommandsRun);
+    }
+
+    private static void commit(File wc, String message) throws Exception {
+        _sSVN.getCommitClient().doCommit(new File[]{wc}, false, message, null, null, false, false, SVNDepth.INFINITY);
+        _sSVN.getUpdateClient().doUpdate(wc, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+    }
+
+    private static void sav(String... args) {
+        final boolean[] success = new boolean[1];
+        SAV savana = new SAV() {
+            @Override
+            public void success() {
+                // suppress System.exit(0)
+                success[0] = true;
+            }
+            @Override
+            public void failure() {
+                // suppress System.exit(1)
+                success[0] = false;
+            }
+        };
+
+        //Ignore the user's local subversion configuration files
+        args = (String[]) ArrayUtils.addAll(args, new String[]{
+                "--config-dir", _sConfigDir.getPath(),
+                "--non-interactive",
+        });
+
+        PrintStream discard = new PrintStream(new NullOutputStream());
+        savana.setOut(discard);
+        savana.setErr(discard);
+        try {
+            savana.run(args);
+        } catch (RuntimeException e) {
+            success[0] = false;
+        }
+        if (!success[0]) {
+            _sFailures++;
+        }
+
+        //Record the canonical name so aliases count for the command they stand for
+        AbstractSVNCommand command = AbstractSVNCommand.getCommand(args[0]);
+        _sCommandsRun.add(command != null ? command.getName() : args[0]);
+    }
+}
@@ -0,0 +1,94 @@
+package org.codehaus.savana.scripts;
+
+import org.apache.commons.io.FileUtils;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.SVNStatusType;
+
+import java.io.File;
+
+/**
+ * Tests 'sav sync --dry-run' and 'sav promote --dry-run', which predict conflicts without changing the working copy.
+ */
+public class ConflictForecastTest extends AbstractSavanaScriptsTestCase {
+
+    private SVNURL REPO_URL = TestRepoUtil.DEFAULT_REPO;
+
+    public void testSynchronizeDryRun() throws Exception {
+        // setup a test project with a working directory and add a file with several lines to the trunk
+        String projectName = getClass().getSimpleName().toLowerCase();
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+        File linesFile = new File(WC1, "src/text/lines.txt");
+        FileUtils.writeStringToFile(linesFile, "one\ntwo\nthree\nfour\n");
+        SVN.getWCClient().doAdd(linesFile, false, false, false, SVNDepth.EMPTY, false, false);
+        SVN.getCommitClient().doCommit(new File[]{WC1}, false, "trunk - lines", null, null, false, false, SVNDepth.INFINITY);
+        File WC2 = TestRepoUtil.createTrunkWC(REPO_URL, projectName);
+
+        // in WC1, create a user branch, change the first line, change animals, delete autos and modify drinks locally
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1");
+        File animalsFile = new File(WC1, "src/text/animals.txt");
+        File drinksFile = new File(WC1, "src/text/drinks.txt");
+        FileUtils.writeStringToFile(linesFile, "ONE\ntwo\nthree\nfour\n");
+        FileUtils.writeStringToFile(animalsFile, "grasshopper");
+        SVN.getWCClient().doDelete(new File(WC1, "src/text/autos.txt"), false, false);
+        SVN.getCommitClient().doCommit(new File[]{WC1}, false, "user branch commit", null, null, false, false, SVNDepth.INFINITY);
+        FileUtils.writeStringToFile(drinksFile, "whiskey");
+
+        // in WC2 (trunk), change the last line, animals, autos and drinks
+        FileUtils.writeStringToFile(new File(WC2, "src/text/lines.txt"), "one\ntwo\nthree\nFOUR\n");
+        FileUtils.writeStringToFile(new File(WC2, "src/text/animals.txt"), "mongoose");
+        FileUtils.writeStringToFile(new File(WC2, "src/text/autos.txt"), "pinto");
+        FileUtils.writeStringToFile(new File(WC2, "src/text/drinks.txt"), "tequila");
+        SVN.getCommitClient().doCommit(new File[]{WC2}, false, "trunk - changes", null, null, false, false, SVNDepth.INFINITY);
+        SVN.getUpdateClient().doUpdate(WC1, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+        long lastMergeRevision = getLastMergeRevision();
+
+        // the forecast finds the text conflicts, the tree conflict and the file that merges cleanly
+        String output = savana(Synchronize.class, "--dry-run");
+        String[] lines = output.split("\n");
+        assertEquals(output, 6, lines.length);
+        assertEquals("Merging 1 revisions from trunk would change 4 paths.", lines[0]);
+        assertEquals("C    " + "src/text/animals.txt", lines[1]);
+        assertEquals("   C " + "src/text/autos.txt", lines[2]);
+        assertEquals("C    " + "src/text/drinks.txt", lines[3]);
+        assertEquals("G    " + "src/text/lines.txt", lines[4]);
+        assertTrue(lines[5], lines[5].startsWith("3 conflicts expected (forecast in "));
+
+        // nothing changed in the working copy
+        assertEquals(lastMergeRevision, getLastMergeRevision());
+        assertEquals("ONE\ntwo\nthree\nfour\n", FileUtils.readFileToString(linesFile));
+        assertEquals("whiskey", FileUtils.readFileToString(drinksFile));
+
+        // the sync conflicts where the forecast said it would
+        savana(Synchronize.class, "--non-interactive");
+        assertEquals("ONE\ntwo\nthree\nFOUR\n", FileUtils.readFileToString(linesFile));
+        assertEquals(SVNStatusType.STATUS_CONFLICTED, SVN.getStatusClient().doStatus(animalsFile, false).getContentsStatus());
+        assertEquals(SVNStatusType.STATUS_CONFLICTED, SVN.getStatusClient().doStatus(drinksFile, false).getContentsStatus());
+        assertEquals(SVNStatusType.STATUS_MODIFIED, SVN.getStatusClient().doStatus(linesFile, false).getContentsStatus());
+    }
+
+    public void testPromoteDryRun() throws Exception {
+        // setup a test project with a working directory and import the 'test-project' files
+        String projectName = getClass().getSimpleName().toLowerCase() + "-promote";
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+
+        // create a user branch and commit a change
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1");
+        FileUtils.writeStringToFile(new File(WC1, "src/text/animals.txt"), "mongoose");
+        SVN.getCommitClient().doCommit(new File[]{WC1}, false, "user branch commit", null, null, false, false, SVNDepth.INFINITY);
+        SVN.getUpdateClient().doUpdate(WC1, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+
+        // the dry run reports the change and leaves the working copy in the branch
+        assertEquals("Promoting user1 to trunk would change 1 paths.\n" +
+                     "No conflicts expected.", savana(Promote.class, "--dry-run"));
+        assertEquals("user1", getWorkingCopyInfo().getMetadataProperties().getBranchName());
+        assertEquals(SVNStatusType.STATUS_NORMAL, SVN.getStatusClient().doStatus(WC1, false).getContentsStatus());
+    }
+
+    private long getLastMergeRevision() throws Exception {
+        return getWorkingCopyInfo().getMetadataProperties().getLastMergeRevision().getNumber();
+    }
+}
@@ -0,0 +1,92 @@
+package org.codehaus.savana.scripts;
+
+import org.apache.commons.io.FileUtils;
+import org.tmatesoft.svn.core.SVNURL;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Verifies that commands forwarded to the Savana daemon behave like commands run directly.
+ */
+public class DaemonTest extends AbstractSavanaScriptsTestCase {
+
+    private SVNURL REPO_URL = TestRepoUtil.DEFAULT_REPO;
+
+    public void testDaemon() throws Exception {
+        String projectName = getClass().getSimpleName().toLowerCase();
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+        File configDir = createTempDir("savana-daemon-config");
+
+        //Without a daemon the client tells the caller to run the command itself
+        cd(WC1);
+        assertEquals(SAVClient.NO_DAEMON, execute(configDir, new ByteArrayOutputStream(), "info"));
+
+        final SAVDaemon daemon = new SAVDaemon(configDir, 0);
+        daemon.start();
+
+        //Only the user can read the daemon's secret
+        File daemonFile = new File(configDir, "savana/daemon.properties");
+        assertEquals(1, daemonFile.getParentFile().list().length);
+        if (File.separatorChar == '/') {
+            assertTrue(TestProcessUtil.exec("ls", "-l", daemonFile.getPath()).startsWith("-rw-------"));
+        }
+
+        //Clients don't wait for a daemon that's busy with another command, and the daemon doesn't run the
+        //command once the client has given up on it
+        assertEquals(SAVClient.NO_DAEMON, execute(configDir, new ByteArrayOutputStream(), "createuserbranch", "user0"));
+
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                daemon.serve();
+            }
+        });
+        thread.start();
+        try {
+            //Commands run in the client's current directory
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(0, execute(configDir, out, "info"));
+            assertEquals(savana(ListWorkingCopyInfo.class), out.toString().trim());
+            assertTrue(out.toString().contains("Branch Name:           trunk"));
+
+            //Relative paths in files and targets are relative to the client's current directory
+            File targetsFile = new File(WC1.getParentFile(), "daemon-targets.txt");
+            FileUtils.writeStringToFile(targetsFile, "src\n");
+            out = new ByteArrayOutputStream();
+            assertEquals(0, execute(configDir, out, "info", "--targets", "../" + targetsFile.getName()));
+            assertEquals(savana(ListWorkingCopyInfo.class), out.toString().trim());
+
+            assertEquals(0, execute(configDir, new ByteArrayOutputStream(), "createuserbranch", "user1"));
+            out = new ByteArrayOutputStream();
+            assertEquals(0, execute(configDir, out, "info"));
+            assertTrue(out.toString().contains("Branch Name:           user1"));
+            assertEquals(savana(ListWorkingCopyInfo.class), out.toString().trim());
+
+            //Failures are reported with a non-zero exit code
+            assertEquals(1, execute(configDir, new ByteArrayOutputStream(), "setbranch", "no-such-branch"));
+        } finally {
+            daemon.close();
+            thread.join();
+        }
+        assertFalse(daemonFile.exists());
+    }
+
+    public void testAbsoluteFileArguments() {
+        File dir = new File("client").getAbsoluteFile();
+        String file = new File(dir, "msg.txt").getPath();
+        String[] args = SAVClient.getAbsoluteFileArguments(new String[]{"promote", "-F", "msg.txt", "--file=msg.txt",
+                "-Fmsg.txt", "-m", "-F", "--targets", file, "target", "--", "--file"}, dir);
+        assertEquals(Arrays.asList("promote", "-F", file, "--file=" + file, "-F" + file, "-m", "-F", "--targets", file,
+                "target", "--", "--file"), Arrays.asList(args));
+    }
+
+    private int execute(File configDir, ByteArrayOutputStream out, String... args) {
+        String[] allArgs = new String[args.length + 2];
+        System.arraycopy(args, 0, allArgs, 0, args.length);
+        allArgs[args.length] = "--config-dir";
+        allArgs[args.length + 1] = configDir.getPath();
+        return new SAVClient().execute(allArgs, new PrintStream(out, true), new PrintStream(new ByteArrayOutputStream(), true));
+    }
+}
@@ -0,0 +1,43 @@
+package org.codehaus.savana.scripts;
+
+import org.apache.commons.io.FileUtils;
+import org.tmatesoft.svn.core.SVNURL;
+
+import java.io.File;
+
+/**
+ * Tests that generated repositories have the requested content, work with Savana, and are reused from the cache.
+ */
+public class GeneratedRepositoryTest extends AbstractSavanaScriptsTestCase {
+
+    public void testGenerateRepository() throws Exception {
+        // use a small batch size so the files and branches are spread over several commits
+        TestRepoGenerator generator = new TestRepoGenerator()
+                .setProjects(2).setUserBranches(3).setReleaseBranches(2).setSubbranches(1)
+                .setFilesPerTree(150).setBinaryFiles(2).setHistoryDepth(3).setBatchSize(50);
+        SVNURL repoUrl = generator.generate();
+
+        // the second project has the trunk files, binary files and history
+        File WC1 = TestRepoUtil.createTrunkWC(repoUrl, TestRepoGenerator.getProjectName(1));
+        assertTrue(new File(WC1, TestRepoGenerator.getFilePath(149)).isFile());
+        assertEquals(4096, new File(WC1, TestRepoGenerator.getBinaryFilePath(1)).length());
+        assertTrue(FileUtils.readFileToString(new File(WC1, TestRepoGenerator.getFilePath(2))).contains(" revision 3\n"));
+
+        // and branches savana recognizes
+        cd(WC1);
+        assertEquals("trunk", getWorkingCopyInfo().getMetadataProperties().getBranchName());
+        assertEquals("release-00000\nrelease-00001", savana(ListReleaseBranches.class, "-q"));
+        assertEquals("sub-00000\nuser-00000\nuser-00001\nuser-00002", savana(ListUserBranches.class, "-q"));
+        savana(SetBranch.class, "user-00001");
+        assertEquals("user-00001", getWorkingCopyInfo().getMetadataProperties().getBranchName());
+        savana(SetBranch.class, "trunk");
+        cd(new File(WC1, "src"));
+        savana(SetBranch.class, "sub-00000");
+        assertEquals("src", getWorkingCopyInfo().getMetadataProperties().getSourceSubpath());
+
+        // generating the same repository again uses the cached copy
+        long generated = new File(repoUrl.getPath(), "db/current").lastModified();
+        assertEquals(repoUrl, generator.generate());
+        assertEquals(generated, new File(repoUrl.getPath(), "db/current").lastModified());
+    }
+}
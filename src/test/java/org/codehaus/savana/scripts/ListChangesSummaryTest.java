@@ -0,0 +1,112 @@
+package org.codehaus.savana.scripts;
+
+import org.apache.commons.io.FileUtils;
+import org.codehaus.savana.FileListDiffSummarizer;
+import org.codehaus.savana.MetadataProperties;
+import org.codehaus.savana.WorkingCopyInfo;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+
+import java.io.File;
+
+/**
+ * Verifies that summarizing the changes from the source produces the same lists as a full diff.
+ */
+public class ListChangesSummaryTest extends AbstractSavanaScriptsTestCase {
+
+    private SVNURL REPO_URL = TestRepoUtil.DEFAULT_REPO;
+
+    public void testSummaryMatchesDiff() throws Exception {
+        //Setup a test project with a directory that the user branch will delete
+        String projectName = getClass().getSimpleName().toLowerCase();
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+        File WC2 = TestRepoUtil.createTrunkWC(REPO_URL, projectName);
+        cd(WC1);
+        File oldDir = new File(WC1, "src/old");
+        FileUtils.writeStringToFile(new File(oldDir, "x.txt"), "x");
+        FileUtils.writeStringToFile(new File(oldDir, "sub/y.txt"), "y");
+        SVN.getWCClient().doAdd(oldDir, false, false, false, SVNDepth.INFINITY, false, false);
+        SVN.getCommitClient().doCommit(new File[]{WC1}, false, "trunk - add old files", null, null, false, false, SVNDepth.INFINITY);
+
+        //Create a user branch and commit a mix of changes
+        savana(CreateUserBranch.class, "user1");
+        FileUtils.writeStringToFile(new File(WC1, "src/text/animals.txt"), "mongoose");
+        File extraDir = new File(WC1, "src/extra");
+        FileUtils.writeStringToFile(new File(extraDir, "a.txt"), "a");
+        FileUtils.writeStringToFile(new File(extraDir, "b.txt"), "b");
+        SVN.getWCClient().doAdd(extraDir, false, false, false, SVNDepth.INFINITY, false, false);
+        SVN.getWCClient().doSetProperty(new File(WC1, "src/text/drinks.txt"), "custom",
+                SVNPropertyValue.create("1"), false, SVNDepth.EMPTY, null, null);
+        SVN.getWCClient().doDelete(oldDir, false, false);
+        SVN.getCommitClient().doCommit(new File[]{WC1}, false, "user branch commit - mixed changes", null, null, false, false, SVNDepth.INFINITY);
+
+        String committed =
+                "Added Files:\n" +
+                "-------------------------------------------------\n" +
+                "src/extra/a.txt\n" +
+                "src/extra/b.txt\n" +
+                "\n" +
+                "Modified Files:\n" +
+                "-------------------------------------------------\n" +
+                "src/text/animals.txt\n" +
+                "src/text/drinks.txt\n" +
+                "\n" +
+                "Deleted Files:\n" +
+                "-------------------------------------------------\n" +
+                "src/old/sub/y.txt\n" +
+                "src/old/x.txt";
+        assertSummaryMatchesDiff(committed);
+
+        //Local modifications are included too
+        FileUtils.writeStringToFile(new File(WC1, "src/text/autos.txt"), "pinto");
+        File localFile = new File(WC1, "src/local.txt");
+        FileUtils.writeStringToFile(localFile, "local");
+        SVN.getWCClient().doAdd(localFile, false, false, false, SVNDepth.EMPTY, false, false);
+        SVN.getWCClient().doDelete(new File(extraDir, "b.txt"), false, false);
+        assertSummaryMatchesDiff(
+                "Added Files:\n" +
+                "-------------------------------------------------\n" +
+                "src/extra/a.txt\n" +
+                "src/local.txt\n" +
+                "\n" +
+                "Modified Files:\n" +
+                "-------------------------------------------------\n" +
+                "src/text/animals.txt\n" +
+                "src/text/autos.txt\n" +
+                "src/text/drinks.txt\n" +
+                "\n" +
+                "Deleted Files:\n" +
+                "-------------------------------------------------\n" +
+                "src/old/sub/y.txt\n" +
+                "src/old/x.txt");
+        SVN.getWCClient().doRevert(new File[]{WC1}, SVNDepth.INFINITY, null);
+        localFile.delete();
+
+        //Files merged by a sync are listed until committed, but the svn:mergeinfo a sync leaves behind isn't
+        TestRepoUtil.touchCounterFile(WC2);
+        SVN.getCommitClient().doCommit(new File[]{WC2}, false, "trunk - edit counter", null, null, false, false, SVNDepth.INFINITY);
+        SVN.getUpdateClient().doUpdate(WC1, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+        savana(Synchronize.class);
+        assertSummaryMatchesDiff(committed.replace("src/text/animals.txt\n", "counter.txt\nsrc/text/animals.txt\n"));
+        SVN.getCommitClient().doCommit(new File[]{WC1}, false, "user branch commit - sync", null, null, false, false, SVNDepth.INFINITY);
+        assertSummaryMatchesDiff(committed);
+    }
+
+    private void assertSummaryMatchesDiff(String expected) throws Exception {
+        //Make sure the working copy can be summarized without falling back to a full diff
+        WorkingCopyInfo wcInfo = getWorkingCopyInfo();
+        MetadataProperties wcProps = wcInfo.getMetadataProperties();
+        FileListDiffSummarizer summarizer = new FileListDiffSummarizer(SVN, wcInfo);
+        assertTrue(summarizer.summarize(wcInfo.getRepositoryURL(wcProps.getSourcePath()), wcProps.getLastMergeRevision()));
+
+        assertEquals(expected, savana(ListChangesFromSource.class));
+        System.setProperty("savana.summarize-changes", "false");
+        try {
+            assertEquals(expected, savana(ListChangesFromSource.class));
+        } finally {
+            System.clearProperty("savana.summarize-changes");
+        }
+    }
+}
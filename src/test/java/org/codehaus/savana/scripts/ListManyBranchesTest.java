@@ -0,0 +1,58 @@
+package org.codehaus.savana.scripts;
+
+import org.apache.commons.lang.StringUtils;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+import java.io.File;
+
+public class ListManyBranchesTest extends AbstractSavanaScriptsTestCase {
+
+    private SVNURL REPO_URL = TestRepoUtil.DEFAULT_REPO;
+
+    public void testListManyBranches() throws Exception {
+        //Setup a test project with a working directory and import the 'test-project' files
+        String projectName = getClass().getSimpleName().toLowerCase();
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+        SVNRepository repository = SVN.createRepository(REPO_URL, true);
+
+        //Create enough branches that the metadata is fetched using several batches and sessions.
+        //Create them in reverse order to make sure the listing comes out sorted anyway.
+        cd(WC1);
+        int numBranches = 24;
+        long[] branchPoints = new long[numBranches];
+        for (int i = numBranches - 1; i >= 0; i--) {
+            branchPoints[i] = repository.getLatestRevision();
+            savana(CreateUserBranch.class, branchName(i), "--remote");
+        }
+
+        //Add a directory that isn't a savana branch in the middle of the list
+        SVNURL plainDirUrl = REPO_URL.appendPath(projectName + "/branches/user/user-012-plain", false);
+        SVN.getCommitClient().doMkDir(new SVNURL[] {plainDirUrl}, "branch admin - not a savana branch");
+
+        StringBuilder expected = new StringBuilder();
+        expected.append("------------------------------------------------------------------------------\n");
+        expected.append("Branch Name            Source        Branch-Point  Last-Merge    Subpath\n");
+        expected.append("------------------------------------------------------------------------------");
+        for (int i = 0; i < numBranches; i++) {
+            expected.append("\n").append(StringUtils.rightPad(branchName(i), 23)).append("trunk         ")
+                    .append(StringUtils.rightPad(Long.toString(branchPoints[i]), 14))
+                    .append(StringUtils.rightPad(Long.toString(branchPoints[i]), 14));
+            if (i == 12) {
+                expected.append("\nuser-012-plain");
+            }
+        }
+        assertEquals(expected.toString().trim(), savana(ListUserBranches.class));
+
+        //The filter should still apply
+        StringBuilder expectedFiltered = new StringBuilder();
+        for (int i = 20; i < numBranches; i++) {
+            expectedFiltered.append(branchName(i)).append("\n");
+        }
+        assertEquals(expectedFiltered.toString().trim(), savana(ListUserBranches.class, "user-02*", "-q"));
+    }
+
+    private String branchName(int i) {
+        return "user-" + StringUtils.leftPad(Integer.toString(i), 3, '0');
+    }
+}
@@ -0,0 +1,67 @@
+package org.codehaus.savana.scripts;
+
+import org.apache.commons.io.FileUtils;
+import org.codehaus.savana.LocalChangeDetector;
+import org.codehaus.savana.LocalChangeStatusHandler;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNURL;
+
+import java.io.File;
+
+/**
+ * Verifies that local changes are found anywhere in the working copy, whether the working copy is
+ * scanned by one thread or split into subtrees scanned by several.
+ */
+public class LocalChangeDetectionTest extends AbstractSavanaScriptsTestCase {
+
+    private SVNURL REPO_URL = TestRepoUtil.DEFAULT_REPO;
+
+    public void testDetectLocalChanges() throws Exception {
+        String projectName = getClass().getSimpleName().toLowerCase();
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+
+        // add a directory deep enough that it's scanned as part of a larger subtree
+        File deepFile = new File(WC1, "src/text/deep/deeper/deep.txt");
+        FileUtils.writeStringToFile(deepFile, "deep");
+        SVN.getWCClient().doAdd(new File(WC1, "src/text/deep"), false, false, false, SVNDepth.INFINITY, false, false);
+        SVN.getCommitClient().doCommit(new File[]{WC1}, false, "trunk - add deep file", null, null, false, false, SVNDepth.INFINITY);
+
+        // a clean working copy, and one with only unversioned files, has no changes
+        assertNotBlocked(WC1);
+        FileUtils.writeStringToFile(new File(WC1, "src/text/deep/unversioned.txt"), "unversioned");
+        assertNotBlocked(WC1);
+
+        // a modification at the top level or deep in the tree is found
+        TestRepoUtil.touchCounterFile(WC1);
+        assertChanged(WC1);
+        SVN.getWCClient().doRevert(new File[]{WC1}, SVNDepth.INFINITY, null);
+        FileUtils.writeStringToFile(deepFile, "deeper");
+        assertChanged(WC1);
+
+        // and it stops createbranch
+        cd(WC1);
+        try {
+            savana(CreateUserBranch.class, "user1");
+            assertTrue("we expected an exception to be thrown", false);
+        } catch (SavanaScriptsTestException e) {
+            // we expect this exception to be thrown, with this error message
+            assertEquals("svn: E200009: ERROR: Cannot create a new branch while the working copy has local changes." +
+                         "\nRun 'svn status' to find changes or retry with --force\n", e.getErr());
+        }
+    }
+
+    private void assertNotBlocked(File wc) throws Exception {
+        for (int numThreads = 1; numThreads <= 4; numThreads += 3) {
+            LocalChangeStatusHandler handler = new LocalChangeDetector(SVN, numThreads).detectChanges(wc, wc, false);
+            assertFalse(handler.isBlocked());
+        }
+    }
+
+    private void assertChanged(File wc) throws Exception {
+        for (int numThreads = 1; numThreads <= 4; numThreads += 3) {
+            LocalChangeStatusHandler handler = new LocalChangeDetector(SVN, numThreads).detectChanges(wc, wc, false);
+            assertTrue(handler.isChanged());
+            assertFalse(handler.isSwitched());
+        }
+    }
+}
@@ -2,7 +2,6 @@ package org.codehaus.savana.scripts;
 
 import org.codehaus.savana.MetadataFile;
 import org.codehaus.savana.MetadataProperties;
-import org.codehaus.savana.WorkingCopyInfo;
 import org.tmatesoft.svn.core.SVNDepth;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNURL;
@@ -180,7 +179,7 @@ public class LogMessagePoliciesTest extends AbstractSavanaScriptsTestCase {
     }
 
     private void assertUserBranchPromoteFails(String logMessage) throws Exception {
-        MetadataProperties wcProps = new WorkingCopyInfo(SVN).getMetadataProperties();
+        MetadataProperties wcProps = getWorkingCopyInfo().getMetadataProperties();
         try {
             wcProps.getSavanaPolicies().validateLogMessage(logMessage, wcProps, false);
             assertTrue("we expected an exception to be thrown", false);
@@ -193,7 +192,7 @@ public class LogMessagePoliciesTest extends AbstractSavanaScriptsTestCase {
     }
 
     private void assertUserBranchPromoteSucceeds(String logMessage) throws Exception {
-        MetadataProperties wcProps = new WorkingCopyInfo(SVN).getMetadataProperties();
+        MetadataProperties wcProps = getWorkingCopyInfo().getMetadataProperties();
         wcProps.getSavanaPolicies().validateLogMessage(logMessage, wcProps, false);
     }
 }
@@ -0,0 +1,87 @@
+package org.codehaus.savana.scripts;
+
+import org.apache.commons.io.FileUtils;
+import org.codehaus.savana.MergeInfoScrubber;
+import org.codehaus.savana.MetadataFile;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.wc.SVNPropertyData;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Tests that sync removes svn:mergeinfo throughout the working copy when the source's policies say so, except in
+ * nested workspaces.
+ */
+public class MergeInfoScrubTest extends AbstractSavanaScriptsTestCase {
+
+    private SVNURL REPO_URL = TestRepoUtil.DEFAULT_REPO;
+
+    public void testSynchronizeRemovesMergeInfo() throws Exception {
+        // setup a test project with a working directory and without the default Savana policies property
+        String projectName = getClass().getSimpleName().toLowerCase();
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, false, "test-project");
+        File WC2 = TestRepoUtil.createTrunkWC(REPO_URL, projectName);
+
+        // in WC2 (trunk), turn on the policy to delete svn:mergeinfo
+        String policies = FileUtils.readFileToString(TestDirUtil.POLICIES_FILE, "UTF-8")
+                .replace("svnmergeproperty.delete=false", "svnmergeproperty.delete=true");
+        SVN.getWCClient().doSetProperty(new File(WC2, MetadataFile.METADATA_FILE_NAME), MetadataFile.PROP_SAVANA_POLICIES,
+                SVNPropertyValue.create(policies), false, SVNDepth.EMPTY, null, null);
+        SVN.getCommitClient().doCommit(new File[]{WC2}, false,
+                "branch admin - delete svn:mergeinfo", null, null, false, false, SVNDepth.INFINITY);
+
+        // in WC1, create a user branch with an old svn:mergeinfo property next to another property
+        SVN.getUpdateClient().doUpdate(WC1, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1");
+        File animalsFile = new File(WC1, "src/text/animals.txt");
+        SVN.getWCClient().doSetProperty(animalsFile, SVNProperty.MERGE_INFO,
+                SVNPropertyValue.create("/" + projectName + "/trunk/src/text/animals.txt:1"), false, SVNDepth.EMPTY, null, null);
+        SVN.getWCClient().doSetProperty(animalsFile, "custom", SVNPropertyValue.create("keep"), false, SVNDepth.EMPTY, null, null);
+        SVN.getCommitClient().doCommit(new File[]{WC1}, false,
+                "user branch commit - properties", null, null, false, false, SVNDepth.INFINITY);
+
+        // in WC2 (trunk), change a file
+        FileUtils.writeStringToFile(new File(WC2, "src/text/drinks.txt"), "tequila");
+        SVN.getCommitClient().doCommit(new File[]{WC2}, false, "trunk - drinks", null, null, false, false, SVNDepth.INFINITY);
+
+        // in WC1 (user branch), sync.  svn:mergeinfo is gone everywhere, other properties are untouched.
+        SVN.getUpdateClient().doUpdate(WC1, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+        savana(Synchronize.class);
+        assertEquals("tequila", FileUtils.readFileToString(new File(WC1, "src/text/drinks.txt")));
+        assertNull(getProperty(WC1, SVNProperty.MERGE_INFO));
+        assertNull(getProperty(animalsFile, SVNProperty.MERGE_INFO));
+        assertEquals("keep", SVNPropertyValue.getPropertyAsString(getProperty(animalsFile, "custom").getValue()));
+    }
+
+    public void testScrubSkipsNestedWorkspaces() throws Exception {
+        // setup a test project with a working directory and a nested workspace for "src"
+        String projectName = getClass().getSimpleName().toLowerCase() + "-nested";
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1-src", "src");
+
+        // add svn:mergeinfo inside and outside of the nested workspace
+        File counterFile = new File(WC1, "counter.txt");
+        File animalsFile = new File(WC1, "src/text/animals.txt");
+        for (File file : new File[]{counterFile, animalsFile}) {
+            SVN.getWCClient().doSetProperty(file, SVNProperty.MERGE_INFO,
+                    SVNPropertyValue.create("/" + projectName + "/trunk/" + file.getName() + ":1"), false, SVNDepth.EMPTY, null, null);
+        }
+
+        // only the working copy's own files are scrubbed
+        assertEquals(Arrays.asList(counterFile), new MergeInfoScrubber(SVN.getWCClient()).scrub(WC1));
+        assertNull(getProperty(counterFile, SVNProperty.MERGE_INFO));
+        assertNotNull(getProperty(animalsFile, SVNProperty.MERGE_INFO));
+        assertNotNull(getProperty(new File(WC1, MetadataFile.METADATA_FILE_NAME), MetadataFile.PROP_BRANCH_TYPE));
+    }
+
+    private SVNPropertyData getProperty(File file, String propName) throws Exception {
+        return SVN.getWCClient().doGetProperty(file, propName, SVNRevision.WORKING, SVNRevision.WORKING);
+    }
+}
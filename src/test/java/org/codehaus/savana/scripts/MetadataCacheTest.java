@@ -0,0 +1,107 @@
+package org.codehaus.savana.scripts;
+
+import org.apache.commons.lang.StringUtils;
+import org.codehaus.savana.MetadataCache;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+
+import java.io.File;
+
+/**
+ * Verifies that the on-disk cache of remote metadata properties is used and never returns stale data.
+ */
+public class MetadataCacheTest extends AbstractSavanaScriptsTestCase {
+
+    private SVNURL REPO_URL = TestRepoUtil.DEFAULT_REPO;
+
+    public void testListBranchesUsesCache() throws Exception {
+        //Setup a test project with two working directories
+        String projectName = getClass().getSimpleName().toLowerCase();
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+        File WC2 = TestRepoUtil.createTrunkWC(REPO_URL, projectName);
+        File cacheDir = new File(TestRepoUtil.SUBVERSION_CONFIG_DIR, "savana/metadata-cache");
+
+        //Create a user branch in WC1
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1");
+        long branchPoint = SVN.getWCClient().doInfo(WC1, SVNRevision.WORKING).getRevision().getNumber() - 1;
+
+        //The first listing populates the cache, the second reads from it
+        String expected = listing("user1", branchPoint, branchPoint);
+        int numEntries = countEntries(cacheDir);
+        assertEquals(expected, savana(ListUserBranches.class));
+        assertTrue("expected the listing to add to the metadata cache", countEntries(cacheDir) > numEntries);
+        numEntries = countEntries(cacheDir);
+        assertEquals(expected, savana(ListUserBranches.class));
+        assertEquals(numEntries, countEntries(cacheDir));
+
+        //Commit a change to trunk, then sync it into the user branch and commit
+        cd(WC2);
+        TestRepoUtil.touchCounterFile(WC2);
+        long trunkRev = SVN.getCommitClient().doCommit(new File[] {WC2}, false,
+                "trunk - edit counter", null, null, false, false, SVNDepth.INFINITY).getNewRevision();
+        cd(WC1);
+        savana(Synchronize.class);
+        SVN.getCommitClient().doCommit(new File[] {WC1}, false,
+                "user branch commit - sync", null, null, false, false, SVNDepth.INFINITY);
+
+        //The listing must reflect the new last merge revision, not the cached one
+        assertEquals(listing("user1", branchPoint, trunkRev), savana(ListUserBranches.class));
+    }
+
+    public void testCommitToBranchReusesCache() throws Exception {
+        //Setup a test project and create a user branch
+        String projectName = getClass().getSimpleName().toLowerCase() + "-commit";
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+        File cacheDir = new File(TestRepoUtil.SUBVERSION_CONFIG_DIR, "savana/metadata-cache");
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1");
+        long branchPoint = SVN.getWCClient().doInfo(WC1, SVNRevision.WORKING).getRevision().getNumber() - 1;
+
+        //List without the branch index so the metadata is looked up through the cache every time
+        System.setProperty("savana.branch-index", "false");
+        try {
+            String expected = listing("user1", branchPoint, branchPoint);
+            assertEquals(expected, savana(ListUserBranches.class));
+            int numEntries = countEntries(cacheDir);
+
+            //A commit that doesn't touch the metadata file doesn't need a new cache entry
+            TestRepoUtil.touchCounterFile(WC1);
+            SVN.getCommitClient().doCommit(new File[] {WC1}, false,
+                    "user branch commit - edit counter", null, null, false, false, SVNDepth.INFINITY);
+            assertEquals(expected, savana(ListUserBranches.class));
+            assertEquals(numEntries, countEntries(cacheDir));
+        } finally {
+            System.clearProperty("savana.branch-index");
+        }
+    }
+
+    public void testBinaryPropertiesAreLeftOut() throws Exception {
+        MetadataCache cache = new MetadataCache(createTempDir("metadata-cache-binary"), MetadataCache.DEFAULT_MAX_ENTRIES);
+        SVNProperties properties = new SVNProperties();
+        properties.put("savana:branch-name", "user1");
+        properties.put("custom:binary", new byte[] {0, 1, 2});
+        cache.put("uuid", "branches/user/user1/.savana", 10, properties);
+
+        SVNProperties cached = cache.get("uuid", "branches/user/user1/.savana", 10);
+        assertNotNull("expected the string properties to be cached", cached);
+        assertEquals(SVNPropertyValue.create("user1"), cached.getSVNPropertyValue("savana:branch-name"));
+        assertFalse(cached.containsName("custom:binary"));
+    }
+
+    private String listing(String branchName, long branchPoint, long lastMerge) {
+        return "------------------------------------------------------------------------------\n" +
+               "Branch Name            Source        Branch-Point  Last-Merge    Subpath\n" +
+               "------------------------------------------------------------------------------\n" +
+               StringUtils.rightPad(branchName, 23) + "trunk         " +
+               StringUtils.rightPad(Long.toString(branchPoint), 14) + lastMerge;
+    }
+
+    private int countEntries(File cacheDir) {
+        String[] names = cacheDir.list();
+        return (names != null) ? names.length : 0;
+    }
+}
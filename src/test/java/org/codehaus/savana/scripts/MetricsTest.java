@@ -0,0 +1,123 @@
+package org.codehaus.savana.scripts;
+
+import org.apache.commons.io.FileUtils;
+import org.codehaus.savana.CommandMetrics;
+import org.codehaus.savana.Tracer;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tests adding the metrics of each command to a file for node-exporter's textfile collector with '-Dsavana.metrics=<file>'.
+ */
+public class MetricsTest extends AbstractSavanaScriptsTestCase {
+
+    private SVNURL REPO_URL = TestRepoUtil.DEFAULT_REPO;
+
+    public void testCommandMetrics() throws Exception {
+        // setup a test project with a working directory
+        String projectName = getClass().getSimpleName().toLowerCase();
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+        cd(WC1);
+
+        File metricsDir = TestDirUtil.createTempDir("metrics");
+        metricsDir.mkdirs();
+        File metricsFile = new File(metricsDir, "savana.prom");
+        System.setProperty("savana.metrics", metricsFile.getPath());
+        try {
+            // each run adds to the totals in the file
+            savana(ListUserBranches.class);
+            savana(ListUserBranches.class);
+            String metrics = FileUtils.readFileToString(metricsFile, "UTF-8");
+            assertTrue(metrics, metrics.startsWith("# HELP savana_command_runs_total Savana command runs by result.\n" +
+                    "# TYPE savana_command_runs_total counter\n"));
+            assertEquals(metrics, 2, getValue(metrics, "savana_command_runs_total{command=\"listuserbranches\",result=\"success\"}"));
+            assertEquals(metrics, 2, getValue(metrics, "savana_command_duration_seconds_count{command=\"listuserbranches\"}"));
+            assertEquals(metrics, 2, getValue(metrics, "savana_command_duration_seconds_bucket{command=\"listuserbranches\",le=\"+Inf\"}"));
+            assertEquals(metrics, 2, getValue(metrics, "savana_command_phase_duration_seconds_count{command=\"listuserbranches\",phase=\"List branches\"}"));
+            assertEquals(metrics, 0, getValue(metrics, "savana_repository_requests_total{command=\"listuserbranches\"}"));
+
+            // failures are counted separately
+            try {
+                savana(Synchronize.class);
+                fail("Expected synchronize in the trunk to fail");
+            } catch (SavanaScriptsTestException e) {
+                // expected
+            }
+            metrics = FileUtils.readFileToString(metricsFile, "UTF-8");
+            assertEquals(metrics, 1, getValue(metrics, "savana_command_runs_total{command=\"synchronize\",result=\"failure\"}"));
+            assertEquals(metrics, 2, getValue(metrics, "savana_command_runs_total{command=\"listuserbranches\",result=\"success\"}"));
+
+            // promote scans the working copy and merges the branch's changes
+            savana(CreateUserBranch.class, "user1");
+            FileUtils.writeStringToFile(new File(WC1, "src/text/animals.txt"), "platypus");
+            FileUtils.writeStringToFile(new File(WC1, "src/text/autos.txt"), "roadster");
+            SVN.getCommitClient().doCommit(new File[]{WC1}, false,
+                    "user branch commit - metrics changes", null, null, false, false, SVNDepth.INFINITY);
+            SVN.getUpdateClient().doUpdate(WC1, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+            savana(Promote.class, "-m", "trunk - metrics promote");
+            metrics = FileUtils.readFileToString(metricsFile, "UTF-8");
+            assertTrue(metrics, getValue(metrics, "savana_working_copy_files_scanned_total{command=\"promote\"}") > 0);
+            assertTrue(metrics, getValue(metrics, "savana_merge_paths_total{command=\"promote\"}") >= 2);
+
+            // the OpenMetrics format keeps the totals
+            System.setProperty("savana.metrics.format", "openmetrics");
+            savana(ListUserBranches.class);
+            metrics = FileUtils.readFileToString(metricsFile, "UTF-8");
+            assertTrue(metrics, metrics.startsWith("# HELP savana_command_runs Savana command runs by result.\n" +
+                    "# TYPE savana_command_runs counter\n"));
+            assertTrue(metrics, metrics.endsWith("\n# EOF\n"));
+            assertEquals(metrics, 3, getValue(metrics, "savana_command_runs_total{command=\"listuserbranches\",result=\"success\"}"));
+            assertEquals(metrics, 1, getValue(metrics, "savana_command_runs_total{command=\"promote\",result=\"success\"}"));
+
+            // the file is replaced with a rename, so no temporary files are left behind
+            assertEquals(2, metricsDir.list().length);
+            assertTrue(new File(metricsDir, "savana.prom.lock").exists());
+        } finally {
+            System.clearProperty("savana.metrics");
+            System.clearProperty("savana.metrics.format");
+        }
+    }
+
+    public void testReadWrittenMetrics() throws Exception {
+        Tracer tracer = new Tracer("cmd");
+        tracer.start("phase with \"quotes\" and a \\ backslash");
+        tracer.start("nested phase");
+        tracer.finish();
+
+        // writing the totals, reading them back and writing them again gives the same file
+        CommandMetrics metrics = new CommandMetrics();
+        metrics.add("cmd", true, tracer.getRoot(), 10, 3, 1000000000000L);
+        metrics.add("cmd", false, tracer.getRoot(), 5, 0, 1000000005000L);
+        for (boolean openMetrics : new boolean[]{false, true}) {
+            StringWriter written = new StringWriter();
+            metrics.write(written, openMetrics);
+            CommandMetrics readMetrics = new CommandMetrics();
+            readMetrics.read(new StringReader(written.toString()));
+            StringWriter rewritten = new StringWriter();
+            readMetrics.write(rewritten, openMetrics);
+            assertEquals(written.toString(), rewritten.toString());
+
+            String text = written.toString();
+            assertEquals(text, 15, getValue(text, "savana_working_copy_files_scanned_total{command=\"cmd\"}"));
+            assertEquals(text, 3, getValue(text, "savana_merge_paths_total{command=\"cmd\"}"));
+            assertEquals(text, 1, getValue(text, "savana_command_runs_total{command=\"cmd\",result=\"failure\"}"));
+            assertEquals(text, 1000000005, getValue(text, "savana_command_last_run_timestamp_seconds{command=\"cmd\"}"));
+            assertEquals(text, 2, getValue(text,
+                    "savana_command_phase_duration_seconds_count{command=\"cmd\",phase=\"phase with \\\"quotes\\\" and a \\\\ backslash\"}"));
+            assertEquals(text, 2, getValue(text, "savana_command_phase_duration_seconds_count{command=\"cmd\",phase=\"nested phase\"}"));
+        }
+    }
+
+    private long getValue(String metrics, String series) {
+        Matcher matcher = Pattern.compile("^" + Pattern.quote(series) + " (\\S+)$", Pattern.MULTILINE).matcher(metrics);
+        assertTrue(series, matcher.find());
+        return (long) Double.parseDouble(matcher.group(1));
+    }
+}
@@ -0,0 +1,41 @@
+package org.codehaus.savana.scripts;
+
+import org.apache.commons.io.FileUtils;
+import org.tmatesoft.svn.core.SVNURL;
+
+import java.io.File;
+
+/**
+ * Tests listing the info for workspaces nested underneath the current workspace with 'sav info -R'.
+ */
+public class NestedWorkspaceInfoTest extends AbstractSavanaScriptsTestCase {
+
+    private SVNURL REPO_URL = TestRepoUtil.DEFAULT_REPO;
+
+    public void testListNestedWorkspaces() throws Exception {
+        // setup a test project with a working directory and import the 'test-project' files
+        String projectName = getClass().getSimpleName().toLowerCase();
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+        File WC1_src = new File(WC1, "src");
+
+        // create a user branch with a subpath of "src"
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1-src", "src");
+        cd(WC1_src);
+        String srcInfo = savana(ListWorkingCopyInfo.class);
+        cd(WC1);
+        String trunkInfo = savana(ListWorkingCopyInfo.class);
+
+        // an unversioned directory containing a metadata file isn't a workspace
+        FileUtils.copyFile(new File(WC1, ".savana"), new File(WC1, "build/.savana"));
+
+        // the nested workspace is found with infinite depth, and with immediates since it's a direct child
+        assertEquals(trunkInfo + "\n\n" + srcInfo, savana(ListWorkingCopyInfo.class, "-R"));
+        assertEquals(trunkInfo + "\n\n" + srcInfo, savana(ListWorkingCopyInfo.class, "--depth", "immediates"));
+        assertEquals(trunkInfo, savana(ListWorkingCopyInfo.class, "--depth", "files"));
+
+        // a workspace is not nested within itself
+        cd(WC1_src);
+        assertEquals(srcInfo, savana(ListWorkingCopyInfo.class, "-R"));
+    }
+}
@@ -0,0 +1,80 @@
+package org.codehaus.savana.scripts;
+
+import junit.framework.TestCase;
+import org.codehaus.savana.PathTrie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Tests that the path trie used to collect merged and changed paths behaves like a TreeSet of the same strings.
+ */
+public class PathTrieTest extends TestCase {
+
+    public void testSharedPrefixes() throws Exception {
+        Set<String> expected = new TreeSet<String>();
+        Set<String> trie = new PathTrie();
+        for (String path : Arrays.asList("a/b", "a", "ab", "a-c", "", "a/b/c.txt", "a/bc", "b")) {
+            assertEquals(path, expected.add(path), trie.add(path));
+        }
+        assertFalse(trie.add("a/b"));
+        assertSets(expected, trie);
+
+        // prefixes of stored paths aren't members unless they were added
+        assertFalse(trie.contains("a/"));
+        assertFalse(trie.contains("a/b/c"));
+        assertFalse(trie.contains("a/bcd"));
+        assertFalse(trie.contains(new Object()));
+
+        // removing paths merges the nodes they leave behind without losing their neighbors
+        for (String path : Arrays.asList("a", "a/b", "", "zzz")) {
+            assertEquals(path, expected.remove(path), trie.remove(path));
+            assertSets(expected, trie);
+        }
+        assertTrue(trie.add("a/b"));
+        assertTrue(expected.add("a/b"));
+        assertSets(expected, trie);
+
+        trie.clear();
+        assertTrue(trie.isEmpty());
+        assertFalse(trie.iterator().hasNext());
+        assertFalse(trie.contains("b"));
+    }
+
+    public void testGeneratedPaths() throws Exception {
+        Random random = new Random(42);
+        Set<String> expected = new TreeSet<String>();
+        Set<String> trie = new PathTrie();
+        List<String> paths = new ArrayList<String>();
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder path = new StringBuilder("src/main");
+            int depth = 1 + random.nextInt(4);
+            for (int j = 0; j < depth; j++) {
+                path.append('/').append((char) ('a' + random.nextInt(3))).append(random.nextInt(3));
+            }
+            if (random.nextBoolean()) {
+                path.append(".java");
+            }
+            paths.add(path.toString());
+            assertEquals(expected.add(path.toString()), trie.add(path.toString()));
+        }
+        assertSets(expected, trie);
+
+        for (int i = 0; i < paths.size(); i += 2) {
+            assertEquals(expected.remove(paths.get(i)), trie.remove(paths.get(i)));
+        }
+        assertSets(expected, trie);
+        for (String path : paths) {
+            assertEquals(path, expected.contains(path), trie.contains(path));
+        }
+    }
+
+    private void assertSets(Set<String> expected, Set<String> trie) {
+        assertEquals(expected.size(), trie.size());
+        assertEquals(new ArrayList<String>(expected), new ArrayList<String>(trie));
+    }
+}
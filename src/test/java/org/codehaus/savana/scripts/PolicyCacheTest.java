@@ -0,0 +1,84 @@
+package org.codehaus.savana.scripts;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.codehaus.savana.BranchType;
+import org.codehaus.savana.ISavanaPolicies;
+import org.codehaus.savana.MetadataFile;
+import org.codehaus.savana.MetadataProperties;
+import org.codehaus.savana.PolicyCache;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNProperties;
+
+/**
+ * Tests that policy objects are shared by metadata files with the same policies and that the patterns they
+ * cache are specialized for each branch.
+ */
+public class PolicyCacheTest extends TestCase {
+
+    public void testSharedPolicies() throws Exception {
+        String policies = FileUtils.readFileToString(TestDirUtil.POLICIES_FILE, "ISO-8859-1");
+
+        // metadata files with the same policies share the same policy object
+        ISavanaPolicies savanaPolicies = getTrunkProperties("project1", policies).getSavanaPolicies();
+        assertSame(savanaPolicies, getTrunkProperties("project2", policies).getSavanaPolicies());
+        assertNotSame(savanaPolicies, getTrunkProperties("project1", policies + "\n# changed\n").getSavanaPolicies());
+
+        // the cached log message patterns expand the keywords of the branch being validated
+        MetadataProperties user1 = getUserBranchProperties("user1");
+        MetadataProperties user2 = getUserBranchProperties("user2");
+        savanaPolicies.validateLogMessage("user1 - fix", user1, false);
+        savanaPolicies.validateLogMessage("user2 - fix", user2, false);
+        try {
+            savanaPolicies.validateLogMessage("user1 - fix", user2, false);
+            fail("we expected an exception to be thrown");
+        } catch (SVNException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("workspace: user2"));
+        }
+
+        // the cache can be turned off
+        System.setProperty("savana.policy-cache", "false");
+        try {
+            assertNotSame(savanaPolicies, getTrunkProperties("project1", policies).getSavanaPolicies());
+        } finally {
+            System.clearProperty("savana.policy-cache");
+        }
+    }
+
+    public void testEviction() throws Exception {
+        String policies = FileUtils.readFileToString(TestDirUtil.POLICIES_FILE, "ISO-8859-1");
+        PolicyCache cache = new PolicyCache(2);
+        ISavanaPolicies first = cache.getPolicies(policies);
+        cache.getPolicies(policies + "\n# second\n");
+        assertSame(first, cache.getPolicies(policies));
+        cache.getPolicies(policies + "\n# third\n");
+        assertEquals(2, cache.size());
+
+        // the first entry was used more recently than the second, so the second was evicted
+        assertSame(first, cache.getPolicies(policies));
+        cache.getPolicies(policies + "\n# second\n");
+        assertEquals(2, cache.size());
+        cache.clear();
+        assertNotSame(first, cache.getPolicies(policies));
+    }
+
+    private MetadataProperties getTrunkProperties(String projectName, String policies) throws SVNException {
+        SVNProperties properties = new SVNProperties();
+        properties.put(MetadataFile.PROP_PROJECT_NAME, projectName);
+        properties.put(MetadataFile.PROP_BRANCH_PATH, projectName + "/trunk");
+        properties.put(MetadataFile.PROP_BRANCH_TYPE, BranchType.TRUNK.getKeyword());
+        properties.put(MetadataFile.PROP_SAVANA_POLICIES, policies);
+        return new MetadataProperties(MetadataFile.METADATA_FILE_NAME, properties);
+    }
+
+    private MetadataProperties getUserBranchProperties(String branchName) throws SVNException {
+        SVNProperties properties = new SVNProperties();
+        properties.put(MetadataFile.PROP_PROJECT_NAME, "project1");
+        properties.put(MetadataFile.PROP_BRANCH_PATH, "project1/branches/user/" + branchName);
+        properties.put(MetadataFile.PROP_BRANCH_TYPE, BranchType.USER_BRANCH.getKeyword());
+        properties.put(MetadataFile.PROP_SOURCE_ROOT, "project1/trunk");
+        properties.put(MetadataFile.PROP_BRANCH_POINT_REVISION, "10");
+        properties.put(MetadataFile.PROP_LAST_MERGE_REVISION, "12");
+        return new MetadataProperties(MetadataFile.METADATA_FILE_NAME, properties);
+    }
+}
@@ -0,0 +1,168 @@
+package org.codehaus.savana.scripts;
+
+import org.apache.commons.io.FileUtils;
+import org.codehaus.savana.MetadataFile;
+import org.codehaus.savana.PreCommitValidator;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.admin.SVNLookClient;
+
+import java.io.File;
+
+/**
+ * Tests enforcing the Savana policies on the server with the pre-commit hook engine and the hook server.
+ */
+public class PreCommitHookTest extends AbstractSavanaScriptsTestCase {
+
+    public void testValidateChangesets() throws Exception {
+        // setup a test project in a repository without hooks, so each changeset can be validated after the fact
+        SVNURL repoUrl = TestRepoUtil.newRepository(false);
+        File repoDir = new File(repoUrl.getPath());
+        String projectName = "precommit";
+        File WC1 = TestRepoUtil.setupProjectWithWC(repoUrl, projectName, true, true, "test-project");
+        File WC2 = TestRepoUtil.createTrunkWC(repoUrl, projectName);
+        assertNull(validate(repoDir));
+
+        // creating a user branch and committing to it with either kind of message is allowed
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1");
+        assertNull(validate(repoDir));
+        FileUtils.writeStringToFile(new File(WC1, "src/text/animals.txt"), "mongoose");
+        commit(WC1, "user1 - mongoose");
+        assertNull(validate(repoDir));
+        FileUtils.writeStringToFile(new File(WC1, "src/text/autos.txt"), "pinto");
+        commit(WC1, "user branch commit");
+        assertNull(validate(repoDir));
+
+        // a message for another branch isn't
+        FileUtils.writeStringToFile(new File(WC1, "src/text/drinks.txt"), "tequila");
+        commit(WC1, "user2 - tequila");
+        assertTrue(validate(repoDir), validate(repoDir).contains("workspace: user1"));
+
+        // a remote promote modifies the trunk and deletes the user branch
+        savana(Promote.class, "--remote", "-m", "trunk - remote promote");
+        assertNull(validate(repoDir));
+
+        // trunk commits must start with 'trunk'
+        SVN.getUpdateClient().doUpdate(WC2, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+        FileUtils.writeStringToFile(new File(WC2, "src/text/animals.txt"), "grasshopper");
+        commit(WC2, "fix the animals");
+        assertTrue(validate(repoDir), validate(repoDir).startsWith("The commit comment must start with the name of the modified workspace"));
+
+        // the trunk metadata file may not be modified except by branch admin commits
+        File metadataFile = new File(WC2, MetadataFile.METADATA_FILE_NAME);
+        SVN.getWCClient().doSetProperty(metadataFile, MetadataFile.PROP_CODE_FROZEN, SVNPropertyValue.create("true"),
+                false, SVNDepth.EMPTY, null, null);
+        commit(WC2, "trunk - start code freeze");
+        assertEquals("The changeset may not modify Savana metadata files in the trunk or in a release branch:\n" +
+                "  workspace: trunk\n  metadata file: precommit/trunk/.savana", validate(repoDir));
+        SVN.getWCClient().doSetProperty(metadataFile, "custom", SVNPropertyValue.create("true"),
+                false, SVNDepth.EMPTY, null, null);
+        commit(WC2, "branch admin - start code freeze");
+        assertNull(validate(repoDir));
+
+        // the trunk is frozen now
+        FileUtils.writeStringToFile(new File(WC2, "src/text/animals.txt"), "cricket");
+        commit(WC2, "trunk - cricket");
+        assertTrue(validate(repoDir), validate(repoDir).contains("currently under code freeze"));
+        FileUtils.writeStringToFile(new File(WC2, "src/text/animals.txt"), "ant");
+        commit(WC2, "trunk - ant code freeze break");
+        assertNull(validate(repoDir));
+
+        // a changeset may only modify one workspace
+        savana(CreateUserBranch.class, "user2");
+        SVNURL projectUrl = repoUrl.appendPath(projectName, false);
+        SVN.getCommitClient().doMkDir(new SVNURL[] {
+                projectUrl.appendPath("trunk/new1", false),
+                projectUrl.appendPath("branches/user/user2/new1", false),
+        }, "trunk - two workspaces", null, false);
+        assertEquals("The changeset modifies multiple workspaces:\n" +
+                "  user branch: user2\n  trunk", validate(repoDir));
+        SVN.getCommitClient().doMkDir(new SVNURL[] {projectUrl.appendPath("tags", false)}, "trunk - tags", null, false);
+        assertEquals("The changeset modifies a file outside the usual trunk, release and user branches:\n" +
+                "  file: precommit/tags", validate(repoDir));
+
+        // only the one branch being promoted may be deleted, and only along with changes to its source
+        cd(WC2);
+        savana(CreateUserBranch.class, "user3");
+        savana(SetBranch.class, "trunk");
+        savana(CreateUserBranch.class, "user4");
+        savana(SetBranch.class, "trunk");
+        File WC3 = createTempDir("precommit-project");
+        SVN.getUpdateClient().doCheckout(projectUrl, WC3, SVNRevision.HEAD, SVNRevision.HEAD, SVNDepth.INFINITY, false);
+        SVN.getWCClient().doDelete(new File(WC3, "branches/user/user4"), false, false);
+        FileUtils.writeStringToFile(new File(WC3, "branches/user/user2/src/text/animals.txt"), "aardvark");
+        commit(WC3, "user branch - promote user4 to user2");
+        assertEquals("The changeset modifies multiple workspaces:\n" +
+                "  user branch: user2\n  user branch: user4", validate(repoDir));
+        SVN.getUpdateClient().doUpdate(WC3, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+        SVN.getWCClient().doDelete(new File(WC3, "branches/user/user2"), false, false);
+        SVN.getWCClient().doDelete(new File(WC3, "branches/user/user3"), false, false);
+        FileUtils.writeStringToFile(new File(WC3, "trunk/src/text/animals.txt"), "anteater");
+        commit(WC3, "trunk - promote user2 and user3");
+        assertEquals("The changeset modifies multiple workspaces:\n" +
+                "  user branch: user2\n  user branch: user3\n  trunk", validate(repoDir));
+    }
+
+    public void testHookServer() throws Exception {
+        SVNURL repoUrl = TestRepoUtil.newRepository(false);
+        File repoDir = new File(repoUrl.getPath());
+        File WC1 = TestRepoUtil.setupProjectWithWC(repoUrl, "precommit-server", true, true, "test-project");
+        File serverFile = new File(createTempDir("savana-hook-server"), "hook-server.properties");
+
+        final SAVHookServer server = new SAVHookServer(serverFile, 2);
+        server.start();
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                server.serve();
+            }
+        });
+        thread.start();
+        try {
+            // install the hook script, pointing it at the hook server
+            File hookScript = new File(TestDirUtil.SVN_HOOKS_DIR.getParentFile(), "bin/savana-pre-commit");
+            File hookFile = new File(repoDir, "hooks/pre-commit");
+            FileUtils.writeStringToFile(hookFile, "#!/bin/bash\nexec '" + hookScript + "' --server-file '" + serverFile + "' \"$@\"\n");
+            SVNFileUtil.setExecutable(hookFile, true);
+
+            // the hook server rejects a commit with the wrong message
+            FileUtils.writeStringToFile(new File(WC1, "src/text/animals.txt"), "mongoose");
+            try {
+                commit(WC1, "fix the animals");
+                fail("we expected an exception to be thrown");
+            } catch (SVNException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("Commit blocked by pre-commit hook (exit code 1) with output:\n" +
+                        "The commit comment must start with the name of the modified workspace:\n  workspace: trunk\n"));
+            }
+
+            // and accepts the same commit with the right message
+            commit(WC1, "trunk - fix the animals");
+        } finally {
+            server.close();
+            thread.join();
+        }
+        assertFalse(serverFile.exists());
+    }
+
+    private void commit(File wc, String message) throws SVNException {
+        SVN.getCommitClient().doCommit(new File[]{wc}, false, message, null, null, false, false, SVNDepth.INFINITY);
+    }
+
+    /**
+     * Returns the reason the latest changeset wouldn't have been allowed, or null if it's valid.
+     */
+    private String validate(File repoDir) throws SVNException {
+        SVNLookClient lookClient = SVN.getLookClient();
+        SVNRevision revision = SVNRevision.create(lookClient.doGetYoungestRevision(repoDir));
+        try {
+            new PreCommitValidator(lookClient, repoDir, revision).validate();
+            return null;
+        } catch (SVNException e) {
+            return PreCommitValidator.getMessage(e);
+        }
+    }
+}
@@ -173,6 +173,36 @@ public class PreventReplacedFileTest extends AbstractSavanaScriptsTestCase {
         savana(Promote.class, "-m", "trunk - replaced file contents");
     }
 
+    public void testPromoteNewFileAddedAgain() throws Exception {
+        // setup a test project with a working directory and import the 'test-project' files
+        String projectName = getClass().getSimpleName().toLowerCase() + "-new";
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+
+        // create a user branch
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1");
+
+        // add a new file, delete it and add it again
+        File newFile = new File(WC1, "src/text/new.txt");
+        FileUtils.writeStringToFile(newFile, "new");
+        SVN.getWCClient().doAdd(newFile, false, false, false, SVNDepth.EMPTY, false, false);
+        SVN.getCommitClient().doCommit(
+                new File[]{WC1}, false, "user branch commit - added new file", null, null, false, false, SVNDepth.INFINITY);
+        SVN.getWCClient().doDelete(newFile, false, false);
+        SVN.getCommitClient().doCommit(
+                new File[]{WC1}, false, "user branch commit - deleted new file", null, null, false, false, SVNDepth.INFINITY);
+        FileUtils.writeStringToFile(newFile, "newer");
+        SVN.getWCClient().doAdd(newFile, false, false, false, SVNDepth.EMPTY, false, false);
+        SVN.getCommitClient().doCommit(
+                new File[]{WC1}, false, "user branch commit - re-added new file", null, null, false, false, SVNDepth.INFINITY);
+        SVN.getUpdateClient().doUpdate(WC1, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+
+        // the file doesn't exist in the source, so it's promoted as an added file
+        savana(Promote.class, "-m", "trunk - new file");
+        assertEquals("newer", FileUtils.readFileToString(newFile));
+        assertTrue(SVN.getWCClient().doInfo(newFile, SVNRevision.WORKING).getURL().toString().endsWith("/trunk/src/text/new.txt"));
+    }
+
     private void appendStringToFile(File file, String string) throws IOException {
         FileWriter out = new FileWriter(file, true);
         try {
@@ -0,0 +1,141 @@
+package org.codehaus.savana.scripts;
+
+import org.apache.commons.io.FileUtils;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.SVNStatusType;
+
+import java.io.File;
+
+/**
+ * Tests promoting with 'sav promote --remote', which commits the branch's changes to the source and deletes
+ * the branch on the server in a single changeset instead of merging in the working copy.
+ */
+public class PromoteRemoteTest extends AbstractSavanaScriptsTestCase {
+
+    private SVNURL REPO_URL = TestRepoUtil.DEFAULT_REPO;
+
+    public void testPromoteRemote() throws Exception {
+        // setup a test project with a working directory and import the 'test-project' files
+        String projectName = getClass().getSimpleName().toLowerCase();
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+
+        // create a user branch
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1");
+
+        // modify, add and delete files and commit the changes to the branch
+        File animalsFile = new File(WC1, "src/text/animals.txt");
+        File autosFile = new File(WC1, "src/text/autos.txt");
+        File newFile = new File(WC1, "src/new/new.txt");
+        FileUtils.writeStringToFile(animalsFile, "mongoose");
+        FileUtils.writeStringToFile(newFile, "new");
+        SVN.getWCClient().doAdd(newFile.getParentFile(), false, false, false, SVNDepth.INFINITY, false, false);
+        SVN.getWCClient().doDelete(autosFile, false, false);
+        SVN.getCommitClient().doCommit(
+                new File[]{WC1}, false, "user branch commit - remote promote changes", null, null, false, false, SVNDepth.INFINITY);
+
+        // promote
+        String output = savana(Promote.class, "--remote", "-m", "trunk - remote promote");
+
+        // the working copy is back in the trunk with the changes
+        assertEquals("trunk", getWorkingCopyInfo().getMetadataProperties().getBranchName());
+        assertEquals("mongoose", FileUtils.readFileToString(animalsFile));
+        assertEquals("new", FileUtils.readFileToString(newFile));
+        assertFalse(autosFile.exists());
+        assertEquals(SVNStatusType.STATUS_NORMAL, SVN.getStatusClient().doStatus(new File(WC1, ".savana"), false).getContentsStatus());
+
+        // the changes and the branch delete are the latest and only changeset
+        SVNRepository repository = SVN.createRepository(REPO_URL, false);
+        long promoteRevision = repository.getLatestRevision();
+        assertTrue(output.endsWith("Promotion Changeset:   [" + promoteRevision + "]"));
+        assertEquals(SVNNodeKind.NONE, repository.checkPath(projectName + "/branches/user/user1", promoteRevision));
+        assertEquals(SVNNodeKind.FILE, repository.checkPath(projectName + "/trunk/src/new/new.txt", promoteRevision));
+        assertEquals(SVNNodeKind.FILE, repository.checkPath(projectName + "/trunk/src/text/autos.txt", promoteRevision - 1));
+        assertEquals(SVNNodeKind.NONE, repository.checkPath(projectName + "/trunk/src/text/autos.txt", promoteRevision));
+        repository.closeSession();
+        assertEquals("No branches were found.", savana(ListUserBranches.class));
+    }
+
+    public void testPromoteRemoteWithoutPrefetch() throws Exception {
+        // setup a test project with a working directory and import the 'test-project' files
+        String projectName = getClass().getSimpleName().toLowerCase() + "-noprefetch";
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+
+        // create a user branch and commit a change to it
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1");
+        File animalsFile = new File(WC1, "src/text/animals.txt");
+        FileUtils.writeStringToFile(animalsFile, "mongoose");
+        SVN.getCommitClient().doCommit(
+                new File[]{WC1}, false, "user branch commit - animals", null, null, false, false, SVNDepth.INFINITY);
+
+        // the changes don't fit in the prefetch limit, so the commit diffs the branch itself
+        System.setProperty("savana.promote-prefetch-bytes", "1");
+        try {
+            savana(Promote.class, "--remote", "-m", "trunk - remote promote without prefetch");
+        } finally {
+            System.clearProperty("savana.promote-prefetch-bytes");
+        }
+        assertEquals("trunk", getWorkingCopyInfo().getMetadataProperties().getBranchName());
+        assertEquals("mongoose", FileUtils.readFileToString(animalsFile));
+        assertEquals("No branches were found.", savana(ListUserBranches.class));
+    }
+
+    public void testPromoteRemoteSubbranch() throws Exception {
+        // setup a test project with a working directory and import the 'test-project' files
+        String projectName = getClass().getSimpleName().toLowerCase() + "-subbranch";
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+        File WC1_src = new File(WC1, "src");
+
+        // create a user branch with a subpath of "src" and commit a change to it
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1-src", "src");
+        cd(WC1_src);
+        File animalsFile = new File(WC1_src, "text/animals.txt");
+        FileUtils.writeStringToFile(animalsFile, "mongoose");
+        SVN.getCommitClient().doCommit(
+                new File[]{WC1_src}, false, "user branch commit - subbranch change", null, null, false, false, SVNDepth.INFINITY);
+
+        // promote, which shouldn't copy the subbranch metadata file to the trunk
+        savana(Promote.class, "--remote", "-m", "trunk - remote subbranch promote");
+        cd(WC1);
+        assertEquals("trunk", getWorkingCopyInfo().getMetadataProperties().getBranchName());
+        assertEquals("mongoose", FileUtils.readFileToString(animalsFile));
+        assertFalse(new File(WC1_src, ".savana").exists());
+        assertEquals("No branches were found.", savana(ListUserBranches.class));
+    }
+
+    public void testPromoteRemoteReplacedFiles() throws Exception {
+        // setup a test project with a working directory and import the 'test-project' files
+        String projectName = getClass().getSimpleName().toLowerCase() + "-replaced";
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+
+        // create a user branch
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1");
+
+        // delete a file and check in the delete, then add it again
+        File animalsFile = new File(WC1, "src/text/animals.txt");
+        SVN.getWCClient().doDelete(animalsFile, false, false);
+        SVN.getCommitClient().doCommit(
+                new File[]{WC1}, false, "user branch commit - deleted file", null, null, false, false, SVNDepth.INFINITY);
+        FileUtils.writeStringToFile(animalsFile, "grasshopper");
+        SVN.getWCClient().doAdd(animalsFile, false, false, false, SVNDepth.EMPTY, false, false);
+        SVN.getCommitClient().doCommit(
+                new File[]{WC1}, false, "user branch commit - re-added file", null, null, false, false, SVNDepth.INFINITY);
+
+        // promote should fail without changing anything
+        try {
+            savana(Promote.class, "--remote", "-m", "trunk - replaced files");
+            assertTrue("we expected an exception to be thrown", false);
+        } catch (SavanaScriptsTestException e) {
+            // we expect this exception to be thrown, with this error message
+            assertEquals("svn: E195016: ERROR: Cannot promote branch user1 while there are replaced files:\n" +
+                         "- " + new File("src/text/animals.txt") + "\n", e.getErr());
+        }
+        assertEquals("user1", getWorkingCopyInfo().getMetadataProperties().getBranchName());
+    }
+}
@@ -0,0 +1,111 @@
+package org.codehaus.savana.scripts;
+
+import org.codehaus.savana.RepositorySessionPool;
+import org.codehaus.savana.RepositorySessions;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.SVNWCUtil;
+
+import java.io.File;
+
+/**
+ * Tests that repository sessions are returned to the process-wide pool and reused by later phases and commands.
+ */
+public class RepositorySessionPoolTest extends AbstractSavanaScriptsTestCase {
+
+    private SVNURL REPO_URL = TestRepoUtil.DEFAULT_REPO;
+
+    public void testSessionsReused() throws Exception {
+        String projectName = getClass().getSimpleName().toLowerCase();
+        TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+
+        RepositorySessionPool pool = new RepositorySessionPool(60 * 1000);
+        RepositorySessions sessions = new RepositorySessions(pool,
+                SVNWCUtil.createDefaultAuthenticationManager(), "", SVNWCUtil.createDefaultOptions(true));
+
+        // the first session is opened, used and released back to the pool
+        SVNRepository repository = sessions.createRepository(REPO_URL, false);
+        repository.getLatestRevision();
+        sessions.release(repository);
+        assertEquals(1, sessions.getSessionsOpened());
+        assertEquals(1, pool.getIdleSessionCount());
+
+        // the next session in the same repository reuses it, at the new location
+        SVNURL trunkURL = REPO_URL.appendPath(projectName + "/trunk", false);
+        assertSame(repository, sessions.createRepository(trunkURL, false));
+        assertEquals(trunkURL, repository.getLocation());
+        assertEquals(1, sessions.getSessionsReused());
+        assertEquals(0, pool.getIdleSessionCount());
+
+        // sessions that may be reused are shared, sessions that never connected aren't kept
+        SVNRepository shared = sessions.createRepository(REPO_URL, true);
+        assertSame(shared, sessions.createRepository(trunkURL, true));
+        sessions.release(sessions.createRepository(REPO_URL, false));
+        assertEquals(0, pool.getIdleSessionCount());
+        assertEquals(3, sessions.getSessionsOpened());
+
+        // disposing returns the sessions that are still borrowed
+        shared.getLatestRevision();
+        sessions.dispose();
+        assertEquals(2, pool.getIdleSessionCount());
+        pool.closeAll();
+        assertEquals(0, pool.getIdleSessionCount());
+    }
+
+    public void testSessionsMatchCredentials() throws Exception {
+        RepositorySessionPool pool = new RepositorySessionPool(60 * 1000);
+        RepositorySessions sessions1 = new RepositorySessions(pool,
+                SVNWCUtil.createDefaultAuthenticationManager(), "username=user1\n", SVNWCUtil.createDefaultOptions(true));
+        SVNRepository repository = sessions1.createRepository(REPO_URL, false);
+        repository.getLatestRevision();
+        sessions1.release(repository);
+        assertEquals(1, pool.getIdleSessionCount());
+
+        // a command with other credentials opens its own session
+        RepositorySessions sessions2 = new RepositorySessions(pool,
+                SVNWCUtil.createDefaultAuthenticationManager(), "username=user2\n", SVNWCUtil.createDefaultOptions(true));
+        SVNRepository repository2 = sessions2.createRepository(REPO_URL, false);
+        assertNotSame(repository, repository2);
+        assertEquals(1, sessions2.getSessionsOpened());
+        assertEquals(1, pool.getIdleSessionCount());
+
+        // after the authentication manager is replaced, sessions are closed instead of pooled
+        repository2.getLatestRevision();
+        sessions2.setAuthenticationManager(SVNWCUtil.createDefaultAuthenticationManager());
+        sessions2.release(repository2);
+        assertEquals(1, pool.getIdleSessionCount());
+
+        // the same credentials reuse the session
+        RepositorySessions sessions3 = new RepositorySessions(pool,
+                SVNWCUtil.createDefaultAuthenticationManager(), "username=user1\n", SVNWCUtil.createDefaultOptions(true));
+        assertSame(repository, sessions3.createRepository(REPO_URL, false));
+        sessions3.dispose();
+        pool.closeAll();
+    }
+
+    public void testSessionsExpire() throws Exception {
+        RepositorySessionPool pool = new RepositorySessionPool(0);
+        RepositorySessions sessions = new RepositorySessions(pool,
+                SVNWCUtil.createDefaultAuthenticationManager(), "", SVNWCUtil.createDefaultOptions(true));
+        SVNRepository repository = sessions.createRepository(REPO_URL, false);
+        repository.getLatestRevision();
+        sessions.release(repository);
+        assertEquals(0, pool.getIdleSessionCount());
+    }
+
+    public void testCommandsReuseSessions() throws Exception {
+        String projectName = getClass().getSimpleName().toLowerCase() + "-commands";
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1");
+
+        // the first command leaves its sessions in the pool, the second reuses them instead of opening more
+        RepositorySessionPool pool = RepositorySessionPool.getInstance();
+        pool.closeAll();
+        savana(ListUserBranches.class);
+        int idleSessions = pool.getIdleSessionCount();
+        assertTrue(idleSessions > 0);
+        savana(ListUserBranches.class);
+        assertEquals(idleSessions, pool.getIdleSessionCount());
+    }
+}
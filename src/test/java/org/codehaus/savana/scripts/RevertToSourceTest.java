@@ -0,0 +1,122 @@
+package org.codehaus.savana.scripts;
+
+import org.apache.commons.io.FileUtils;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.SVNStatusType;
+
+import java.io.File;
+
+/**
+ * Tests reverting several files in several directories back to the source with a single 'sav revert'.
+ */
+public class RevertToSourceTest extends AbstractSavanaScriptsTestCase {
+
+    private SVNURL REPO_URL = TestRepoUtil.DEFAULT_REPO;
+
+    public void testRevertMultipleTargets() throws Exception {
+        // setup a test project with a working directory and import the 'test-project' files
+        String projectName = getClass().getSimpleName().toLowerCase();
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+
+        // create a user branch
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1");
+
+        // in the branch, delete two files, change one file and add another
+        File animalsFile = new File(WC1, "src/text/animals.txt");
+        File autosFile = new File(WC1, "src/text/autos.txt");
+        File drinksFile = new File(WC1, "src/text/drinks.txt");
+        File newFile = new File(WC1, "src/text/new.txt");
+        SVN.getWCClient().doDelete(animalsFile, false, false);
+        SVN.getWCClient().doDelete(autosFile, false, false);
+        FileUtils.writeStringToFile(drinksFile, "tequila");
+        FileUtils.writeStringToFile(newFile, "new");
+        SVN.getWCClient().doAdd(newFile, false, false, false, SVNDepth.EMPTY, false, false);
+        SVN.getCommitClient().doCommit(
+                new File[]{WC1}, false, "user branch commit - changes to revert", null, null, false, false, SVNDepth.INFINITY);
+
+        // make an uncommitted change in another directory and create a file that's not under version control
+        File counterFile = new File(WC1, "counter.txt");
+        File unversionedFile = new File(WC1, "src/text/unversioned.txt");
+        FileUtils.writeStringToFile(counterFile, "local change");
+        FileUtils.writeStringToFile(unversionedFile, "unversioned");
+
+        // revert everything to the source
+        String output = savana(RevertToSource.class, animalsFile.getPath(), autosFile.getPath(), drinksFile.getPath(),
+                newFile.getPath(), unversionedFile.getPath(), counterFile.getPath());
+        assertEquals("A    " + animalsFile + "\n" +
+                     "A    " + autosFile + "\n" +
+                     "--- Merging differences between repository URLs into '" + new File("src/text/drinks.txt") + "':\n" +
+                     "U    " + new File("src/text/drinks.txt") + "\n" +
+                     "D    " + newFile + "\n" +
+                     "Skipped " + unversionedFile, output);
+
+        // the working copy matches the source
+        assertTrue(SVN.getStatusClient().doStatus(animalsFile, false).isCopied());
+        assertTrue(SVN.getStatusClient().doStatus(autosFile, false).isCopied());
+        assertFalse("tequila".equals(FileUtils.readFileToString(drinksFile)));
+        assertEquals(SVNStatusType.STATUS_DELETED, SVN.getStatusClient().doStatus(newFile, false).getNodeStatus());
+        assertEquals(SVNStatusType.STATUS_NORMAL, SVN.getStatusClient().doStatus(counterFile, false).getContentsStatus());
+    }
+
+    public void testRevertDuplicateAndNestedTargets() throws Exception {
+        // setup a test project with a working directory and import the 'test-project' files
+        String projectName = getClass().getSimpleName().toLowerCase() + "-nested";
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+
+        // create a user branch and delete a file
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1");
+        File textDir = new File(WC1, "src/text");
+        File animalsFile = new File(textDir, "animals.txt");
+        SVN.getWCClient().doDelete(animalsFile, false, false);
+        SVN.getCommitClient().doCommit(
+                new File[]{WC1}, false, "user branch commit - delete animals", null, null, false, false, SVNDepth.INFINITY);
+
+        // the same file named two ways is reverted once
+        String output = savana(RevertToSource.class, "src/text/animals.txt", "./src/text/animals.txt");
+        assertEquals("A    " + animalsFile, output);
+        SVN.getCommitClient().doCommit(
+                new File[]{WC1}, false, "user branch commit - revert animals", null, null, false, false, SVNDepth.INFINITY);
+        SVN.getUpdateClient().doUpdate(WC1, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+
+        // delete the whole directory, then revert a file along with the directory that contains it
+        SVN.getWCClient().doDelete(textDir, false, false);
+        SVN.getCommitClient().doCommit(
+                new File[]{WC1}, false, "user branch commit - delete text", null, null, false, false, SVNDepth.INFINITY);
+        output = savana(RevertToSource.class, "src/text/autos.txt", "src/text");
+        assertEquals("A    " + textDir, output);
+        assertTrue(SVN.getStatusClient().doStatus(textDir, false).isCopied());
+        assertTrue(new File(textDir, "autos.txt").exists());
+    }
+
+    public void testRevertFilesWithTheirParentDirectories() throws Exception {
+        // setup a test project with a working directory and import the 'test-project' files
+        String projectName = getClass().getSimpleName().toLowerCase() + "-parents";
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+        File autosFile = new File(WC1, "src/text/autos.txt");
+        File drinksFile = new File(WC1, "src/text/drinks.txt");
+        String autos = FileUtils.readFileToString(autosFile);
+        String drinks = FileUtils.readFileToString(drinksFile);
+
+        // in a user branch, commit changes to two files and then change them again locally
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1");
+        FileUtils.writeStringToFile(autosFile, "roadster");
+        FileUtils.writeStringToFile(drinksFile, "tequila");
+        SVN.getCommitClient().doCommit(
+                new File[]{WC1}, false, "user branch commit - changes to revert", null, null, false, false, SVNDepth.INFINITY);
+        SVN.getUpdateClient().doUpdate(WC1, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+        FileUtils.writeStringToFile(autosFile, "local roadster");
+        FileUtils.writeStringToFile(drinksFile, "local tequila");
+
+        // a file is reverted along with its grandparent directory and along with its parent directory
+        savana(RevertToSource.class, "src", "src/text/autos.txt");
+        assertEquals(autos, FileUtils.readFileToString(autosFile));
+        savana(RevertToSource.class, "src/text", "src/text/drinks.txt");
+        assertEquals(drinks, FileUtils.readFileToString(drinksFile));
+        assertFalse(SVN.getStatusClient().doStatus(drinksFile, false).isConflicted());
+    }
+}
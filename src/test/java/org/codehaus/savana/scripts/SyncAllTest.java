@@ -0,0 +1,156 @@
+package org.codehaus.savana.scripts;
+
+import org.apache.commons.io.FileUtils;
+import org.codehaus.savana.MetadataFile;
+import org.tmatesoft.svn.core.ISVNDirEntryHandler;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+/**
+ * Tests 'sav syncall', which synchronizes user branches in the repository without working copies.
+ */
+public class SyncAllTest extends AbstractSavanaScriptsTestCase {
+
+    private SVNURL REPO_URL = TestRepoUtil.DEFAULT_REPO;
+
+    public void testSyncAll() throws Exception {
+        // setup a test project with a working directory and import the 'test-project' files
+        String projectName = getClass().getSimpleName().toLowerCase();
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+        File WC2 = TestRepoUtil.createTrunkWC(REPO_URL, projectName);
+
+        // create user1 without changes, user2 with a change to autos and user3 with a change to animals
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1");
+        savana(SetBranch.class, "trunk");
+        savana(CreateUserBranch.class, "user2");
+        FileUtils.writeStringToFile(new File(WC1, "src/text/autos.txt"), "pinto");
+        SVN.getCommitClient().doCommit(new File[]{WC1}, false, "user branch commit - autos", null, null, false, false, SVNDepth.INFINITY);
+        savana(SetBranch.class, "trunk");
+        savana(CreateUserBranch.class, "user3");
+        FileUtils.writeStringToFile(new File(WC1, "src/text/animals.txt"), "grasshopper");
+        SVN.getCommitClient().doCommit(new File[]{WC1}, false, "user branch commit - animals", null, null, false, false, SVNDepth.INFINITY);
+
+        // in WC2 (trunk), change animals and add a file in a new directory
+        FileUtils.writeStringToFile(new File(WC2, "src/text/animals.txt"), "mongoose");
+        SVN.getCommitClient().doCommit(new File[]{WC2}, false, "trunk - animals", null, null, false, false, SVNDepth.INFINITY);
+        File newFile = new File(WC2, "src/new/new.txt");
+        FileUtils.writeStringToFile(newFile, "new");
+        SVN.getWCClient().doAdd(newFile.getParentFile(), false, false, false, SVNDepth.INFINITY, false, false);
+        long trunkRevision = SVN.getCommitClient().doCommit(
+                new File[]{WC2}, false, "trunk - new", null, null, false, false, SVNDepth.INFINITY).getNewRevision();
+
+        // create user4, which is up to date with the trunk
+        savana(SetBranch.class, "trunk");
+        SVN.getUpdateClient().doUpdate(WC1, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+        savana(CreateUserBranch.class, "user4");
+        long latestRevision = trunkRevision + 1;
+
+        // user1 and user2 are synchronized, user3 conflicts with the trunk and user4 is skipped
+        String output = savana(SyncAll.class, "user*");
+        String[] lines = output.split("\n");
+        assertEquals(output, 10, lines.length);
+        // the branches are committed in parallel, so their changesets can be in either order
+        assertTrue(lines[3], lines[3].matches("user1                  synchronized   2 revisions from trunk in \\[\\d+\\] *"));
+        assertTrue(lines[4], lines[4].matches("user2                  synchronized   2 revisions from trunk in \\[\\d+\\] *"));
+        assertEquals("user3                  conflicted     1 conflicting paths with trunk", lines[5].trim());
+        assertEquals("    C src/text/animals.txt", lines[6]);
+        assertEquals("user4                  up to date", lines[7].trim());
+        assertTrue(lines[9], lines[9].startsWith(
+                "Synchronized 2 of 4 branches (1 up to date, 1 conflicted, 0 failed), merging 4 revisions in "));
+
+        // the synchronized branches have the trunk changes along with their own and a new last merge revision
+        String user2Path = projectName + "/branches/user/user2";
+        assertEquals("mongoose", getFile(user2Path + "/src/text/animals.txt", null));
+        assertEquals("new", getFile(user2Path + "/src/new/new.txt", null));
+        assertEquals("pinto", getFile(user2Path + "/src/text/autos.txt", null));
+        SVNProperties metadataProps = new SVNProperties();
+        getFile(user2Path + "/.savana", metadataProps);
+        assertEquals(Long.toString(latestRevision), metadataProps.getStringValue(MetadataFile.PROP_LAST_MERGE_REVISION));
+        assertEquals("mongoose", getFile(projectName + "/branches/user/user1/src/text/animals.txt", null));
+
+        // the conflicted branch is unchanged
+        String user3Path = projectName + "/branches/user/user3";
+        assertEquals("grasshopper", getFile(user3Path + "/src/text/animals.txt", null));
+        metadataProps = new SVNProperties();
+        getFile(user3Path + "/.savana", metadataProps);
+        assertTrue(Long.parseLong(metadataProps.getStringValue(MetadataFile.PROP_LAST_MERGE_REVISION)) < trunkRevision);
+
+        // a working copy of a synchronized branch has nothing left to merge
+        savana(SetBranch.class, "user2");
+        assertEquals(latestRevision, getWorkingCopyInfo().getMetadataProperties().getLastMergeRevision().getNumber());
+        assertEquals("Branch is up to date.", savana(Synchronize.class));
+        assertEquals("pinto", FileUtils.readFileToString(new File(WC1, "src/text/autos.txt")));
+
+        // running it again finds everything up to date except the conflicted branch
+        lines = savana(SyncAll.class).split("\n");
+        assertTrue(lines[lines.length - 1], lines[lines.length - 1].startsWith(
+                "Synchronized 0 of 4 branches (3 up to date, 1 conflicted, 0 failed), merging 0 revisions in "));
+    }
+
+    public void testSyncAllDirectoryProperties() throws Exception {
+        // setup a test project with a working directory and import the 'test-project' files
+        String projectName = getClass().getSimpleName().toLowerCase() + "-dirprops";
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+        File WC2 = TestRepoUtil.createTrunkWC(REPO_URL, projectName);
+
+        // user1 changes svn:ignore on a directory, user2 changes another property on the same directory
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1");
+        setDirProperty(WC1, "svn:ignore", "*.log", "user branch commit - ignore logs");
+        savana(SetBranch.class, "trunk");
+        savana(CreateUserBranch.class, "user2");
+        setDirProperty(WC1, "owner", "user2", "user branch commit - owner");
+
+        // in WC2 (trunk), change svn:ignore on the same directory
+        setDirProperty(WC2, "svn:ignore", "*.tmp", "trunk - ignore temporary files");
+
+        // user1 conflicts with the trunk, user2 is synchronized
+        String output = savana(SyncAll.class, "user*");
+        String[] lines = output.split("\n");
+        assertEquals("user1                  conflicted     1 conflicting paths with trunk", lines[3].trim());
+        assertEquals("    C src/text", lines[4]);
+        assertTrue(lines[5], lines[5].matches("user2                  synchronized   1 revisions from trunk in \\[\\d+\\] *"));
+
+        // the conflicted branch keeps its value, the synchronized branch has both changes
+        assertEquals("*.log\n", getDirProperty(projectName + "/branches/user/user1/src/text", "svn:ignore"));
+        assertEquals("*.tmp\n", getDirProperty(projectName + "/branches/user/user2/src/text", "svn:ignore"));
+        assertEquals("user2", getDirProperty(projectName + "/branches/user/user2/src/text", "owner"));
+    }
+
+    private void setDirProperty(File wc, String name, String value, String commitMessage) throws Exception {
+        SVN.getWCClient().doSetProperty(new File(wc, "src/text"), name, SVNPropertyValue.create(value),
+                false, SVNDepth.EMPTY, null, null);
+        SVN.getCommitClient().doCommit(new File[]{wc}, false, commitMessage, null, null, false, false, SVNDepth.INFINITY);
+        SVN.getUpdateClient().doUpdate(wc, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+    }
+
+    private String getDirProperty(String path, String name) throws Exception {
+        SVNRepository repository = SVN.createRepository(REPO_URL, false);
+        try {
+            SVNProperties properties = new SVNProperties();
+            repository.getDir(path, -1, properties, (ISVNDirEntryHandler) null);
+            return properties.getStringValue(name);
+        } finally {
+            repository.closeSession();
+        }
+    }
+
+    private String getFile(String path, SVNProperties properties) throws Exception {
+        SVNRepository repository = SVN.createRepository(REPO_URL, false);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            repository.getFile(path, -1, properties, out);
+            return out.toString("UTF-8");
+        } finally {
+            repository.closeSession();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.codehaus.savana.scripts;
+
+import org.apache.commons.io.FileUtils;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.wc.SVNConflictChoice;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+
+import java.io.File;
+
+/**
+ * Tests that sync merges only the source revisions that changed the source, in chunks that record
+ * the last merge revision so an interrupted sync can be resumed.
+ */
+public class SynchronizeChunksTest extends AbstractSavanaScriptsTestCase {
+
+    private SVNURL REPO_URL = TestRepoUtil.DEFAULT_REPO;
+
+    public void testSynchronizeInChunks() throws Exception {
+        // setup a test project with a working directory and import the 'test-project' files
+        String projectName = getClass().getSimpleName().toLowerCase();
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+        File WC2 = TestRepoUtil.createTrunkWC(REPO_URL, projectName);
+
+        // in WC1, create a user branch and make a change that conflicts with the trunk
+        cd(WC1);
+        savana(CreateUserBranch.class, "user1");
+        File animalsFile = new File(WC1, "src/text/animals.txt");
+        FileUtils.writeStringToFile(animalsFile, "grasshopper");
+
+        // in WC2 (trunk), commit three changes, with a change to the user branch in between that sync skips
+        FileUtils.writeStringToFile(new File(WC2, "src/text/animals.txt"), "mongoose");
+        SVN.getCommitClient().doCommit(new File[]{WC2}, false, "trunk - animals", null, null, false, false, SVNDepth.INFINITY);
+        File countersFile = TestRepoUtil.touchCounterFile(WC1);
+        SVN.getCommitClient().doCommit(new File[]{countersFile}, false, "user branch commit", null, null, false, false, SVNDepth.INFINITY);
+        FileUtils.writeStringToFile(new File(WC2, "src/text/autos.txt"), "pinto");
+        long autosRevision = SVN.getCommitClient().doCommit(new File[]{WC2}, false, "trunk - autos", null, null, false, false, SVNDepth.INFINITY).getNewRevision();
+        FileUtils.writeStringToFile(new File(WC2, "src/text/drinks.txt"), "tequila");
+        long latestRevision = SVN.getCommitClient().doCommit(new File[]{WC2}, false, "trunk - drinks", null, null, false, false, SVNDepth.INFINITY).getNewRevision();
+        SVN.getUpdateClient().doUpdate(WC1, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+
+        System.setProperty("savana.sync-chunk-size", "2");
+        try {
+            // the branch creation and the user branch commit are skipped.  the first chunk conflicts, so sync stops after it
+            String output = savana(Synchronize.class, "--non-interactive");
+            assertTrue(output, output.startsWith("Merging 3 revisions from trunk in 2 chunks, skipping 2 revisions that didn't change it\n"));
+            assertTrue(output, output.endsWith("WARNING: Conflicts were found merging through revision " + autosRevision + ".\n" +
+                    "Resolve the conflicts and run 'sav sync' again to merge the remaining revisions."));
+            assertEquals(autosRevision, getLastMergeRevision());
+            assertEquals("pinto", FileUtils.readFileToString(new File(WC1, "src/text/autos.txt")));
+            assertFalse("tequila".equals(FileUtils.readFileToString(new File(WC1, "src/text/drinks.txt"))));
+
+            // resolve the conflict and sync again to pick up where it left off
+            SVN.getWCClient().doResolve(animalsFile, SVNDepth.EMPTY, SVNConflictChoice.MINE_FULL);
+            savana(Synchronize.class, "--non-interactive");
+            assertEquals(latestRevision, getLastMergeRevision());
+            assertEquals("tequila", FileUtils.readFileToString(new File(WC1, "src/text/drinks.txt")));
+            assertEquals("grasshopper", FileUtils.readFileToString(animalsFile));
+        } finally {
+            System.clearProperty("savana.sync-chunk-size");
+        }
+    }
+
+    private long getLastMergeRevision() throws Exception {
+        return getWorkingCopyInfo().getMetadataProperties().getLastMergeRevision().getNumber();
+    }
+}
@@ -0,0 +1,380 @@
+package org.codehaus.savana.scripts;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.codehaus.savana.BranchType;
+import org.codehaus.savana.MetadataFile;
+import org.codehaus.savana.SVNEditorHelper;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Generates large local repositories for scale tests and benchmarks.  Each project has a trunk with a synthetic
+ * tree of text and binary files under "src", a history of trunk commits, release branches, user branches and
+ * user subbranches of "src", all with the same metadata files Savana would create.
+ * <p/>
+ * Content is written directly through the commit editor in batches of many files or branches per commit, and the
+ * finished repository is cached on disk by a hash of its parameters so later runs reuse it.  Generated repositories
+ * are shared, so tests that modify them should generate their own fixture.  Commit hooks are not installed.
+ */
+public class TestRepoGenerator {
+    private static final Logger _sLog = Logger.getLogger(TestRepoGenerator.class.getName());
+
+    /** Change this when the generated content changes so that old cached repositories aren't reused. */
+    private static final int GENERATOR_VERSION = 1;
+
+    /** Directory for cached repositories, override with '-Dsavana.fixture-cache=dir'. */
+    public static final File CACHE_DIRECTORY = new File(System.getProperty("savana.fixture-cache",
+            new File(TestDirUtil.TESTDATA_DIRECTORY, "fixtures").getPath())).getAbsoluteFile();
+
+    private static final String COMPLETE_MARKER = "savana-fixture-complete";
+
+    private static final String METADATA_FILE_CONTENTS =
+            "DO NOT MODIFY THIS FILE\nThis file is used by Savana (sav) to store metadata about branches\n";
+
+    private static final int FILES_PER_DIR = 100;
+    private static final int BINARY_FILE_SIZE = 4096;
+
+    private int _projects = 1;
+    private int _userBranches;
+    private int _releaseBranches;
+    private int _subbranches;
+    private int _filesPerTree = 100;
+    private int _binaryFiles;
+    private int _historyDepth;
+    private int _batchSize = 10000;
+
+    public TestRepoGenerator setProjects(int projects) {
+        _projects = projects;
+        return this;
+    }
+
+    public TestRepoGenerator setUserBranches(int userBranches) {
+        _userBranches = userBranches;
+        return this;
+    }
+
+    public TestRepoGenerator setReleaseBranches(int releaseBranches) {
+        _releaseBranches = releaseBranches;
+        return this;
+    }
+
+    /** The number of user branches of the "src" subpath of the trunk, per project. */
+    public TestRepoGenerator setSubbranches(int subbranches) {
+        _subbranches = subbranches;
+        return this;
+    }
+
+    /** The number of text files in the trunk of each project. */
+    public TestRepoGenerator setFilesPerTree(int filesPerTree) {
+        _filesPerTree = filesPerTree;
+        return this;
+    }
+
+    /** The number of binary files in the trunk of each project, in addition to the text files. */
+    public TestRepoGenerator setBinaryFiles(int binaryFiles) {
+        _binaryFiles = binaryFiles;
+        return this;
+    }
+
+    /** The number of commits to the trunk of each project after the files are added and before branches are created. */
+    public TestRepoGenerator setHistoryDepth(int historyDepth) {
+        _historyDepth = historyDepth;
+        return this;
+    }
+
+    /** The approximate number of files or branches written per commit. */
+    public TestRepoGenerator setBatchSize(int batchSize) {
+        _batchSize = Math.max(1, batchSize);
+        return this;
+    }
+
+    public static String getProjectName(int index) {
+        return "project" + index;
+    }
+
+    public static String getUserBranchName(int index) {
+        return "user-" + StringUtils.leftPad(Integer.toString(index), 5, '0');
+    }
+
+    public static String getReleaseBranchName(int index) {
+        return "release-" + StringUtils.leftPad(Integer.toString(index), 5, '0');
+    }
+
+    public static String getSubbranchName(int index) {
+        return "sub-" + StringUtils.leftPad(Integer.toString(index), 5, '0');
+    }
+
+    /** Returns the path of a text file, relative to the trunk or a branch. */
+    public static String getFilePath(int index) {
+        return "src/dir" + (index / FILES_PER_DIR) + "/file" + index + ".txt";
+    }
+
+    /** Returns the path of a binary file, relative to the trunk or a branch. */
+    public static String getBinaryFilePath(int index) {
+        return "src/bin/file" + index + ".bin";
+    }
+
+    /** Returns a string that identifies the generated content, used to name the cached repository. */
+    public String getFixtureKey() {
+        return "v" + GENERATOR_VERSION + ",projects=" + _projects + ",user=" + _userBranches +
+                ",release=" + _releaseBranches + ",sub=" + _subbranches + ",files=" + _filesPerTree +
+                ",binary=" + _binaryFiles + ",history=" + _historyDepth + ",repoPre14=" + TestSvnUtil.REPO_PRE14 +
+                ",repoPre15=" + TestSvnUtil.REPO_PRE15 + ",repoPre16=" + TestSvnUtil.REPO_PRE16;
+    }
+
+    /**
+     * Returns the URL of a repository with the configured content, generating it unless a complete one is
+     * already cached.
+     */
+    public SVNURL generate() throws SVNException, IOException {
+        FSRepositoryFactory.setup();
+
+        File repoDir = new File(CACHE_DIRECTORY, "savana-fixture-" + md5(getFixtureKey()));
+        File marker = new File(repoDir, COMPLETE_MARKER);
+        if (marker.exists()) {
+            _sLog.info("using cached repository " + repoDir + " for " + getFixtureKey());
+            return SVNURL.fromFile(repoDir);
+        }
+
+        //Throw away any partially generated repository
+        FileUtils.deleteDirectory(repoDir);
+
+        _sLog.info("generating repository " + repoDir + " for " + getFixtureKey());
+        long start = System.currentTimeMillis();
+        SVNURL repoUrl = TestRepoUtil.SVN.getAdminClient().doCreateRepository(repoDir, null, false, true,
+                TestSvnUtil.REPO_PRE14, TestSvnUtil.REPO_PRE15, TestSvnUtil.REPO_PRE16);
+        SVNRepository repository = TestRepoUtil.SVN.createRepository(repoUrl, false);
+        try {
+            String policies = FileUtils.readFileToString(TestDirUtil.POLICIES_FILE, "ISO-8859-1");
+            for (int i = 0; i < _projects; i++) {
+                generateProject(repository, getProjectName(i), policies);
+            }
+        } finally {
+            repository.closeSession();
+        }
+        FileUtils.writeStringToFile(marker, getFixtureKey());
+        _sLog.info("generated repository in " + (System.currentTimeMillis() - start) + " ms");
+
+        return repoUrl;
+    }
+
+    private void generateProject(SVNRepository repository, String projectName, String policies) throws SVNException {
+        String trunkPath = SVNPathUtil.append(projectName, BranchType.TRUNK.getDefaultPath());
+        String releaseBranchesPath = SVNPathUtil.append(projectName, BranchType.RELEASE_BRANCH.getDefaultPath());
+        String userBranchesPath = SVNPathUtil.append(projectName, BranchType.USER_BRANCH.getDefaultPath());
+        String trunkMetadataFilePath = SVNPathUtil.append(trunkPath, MetadataFile.METADATA_FILE_NAME);
+
+        //Create the project directories and the trunk metadata file, the way 'sav createmetadatafile' would
+        Batch batch = new Batch(repository, "branch admin - generate project " + projectName);
+        ISVNEditor editor = batch.getEditor();
+        for (String path : new String[]{projectName, trunkPath, releaseBranchesPath, userBranchesPath}) {
+            batch.openDir(SVNPathUtil.removeTail(path));
+            editor.addDir(path, null, -1);
+            batch.addOpenedDir(path);
+        }
+        editor.addDir(SVNPathUtil.append(trunkPath, "src"), null, -1);
+        batch.addOpenedDir(SVNPathUtil.append(trunkPath, "src"));
+        editor.addFile(trunkMetadataFilePath, null, -1);
+        editor.changeFileProperty(trunkMetadataFilePath, MetadataFile.PROP_PROJECT_NAME, SVNPropertyValue.create(projectName));
+        editor.changeFileProperty(trunkMetadataFilePath, MetadataFile.PROP_PROJECT_ROOT, SVNPropertyValue.create(projectName));
+        editor.changeFileProperty(trunkMetadataFilePath, MetadataFile.PROP_BRANCH_TYPE, SVNPropertyValue.create(BranchType.TRUNK.getKeyword()));
+        editor.changeFileProperty(trunkMetadataFilePath, MetadataFile.PROP_BRANCH_PATH, SVNPropertyValue.create(trunkPath));
+        editor.changeFileProperty(trunkMetadataFilePath, MetadataFile.PROP_TRUNK_PATH, SVNPropertyValue.create(BranchType.TRUNK.getDefaultPath()));
+        editor.changeFileProperty(trunkMetadataFilePath, MetadataFile.PROP_RELEASE_BRANCHES_PATH, SVNPropertyValue.create(BranchType.RELEASE_BRANCH.getDefaultPath()));
+        editor.changeFileProperty(trunkMetadataFilePath, MetadataFile.PROP_USER_BRANCHES_PATH, SVNPropertyValue.create(BranchType.USER_BRANCH.getDefaultPath()));
+        editor.changeFileProperty(trunkMetadataFilePath, MetadataFile.PROP_SAVANA_POLICIES, SVNPropertyValue.create(policies));
+        sendContents(editor, trunkMetadataFilePath, METADATA_FILE_CONTENTS.getBytes());
+        batch.commit();
+
+        //Add the text files, a directory at a time
+        batch = new Batch(repository, "trunk - generate files");
+        for (int i = 0; i < _filesPerTree; i++) {
+            String filePath = SVNPathUtil.append(trunkPath, getFilePath(i));
+            if (i % FILES_PER_DIR == 0) {
+                batch.openDir(SVNPathUtil.append(trunkPath, "src"));
+                batch.getEditor().addDir(SVNPathUtil.removeTail(filePath), null, -1);
+            }
+            batch.getEditor().addFile(filePath, null, -1);
+            sendContents(batch.getEditor(), filePath, getTextContents(projectName, i, 0));
+            if (i % FILES_PER_DIR == FILES_PER_DIR - 1 || i == _filesPerTree - 1) {
+                batch.getEditor().closeDir();
+                batch.counted(Math.min(FILES_PER_DIR, i % FILES_PER_DIR + 1));
+            }
+        }
+        batch.commit();
+
+        //Add the binary files
+        if (_binaryFiles > 0) {
+            batch = new Batch(repository, "trunk - generate binary files");
+            String binaryDirPath = SVNPathUtil.removeTail(SVNPathUtil.append(trunkPath, getBinaryFilePath(0)));
+            batch.openDir(SVNPathUtil.removeTail(binaryDirPath));
+            batch.getEditor().addDir(binaryDirPath, null, -1);
+            batch.addOpenedDir(binaryDirPath);
+            Random random = new Random(projectName.hashCode());
+            for (int i = 0; i < _binaryFiles; i++) {
+                String filePath = SVNPathUtil.append(trunkPath, getBinaryFilePath(i));
+                byte[] contents = new byte[BINARY_FILE_SIZE];
+                random.nextBytes(contents);
+                batch.getEditor().addFile(filePath, null, -1);
+                batch.getEditor().changeFileProperty(filePath, SVNProperty.MIME_TYPE, SVNPropertyValue.create("application/octet-stream"));
+                sendContents(batch.getEditor(), filePath, contents);
+            }
+            batch.commit();
+        }
+
+        //Build up history in the trunk, one file per commit
+        for (int revision = 1; revision <= _historyDepth && _filesPerTree > 0; revision++) {
+            int fileIndex = (revision - 1) % _filesPerTree;
+            String filePath = SVNPathUtil.append(trunkPath, getFilePath(fileIndex));
+            batch = new Batch(repository, "trunk - generate history " + revision);
+            batch.openFile(filePath);
+            sendContents(batch.getEditor(), filePath, getTextContents(projectName, fileIndex, revision));
+            batch.commit();
+        }
+
+        //Create the branches
+        long sourceRevision = repository.getLatestRevision();
+        batch = new Batch(repository, "branch admin - generate release branches");
+        for (int i = 0; i < _releaseBranches; i++) {
+            addBranch(batch, projectName, trunkPath, "", SVNPathUtil.append(releaseBranchesPath, getReleaseBranchName(i)),
+                    BranchType.RELEASE_BRANCH, sourceRevision);
+        }
+        batch.commit();
+        batch = new Batch(repository, "branch admin - generate user branches");
+        for (int i = 0; i < _userBranches; i++) {
+            addBranch(batch, projectName, trunkPath, "", SVNPathUtil.append(userBranchesPath, getUserBranchName(i)),
+                    BranchType.USER_BRANCH, sourceRevision);
+        }
+        for (int i = 0; i < _subbranches; i++) {
+            addBranch(batch, projectName, trunkPath, "src", SVNPathUtil.append(userBranchesPath, getSubbranchName(i)),
+                    BranchType.USER_BRANCH, sourceRevision);
+        }
+        batch.commit();
+    }
+
+    /** Copies the source to a new branch and updates its metadata file, the way 'sav cb --remote' would. */
+    private void addBranch(Batch batch, String projectName, String sourceRoot, String sourceSubpath,
+                           String branchPath, BranchType branchType, long sourceRevision) throws SVNException {
+        String sourcePath = SVNPathUtil.append(sourceRoot, sourceSubpath);
+        String branchMetadataFilePath = SVNPathUtil.append(branchPath, MetadataFile.METADATA_FILE_NAME);
+
+        ISVNEditor editor = batch.getEditor();
+        batch.openDir(SVNPathUtil.removeTail(branchPath));
+        editor.addDir(branchPath, "/" + sourcePath, sourceRevision);
+        if (sourceSubpath.length() > 0) {
+            editor.addFile(branchMetadataFilePath, "/" + SVNPathUtil.append(sourceRoot, MetadataFile.METADATA_FILE_NAME), sourceRevision);
+        } else {
+            editor.openFile(branchMetadataFilePath, -1);
+        }
+        editor.changeFileProperty(branchMetadataFilePath, MetadataFile.PROP_PROJECT_NAME, SVNPropertyValue.create(projectName));
+        editor.changeFileProperty(branchMetadataFilePath, MetadataFile.PROP_BRANCH_PATH, SVNPropertyValue.create(branchPath));
+        editor.changeFileProperty(branchMetadataFilePath, MetadataFile.PROP_BRANCH_TYPE, SVNPropertyValue.create(branchType.getKeyword()));
+        editor.changeFileProperty(branchMetadataFilePath, MetadataFile.PROP_SOURCE_ROOT, SVNPropertyValue.create(sourceRoot));
+        editor.changeFileProperty(branchMetadataFilePath, MetadataFile.PROP_SOURCE_SUBPATH, sourceSubpath.length() > 0 ? SVNPropertyValue.create(sourceSubpath) : null);
+        editor.changeFileProperty(branchMetadataFilePath, MetadataFile.PROP_BRANCH_POINT_REVISION, SVNPropertyValue.create(Long.toString(sourceRevision)));
+        editor.changeFileProperty(branchMetadataFilePath, MetadataFile.PROP_LAST_MERGE_REVISION, SVNPropertyValue.create(Long.toString(sourceRevision)));
+        editor.closeFile(branchMetadataFilePath, null);
+        editor.closeDir();
+        batch.counted(1);
+    }
+
+    private byte[] getTextContents(String projectName, int fileIndex, int revision) {
+        StringBuilder buf = new StringBuilder();
+        for (int line = 0; line < 10; line++) {
+            buf.append(projectName).append(" file ").append(fileIndex).append(" line ").append(line)
+                    .append(" revision ").append(line == fileIndex % 10 ? revision : 0).append('\n');
+        }
+        return buf.toString().getBytes();
+    }
+
+    private static void sendContents(ISVNEditor editor, String filePath, byte[] contents) throws SVNException {
+        editor.applyTextDelta(filePath, null);
+        String checksum = new SVNDeltaGenerator().sendDelta(filePath, new ByteArrayInputStream(contents), editor, true);
+        editor.closeFile(filePath, checksum);
+    }
+
+    private static String md5(String string) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(string.getBytes("UTF-8"));
+            StringBuilder buf = new StringBuilder();
+            for (byte b : digest) {
+                buf.append(String.format("%02x", b & 0xff));
+            }
+            return buf.toString();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A commit editor that is committed and replaced once enough changes have been made through it.  Directories
+     * opened through the batch stay open until the commit.
+     */
+    private class Batch {
+        private final SVNRepository _repository;
+        private final String _logMessage;
+        private ISVNEditor _editor;
+        private SVNEditorHelper _editorHelper;
+        private int _count;
+
+        public Batch(SVNRepository repository, String logMessage) {
+            _repository = repository;
+            _logMessage = logMessage;
+        }
+
+        public ISVNEditor getEditor() throws SVNException {
+            if (_editor == null) {
+                _editor = _repository.getCommitEditor(_logMessage, null);
+                _editor.openRoot(-1);
+                _editorHelper = new SVNEditorHelper(_editor);
+            }
+            return _editor;
+        }
+
+        public void openDir(String dirPath) throws SVNException {
+            getEditor();
+            _editorHelper.openDir(dirPath);
+        }
+
+        public void addOpenedDir(String dirPath) {
+            _editorHelper.addOpenedDir(dirPath);
+        }
+
+        /** Opens a file that's closed by the caller. */
+        public void openFile(String filePath) throws SVNException {
+            openDir(SVNPathUtil.removeTail(filePath));
+            _editor.openFile(filePath, -1);
+        }
+
+        public void counted(int count) throws SVNException {
+            _count += count;
+            if (_count >= _batchSize) {
+                commit();
+            }
+        }
+
+        public void commit() throws SVNException {
+            if (_editor != null) {
+                _editorHelper.closeAll();
+                _editor = null;
+                _editorHelper = null;
+                _count = 0;
+            }
+        }
+    }
+}
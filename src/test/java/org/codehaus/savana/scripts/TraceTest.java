@@ -0,0 +1,106 @@
+package org.codehaus.savana.scripts;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.codehaus.savana.Tracer;
+import org.codehaus.savana.TracingDebugLog;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.util.SVNLogType;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+
+/**
+ * Tests tracing the phases of a command with '-Dsavana.trace=<file>'.
+ */
+public class TraceTest extends AbstractSavanaScriptsTestCase {
+
+    private SVNURL REPO_URL = TestRepoUtil.DEFAULT_REPO;
+
+    public void testTraceCommand() throws Exception {
+        // setup a test project with a working directory
+        String projectName = getClass().getSimpleName().toLowerCase();
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, null);
+        cd(WC1);
+
+        File traceFile = File.createTempFile("savana-trace", ".json");
+        traceFile.deleteOnExit();
+        System.setProperty("savana.trace", traceFile.getPath());
+        try {
+            // the JSON trace is a tree rooted at the command with the phases nested underneath
+            savana(ListUserBranches.class);
+            String json = FileUtils.readFileToString(traceFile, "UTF-8");
+            assertTrue(json, json.startsWith("{\"name\": \"listuserbranches\", \"startMicros\": "));
+            assertTrue(json, json.contains("\n  {\"name\": \"List branches\", "));
+            assertTrue(json, json.contains("\"roundTrips\": "));
+
+            // the Chrome trace has one complete event per phase
+            System.setProperty("savana.trace.format", "chrome");
+            savana(ListUserBranches.class);
+            String chrome = FileUtils.readFileToString(traceFile, "UTF-8");
+            assertTrue(chrome, chrome.startsWith("{\"traceEvents\": [\n  {\"name\": \"listuserbranches\", \"cat\": \"savana\", \"ph\": \"X\", "));
+            assertTrue(chrome, chrome.contains("{\"name\": \"Print branch info\", "));
+        } finally {
+            System.clearProperty("savana.trace");
+            System.clearProperty("savana.trace.format");
+        }
+    }
+
+    public void testTracerSpans() throws Exception {
+        Tracer tracer = new Tracer("root");
+        tracer.start("outer");
+        tracer.start("inner");
+        tracer.start("unclosed");
+
+        // network traffic through the debug log is counted in all the open spans
+        OutputStream out = TracingDebugLog.install().createLogStream(SVNLogType.NETWORK, new NullOutputStream());
+        InputStream in = TracingDebugLog.install().createLogStream(SVNLogType.NETWORK, new ByteArrayInputStream(new byte[20]));
+        out.write(new byte[10]);
+        out.write(new byte[5]);
+        in.read(new byte[8]);
+        out.write(1);
+        in.read(new byte[12]);
+
+        // closing "inner" closes "unclosed" too, ending a span that isn't open does nothing
+        tracer.end("inner");
+        tracer.end("missing");
+        tracer.end("outer");
+        tracer.finish();
+
+        Tracer.Span outer = tracer.getRoot().getChildren().get(0);
+        Tracer.Span inner = outer.getChildren().get(0);
+        Tracer.Span unclosed = inner.getChildren().get(0);
+        assertEquals("unclosed", unclosed.getName());
+        for (Tracer.Span span : new Tracer.Span[]{tracer.getRoot(), outer, inner, unclosed}) {
+            assertTrue(span.isClosed());
+            assertEquals(2, span.getRoundTrips());
+            assertEquals(16, span.getBytesSent());
+            assertEquals(20, span.getBytesReceived());
+        }
+    }
+
+    public void testSpansFromOtherThreads() throws Exception {
+        Tracer tracer = new Tracer("root");
+        tracer.start("outer");
+        long start = System.nanoTime();
+        tracer.add("phase", "savana-promote-1", start, start + 5000000);
+        tracer.end("outer");
+        tracer.finish();
+
+        // the span is added inside the open span with its wall time only
+        Tracer.Span phase = tracer.getRoot().getChildren().get(0).getChildren().get(0);
+        assertEquals("phase", phase.getName());
+        assertEquals("savana-promote-1", phase.getThread());
+        assertTrue(phase.isClosed());
+        assertEquals(5000, phase.getWallMicros());
+        assertEquals(0, phase.getRoundTrips());
+
+        // it gets its own row in the chrome trace
+        StringWriter chrome = new StringWriter();
+        tracer.writeChromeTrace(chrome);
+        assertTrue(chrome.toString(), chrome.toString().contains("{\"name\": \"phase\", \"cat\": \"savana\", \"ph\": \"X\", \"pid\": 1, \"tid\": 2, "));
+    }
+}
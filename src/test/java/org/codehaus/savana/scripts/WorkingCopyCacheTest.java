@@ -0,0 +1,67 @@
+package org.codehaus.savana.scripts;
+
+import org.codehaus.savana.MetadataFile;
+import org.codehaus.savana.WorkingCopyCache;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+
+import java.io.File;
+
+/**
+ * Tests that workspace lookups are cached for directories that share a workspace root, and that the cached
+ * entries are read again once the working copy changes.
+ */
+public class WorkingCopyCacheTest extends AbstractSavanaScriptsTestCase {
+
+    private SVNURL REPO_URL = TestRepoUtil.DEFAULT_REPO;
+
+    public void testWorkspacesAreCachedUntilTheWorkingCopyChanges() throws Exception {
+        // setup a test project with a working directory and import the 'test-project' files
+        String projectName = getClass().getSimpleName().toLowerCase();
+        File WC1 = TestRepoUtil.setupProjectWithWC(REPO_URL, projectName, true, true, "test-project");
+        File srcDir = new File(WC1, "src");
+        File textDir = new File(WC1, "src/text");
+        File metadataFile = new File(WC1, MetadataFile.METADATA_FILE_NAME);
+
+        // files that just changed may change again without a new modification time, so they aren't cached
+        WorkingCopyCache cache = new WorkingCopyCache(WorkingCopyCache.DEFAULT_MAX_ENTRIES);
+        cache.getWorkspace(SVN, textDir);
+        cache.getWorkspace(SVN, textDir);
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        // once the files are old enough, directories with the same workspace root share one entry
+        ageWorkingCopy(WC1, srcDir, textDir, metadataFile);
+        WorkingCopyCache.Workspace workspace = cache.getWorkspace(SVN, textDir);
+        assertEquals(WC1.getAbsoluteFile(), workspace.getRootDir());
+        assertEquals("trunk", workspace.getMetadataProperties().getBranchName());
+        assertEquals(REPO_URL.appendPath(projectName + "/trunk", false), workspace.getURL());
+        assertSame(workspace, cache.getWorkspace(SVN, srcDir));
+        assertSame(workspace, cache.getWorkspace(SVN, WC1));
+        assertEquals(2, cache.getHits());
+        assertEquals(3, cache.getMisses());
+
+        // changing a property of the metadata file changes the working copy database, so the workspace is read again
+        SVN.getWCClient().doSetProperty(metadataFile, "custom", SVNPropertyValue.create("changed"),
+                false, SVNDepth.EMPTY, null, null);
+        WorkingCopyCache.Workspace changed = cache.getWorkspace(SVN, srcDir);
+        assertNotSame(workspace, changed);
+        assertEquals("changed", SVNPropertyValue.getPropertyAsString(
+                changed.getMetadataProperties().getProperties().getSVNPropertyValue("custom")));
+        assertEquals(2, cache.getHits());
+    }
+
+    private void ageWorkingCopy(File... files) {
+        long time = System.currentTimeMillis() - 10 * WorkingCopyCache.RACY_MILLIS;
+        for (File file : files) {
+            assertTrue(file.setLastModified(time));
+        }
+        for (String adminFile : new String[]{".svn/wc.db", ".svn/entries"}) {
+            File file = new File(files[0], adminFile);
+            if (file.exists()) {
+                assertTrue(file.setLastModified(time));
+            }
+        }
+    }
+}
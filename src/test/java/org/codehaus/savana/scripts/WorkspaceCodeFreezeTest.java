@@ -3,7 +3,6 @@ package org.codehaus.savana.scripts;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.codehaus.savana.MetadataFile;
-import org.codehaus.savana.WorkingCopyInfo;
 import org.tmatesoft.svn.core.SVNDepth;
 import org.tmatesoft.svn.core.SVNPropertyValue;
 import org.tmatesoft.svn.core.SVNURL;
@@ -31,11 +30,11 @@ public class WorkspaceCodeFreezeTest extends AbstractSavanaScriptsTestCase {
         SVN.getUpdateClient().doUpdate(WC1, SVNRevision.HEAD, SVNDepth.FILES, false, false);
 
         // check that we are starting in the trunk
-        assertEquals("trunk", new WorkingCopyInfo(SVN).getMetadataProperties().getBranchName());
+        assertEquals("trunk", getWorkingCopyInfo().getMetadataProperties().getBranchName());
 
         // set the code freeze property
         log.info("setting code freeze property to true");
-        SVN.getWCClient().doSetProperty(new WorkingCopyInfo(SVN).getMetadataFile(),
+        SVN.getWCClient().doSetProperty(getWorkingCopyInfo().getMetadataFile(),
                 MetadataFile.PROP_CODE_FROZEN, SVNPropertyValue.create("true"), false, SVNDepth.EMPTY, null, null);
         SVN.getCommitClient().doCommit(new File[]{WC1}, false, "branch admin - setting code freeze", null, null, false, false, SVNDepth.INFINITY);
 
@@ -59,7 +58,7 @@ public class WorkspaceCodeFreezeTest extends AbstractSavanaScriptsTestCase {
                 new File[]{WC1}, false, "user branch commit - changed monkey to mongoose", null, null, false, false, SVNDepth.INFINITY);
 
         // check that we're still in the "workspace" branch
-        assertEquals("workspace", new WorkingCopyInfo(SVN).getMetadataProperties().getBranchName());
+        assertEquals("workspace", getWorkingCopyInfo().getMetadataProperties().getBranchName());
 
         // sync from trunk (should be a no-op since there aren't any changes to sync)
         log.info("syncing from trunk");
@@ -84,7 +83,7 @@ public class WorkspaceCodeFreezeTest extends AbstractSavanaScriptsTestCase {
                      savana(ListUserBranches.class));
 
         // check that we are still in the "workspace" branch
-        assertEquals("workspace", new WorkingCopyInfo(SVN).getMetadataProperties().getBranchName());
+        assertEquals("workspace", getWorkingCopyInfo().getMetadataProperties().getBranchName());
 
         // try to promote again using the default code freeze break message
         log.info("promoting change to trunk with code freeze break message");
@@ -95,7 +94,7 @@ public class WorkspaceCodeFreezeTest extends AbstractSavanaScriptsTestCase {
                      savana(ListUserBranches.class));
 
         // check that we're back in the "trunk" branch
-        assertEquals("trunk", new WorkingCopyInfo(SVN).getMetadataProperties().getBranchName());
+        assertEquals("trunk", getWorkingCopyInfo().getMetadataProperties().getBranchName());
 
         // read the file, and check that our change has been made
         assertTrue(FileUtils.readFileToString(animalsFile, "UTF-8").contains("mongoose"));